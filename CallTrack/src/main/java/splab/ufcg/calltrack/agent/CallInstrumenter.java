@@ -0,0 +1,198 @@
+package splab.ufcg.calltrack.agent;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.BranchInstruction;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.CodeExceptionGen;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.INVOKEDYNAMIC;
+import org.apache.bcel.generic.INVOKESTATIC;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.InstructionTargeter;
+import org.apache.bcel.generic.InvokeInstruction;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.ObjectType;
+import org.apache.bcel.generic.PUSH;
+import org.apache.bcel.generic.ReferenceType;
+
+import splab.ufcg.calltrack.core.PackageMatcher;
+
+/**
+ * Instruments the classes matched by the pattern as they are loaded, so the
+ * {@link CallRecorder} counts the calls between their methods. Each method
+ * gets an id and calls {@link CallRecorder#enter(int)} first; each invoke is
+ * preceded by {@link CallRecorder#call(int)} with the id of the method, and
+ * followed by {@link CallRecorder#returned()} when it invokes a class the
+ * pattern does not match. Each exception handler starts with
+ * {@link CallRecorder#returned()} too, for the invokes that threw.
+ *
+ * The calls are inserted without any new branch or exception handler, so
+ * the code keeps its frames: the StackMapTable is rewritten with the new
+ * offsets by {@link StackMapFrames}. A class that can not be instrumented is
+ * loaded as it is.
+ */
+public class CallInstrumenter implements ClassFileTransformer {
+
+	private static final String RECORDER = CallRecorder.class.getName();
+	private static final String[] NEVER = { "java/", "javax/", "jdk/", "sun/", "com/sun/", "org/apache/bcel/",
+			"splab/ufcg/calltrack/agent/" };
+	// the code_length of a method is a u4 but the JVM takes no more
+	private static final int MAX_CODE_LENGTH = 65535;
+
+	private PackageMatcher matcher;
+
+	public CallInstrumenter(PackageMatcher matcher) {
+		this.matcher = matcher;
+	}
+
+	/**
+	 * Answers whether the class, named in the internal form, is
+	 * instrumented when loaded by the given loader.
+	 */
+	public boolean accepts(ClassLoader loader, String className) {
+		if (loader == null || className == null)
+			return false;
+		for (String prefix : NEVER) {
+			if (className.startsWith(prefix))
+				return false;
+		}
+		return matcher.matches(className);
+	}
+
+	public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+			ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+		if (!accepts(loader, className))
+			return null;
+		try {
+			return instrument(classfileBuffer, className);
+		} catch (Throwable e) {
+			System.err.println("CallTrack agent left " + className + " as it is: " + e);
+			return null;
+		}
+	}
+
+	private byte[] instrument(byte[] classBytes, String className) throws IOException {
+		JavaClass javaClass = new ClassParser(new ByteArrayInputStream(classBytes), className).parse();
+		ClassGen classGen = new ClassGen(javaClass);
+		ConstantPoolGen constants = classGen.getConstantPool();
+		Calls calls = new Calls(constants);
+
+		boolean changed = false;
+		for (Method method : classGen.getMethods()) {
+			if (method.isAbstract() || method.isNative() || method.getCode() == null)
+				continue;
+			int methodId = CallRecorder.register(javaClass.getClassName() + ":" + method.getName());
+			Method instrumented = instrument(method, javaClass.getClassName(), constants, calls, methodId);
+			if (instrumented == null) {
+				System.err.println("CallTrack agent left " + className + " as it is: " + method.getName()
+						+ " would have more than " + MAX_CODE_LENGTH + " bytes of code");
+				return null;
+			}
+			classGen.replaceMethod(method, instrumented);
+			changed = true;
+		}
+		return changed ? classGen.getJavaClass().getBytes() : null;
+	}
+
+	/**
+	 * The method with the calls to the recorder, or null when its code would
+	 * be too long.
+	 */
+	private Method instrument(Method method, String className, ConstantPoolGen constants, Calls calls, int methodId)
+			throws IOException {
+		MethodGen methodGen = new MethodGen(method, className, constants);
+		InstructionList code = methodGen.getInstructionList();
+		StackMapFrames frames = StackMapFrames.read(methodGen.getCodeAttributes(), code);
+		// the other attributes of the code have offsets BCEL does not update
+		for (Attribute attribute : methodGen.getCodeAttributes())
+			methodGen.removeCodeAttribute(attribute);
+		// BCEL makes up a table for the arguments of code compiled without one
+		if (method.getLocalVariableTable() == null)
+			methodGen.removeLocalVariables();
+
+		for (InstructionHandle invoke : code.getInstructionHandles()) {
+			if (!(invoke.getInstruction() instanceof InvokeInstruction))
+				continue;
+			InstructionList before = new InstructionList();
+			before.append(new PUSH(constants, methodId));
+			before.append(new INVOKESTATIC(calls.call));
+			InstructionHandle start = code.insert(invoke, before);
+			redirect(invoke, start, frames);
+
+			// invokedynamic has no owner, it links the call site and returns
+			ReferenceType owner = invoke.getInstruction() instanceof INVOKEDYNAMIC ? null
+					: ((InvokeInstruction) invoke.getInstruction()).getReferenceType(constants);
+			if (!(owner instanceof ObjectType) || !matcher.matches(((ObjectType) owner).getClassName()))
+				code.append(invoke, new INVOKESTATIC(calls.returned));
+		}
+
+		// a callee that threw did not clear the caller
+		Set<InstructionHandle> handlers = new HashSet<InstructionHandle>();
+		for (CodeExceptionGen handler : methodGen.getExceptionHandlers())
+			handlers.add(handler.getHandlerPC());
+		for (InstructionHandle handler : handlers)
+			redirect(handler, code.insert(handler, new INVOKESTATIC(calls.returned)), frames);
+
+		// branches back to the first instruction do not enter again
+		InstructionList prologue = new InstructionList();
+		prologue.append(new PUSH(constants, methodId));
+		prologue.append(new INVOKESTATIC(calls.enter));
+		code.insert(code.getStart(), prologue);
+
+		methodGen.setMaxStack(methodGen.getMaxStack() + 1);
+		code.setPositions();
+		InstructionHandle end = code.getEnd();
+		if (end.getPosition() + end.getInstruction().getLength() > MAX_CODE_LENGTH)
+			return null;
+		if (frames != null)
+			methodGen.addCodeAttribute(frames.write(constants));
+		return methodGen.getMethod();
+	}
+
+	/**
+	 * Makes the branches, handlers and frames of an instruction go to the
+	 * code inserted before it.
+	 */
+	private static void redirect(InstructionHandle from, InstructionHandle to, StackMapFrames frames) {
+		if (from.hasTargeters()) {
+			for (InstructionTargeter targeter : from.getTargeters()) {
+				if (targeter instanceof BranchInstruction) {
+					targeter.updateTarget(from, to);
+				} else if (targeter instanceof CodeExceptionGen) {
+					CodeExceptionGen handler = (CodeExceptionGen) targeter;
+					if (handler.getHandlerPC() == from)
+						handler.setHandlerPC(to);
+				}
+			}
+		}
+		if (frames != null)
+			frames.moveFrames(from, to);
+	}
+
+	/**
+	 * The constant pool indexes of the methods of the recorder.
+	 */
+	private static class Calls {
+		int enter;
+		int call;
+		int returned;
+
+		Calls(ConstantPoolGen constants) {
+			enter = constants.addMethodref(RECORDER, "enter", "(I)V");
+			call = constants.addMethodref(RECORDER, "call", "(I)V");
+			returned = constants.addMethodref(RECORDER, "returned", "()V");
+		}
+	}
+
+}
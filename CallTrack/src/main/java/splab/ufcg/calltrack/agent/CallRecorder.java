@@ -0,0 +1,209 @@
+package splab.ufcg.calltrack.agent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the calls between the methods instrumented by the
+ * {@link CallInstrumenter}, which calls it from their code:
+ * <ul>
+ * <li>{@link #call(int)} before each invoke, with the id of the calling
+ * method;</li>
+ * <li>{@link #enter(int)} first thing in each method, which counts the edge
+ * from the pending caller, so the edge goes to the method that actually
+ * runs, overrides included;</li>
+ * <li>{@link #returned()} after the invokes of methods that are not
+ * instrumented, so their caller is not taken for the caller of the next
+ * method entered from code that is not instrumented either, and first thing
+ * in each exception handler, for the invokes that threw instead.</li>
+ * </ul>
+ * Each thread counts in a table of its own, with no lock: only the thread
+ * writes it, the flusher reads it through atomic arrays. A method entered
+ * from code that is not instrumented counts an edge from {@link #OUTSIDE}.
+ */
+public class CallRecorder {
+
+	public static final int OUTSIDE = -1;
+
+	private static final Object NAMES_LOCK = new Object();
+	private static String[] names = new String[1024];
+	private static int nameCount;
+
+	private static final Queue<ThreadCalls> THREADS = new ConcurrentLinkedQueue<ThreadCalls>();
+	private static final ThreadLocal<ThreadCalls> CURRENT = new ThreadLocal<ThreadCalls>() {
+		protected ThreadCalls initialValue() {
+			ThreadCalls calls = new ThreadCalls();
+			THREADS.add(calls);
+			return calls;
+		}
+	};
+
+	private CallRecorder() {
+	}
+
+	public static void call(int callerId) {
+		CURRENT.get().pending = callerId;
+	}
+
+	public static void returned() {
+		CURRENT.get().pending = OUTSIDE;
+	}
+
+	public static void enter(int methodId) {
+		ThreadCalls calls = CURRENT.get();
+		int caller = calls.pending;
+		calls.pending = OUTSIDE;
+		// packed as PackedEdge does, which may be instrumented itself
+		calls.count(((long) caller << 32) | (methodId & 0xFFFFFFFFL));
+	}
+
+	/**
+	 * The id of the method with the given "package.Class:method" name, given
+	 * when its class is instrumented.
+	 */
+	static int register(String methodName) {
+		synchronized (NAMES_LOCK) {
+			if (nameCount == names.length)
+				names = Arrays.copyOf(names, nameCount << 1);
+			names[nameCount] = methodName;
+			return nameCount++;
+		}
+	}
+
+	static String[] names() {
+		synchronized (NAMES_LOCK) {
+			return Arrays.copyOf(names, nameCount);
+		}
+	}
+
+	/**
+	 * The edges counted so far by every thread, as packed (caller, callee)
+	 * pairs sorted, and their counts.
+	 */
+	static RuntimeCalls snapshot() {
+		String[] methods = names();
+		List<long[]> tables = new ArrayList<long[]>();
+		int total = 0;
+		for (ThreadCalls calls : THREADS) {
+			long[] pairs = calls.pairs();
+			tables.add(pairs);
+			total += pairs.length;
+		}
+
+		// the distinct edges of every thread, then their counts summed
+		long[] edges = new long[total / 2];
+		int filled = 0;
+		for (long[] pairs : tables) {
+			for (int i = 0; i < pairs.length; i += 2)
+				edges[filled++] = pairs[i];
+		}
+		Arrays.sort(edges);
+		int edgeCount = 0;
+		for (int i = 0; i < edges.length; i++) {
+			if (edgeCount == 0 || edges[edgeCount - 1] != edges[i])
+				edges[edgeCount++] = edges[i];
+		}
+		edges = Arrays.copyOf(edges, edgeCount);
+		long[] counts = new long[edgeCount];
+		for (long[] pairs : tables) {
+			for (int i = 0; i < pairs.length; i += 2)
+				counts[Arrays.binarySearch(edges, pairs[i])] += pairs[i + 1];
+		}
+		return new RuntimeCalls(methods, edges, counts);
+	}
+
+	/**
+	 * Open addressing table of the edges counted by one thread. The thread
+	 * writes the key of a slot before its count, with ordered writes, so a
+	 * reader that sees a count sees its key. The table is replaced, not
+	 * grown in place, when it gets too full.
+	 */
+	private static class ThreadCalls {
+		private static final long EMPTY = Long.MIN_VALUE;
+
+		int pending = OUTSIDE;
+		private volatile Table table = new Table(64);
+		private int size;
+
+		void count(long edge) {
+			Table current = table;
+			int mask = current.keys.length() - 1;
+			int slot = hash(edge) & mask;
+			while (true) {
+				long key = current.keys.get(slot);
+				if (key == edge) {
+					current.counts.lazySet(slot, current.counts.get(slot) + 1);
+					return;
+				}
+				if (key == EMPTY)
+					break;
+				slot = (slot + 1) & mask;
+			}
+			if (2 * (size + 1) > current.keys.length()) {
+				table = current = current.grow();
+				mask = current.keys.length() - 1;
+				slot = hash(edge) & mask;
+				while (current.keys.get(slot) != EMPTY)
+					slot = (slot + 1) & mask;
+			}
+			current.keys.lazySet(slot, edge);
+			current.counts.lazySet(slot, 1);
+			size++;
+		}
+
+		/**
+		 * The (edge, count) pairs counted so far, read from another thread.
+		 */
+		long[] pairs() {
+			Table current = table;
+			long[] pairs = new long[2 * current.keys.length()];
+			int filled = 0;
+			for (int slot = 0; slot < current.keys.length(); slot++) {
+				long count = current.counts.get(slot);
+				if (count == 0)
+					continue;
+				pairs[filled++] = current.keys.get(slot);
+				pairs[filled++] = count;
+			}
+			return Arrays.copyOf(pairs, filled);
+		}
+
+		private static int hash(long edge) {
+			long h = edge * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+
+		private static class Table {
+			AtomicLongArray keys;
+			AtomicLongArray counts;
+
+			Table(int capacity) {
+				keys = new AtomicLongArray(capacity);
+				counts = new AtomicLongArray(capacity);
+				for (int i = 0; i < capacity; i++)
+					keys.set(i, EMPTY);
+			}
+
+			Table grow() {
+				Table bigger = new Table(keys.length() << 1);
+				int mask = bigger.keys.length() - 1;
+				for (int slot = 0; slot < keys.length(); slot++) {
+					long key = keys.get(slot);
+					if (key == EMPTY)
+						continue;
+					int to = hash(key) & mask;
+					while (bigger.keys.get(to) != EMPTY)
+						to = (to + 1) & mask;
+					bigger.keys.set(to, key);
+					bigger.counts.set(to, counts.get(slot));
+				}
+				return bigger;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+package splab.ufcg.calltrack.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import splab.ufcg.calltrack.core.PackageMatcher;
+
+/**
+ * Java agent that records the calls executed between the classes matched by
+ * a pattern, to be merged into the graphs with the --calls option:
+ * <pre>
+ * java -javaagent:calltrack.jar=pattern=com.acme.*;out=calls.bin;flush=1000 ...
+ * </pre>
+ * The pattern takes the rules of the command line, the counts are written to
+ * out (calltrack-calls.bin by default) every flush milliseconds and when the
+ * JVM exits. Attached to a running JVM, the agent also instruments the
+ * matched classes already loaded.
+ *
+ * The jar is added to the bootstrap class path before anything else and
+ * the agent started from there, so that the instrumented classes of every
+ * class loader find the one {@link CallRecorder}, loaded by the bootstrap
+ * loader.
+ */
+public class CallTrackAgent {
+
+	private static final String DEFAULT_OUT = "calltrack-calls.bin";
+	private static final long DEFAULT_FLUSH_MILLIS = 1000;
+
+	private File out = new File(DEFAULT_OUT);
+	private long flushMillis = DEFAULT_FLUSH_MILLIS;
+	private String pattern = "";
+
+	public static void premain(String args, Instrumentation instrumentation) {
+		launch(args, instrumentation, false);
+	}
+
+	public static void agentmain(String args, Instrumentation instrumentation) {
+		launch(args, instrumentation, true);
+	}
+
+	/**
+	 * Starts the copy of the agent the bootstrap loader loads from the jar,
+	 * or this one when the jar can not be added to the bootstrap class path.
+	 * Nothing else of the jar is loaded before, the two copies of a class
+	 * would not share their fields nor see each other's package.
+	 */
+	private static void launch(String args, Instrumentation instrumentation, boolean attached) {
+		if (CallTrackAgent.class.getClassLoader() != null && appendToBootstrap(instrumentation)) {
+			try {
+				Class<?> boot = Class.forName(CallTrackAgent.class.getName(), true, null);
+				Method start = boot.getDeclaredMethod("start", String.class, Instrumentation.class, boolean.class);
+				start.setAccessible(true);
+				start.invoke(null, args, instrumentation, attached);
+			} catch (Exception e) {
+				System.err.println("CallTrack agent not started: " + e);
+			}
+			return;
+		}
+		start(args, instrumentation, attached);
+	}
+
+	private static void start(String args, Instrumentation instrumentation, boolean attached) {
+		CallTrackAgent agent = new CallTrackAgent();
+		try {
+			agent.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println("CallTrack agent not started: " + e.getMessage());
+			return;
+		}
+
+		CallInstrumenter instrumenter = new CallInstrumenter(new PackageMatcher(agent.pattern));
+		boolean retransform = attached && instrumentation.isRetransformClassesSupported();
+		instrumentation.addTransformer(instrumenter, retransform);
+		if (retransform)
+			agent.instrumentLoaded(instrumentation, instrumenter);
+		agent.startFlushing();
+	}
+
+	/**
+	 * Adds the jar of the agent to the bootstrap class path, answering
+	 * whether it could.
+	 */
+	private static boolean appendToBootstrap(Instrumentation instrumentation) {
+		CodeSource source = CallTrackAgent.class.getProtectionDomain().getCodeSource();
+		if (source == null)
+			return false;
+		try {
+			File jar = new File(source.getLocation().toURI());
+			if (!jar.isFile())
+				return false;
+			instrumentation.appendToBootstrapClassLoaderSearch(new JarFile(jar));
+			return true;
+		} catch (URISyntaxException e) {
+			System.err.println("CallTrack agent could not find its jar: " + e.getMessage());
+		} catch (IOException e) {
+			System.err.println("CallTrack agent could not add its jar to the bootstrap class path: " + e.getMessage());
+		}
+		return false;
+	}
+
+	private void parse(String args) {
+		if (args == null)
+			return;
+		for (String arg : args.split(";")) {
+			if (arg.trim().length() == 0)
+				continue;
+			int equals = arg.indexOf('=');
+			if (equals < 0)
+				throw new IllegalArgumentException("expected key=value, got " + arg);
+			String key = arg.substring(0, equals).trim();
+			String value = arg.substring(equals + 1).trim();
+			if ("pattern".equals(key))
+				pattern = value;
+			else if ("out".equals(key))
+				out = new File(value);
+			else if ("flush".equals(key))
+				flushMillis = Long.parseLong(value);
+			else
+				throw new IllegalArgumentException("unknown argument " + key);
+		}
+	}
+
+	private void instrumentLoaded(Instrumentation instrumentation, CallInstrumenter instrumenter) {
+		List<Class<?>> loaded = new ArrayList<Class<?>>();
+		for (Class<?> type : instrumentation.getAllLoadedClasses()) {
+			if (instrumentation.isModifiableClass(type)
+					&& instrumenter.accepts(type.getClassLoader(), type.getName().replace('.', '/')))
+				loaded.add(type);
+		}
+		if (loaded.isEmpty())
+			return;
+		try {
+			instrumentation.retransformClasses(loaded.toArray(new Class<?>[loaded.size()]));
+		} catch (UnmodifiableClassException e) {
+			System.err.println("CallTrack agent could not instrument the loaded classes: " + e.getMessage());
+		}
+	}
+
+	private void startFlushing() {
+		Thread flusher = new Thread("calltrack-flush") {
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(flushMillis);
+						flush();
+					}
+				} catch (InterruptedException e) {
+					// the JVM is exiting
+				}
+			}
+		};
+		flusher.setDaemon(true);
+		flusher.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread("calltrack-last-flush") {
+			public void run() {
+				flush();
+			}
+		});
+	}
+
+	private synchronized void flush() {
+		try {
+			CallRecorder.snapshot().write(out);
+		} catch (IOException e) {
+			System.err.println("CallTrack agent could not write " + out + ": " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,115 @@
+package splab.ufcg.calltrack.agent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+/**
+ * The calls counted by the agent while the instrumented code ran: the edges
+ * between methods, named "package.Class:method", and how many times each one
+ * was taken. An edge from {@link #OUTSIDE} counts the times a
+ * method was entered from code that is not instrumented.
+ *
+ * File layout (big endian):
+ * <pre>
+ * int magic, int version
+ * int methods, methods * UTF
+ * int edges, edges * {int caller, int callee, long count}
+ * </pre>
+ */
+public class RuntimeCalls {
+
+	public static final int OUTSIDE = CallRecorder.OUTSIDE;
+
+	private static final int MAGIC = 0x43544352; // "CTCR"
+	private static final int VERSION = 1;
+
+	private String[] methods;
+	private long[] edges;
+	private long[] counts;
+
+	public RuntimeCalls(String[] methods, long[] edges, long[] counts) {
+		this.methods = methods;
+		this.edges = edges;
+		this.counts = counts;
+	}
+
+	public String[] getMethods() {
+		return methods;
+	}
+
+	/**
+	 * The edges as packed (caller, callee) pairs of indexes into the methods.
+	 */
+	public long[] getEdges() {
+		return edges;
+	}
+
+	public long[] getCounts() {
+		return counts;
+	}
+
+	public static RuntimeCalls read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException(file + " is not a file of runtime calls");
+			if (in.readInt() != VERSION)
+				throw new IOException("Unsupported version of runtime calls " + file);
+			String[] methods = new String[in.readInt()];
+			for (int i = 0; i < methods.length; i++)
+				methods[i] = in.readUTF();
+			int count = in.readInt();
+			long[] edges = new long[count];
+			long[] counts = new long[count];
+			for (int i = 0; i < count; i++) {
+				int caller = in.readInt();
+				int callee = in.readInt();
+				if (caller >= methods.length || callee < 0 || callee >= methods.length)
+					throw new IOException("Corrupted edge " + caller + " -> " + callee + " in " + file);
+				edges[i] = PackedEdge.of(caller, callee);
+				counts[i] = in.readLong();
+			}
+			return new RuntimeCalls(methods, edges, counts);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the calls, replacing the file at once when they are all
+	 * written, so a reader never sees half of them.
+	 */
+	public void write(File file) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(methods.length);
+			for (String method : methods)
+				out.writeUTF(method);
+			out.writeInt(edges.length);
+			for (int i = 0; i < edges.length; i++) {
+				out.writeInt(PackedEdge.from(edges[i]));
+				out.writeInt(PackedEdge.to(edges[i]));
+				out.writeLong(counts[i]);
+			}
+		} finally {
+			out.close();
+		}
+
+		if (file.exists() && !file.delete())
+			throw new IOException("Could not replace " + file);
+		if (!tmp.renameTo(file))
+			throw new IOException("Could not rename " + tmp + " to " + file);
+	}
+
+}
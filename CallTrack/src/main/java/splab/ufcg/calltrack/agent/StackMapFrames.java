@@ -0,0 +1,222 @@
+package splab.ufcg.calltrack.agent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.Unknown;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.InstructionList;
+
+/**
+ * The StackMapTable of a method, kept across the changes of its code. BCEL
+ * copies the attribute as it is, with the offsets of the code before the
+ * change, so the frames are read once with the instructions they start at,
+ * and the attribute is written again from the new positions of those
+ * instructions.
+ *
+ * Frames keep their kind and their verification types; the ones whose offset
+ * delta is encoded in the frame type are written in their extended form when
+ * the new delta does not fit. The offsets of the NEW instructions of
+ * uninitialized types are updated too.
+ */
+class StackMapFrames {
+
+	static final String NAME = "StackMapTable";
+
+	private static final int SAME_MAX = 63;
+	private static final int SAME_LOCALS_1_STACK_ITEM = 64;
+	private static final int SAME_LOCALS_1_STACK_ITEM_MAX = 127;
+	private static final int SAME_LOCALS_1_STACK_ITEM_EXTENDED = 247;
+	private static final int SAME_FRAME_EXTENDED = 251;
+	private static final int FULL_FRAME = 255;
+	private static final int ITEM_OBJECT = 7;
+	private static final int ITEM_UNINITIALIZED = 8;
+
+	private int nameIndex;
+	private List<Frame> frames = new ArrayList<Frame>();
+
+	/**
+	 * The frames of the attribute, null when the method has none.
+	 */
+	static StackMapFrames read(Attribute[] codeAttributes, InstructionList code) throws IOException {
+		for (Attribute attribute : codeAttributes) {
+			if (NAME.equals(attribute.getName())) {
+				StackMapFrames frames = new StackMapFrames();
+				frames.nameIndex = attribute.getNameIndex();
+				frames.parse(contentOf(attribute), code);
+				return frames;
+			}
+		}
+		return null;
+	}
+
+	private static byte[] contentOf(Attribute attribute) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		attribute.dump(out);
+		out.close();
+		byte[] dumped = bytes.toByteArray();
+		// u2 name index and u4 length first
+		byte[] content = new byte[dumped.length - 6];
+		System.arraycopy(dumped, 6, content, 0, content.length);
+		return content;
+	}
+
+	private void parse(byte[] content, InstructionList code) throws IOException {
+		Reader in = new Reader(content);
+		int count = in.u2();
+		int offset = -1;
+		for (int f = 0; f < count; f++) {
+			Frame frame = new Frame();
+			int type = in.u1();
+			int delta;
+			int types;
+			if (type <= SAME_MAX) {
+				frame.type = SAME_FRAME_EXTENDED;
+				delta = type;
+				types = 0;
+			} else if (type <= SAME_LOCALS_1_STACK_ITEM_MAX) {
+				frame.type = SAME_LOCALS_1_STACK_ITEM_EXTENDED;
+				delta = type - SAME_LOCALS_1_STACK_ITEM;
+				types = 1;
+			} else if (type < SAME_LOCALS_1_STACK_ITEM_EXTENDED) {
+				throw new IOException("reserved frame type " + type);
+			} else {
+				frame.type = type;
+				delta = in.u2();
+				if (type == SAME_LOCALS_1_STACK_ITEM_EXTENDED)
+					types = 1;
+				else if (type <= SAME_FRAME_EXTENDED)
+					types = 0;
+				else if (type < FULL_FRAME)
+					types = type - SAME_FRAME_EXTENDED;
+				else
+					types = -1;
+			}
+			offset = offset < 0 ? delta : offset + delta + 1;
+			frame.start = handleAt(code, offset);
+
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			if (types < 0) {
+				int locals = in.u2();
+				write2(body, locals);
+				copyTypes(in, locals, body, frame, code);
+				int stack = in.u2();
+				write2(body, stack);
+				copyTypes(in, stack, body, frame, code);
+			} else {
+				copyTypes(in, types, body, frame, code);
+			}
+			frame.body = body.toByteArray();
+			frames.add(frame);
+		}
+	}
+
+	private static void copyTypes(Reader in, int count, ByteArrayOutputStream body, Frame frame,
+			InstructionList code) throws IOException {
+		for (int i = 0; i < count; i++) {
+			int tag = in.u1();
+			body.write(tag);
+			if (tag == ITEM_OBJECT) {
+				write2(body, in.u2());
+			} else if (tag == ITEM_UNINITIALIZED) {
+				frame.uninitialized.add(body.size());
+				frame.news.add(handleAt(code, in.u2()));
+				write2(body, 0);
+			}
+		}
+	}
+
+	private static InstructionHandle handleAt(InstructionList code, int offset) throws IOException {
+		InstructionHandle handle = code.findHandle(offset);
+		if (handle == null)
+			throw new IOException("no instruction at offset " + offset + " of a frame");
+		return handle;
+	}
+
+	/**
+	 * Makes the frames that started at an instruction start at another one,
+	 * when code was inserted before it and the branches to it now go to that
+	 * code.
+	 */
+	void moveFrames(InstructionHandle from, InstructionHandle to) {
+		for (Frame frame : frames) {
+			if (frame.start == from)
+				frame.start = to;
+		}
+	}
+
+	/**
+	 * The attribute for the code with its positions set.
+	 */
+	Attribute write(ConstantPoolGen constants) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		write2(bytes, frames.size());
+		int previous = -1;
+		for (Frame frame : frames) {
+			int offset = frame.start.getPosition();
+			int delta = previous < 0 ? offset : offset - previous - 1;
+			if (delta < 0)
+				throw new IOException("frames out of order at offset " + offset);
+			previous = offset;
+
+			if (frame.type == SAME_FRAME_EXTENDED && delta <= SAME_MAX) {
+				bytes.write(delta);
+			} else if (frame.type == SAME_LOCALS_1_STACK_ITEM_EXTENDED && delta <= SAME_MAX) {
+				bytes.write(SAME_LOCALS_1_STACK_ITEM + delta);
+			} else {
+				bytes.write(frame.type);
+				write2(bytes, delta);
+			}
+			byte[] body = frame.body;
+			for (int i = 0; i < frame.uninitialized.size(); i++) {
+				int at = frame.uninitialized.get(i);
+				int position = frame.news.get(i).getPosition();
+				body[at] = (byte) (position >>> 8);
+				body[at + 1] = (byte) position;
+			}
+			bytes.write(body, 0, body.length);
+		}
+		byte[] content = bytes.toByteArray();
+		return new Unknown(nameIndex, content.length, content, constants.getConstantPool());
+	}
+
+	private static void write2(ByteArrayOutputStream out, int value) {
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	private static class Frame {
+		int type;
+		InstructionHandle start;
+		byte[] body;
+		// where the offsets of uninitialized types are in the body, and their NEW
+		List<Integer> uninitialized = new ArrayList<Integer>();
+		List<InstructionHandle> news = new ArrayList<InstructionHandle>();
+	}
+
+	private static class Reader {
+		private byte[] bytes;
+		private int position;
+
+		Reader(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		int u1() throws IOException {
+			if (position >= bytes.length)
+				throw new IOException("truncated StackMapTable");
+			return bytes[position++] & 0xFF;
+		}
+
+		int u2() throws IOException {
+			return (u1() << 8) | u1();
+		}
+	}
+
+}
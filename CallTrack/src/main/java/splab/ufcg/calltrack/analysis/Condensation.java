@@ -0,0 +1,207 @@
+package splab.ufcg.calltrack.analysis;
+
+import java.util.Arrays;
+
+import splab.ufcg.calltrack.model.CompactGraph;
+import splab.ufcg.calltrack.model.TypeNode;
+import splab.ufcg.calltrack.utils.LongHashSet;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+/**
+ * The strongly connected components of a graph, and the acyclic graph of
+ * those components. Recursive methods and methods calling each other end up
+ * in one component, so traversals over the DAG walk every cycle once.
+ *
+ * The components are found with an iterative Tarjan search, which keeps its
+ * own stacks and does not overflow the thread stack on deep call chains.
+ * Components are numbered in the order of their first member, so that the
+ * DAG is again a {@link CompactGraph} whose node ids are the ids of those
+ * first members.
+ */
+public class Condensation {
+
+	private CompactGraph graph;
+	private CompactGraph dag;
+	private int[] component;
+	private int[] memberOffsets;
+	private int[] members;
+	private int[] reverseTopological;
+
+	private Condensation() {
+	}
+
+	public static Condensation of(CompactGraph graph) {
+		int n = graph.nodeCount();
+		int[] tarjanComponent = new int[n];
+		int count = tarjan(graph, tarjanComponent);
+
+		// renumber the components by their first member
+		int[] renumber = new int[count];
+		Arrays.fill(renumber, -1);
+		int next = 0;
+		int[] component = new int[n];
+		for (int node = 0; node < n; node++) {
+			int c = tarjanComponent[node];
+			if (renumber[c] < 0)
+				renumber[c] = next++;
+			component[node] = renumber[c];
+		}
+
+		Condensation condensation = new Condensation();
+		condensation.graph = graph;
+		condensation.component = component;
+		// Tarjan completes a component after everything it reaches
+		condensation.reverseTopological = renumber;
+		condensation.groupMembers(count);
+		condensation.buildDag(count);
+		return condensation;
+	}
+
+	/**
+	 * Fills the component of every node and returns the number of components,
+	 * numbered in completion order.
+	 */
+	private static int tarjan(CompactGraph graph, int[] component) {
+		int n = graph.nodeCount();
+		int[] index = new int[n];
+		int[] lowLink = new int[n];
+		Arrays.fill(index, -1);
+		boolean[] onStack = new boolean[n];
+		int[] stack = new int[n];
+		int stackSize = 0;
+		int[] callNode = new int[n];
+		int[] callEdge = new int[n];
+		int depth;
+		int nextIndex = 0;
+		int components = 0;
+
+		for (int root = 0; root < n; root++) {
+			if (index[root] >= 0)
+				continue;
+
+			index[root] = lowLink[root] = nextIndex++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			callNode[0] = root;
+			callEdge[0] = graph.firstOut(root);
+			depth = 1;
+
+			while (depth > 0) {
+				int node = callNode[depth - 1];
+				int edge = callEdge[depth - 1];
+				if (edge < graph.endOut(node)) {
+					callEdge[depth - 1] = edge + 1;
+					int target = graph.target(edge);
+					if (index[target] < 0) {
+						index[target] = lowLink[target] = nextIndex++;
+						stack[stackSize++] = target;
+						onStack[target] = true;
+						callNode[depth] = target;
+						callEdge[depth] = graph.firstOut(target);
+						depth++;
+					} else if (onStack[target] && index[target] < lowLink[node]) {
+						lowLink[node] = index[target];
+					}
+					continue;
+				}
+
+				if (lowLink[node] == index[node]) {
+					int member;
+					do {
+						member = stack[--stackSize];
+						onStack[member] = false;
+						component[member] = components;
+					} while (member != node);
+					components++;
+				}
+				depth--;
+				if (depth > 0) {
+					int caller = callNode[depth - 1];
+					if (lowLink[node] < lowLink[caller])
+						lowLink[caller] = lowLink[node];
+				}
+			}
+		}
+		return components;
+	}
+
+	private void groupMembers(int count) {
+		memberOffsets = new int[count + 1];
+		for (int node = 0; node < component.length; node++)
+			memberOffsets[component[node] + 1]++;
+		for (int c = 0; c < count; c++)
+			memberOffsets[c + 1] += memberOffsets[c];
+		members = new int[component.length];
+		int[] fill = Arrays.copyOf(memberOffsets, count);
+		for (int node = 0; node < component.length; node++)
+			members[fill[component[node]]++] = node;
+	}
+
+	private void buildDag(int count) {
+		String[] ids = new String[count];
+		String[] labels = new String[count];
+		byte[] types = new byte[count];
+		for (int c = 0; c < count; c++) {
+			int first = members[memberOffsets[c]];
+			int size = size(c);
+			ids[c] = graph.id(first);
+			if (size == 1) {
+				labels[c] = graph.label(first);
+				types[c] = (byte) graph.type(first).ordinal();
+			} else {
+				labels[c] = graph.label(first) + " (+" + (size - 1) + ")";
+				types[c] = (byte) TypeNode.NORMAL.ordinal();
+			}
+		}
+
+		LongHashSet edges = new LongHashSet(graph.edgeCount());
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			int from = component[node];
+			for (int e = graph.firstOut(node), end = graph.endOut(node); e < end; e++) {
+				int to = component[graph.target(e)];
+				if (from != to)
+					edges.add(PackedEdge.of(from, to));
+			}
+		}
+		dag = CompactGraph.build(ids, labels, types, edges.toArray());
+	}
+
+	public CompactGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * The acyclic graph with one node per component.
+	 */
+	public CompactGraph getDag() {
+		return dag;
+	}
+
+	public int componentCount() {
+		return memberOffsets.length - 1;
+	}
+
+	public int componentOf(int node) {
+		return component[node];
+	}
+
+	public int size(int component) {
+		return memberOffsets[component + 1] - memberOffsets[component];
+	}
+
+	/**
+	 * The i-th member of the component, members being in node order.
+	 */
+	public int member(int component, int i) {
+		return members[memberOffsets[component] + i];
+	}
+
+	/**
+	 * The components ordered so that every component comes after all the
+	 * components it reaches.
+	 */
+	public int[] reverseTopologicalOrder() {
+		return reverseTopological;
+	}
+
+}
@@ -0,0 +1,463 @@
+package splab.ufcg.calltrack.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import splab.ufcg.calltrack.model.CompactGraph;
+import splab.ufcg.calltrack.model.TypeNode;
+import splab.ufcg.calltrack.utils.LongIntHashMap;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+/**
+ * The method graph seen at three levels of detail: the methods, the classes
+ * they belong to and the packages of those classes. The edges of a level are
+ * the edges of the level below between different groups, counted: a class
+ * edge weighs the number of method edges it stands for, a package edge the
+ * number of method edges between the classes of both packages.
+ *
+ * Artifacts belong to no class. They are a node of their own at every level
+ * and cannot be expanded.
+ *
+ * A {@link View} shows the packages and expands some of them into their
+ * classes and some classes into their methods. Only what it shows is built,
+ * from the edges of the coarsest level that tells them apart, so its cost
+ * follows the size of the view and not the size of the method graph.
+ */
+public class GraphHierarchy {
+
+	public static final int PACKAGE = 0;
+	public static final int CLASS = 1;
+	public static final int METHOD = 2;
+	public static final String DEFAULT_PACKAGE = "(default)";
+	private static final String[] LEVEL_NAMES = { "package", "class", "method" };
+
+	private CompactGraph methods;
+	private CompactGraph classes;
+	private int[] classWeights;
+	private int[] classInWeights;
+	private CompactGraph packages;
+	private int[] packageWeights;
+	private int[] methodClass;
+	private int[] classPackage;
+	private int[] classMethodOffsets;
+	private int[] classMethods;
+	private int[] packageClassOffsets;
+	private int[] packageClasses;
+
+	private GraphHierarchy() {
+	}
+
+	public static GraphHierarchy of(CompactGraph methods) {
+		int n = methods.nodeCount();
+		String[] classOfMethod = new String[n];
+		for (int m = 0; m < n; m++)
+			classOfMethod[m] = methods.isArtifact(m) ? methods.id(m) : classOf(methods.id(m));
+
+		GraphHierarchy hierarchy = new GraphHierarchy();
+		hierarchy.methods = methods;
+		String[] classIds = distinct(classOfMethod);
+		hierarchy.methodClass = new int[n];
+		for (int m = 0; m < n; m++)
+			hierarchy.methodClass[m] = Arrays.binarySearch(classIds, classOfMethod[m]);
+
+		int classCount = classIds.length;
+		String[] classLabels = new String[classCount];
+		byte[] classTypes = new byte[classCount];
+		String[] packageOfClass = new String[classCount];
+		for (int c = 0; c < classCount; c++)
+			packageOfClass[c] = packageOf(classIds[c]);
+		for (int m = 0; m < n; m++) {
+			if (methods.isArtifact(m)) {
+				int c = hierarchy.methodClass[m];
+				classLabels[c] = methods.label(m);
+				classTypes[c] = (byte) methods.type(m).ordinal();
+				packageOfClass[c] = classIds[c];
+			}
+		}
+
+		String[] packageIds = distinct(packageOfClass);
+		hierarchy.classPackage = new int[classCount];
+		for (int c = 0; c < classCount; c++)
+			hierarchy.classPackage[c] = Arrays.binarySearch(packageIds, packageOfClass[c]);
+		String[] packageLabels = new String[packageIds.length];
+		byte[] packageTypes = new byte[packageIds.length];
+		for (int c = 0; c < classCount; c++) {
+			int p = hierarchy.classPackage[c];
+			// a package is labelled with its whole name, an artifact keeps its label
+			packageLabels[p] = classTypes[c] != TypeNode.NORMAL.ordinal() ? classLabels[c] : packageIds[p];
+			packageTypes[p] = classTypes[c];
+		}
+
+		EdgeCounter classEdges = new EdgeCounter();
+		for (int m = 0; m < n; m++) {
+			for (int e = methods.firstOut(m), end = methods.endOut(m); e < end; e++)
+				classEdges.add(hierarchy.methodClass[m], hierarchy.methodClass[methods.target(e)], 1);
+		}
+		hierarchy.classes = CompactGraph.build(classIds, classLabels, classTypes, classEdges.edges());
+		hierarchy.classWeights = classEdges.weightsOf(hierarchy.classes);
+		hierarchy.classInWeights = classEdges.inWeightsOf(hierarchy.classes);
+
+		EdgeCounter packageEdges = new EdgeCounter();
+		CompactGraph classGraph = hierarchy.classes;
+		for (int c = 0; c < classCount; c++) {
+			for (int e = classGraph.firstOut(c), end = classGraph.endOut(c); e < end; e++)
+				packageEdges.add(hierarchy.classPackage[c], hierarchy.classPackage[classGraph.target(e)],
+						hierarchy.classWeights[e]);
+		}
+		hierarchy.packages = CompactGraph.build(packageIds, packageLabels, packageTypes, packageEdges.edges());
+		hierarchy.packageWeights = packageEdges.weightsOf(hierarchy.packages);
+
+		int[][] classChildren = children(hierarchy.methodClass, classCount);
+		hierarchy.classMethodOffsets = classChildren[0];
+		hierarchy.classMethods = classChildren[1];
+		int[][] packageChildren = children(hierarchy.classPackage, packageIds.length);
+		hierarchy.packageClassOffsets = packageChildren[0];
+		hierarchy.packageClasses = packageChildren[1];
+		return hierarchy;
+	}
+
+	/**
+	 * The class of a "package.Class:method" id.
+	 */
+	static String classOf(String methodId) {
+		int colon = methodId.indexOf(':');
+		return colon >= 0 ? methodId.substring(0, colon) : methodId;
+	}
+
+	static String packageOf(String className) {
+		int dot = className.lastIndexOf('.');
+		return dot > 0 ? className.substring(0, dot) : DEFAULT_PACKAGE;
+	}
+
+	private static String[] distinct(String[] names) {
+		String[] sorted = names.clone();
+		Arrays.sort(sorted);
+		int count = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (count == 0 || !sorted[i].equals(sorted[count - 1]))
+				sorted[count++] = sorted[i];
+		}
+		return Arrays.copyOf(sorted, count);
+	}
+
+	/**
+	 * Offsets and members of the groups given by the group of every member.
+	 */
+	private static int[][] children(int[] parent, int parents) {
+		int[] offsets = new int[parents + 1];
+		for (int p : parent)
+			offsets[p + 1]++;
+		for (int i = 0; i < parents; i++)
+			offsets[i + 1] += offsets[i];
+		int[] fill = Arrays.copyOf(offsets, parents);
+		int[] members = new int[parent.length];
+		for (int i = 0; i < parent.length; i++)
+			members[fill[parent[i]]++] = i;
+		return new int[][] { offsets, members };
+	}
+
+	public CompactGraph getMethods() {
+		return methods;
+	}
+
+	/**
+	 * The class level, whose edge e stands for {@link #classWeight(int)}
+	 * method edges.
+	 */
+	public CompactGraph getClasses() {
+		return classes;
+	}
+
+	public int classWeight(int edge) {
+		return classWeights[edge];
+	}
+
+	public CompactGraph getPackages() {
+		return packages;
+	}
+
+	public int packageWeight(int edge) {
+		return packageWeights[edge];
+	}
+
+	/**
+	 * Shows the packages, except the packages and classes whose id is given,
+	 * which are shown expanded into their classes and methods. Expanding a
+	 * class expands its package too.
+	 *
+	 * @throws IllegalArgumentException
+	 *             when an id is neither a package nor a class
+	 */
+	public View view(Collection<String> expanded) {
+		BitSet expandedPackages = new BitSet(packages.nodeCount());
+		BitSet expandedClasses = new BitSet(classes.nodeCount());
+		for (String id : expanded) {
+			int p = packages.indexOf(id);
+			int c = classes.indexOf(id);
+			if (p < 0 && c < 0)
+				throw new IllegalArgumentException("Unknown package or class " + id);
+			if (p >= 0 && !packages.isArtifact(p))
+				expandedPackages.set(p);
+			if (c >= 0 && !classes.isArtifact(c)) {
+				expandedClasses.set(c);
+				expandedPackages.set(classPackage[c]);
+			}
+		}
+		return new View(expandedPackages, expandedClasses);
+	}
+
+	/**
+	 * One level of detail of the hierarchy, built as a graph of its own whose
+	 * nodes are packages, classes and methods. Its edges are weighted like the
+	 * ones of the levels.
+	 */
+	public class View {
+		private BitSet expandedPackages;
+		private BitSet expandedClasses;
+		private CompactGraph graph;
+		private int[] weights;
+		private int[] levels;
+		private int[] members;
+		private int[] packageNode;
+		private int[] classNode;
+		private LongIntHashMap methodNode = new LongIntHashMap();
+
+		View(BitSet expandedPackages, BitSet expandedClasses) {
+			this.expandedPackages = expandedPackages;
+			this.expandedClasses = expandedClasses;
+			place();
+			connect();
+		}
+
+		/**
+		 * Picks the nodes shown and numbers them in the order of their ids.
+		 */
+		private void place() {
+			final List<int[]> shown = new ArrayList<int[]>();
+			for (int p = 0; p < packages.nodeCount(); p++) {
+				if (!expandedPackages.get(p)) {
+					shown.add(new int[] { PACKAGE, p });
+					continue;
+				}
+				for (int i = packageClassOffsets[p]; i < packageClassOffsets[p + 1]; i++) {
+					int c = packageClasses[i];
+					if (!expandedClasses.get(c)) {
+						shown.add(new int[] { CLASS, c });
+						continue;
+					}
+					for (int j = classMethodOffsets[c]; j < classMethodOffsets[c + 1]; j++)
+						shown.add(new int[] { METHOD, classMethods[j] });
+				}
+			}
+			Collections.sort(shown, new Comparator<int[]>() {
+				public int compare(int[] a, int[] b) {
+					return levelGraph(a[0]).id(a[1]).compareTo(levelGraph(b[0]).id(b[1]));
+				}
+			});
+
+			int n = shown.size();
+			levels = new int[n];
+			members = new int[n];
+			packageNode = new int[packages.nodeCount()];
+			classNode = new int[classes.nodeCount()];
+			Arrays.fill(packageNode, -1);
+			Arrays.fill(classNode, -1);
+			for (int node = 0; node < n; node++) {
+				int[] entry = shown.get(node);
+				levels[node] = entry[0];
+				members[node] = entry[1];
+				if (entry[0] == PACKAGE)
+					packageNode[entry[1]] = node;
+				else if (entry[0] == CLASS)
+					classNode[entry[1]] = node;
+				else
+					methodNode.put(entry[1], node);
+			}
+		}
+
+		/**
+		 * Counts the edges between the nodes shown. An edge is taken from the
+		 * package level when both its packages are collapsed, from the class
+		 * level when both its classes are, and from the method level
+		 * otherwise, so every method edge is counted once.
+		 */
+		private void connect() {
+			EdgeCounter edges = new EdgeCounter();
+			for (int p = 0; p < packages.nodeCount(); p++) {
+				if (expandedPackages.get(p))
+					continue;
+				for (int e = packages.firstOut(p), end = packages.endOut(p); e < end; e++) {
+					int q = packages.target(e);
+					if (!expandedPackages.get(q))
+						edges.add(packageNode[p], packageNode[q], packageWeights[e]);
+				}
+			}
+
+			for (int p = expandedPackages.nextSetBit(0); p >= 0; p = expandedPackages.nextSetBit(p + 1)) {
+				for (int i = packageClassOffsets[p]; i < packageClassOffsets[p + 1]; i++) {
+					int c = packageClasses[i];
+					if (expandedClasses.get(c))
+						continue;
+					for (int e = classes.firstOut(c), end = classes.endOut(c); e < end; e++) {
+						int d = classes.target(e);
+						if (!expandedClasses.get(d))
+							edges.add(classNode[c], nodeOfClass(d), classWeights[e]);
+					}
+					// edges from classes of collapsed packages, the others are counted from their source
+					for (int e = classes.firstIn(c), end = classes.endIn(c); e < end; e++) {
+						int s = classes.source(e);
+						if (!expandedPackages.get(classPackage[s]))
+							edges.add(packageNode[classPackage[s]], classNode[c], classInWeights[e]);
+					}
+				}
+			}
+
+			for (int c = expandedClasses.nextSetBit(0); c >= 0; c = expandedClasses.nextSetBit(c + 1)) {
+				for (int i = classMethodOffsets[c]; i < classMethodOffsets[c + 1]; i++) {
+					int m = classMethods[i];
+					int node = methodNode.get(m, -1);
+					for (int e = methods.firstOut(m), end = methods.endOut(m); e < end; e++)
+						edges.add(node, nodeOfMethod(methods.target(e)), 1);
+					for (int e = methods.firstIn(m), end = methods.endIn(m); e < end; e++) {
+						int s = methods.source(e);
+						if (!expandedClasses.get(methodClass[s]))
+							edges.add(nodeOfClass(methodClass[s]), node, 1);
+					}
+				}
+			}
+
+			String[] ids = new String[levels.length];
+			String[] labels = new String[levels.length];
+			byte[] types = new byte[levels.length];
+			for (int node = 0; node < levels.length; node++) {
+				CompactGraph level = levelGraph(levels[node]);
+				ids[node] = level.id(members[node]);
+				labels[node] = level.label(members[node]);
+				types[node] = (byte) level.type(members[node]).ordinal();
+			}
+			graph = CompactGraph.build(ids, labels, types, edges.edges());
+			weights = edges.weightsOf(graph);
+		}
+
+		/**
+		 * The node shown for a class that is not expanded.
+		 */
+		private int nodeOfClass(int c) {
+			return classNode[c] >= 0 ? classNode[c] : packageNode[classPackage[c]];
+		}
+
+		private int nodeOfMethod(int m) {
+			int node = methodNode.get(m, -1);
+			return node >= 0 ? node : nodeOfClass(methodClass[m]);
+		}
+
+		public CompactGraph getGraph() {
+			return graph;
+		}
+
+		/**
+		 * Number of method edges the edge of the view stands for.
+		 */
+		public int weight(int edge) {
+			return weights[edge];
+		}
+
+		/**
+		 * {@link GraphHierarchy#PACKAGE}, {@link GraphHierarchy#CLASS} or
+		 * {@link GraphHierarchy#METHOD}.
+		 */
+		public int level(int node) {
+			return levels[node];
+		}
+
+		/**
+		 * "package", "class" or "method", or "artifact" for an artifact.
+		 */
+		public String levelName(int node) {
+			return graph.isArtifact(node) ? "artifact" : LEVEL_NAMES[levels[node]];
+		}
+
+		public boolean isExpandable(int node) {
+			return levels[node] != METHOD && !graph.isArtifact(node);
+		}
+
+		/**
+		 * The id of the package or the class the node was expanded from, null
+		 * for a package or an artifact.
+		 */
+		public String container(int node) {
+			if (levels[node] == CLASS)
+				return packages.id(classPackage[members[node]]);
+			if (levels[node] == METHOD)
+				return classes.id(methodClass[members[node]]);
+			return null;
+		}
+	}
+
+	private CompactGraph levelGraph(int level) {
+		return level == PACKAGE ? packages : level == CLASS ? classes : methods;
+	}
+
+	/**
+	 * Sums the weights of the edges added between the same two nodes,
+	 * leaving out the edges of a node to itself.
+	 */
+	private static class EdgeCounter {
+		private LongIntHashMap slots = new LongIntHashMap();
+		private long[] edges = new long[16];
+		private int[] weights = new int[16];
+		private int count;
+
+		void add(int from, int to, int weight) {
+			if (from == to)
+				return;
+			long edge = PackedEdge.of(from, to);
+			int slot = slots.get(edge, -1);
+			if (slot >= 0) {
+				weights[slot] += weight;
+				return;
+			}
+			if (count == edges.length) {
+				edges = Arrays.copyOf(edges, count << 1);
+				weights = Arrays.copyOf(weights, count << 1);
+			}
+			slots.put(edge, count);
+			edges[count] = edge;
+			weights[count++] = weight;
+		}
+
+		long[] edges() {
+			return Arrays.copyOf(edges, count);
+		}
+
+		/**
+		 * The weights in the order of the edges of the graph built from them.
+		 */
+		int[] weightsOf(CompactGraph graph) {
+			int[] ordered = new int[count];
+			for (int node = 0; node < graph.nodeCount(); node++) {
+				for (int e = graph.firstOut(node), end = graph.endOut(node); e < end; e++)
+					ordered[e] = weights[slots.get(PackedEdge.of(node, graph.target(e)), -1)];
+			}
+			return ordered;
+		}
+
+		/**
+		 * The weights in the order of the reverse edges of the graph.
+		 */
+		int[] inWeightsOf(CompactGraph graph) {
+			int[] ordered = new int[count];
+			for (int node = 0; node < graph.nodeCount(); node++) {
+				for (int e = graph.firstIn(node), end = graph.endIn(node); e < end; e++)
+					ordered[e] = weights[slots.get(PackedEdge.of(graph.source(e), node), -1)];
+			}
+			return ordered;
+		}
+	}
+
+}
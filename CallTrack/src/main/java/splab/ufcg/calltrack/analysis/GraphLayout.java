@@ -0,0 +1,424 @@
+package splab.ufcg.calltrack.analysis;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import splab.ufcg.calltrack.model.CompactGraph;
+
+/**
+ * Positions of the nodes of a graph, computed with a force directed layout
+ * (Fruchterman and Reingold) so the viewer only has to draw them.
+ *
+ * Every iteration builds a Barnes-Hut quadtree of the positions, then the
+ * workers split the nodes and compute for each one the repulsion of the
+ * others through the tree, in O(log n), and the attraction of its
+ * neighbours. Nodes only write their own displacement, so the workers do not
+ * share anything they write. The start positions are a spiral in node order,
+ * which keeps the result the same from one run to the next.
+ */
+public class GraphLayout {
+
+	private static final int ITERATIONS = 150;
+	private static final float EDGE_LENGTH = 100f;
+	private static final float THETA = 0.8f;
+	private static final float GRAVITY = 0.02f;
+	private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+
+	private FloatBuffer x;
+	private FloatBuffer y;
+
+	public GraphLayout(FloatBuffer x, FloatBuffer y) {
+		this.x = x;
+		this.y = y;
+	}
+
+	public int nodeCount() {
+		return x.limit();
+	}
+
+	public float x(int node) {
+		return x.get(node);
+	}
+
+	public float y(int node) {
+		return y.get(node);
+	}
+
+	public FloatBuffer getX() {
+		return x.duplicate();
+	}
+
+	public FloatBuffer getY() {
+		return y.duplicate();
+	}
+
+	/**
+	 * A copy of the layout on the heap, for one read from a file that is
+	 * about to be replaced.
+	 */
+	public GraphLayout copy() {
+		float[] copyX = new float[nodeCount()];
+		float[] copyY = new float[nodeCount()];
+		getX().get(copyX);
+		getY().get(copyY);
+		return new GraphLayout(FloatBuffer.wrap(copyX), FloatBuffer.wrap(copyY));
+	}
+
+	public static GraphLayout compute(CompactGraph graph, int workers) {
+		int n = graph.nodeCount();
+		float[] x = new float[n];
+		float[] y = new float[n];
+		for (int node = 0; node < n; node++) {
+			double radius = EDGE_LENGTH * Math.sqrt(node);
+			x[node] = (float) (radius * Math.cos(node * GOLDEN_ANGLE));
+			y[node] = (float) (radius * Math.sin(node * GOLDEN_ANGLE));
+		}
+		if (n > 1)
+			new Simulation(graph, x, y, workers).run();
+		return new GraphLayout(FloatBuffer.wrap(x), FloatBuffer.wrap(y));
+	}
+
+	/**
+	 * The layout of a graph that changed, from the one it had before: the
+	 * nodes it kept stay where they were, and every new node is put next to
+	 * the nodes it is linked to that are placed, or on the spiral past the
+	 * others when there are none. Nothing already shown has to move.
+	 */
+	public static GraphLayout extend(GraphLayout before, CompactGraph beforeGraph, CompactGraph graph) {
+		int n = graph.nodeCount();
+		float[] x = new float[n];
+		float[] y = new float[n];
+		boolean[] placed = new boolean[n];
+		int[] pending = new int[n];
+		int count = 0;
+		for (int node = 0; node < n; node++) {
+			int old = beforeGraph.indexOf(graph.id(node));
+			if (old >= 0) {
+				x[node] = before.x(old);
+				y[node] = before.y(old);
+				placed[node] = true;
+			} else {
+				pending[count++] = node;
+			}
+		}
+
+		// in rounds, so that chains of new nodes grow out of the placed ones
+		int spiral = beforeGraph.nodeCount();
+		while (count > 0) {
+			int left = 0;
+			for (int i = 0; i < count; i++) {
+				int node = pending[i];
+				float sumX = 0;
+				float sumY = 0;
+				int neighbours = 0;
+				for (int e = graph.firstOut(node), end = graph.endOut(node); e < end; e++) {
+					if (placed[graph.target(e)]) {
+						sumX += x[graph.target(e)];
+						sumY += y[graph.target(e)];
+						neighbours++;
+					}
+				}
+				for (int e = graph.firstIn(node), end = graph.endIn(node); e < end; e++) {
+					if (placed[graph.source(e)]) {
+						sumX += x[graph.source(e)];
+						sumY += y[graph.source(e)];
+						neighbours++;
+					}
+				}
+				if (neighbours > 0) {
+					x[node] = sumX / neighbours + (float) (EDGE_LENGTH / 2 * Math.cos(node * GOLDEN_ANGLE));
+					y[node] = sumY / neighbours + (float) (EDGE_LENGTH / 2 * Math.sin(node * GOLDEN_ANGLE));
+					placed[node] = true;
+				} else {
+					pending[left++] = node;
+				}
+			}
+			if (left == count) {
+				// none of them is linked to a placed node, the first one starts a new group
+				int node = pending[0];
+				double radius = EDGE_LENGTH * Math.sqrt(spiral);
+				x[node] = (float) (radius * Math.cos(spiral * GOLDEN_ANGLE));
+				y[node] = (float) (radius * Math.sin(spiral * GOLDEN_ANGLE));
+				placed[node] = true;
+				spiral++;
+				System.arraycopy(pending, 1, pending, 0, --left);
+			}
+			count = left;
+		}
+		return new GraphLayout(FloatBuffer.wrap(x), FloatBuffer.wrap(y));
+	}
+
+	private static class Simulation {
+		private CompactGraph graph;
+		private float[] x;
+		private float[] y;
+		private float[] dx;
+		private float[] dy;
+		private QuadTree tree;
+		private int workers;
+
+		Simulation(CompactGraph graph, float[] x, float[] y, int workers) {
+			this.graph = graph;
+			this.x = x;
+			this.y = y;
+			this.dx = new float[x.length];
+			this.dy = new float[x.length];
+			this.tree = new QuadTree(x.length);
+			this.workers = Math.max(1, workers);
+		}
+
+		void run() {
+			int n = x.length;
+			List<Callable<Void>> chunks = new ArrayList<Callable<Void>>();
+			int chunkSize = (n + workers - 1) / workers;
+			for (int start = 0; start < n; start += chunkSize) {
+				final int from = start;
+				final int to = Math.min(n, start + chunkSize);
+				chunks.add(new Callable<Void>() {
+					int[] stack = new int[64];
+
+					public Void call() {
+						stack = forces(from, to, stack);
+						return null;
+					}
+				});
+			}
+
+			ExecutorService pool = Executors.newFixedThreadPool(workers);
+			try {
+				float temperature = EDGE_LENGTH * (float) Math.sqrt(n) / 4;
+				for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+					tree.build(x, y);
+					for (Future<Void> done : pool.invokeAll(chunks))
+						done.get();
+					move(temperature * (ITERATIONS - iteration) / ITERATIONS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		/**
+		 * Displacement of the nodes from..to-1, the stack being the one of the
+		 * tree walks of the calling worker.
+		 */
+		int[] forces(int from, int to, int[] stack) {
+			float k2 = EDGE_LENGTH * EDGE_LENGTH;
+			for (int node = from; node < to; node++) {
+				float px = x[node];
+				float py = y[node];
+				float fx = 0;
+				float fy = 0;
+
+				// repulsion k^2 / d of the other nodes, far cells taken as one body
+				int top = 0;
+				stack[top++] = 0;
+				while (top > 0) {
+					int cell = stack[--top];
+					float mass = tree.mass[cell];
+					if (mass == 0)
+						continue;
+					float cx = tree.sumX[cell] / mass - px;
+					float cy = tree.sumY[cell] / mass - py;
+					float d2 = cx * cx + cy * cy;
+					if (tree.child[cell] < 0 || tree.size[cell] * tree.size[cell] < THETA * THETA * d2) {
+						if (tree.child[cell] < 0 && tree.body[cell] == node && mass == 1)
+							continue;
+						if (d2 < 0.01f) {
+							// coincident nodes, push apart in a direction of their own
+							cx = (node % 7) - 3 + 0.5f;
+							cy = (node % 5) - 2 + 0.5f;
+							d2 = cx * cx + cy * cy;
+						}
+						float force = k2 * mass / d2;
+						fx -= cx * force;
+						fy -= cy * force;
+					} else {
+						if (top + 4 > stack.length)
+							stack = Arrays.copyOf(stack, stack.length << 1);
+						int first = tree.child[cell];
+						for (int c = 0; c < 4; c++)
+							stack[top++] = first + c;
+					}
+				}
+
+				// attraction d^2 / k of the neighbours, both ways
+				for (int e = graph.firstOut(node), end = graph.endOut(node); e < end; e++) {
+					int other = graph.target(e);
+					float ox = x[other] - px;
+					float oy = y[other] - py;
+					float d = (float) Math.sqrt(ox * ox + oy * oy);
+					fx += ox * d / EDGE_LENGTH;
+					fy += oy * d / EDGE_LENGTH;
+				}
+				for (int e = graph.firstIn(node), end = graph.endIn(node); e < end; e++) {
+					int other = graph.source(e);
+					float ox = x[other] - px;
+					float oy = y[other] - py;
+					float d = (float) Math.sqrt(ox * ox + oy * oy);
+					fx += ox * d / EDGE_LENGTH;
+					fy += oy * d / EDGE_LENGTH;
+				}
+
+				// a weak pull to the centre keeps unconnected parts together
+				float d = (float) Math.sqrt(px * px + py * py);
+				fx -= GRAVITY * px * d / EDGE_LENGTH;
+				fy -= GRAVITY * py * d / EDGE_LENGTH;
+
+				dx[node] = fx;
+				dy[node] = fy;
+			}
+			return stack;
+		}
+
+		/**
+		 * Moves every node along its displacement, by at most the
+		 * temperature.
+		 */
+		void move(float temperature) {
+			for (int node = 0; node < x.length; node++) {
+				float length = (float) Math.sqrt(dx[node] * dx[node] + dy[node] * dy[node]);
+				if (length == 0)
+					continue;
+				float step = Math.min(length, temperature) / length;
+				x[node] += dx[node] * step;
+				y[node] += dy[node] * step;
+			}
+		}
+	}
+
+	/**
+	 * Quadtree kept in flat arrays and rebuilt in place at every iteration.
+	 * A cell is a leaf when child is -1, otherwise its four children are the
+	 * cells child..child+3. Leaves hold one body, or several when they get
+	 * too small to split, which happens for nodes on the same spot.
+	 */
+	private static class QuadTree {
+		private static final float MIN_SIZE = 1e-3f;
+
+		float[] mass;
+		float[] sumX;
+		float[] sumY;
+		float[] size;
+		float[] minX;
+		float[] minY;
+		int[] child;
+		int[] body;
+		private int cells;
+
+		QuadTree(int bodies) {
+			allocate(Math.max(16, 4 * bodies + 1));
+		}
+
+		private void allocate(int capacity) {
+			mass = new float[capacity];
+			sumX = new float[capacity];
+			sumY = new float[capacity];
+			size = new float[capacity];
+			minX = new float[capacity];
+			minY = new float[capacity];
+			child = new int[capacity];
+			body = new int[capacity];
+		}
+
+		private void grow() {
+			int capacity = mass.length << 1;
+			mass = Arrays.copyOf(mass, capacity);
+			sumX = Arrays.copyOf(sumX, capacity);
+			sumY = Arrays.copyOf(sumY, capacity);
+			size = Arrays.copyOf(size, capacity);
+			minX = Arrays.copyOf(minX, capacity);
+			minY = Arrays.copyOf(minY, capacity);
+			child = Arrays.copyOf(child, capacity);
+			body = Arrays.copyOf(body, capacity);
+		}
+
+		void build(float[] x, float[] y) {
+			float lowX = Float.MAX_VALUE;
+			float lowY = Float.MAX_VALUE;
+			float highX = -Float.MAX_VALUE;
+			float highY = -Float.MAX_VALUE;
+			for (int i = 0; i < x.length; i++) {
+				lowX = Math.min(lowX, x[i]);
+				lowY = Math.min(lowY, y[i]);
+				highX = Math.max(highX, x[i]);
+				highY = Math.max(highY, y[i]);
+			}
+			cells = 0;
+			newCell(lowX, lowY, Math.max(Math.max(highX - lowX, highY - lowY), MIN_SIZE) * 1.0001f);
+			for (int i = 0; i < x.length; i++)
+				insert(i, x[i], y[i]);
+		}
+
+		private int newCell(float cellX, float cellY, float cellSize) {
+			if (cells == mass.length)
+				grow();
+			int cell = cells++;
+			mass[cell] = 0;
+			sumX[cell] = 0;
+			sumY[cell] = 0;
+			size[cell] = cellSize;
+			minX[cell] = cellX;
+			minY[cell] = cellY;
+			child[cell] = -1;
+			body[cell] = -1;
+			return cell;
+		}
+
+		private void insert(int node, float px, float py) {
+			int cell = 0;
+			while (true) {
+				if (child[cell] < 0) {
+					if (mass[cell] == 0 || size[cell] < MIN_SIZE) {
+						add(cell, node, px, py);
+						return;
+					}
+					// split the leaf and push its body one level down
+					int resident = body[cell];
+					float residentX = sumX[cell] / mass[cell];
+					float residentY = sumY[cell] / mass[cell];
+					float half = size[cell] / 2;
+					int first = newCell(minX[cell], minY[cell], half);
+					newCell(minX[cell] + half, minY[cell], half);
+					newCell(minX[cell], minY[cell] + half, half);
+					newCell(minX[cell] + half, minY[cell] + half, half);
+					child[cell] = first;
+					int residentCell = quadrant(cell, residentX, residentY);
+					mass[residentCell] = mass[cell];
+					sumX[residentCell] = sumX[cell];
+					sumY[residentCell] = sumY[cell];
+					body[residentCell] = resident;
+				}
+				mass[cell]++;
+				sumX[cell] += px;
+				sumY[cell] += py;
+				cell = quadrant(cell, px, py);
+			}
+		}
+
+		private void add(int cell, int node, float px, float py) {
+			mass[cell]++;
+			sumX[cell] += px;
+			sumY[cell] += py;
+			body[cell] = node;
+		}
+
+		private int quadrant(int cell, float px, float py) {
+			float half = size[cell] / 2;
+			int index = (px >= minX[cell] + half ? 1 : 0) + (py >= minY[cell] + half ? 2 : 0);
+			return child[cell] + index;
+		}
+	}
+
+}
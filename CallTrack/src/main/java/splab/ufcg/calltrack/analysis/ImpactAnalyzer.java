@@ -0,0 +1,159 @@
+package splab.ufcg.calltrack.analysis;
+
+import java.util.Collection;
+
+import splab.ufcg.calltrack.model.CompactGraph;
+
+/**
+ * Answers which artifacts (use cases and test cases) are affected when a set
+ * of methods or classes changes. The edges of the graph go from a callee to
+ * its callers and from a method to the artifacts mapped on it, so the
+ * affected artifacts are the ones reachable from the changed nodes.
+ *
+ * The breadth first search runs over the {@link CompactGraph} arrays with a
+ * bitset of visited nodes and an array queue that are allocated once per
+ * analyzer; a query only allocates its result. An analyzer is therefore not
+ * thread-safe, use one per thread.
+ *
+ * Built on a {@link Condensation}, the search runs over the DAG of
+ * components instead: every cycle is walked once and the distances count the
+ * edges between components.
+ *
+ * Built on a {@link ReachabilityIndex}, the index tells which artifacts the
+ * changed nodes reach before the search starts. A change that reaches none
+ * is answered without a search, and the others stop as soon as the last of
+ * their artifacts is found, so that the search only runs to measure the
+ * distances. The graph is searched as it is, without a condensation.
+ */
+public class ImpactAnalyzer {
+
+	private static final int[] NONE = new int[0];
+
+	private CompactGraph graph;
+	private Condensation condensation;
+	private ReachabilityIndex index;
+	private CompactGraph searched;
+	private long[] visited;
+	private int[] queue;
+	private int[] distance;
+
+	public ImpactAnalyzer(CompactGraph graph) {
+		this(graph, null, null);
+	}
+
+	public ImpactAnalyzer(Condensation condensation) {
+		this(condensation.getGraph(), condensation, null);
+	}
+
+	public ImpactAnalyzer(ReachabilityIndex index) {
+		this(index.getGraph(), null, index);
+	}
+
+	private ImpactAnalyzer(CompactGraph graph, Condensation condensation, ReachabilityIndex index) {
+		this.graph = graph;
+		this.condensation = condensation;
+		this.index = index;
+		this.searched = condensation != null ? condensation.getDag() : graph;
+		int n = searched.nodeCount();
+		this.visited = new long[(n + 63) >>> 6];
+		this.queue = new int[n];
+		this.distance = new int[n];
+	}
+
+	public ImpactResult analyze(Collection<String> changedIds) {
+		int[] changed = new int[changedIds.size()];
+		int count = 0;
+		for (String id : changedIds) {
+			int node = graph.indexOf(id);
+			if (node >= 0)
+				changed[count++] = node;
+		}
+		return analyze(changed, count);
+	}
+
+	/**
+	 * Runs the search from the first count nodes of the array, which are
+	 * nodes of the graph (not components, even on a condensation).
+	 */
+	public ImpactResult analyze(int[] changedNodes, int count) {
+		// without an index the search runs to the end
+		int reached = -1;
+		if (index != null) {
+			reached = index.countArtifactsOf(changedNodes, count);
+			if (reached == 0)
+				return new ImpactResult(graph, NONE, NONE);
+		}
+
+		int head = 0;
+		int tail = 0;
+		int artifacts = 0;
+		for (int i = 0; i < count; i++) {
+			int node = condensation != null ? condensation.componentOf(changedNodes[i]) : changedNodes[i];
+			if (mark(node)) {
+				distance[node] = 0;
+				queue[tail++] = node;
+				artifacts += artifactsIn(node);
+			}
+		}
+
+		// a node's distance is known once it is queued, so the search stops
+		// when the last artifact is
+		while (head < tail && artifacts != reached) {
+			int node = queue[head++];
+			int next = distance[node] + 1;
+			for (int e = searched.firstOut(node), end = searched.endOut(node); e < end && artifacts != reached; e++) {
+				int target = searched.target(e);
+				if (mark(target)) {
+					distance[target] = next;
+					queue[tail++] = target;
+					artifacts += artifactsIn(target);
+				}
+			}
+		}
+
+		// the queue holds the nodes in distance order, so the result is too
+		int[] nodes = new int[artifacts];
+		int[] distances = new int[artifacts];
+		int found = 0;
+		for (int i = 0; i < tail; i++) {
+			int node = queue[i];
+			if (condensation == null) {
+				if (graph.isArtifact(node)) {
+					nodes[found] = node;
+					distances[found++] = distance[node];
+				}
+			} else {
+				for (int m = 0; m < condensation.size(node); m++) {
+					int member = condensation.member(node, m);
+					if (graph.isArtifact(member)) {
+						nodes[found] = member;
+						distances[found++] = distance[node];
+					}
+				}
+			}
+			visited[node >>> 6] &= ~(1L << node);
+		}
+		return new ImpactResult(graph, nodes, distances);
+	}
+
+	private int artifactsIn(int node) {
+		if (condensation == null)
+			return graph.isArtifact(node) ? 1 : 0;
+		int artifacts = 0;
+		for (int m = 0; m < condensation.size(node); m++) {
+			if (graph.isArtifact(condensation.member(node, m)))
+				artifacts++;
+		}
+		return artifacts;
+	}
+
+	private boolean mark(int node) {
+		long bit = 1L << node;
+		int word = node >>> 6;
+		if ((visited[word] & bit) != 0)
+			return false;
+		visited[word] |= bit;
+		return true;
+	}
+
+}
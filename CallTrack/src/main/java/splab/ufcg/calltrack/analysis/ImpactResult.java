@@ -0,0 +1,49 @@
+package splab.ufcg.calltrack.analysis;
+
+import splab.ufcg.calltrack.model.CompactGraph;
+import splab.ufcg.calltrack.model.TypeNode;
+
+/**
+ * The artifacts reached by an impact query, ordered by distance from the
+ * changed nodes.
+ */
+public class ImpactResult {
+
+	private CompactGraph graph;
+	private int[] nodes;
+	private int[] distances;
+
+	ImpactResult(CompactGraph graph, int[] nodes, int[] distances) {
+		this.graph = graph;
+		this.nodes = nodes;
+		this.distances = distances;
+	}
+
+	public int size() {
+		return nodes.length;
+	}
+
+	public int node(int i) {
+		return nodes[i];
+	}
+
+	/**
+	 * Number of edges between the nearest changed node and the artifact.
+	 */
+	public int distance(int i) {
+		return distances[i];
+	}
+
+	public String id(int i) {
+		return graph.id(nodes[i]);
+	}
+
+	public String label(int i) {
+		return graph.label(nodes[i]);
+	}
+
+	public TypeNode type(int i) {
+		return graph.type(nodes[i]);
+	}
+
+}
@@ -0,0 +1,293 @@
+package splab.ufcg.calltrack.analysis;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import splab.ufcg.calltrack.model.CompactGraph;
+
+/**
+ * Records, for every node of a graph, the artifacts it reaches, so that impact
+ * questions are answered by a lookup instead of a traversal.
+ *
+ * Artifacts get dense ids 0..a-1 in node order. The sets of artifacts are
+ * interned: nodes reaching the same artifacts share one set, stored as a
+ * sorted array of artifact ids, and all the members of a cycle share the set
+ * of their component. The lookup for one node is constant time and a change
+ * set costs one pass over the distinct sets of its nodes.
+ */
+public class ReachabilityIndex {
+
+	private static final int[] EMPTY = new int[0];
+
+	private CompactGraph graph;
+	private int[] artifactNodes;
+	private int[] nodeSets;
+	private int[][] sets;
+
+	private ReachabilityIndex(CompactGraph graph, int[] artifactNodes, int[] nodeSets, int[][] sets) {
+		this.graph = graph;
+		this.artifactNodes = artifactNodes;
+		this.nodeSets = nodeSets;
+		this.sets = sets;
+	}
+
+	/**
+	 * An index built before for the graph, like the one of a snapshot: the
+	 * graph node of every artifact id, the set of every node and the sets,
+	 * set 0 being the empty one.
+	 */
+	public static ReachabilityIndex of(CompactGraph graph, int[] artifactNodes, int[] nodeSets, int[][] sets) {
+		if (nodeSets.length != graph.nodeCount())
+			throw new IllegalArgumentException("The index has " + nodeSets.length + " nodes, the graph "
+					+ graph.nodeCount());
+		return new ReachabilityIndex(graph, artifactNodes, nodeSets, sets);
+	}
+
+	public static ReachabilityIndex build(CompactGraph graph) {
+		return build(Condensation.of(graph));
+	}
+
+	/**
+	 * Builds the index bottom-up over the condensed graph: a component
+	 * reaches its own artifacts plus everything its successors reach, and
+	 * successors are always done first. A component without artifacts whose
+	 * successors all reach the same set just shares that set.
+	 */
+	public static ReachabilityIndex build(Condensation condensation) {
+		CompactGraph graph = condensation.getGraph();
+		CompactGraph dag = condensation.getDag();
+		int[] artifactNodes = artifactNodes(graph);
+		int[] artifactOf = new int[graph.nodeCount()];
+		Arrays.fill(artifactOf, -1);
+		for (int artifact = 0; artifact < artifactNodes.length; artifact++)
+			artifactOf[artifactNodes[artifact]] = artifact;
+
+		SetTable table = new SetTable();
+		int[] componentSets = new int[dag.nodeCount()];
+		long[] words = new long[(artifactNodes.length + 63) >>> 6];
+		for (int c : condensation.reverseTopologicalOrder()) {
+			boolean own = false;
+			for (int i = 0; i < condensation.size(c) && !own; i++)
+				own = artifactOf[condensation.member(c, i)] >= 0;
+
+			int shared = 0;
+			boolean single = true;
+			for (int e = dag.firstOut(c), end = dag.endOut(c); e < end && single; e++) {
+				int set = componentSets[dag.target(e)];
+				if (set == 0 || set == shared)
+					continue;
+				if (shared == 0)
+					shared = set;
+				else
+					single = false;
+			}
+			if (!own && single) {
+				componentSets[c] = shared;
+				continue;
+			}
+
+			int total = 0;
+			for (int i = 0; i < condensation.size(c); i++) {
+				int artifact = artifactOf[condensation.member(c, i)];
+				if (artifact >= 0)
+					total += setBit(words, artifact);
+			}
+			for (int e = dag.firstOut(c), end = dag.endOut(c); e < end; e++) {
+				for (int artifact : table.get(componentSets[dag.target(e)]))
+					total += setBit(words, artifact);
+			}
+			componentSets[c] = table.intern(drain(words, total));
+		}
+
+		int[] nodeSets = new int[graph.nodeCount()];
+		for (int node = 0; node < nodeSets.length; node++)
+			nodeSets[node] = componentSets[condensation.componentOf(node)];
+		return new ReachabilityIndex(graph, artifactNodes, nodeSets, table.toArray());
+	}
+
+	private static int setBit(long[] words, int bit) {
+		long mask = 1L << bit;
+		if ((words[bit >>> 6] & mask) != 0)
+			return 0;
+		words[bit >>> 6] |= mask;
+		return 1;
+	}
+
+	/**
+	 * Returns the sorted bits that are set and clears them.
+	 */
+	private static int[] drain(long[] words, int total) {
+		int[] bits = new int[total];
+		int found = 0;
+		for (int w = 0; w < words.length && found < total; w++) {
+			for (long word = words[w]; word != 0; word &= word - 1)
+				bits[found++] = (w << 6) + Long.numberOfTrailingZeros(word);
+			words[w] = 0;
+		}
+		return bits;
+	}
+
+	static int[] artifactNodes(CompactGraph graph) {
+		int count = 0;
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			if (graph.isArtifact(node))
+				count++;
+		}
+		int[] artifactNodes = new int[count];
+		count = 0;
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			if (graph.isArtifact(node))
+				artifactNodes[count++] = node;
+		}
+		return artifactNodes;
+	}
+
+	public CompactGraph getGraph() {
+		return graph;
+	}
+
+	public int artifactCount() {
+		return artifactNodes.length;
+	}
+
+	/**
+	 * The graph node of an artifact id.
+	 */
+	public int artifactNode(int artifact) {
+		return artifactNodes[artifact];
+	}
+
+	/**
+	 * The sorted artifact ids reached by the node. The array is shared with
+	 * the index and must not be modified.
+	 */
+	public int[] artifactsOf(int node) {
+		return sets[nodeSets[node]];
+	}
+
+	public boolean reaches(int node, int artifact) {
+		return Arrays.binarySearch(sets[nodeSets[node]], artifact) >= 0;
+	}
+
+	/**
+	 * The sorted artifact ids reached by any of the first count nodes.
+	 */
+	public int[] artifactsOf(int[] nodes, int count) {
+		if (count == 1)
+			return artifactsOf(nodes[0]).clone();
+
+		long[] words = new long[(artifactNodes.length + 63) >>> 6];
+		BitSet seenSets = new BitSet();
+		int total = 0;
+		for (int i = 0; i < count; i++) {
+			int set = nodeSets[nodes[i]];
+			if (seenSets.get(set))
+				continue;
+			seenSets.set(set);
+			for (int artifact : sets[set])
+				total += setBit(words, artifact);
+		}
+		return drain(words, total);
+	}
+
+	/**
+	 * The number of artifacts reached by any of the first count nodes, which
+	 * costs a lookup for a single node.
+	 */
+	public int countArtifactsOf(int[] nodes, int count) {
+		return count == 1 ? artifactsOf(nodes[0]).length : artifactsOf(nodes, count).length;
+	}
+
+	/**
+	 * The graph nodes of the artifacts reached by the given ids. Unknown ids
+	 * are ignored.
+	 */
+	public int[] affectedArtifactNodes(Collection<String> changedIds) {
+		int[] nodes = new int[changedIds.size()];
+		int count = 0;
+		for (String id : changedIds) {
+			int node = graph.indexOf(id);
+			if (node >= 0)
+				nodes[count++] = node;
+		}
+		if (count == 0)
+			return EMPTY;
+
+		int[] artifacts = artifactsOf(nodes, count);
+		for (int i = 0; i < artifacts.length; i++)
+			artifacts[i] = artifactNodes[artifacts[i]];
+		return artifacts;
+	}
+
+	public int distinctSets() {
+		return sets.length;
+	}
+
+	/**
+	 * The id of the set of artifacts reached by the node.
+	 */
+	public int setOf(int node) {
+		return nodeSets[node];
+	}
+
+	/**
+	 * The sorted artifact ids of a set. The array is shared with the index
+	 * and must not be modified.
+	 */
+	public int[] set(int id) {
+		return sets[id];
+	}
+
+	/**
+	 * The distinct sets, interned by content. Set 0 is the empty one.
+	 */
+	private static class SetTable {
+		private Map<SetKey, Integer> ids = new HashMap<SetKey, Integer>();
+		private int[][] sets = new int[][] { EMPTY };
+		private int size = 1;
+
+		int intern(int[] set) {
+			if (set.length == 0)
+				return 0;
+			SetKey key = new SetKey(set);
+			Integer id = ids.get(key);
+			if (id != null)
+				return id;
+			if (size == sets.length)
+				sets = Arrays.copyOf(sets, size << 1);
+			sets[size] = set;
+			ids.put(key, size);
+			return size++;
+		}
+
+		int[] get(int id) {
+			return sets[id];
+		}
+
+		int[][] toArray() {
+			return Arrays.copyOf(sets, size);
+		}
+	}
+
+	private static class SetKey {
+		private int[] set;
+		private int hashCode;
+
+		SetKey(int[] set) {
+			this.set = set;
+			this.hashCode = Arrays.hashCode(set);
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+
+		public boolean equals(Object obj) {
+			return obj instanceof SetKey && Arrays.equals(set, ((SetKey) obj).set);
+		}
+	}
+
+}
@@ -0,0 +1,405 @@
+package splab.ufcg.calltrack.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import splab.ufcg.calltrack.model.SymbolTable;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+/**
+ * On disk cache of the edges extracted from each class, so that a new run
+ * only parses the classes that changed since the previous one.
+ *
+ * Entries are keyed by the SHA-1 of the pattern followed by the class bytes.
+ * Every run is a new generation; a hit moves the entry to the current
+ * generation and, when the cache grows past its limit, the entries used
+ * longest ago are evicted on save.
+ *
+ * Edges are stored by name, since symbol ids only hold within one run, and
+ * are interned again into the symbol table of the run on replay.
+ *
+ * File layout (big endian, counts as unsigned varints):
+ * <pre>
+ * int magic, int version, long generation
+ * varint names, names * UTF          (class and method names, shared by all entries)
+ * varint entries, entries * {
+ *     byte[20] key, varint generation,
+ *     varint methodEdges, methodEdges * {varint callerClass, callerMethod, calleeClass, calleeMethod},
+ *     varint virtualCalls, virtualCalls * {varint callerClass, callerMethod, calleeClass, calleeMethod},
+ *     varint classEdges, classEdges * {varint from, varint to},
+ *     varint instantiated, instantiated * {varint class},
+ *     varint types, types * {varint flags, varint supertypes, varint methods,
+ *                            varint class, supertypes * {varint name}, methods * {varint name}}
+ * }
+ * </pre>
+ */
+public class AnalysisCache {
+
+	private static final int MAGIC = 0x43544143; // "CTAC"
+	private static final int VERSION = 4;
+	private static final int KEY_LENGTH = 20;
+	public static final int DEFAULT_MAX_ENTRIES = 500000;
+
+	private File file;
+	private int maxEntries;
+	private long generation;
+	private Map<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+
+	private AnalysisCache(File file, int maxEntries) {
+		this.file = file;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Opens the cache stored in the file. A missing, unreadable or outdated
+	 * file gives an empty cache that will overwrite it on save.
+	 */
+	public static AnalysisCache load(File file, int maxEntries) {
+		AnalysisCache cache = new AnalysisCache(file, maxEntries);
+		if (!file.exists())
+			return cache;
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			cache.read(in);
+		} catch (IOException e) {
+			System.err.println("Ignoring analysis cache " + file + ": " + e.getMessage());
+			cache.entries.clear();
+			cache.generation = 0;
+		} finally {
+			closeQuietly(in);
+		}
+		cache.generation++;
+		return cache;
+	}
+
+	/**
+	 * The key of a class analysed with the given pattern, the SHA-1 of both.
+	 */
+	public static Key keyOf(String pattern, byte[] classBytes) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+			digest.update(pattern.getBytes("UTF-8"));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update((byte) 0);
+		digest.update(classBytes);
+		return new Key(digest.digest());
+	}
+
+	/**
+	 * Copies the cached edges of the class into the sink. Returns false when
+	 * the class is not in the cache.
+	 */
+	public boolean replay(Key key, EdgeSink sink) {
+		Entry entry = entries.get(key);
+		if (entry == null)
+			return false;
+		entry.generation = generation;
+		SymbolTable symbols = sink.getSymbols();
+		String[] names = entry.methodEdges;
+		for (int i = 0; i < names.length; i += 4) {
+			int caller = symbols.internMethod(names[i], names[i + 1]);
+			int callee = symbols.internMethod(names[i + 2], names[i + 3]);
+			sink.addMethodEdge(caller, callee);
+		}
+		names = entry.virtualCalls;
+		for (int i = 0; i < names.length; i += 4) {
+			int caller = symbols.internMethod(names[i], names[i + 1]);
+			int callee = symbols.internMethod(names[i + 2], names[i + 3]);
+			sink.addVirtualCall(caller, callee);
+		}
+		names = entry.classEdges;
+		for (int i = 0; i < names.length; i += 2)
+			sink.addClassEdge(symbols.internClass(names[i]), symbols.internClass(names[i + 1]));
+		for (String name : entry.instantiated)
+			sink.addInstantiated(symbols.internClass(name));
+
+		int[] shapes = entry.typeShapes;
+		names = entry.types;
+		for (int t = 0, n = 0; t < shapes.length; t += 3) {
+			int classId = symbols.internClass(names[n++]);
+			int[] supertypeIds = new int[shapes[t + 1]];
+			for (int s = 0; s < supertypeIds.length; s++)
+				supertypeIds[s] = symbols.internClass(names[n++]);
+			int[] methodIds = new int[shapes[t + 2]];
+			for (int m = 0; m < methodIds.length; m++)
+				methodIds[m] = symbols.internMethod(classId, names[n++]);
+			sink.addType(classId, shapes[t], supertypeIds, methodIds);
+		}
+		return true;
+	}
+
+	public void put(Key key, EdgeSink classEdges) {
+		SymbolTable symbols = classEdges.getSymbols();
+		String[] methodEdges = methodEdgeNames(symbols, classEdges.getMethodEdges());
+		String[] virtualCalls = methodEdgeNames(symbols, classEdges.getVirtualCalls());
+		long[] edges = classEdges.getClassEdges();
+		String[] classEdgeNames = new String[edges.length * 2];
+		for (int i = 0; i < edges.length; i++) {
+			classEdgeNames[i * 2] = symbols.className(PackedEdge.from(edges[i]));
+			classEdgeNames[i * 2 + 1] = symbols.className(PackedEdge.to(edges[i]));
+		}
+		long[] instantiatedIds = classEdges.getInstantiated();
+		String[] instantiated = new String[instantiatedIds.length];
+		for (int i = 0; i < instantiatedIds.length; i++)
+			instantiated[i] = symbols.className((int) instantiatedIds[i]);
+
+		List<int[]> types = classEdges.getTypes();
+		int[] typeShapes = new int[types.size() * 3];
+		List<String> typeNames = new ArrayList<String>();
+		for (int t = 0; t < types.size(); t++) {
+			int[] type = types.get(t);
+			typeShapes[t * 3] = type[1];
+			typeShapes[t * 3 + 1] = type[2];
+			typeShapes[t * 3 + 2] = type.length - 3 - type[2];
+			typeNames.add(symbols.className(type[0]));
+			for (int s = 0; s < type[2]; s++)
+				typeNames.add(symbols.className(type[3 + s]));
+			for (int m = 3 + type[2]; m < type.length; m++)
+				typeNames.add(symbols.methodName(type[m]));
+		}
+		entries.put(key, new Entry(generation, methodEdges, virtualCalls, classEdgeNames, instantiated, typeShapes,
+				typeNames.toArray(new String[typeNames.size()])));
+	}
+
+	private static String[] methodEdgeNames(SymbolTable symbols, long[] edges) {
+		String[] names = new String[edges.length * 4];
+		for (int i = 0; i < edges.length; i++) {
+			int caller = PackedEdge.from(edges[i]);
+			int callee = PackedEdge.to(edges[i]);
+			names[i * 4] = symbols.className(symbols.methodClass(caller));
+			names[i * 4 + 1] = symbols.methodName(caller);
+			names[i * 4 + 2] = symbols.className(symbols.methodClass(callee));
+			names[i * 4 + 3] = symbols.methodName(callee);
+		}
+		return names;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public void save() throws IOException {
+		List<Map.Entry<Key, Entry>> kept = new ArrayList<Map.Entry<Key, Entry>>(entries.entrySet());
+		if (kept.size() > maxEntries) {
+			Collections.sort(kept, new Comparator<Map.Entry<Key, Entry>>() {
+				public int compare(Map.Entry<Key, Entry> a, Map.Entry<Key, Entry> b) {
+					long ga = a.getValue().generation;
+					long gb = b.getValue().generation;
+					return ga > gb ? -1 : (ga == gb ? 0 : 1);
+				}
+			});
+			kept = kept.subList(0, maxEntries);
+		}
+
+		Map<String, Integer> names = new HashMap<String, Integer>();
+		List<String> nameList = new ArrayList<String>();
+		for (Map.Entry<Key, Entry> e : kept) {
+			collectNames(e.getValue().methodEdges, names, nameList);
+			collectNames(e.getValue().virtualCalls, names, nameList);
+			collectNames(e.getValue().classEdges, names, nameList);
+			collectNames(e.getValue().instantiated, names, nameList);
+			collectNames(e.getValue().types, names, nameList);
+		}
+
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null)
+			parent.mkdirs();
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(generation);
+			writeVarInt(out, nameList.size());
+			for (String name : nameList)
+				out.writeUTF(name);
+			writeVarInt(out, kept.size());
+			for (Map.Entry<Key, Entry> e : kept) {
+				Entry entry = e.getValue();
+				out.write(e.getKey().hash);
+				writeVarInt(out, (int) (generation - entry.generation));
+				writeEdges(out, entry.methodEdges, 4, names);
+				writeEdges(out, entry.virtualCalls, 4, names);
+				writeEdges(out, entry.classEdges, 2, names);
+				writeEdges(out, entry.instantiated, 1, names);
+				writeTypes(out, entry, names);
+			}
+		} finally {
+			out.close();
+		}
+
+		if (file.exists() && !file.delete())
+			throw new IOException("Could not replace " + file);
+		if (!tmp.renameTo(file))
+			throw new IOException("Could not rename " + tmp + " to " + file);
+	}
+
+	private void read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("not an analysis cache");
+		if (in.readInt() != VERSION)
+			throw new IOException("unsupported version");
+		generation = in.readLong();
+
+		String[] names = new String[readVarInt(in)];
+		for (int i = 0; i < names.length; i++)
+			names[i] = in.readUTF();
+
+		int count = readVarInt(in);
+		for (int i = 0; i < count; i++) {
+			byte[] hash = new byte[KEY_LENGTH];
+			in.readFully(hash);
+			long entryGeneration = generation - readVarInt(in);
+			String[] methodEdges = readEdges(in, 4, names);
+			String[] virtualCalls = readEdges(in, 4, names);
+			String[] classEdges = readEdges(in, 2, names);
+			String[] instantiated = readEdges(in, 1, names);
+			int[] typeShapes = new int[readVarInt(in) * 3];
+			int typeNames = 0;
+			for (int t = 0; t < typeShapes.length; t++) {
+				typeShapes[t] = readVarInt(in);
+				if (t % 3 != 0)
+					typeNames += typeShapes[t];
+			}
+			String[] types = new String[typeShapes.length / 3 + typeNames];
+			for (int n = 0; n < types.length; n++)
+				types[n] = name(names, readVarInt(in));
+			entries.put(new Key(hash), new Entry(entryGeneration, methodEdges, virtualCalls, classEdges,
+					instantiated, typeShapes, types));
+		}
+	}
+
+	private static void collectNames(String[] edgeNames, Map<String, Integer> names, List<String> nameList) {
+		for (String name : edgeNames) {
+			if (!names.containsKey(name)) {
+				names.put(name, nameList.size());
+				nameList.add(name);
+			}
+		}
+	}
+
+	private static void writeEdges(DataOutputStream out, String[] edgeNames, int namesPerEdge,
+			Map<String, Integer> names) throws IOException {
+		writeVarInt(out, edgeNames.length / namesPerEdge);
+		for (String name : edgeNames)
+			writeVarInt(out, names.get(name));
+	}
+
+	private static void writeTypes(DataOutputStream out, Entry entry, Map<String, Integer> names)
+			throws IOException {
+		writeVarInt(out, entry.typeShapes.length / 3);
+		for (int shape : entry.typeShapes)
+			writeVarInt(out, shape);
+		for (String name : entry.types)
+			writeVarInt(out, names.get(name));
+	}
+
+	private static String[] readEdges(DataInputStream in, int namesPerEdge, String[] names) throws IOException {
+		String[] edgeNames = new String[readVarInt(in) * namesPerEdge];
+		for (int i = 0; i < edgeNames.length; i++)
+			edgeNames[i] = name(names, readVarInt(in));
+		return edgeNames;
+	}
+
+	private static String name(String[] names, int index) throws IOException {
+		if (index >= names.length)
+			throw new IOException("corrupted name index " + index);
+		return names[index];
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new EOFException("malformed varint");
+	}
+
+	private static void closeQuietly(DataInputStream in) {
+		if (in == null)
+			return;
+		try {
+			in.close();
+		} catch (IOException e) {
+			// nothing left to do with it
+		}
+	}
+
+	public static class Key {
+		private byte[] hash;
+		private int hashCode;
+
+		Key(byte[] hash) {
+			this.hash = hash;
+			this.hashCode = Arrays.hashCode(hash);
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+
+		public boolean equals(Object obj) {
+			return obj instanceof Key && Arrays.equals(hash, ((Key) obj).hash);
+		}
+	}
+
+	private static class Entry {
+		private volatile long generation;
+		// four names per method edge, two per class edge
+		private String[] methodEdges;
+		private String[] virtualCalls;
+		private String[] classEdges;
+		private String[] instantiated;
+		// flags, supertypes and methods of each type, then its names
+		private int[] typeShapes;
+		private String[] types;
+
+		Entry(long generation, String[] methodEdges, String[] virtualCalls, String[] classEdges,
+				String[] instantiated, int[] typeShapes, String[] types) {
+			this.generation = generation;
+			this.methodEdges = methodEdges;
+			this.virtualCalls = virtualCalls;
+			this.classEdges = classEdges;
+			this.instantiated = instantiated;
+			this.typeShapes = typeShapes;
+			this.types = types;
+		}
+	}
+
+}
@@ -0,0 +1,160 @@
+package splab.ufcg.calltrack.core;
+
+import java.util.Arrays;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.BranchInstruction;
+import org.apache.bcel.generic.CPInstruction;
+import org.apache.bcel.generic.CodeExceptionGen;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.ConstantPushInstruction;
+import org.apache.bcel.generic.IINC;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.LocalVariableInstruction;
+import org.apache.bcel.generic.MULTIANEWARRAY;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.NEWARRAY;
+import org.apache.bcel.generic.Select;
+
+/**
+ * 64 bit fingerprints of classes and methods that only change when their
+ * behaviour may change. The instructions are hashed with their constant pool
+ * operands resolved to the names and values they stand for, and with branch
+ * targets as instruction indexes, so recompiling the same source into a
+ * different constant pool layout gives the same hash. Line numbers and local
+ * variable names are left out.
+ *
+ * Not thread-safe, use one hasher per thread.
+ */
+public class BytecodeHasher {
+
+	private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	private long hash;
+
+	/**
+	 * Hash of the declaration of the class: flags, super class, interfaces
+	 * and fields. The methods are hashed on their own.
+	 */
+	public long hashClass(JavaClass javaClass) {
+		hash = OFFSET_BASIS;
+		mix(javaClass.getAccessFlags());
+		mix(javaClass.getSuperclassName());
+		for (String name : javaClass.getInterfaceNames())
+			mix(name);
+		for (Field field : javaClass.getFields()) {
+			mix(field.getAccessFlags());
+			mix(field.getName());
+			mix(field.getSignature());
+			if (field.getConstantValue() != null)
+				mix(field.getConstantValue().toString());
+		}
+		return finish();
+	}
+
+	public long hashMethod(MethodGen method) {
+		hash = OFFSET_BASIS;
+		mix(method.getAccessFlags());
+		mix(method.getName());
+		mix(method.getSignature());
+
+		InstructionList il = method.getInstructionList();
+		if (il == null)
+			return finish();
+
+		ConstantPoolGen cpg = method.getConstantPool();
+		ConstantPool cp = cpg.getConstantPool();
+		int[] positions = il.getInstructionPositions();
+		for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
+			Instruction i = ih.getInstruction();
+			mix(normalizedOpcode(i.getOpcode()));
+
+			if (i instanceof CPInstruction) {
+				mix(cp.constantToString(cp.getConstant(((CPInstruction) i).getIndex())));
+				if (i instanceof MULTIANEWARRAY)
+					mix(((MULTIANEWARRAY) i).getDimensions());
+			} else if (i instanceof LocalVariableInstruction) {
+				mix(((LocalVariableInstruction) i).getIndex());
+				if (i instanceof IINC)
+					mix(((IINC) i).getIncrement());
+			} else if (i instanceof ConstantPushInstruction) {
+				mix(((ConstantPushInstruction) i).getValue().hashCode());
+			} else if (i instanceof NEWARRAY) {
+				mix(((NEWARRAY) i).getTypecode());
+			}
+
+			if (i instanceof BranchInstruction) {
+				mix(indexOf(positions, ((BranchInstruction) i).getTarget()));
+				if (i instanceof Select) {
+					Select select = (Select) i;
+					for (int match : select.getMatchs())
+						mix(match);
+					for (InstructionHandle target : select.getTargets())
+						mix(indexOf(positions, target));
+				}
+			}
+		}
+
+		for (CodeExceptionGen handler : method.getExceptionHandlers()) {
+			mix(indexOf(positions, handler.getStartPC()));
+			mix(indexOf(positions, handler.getEndPC()));
+			mix(indexOf(positions, handler.getHandlerPC()));
+			mix(handler.getCatchType() != null ? handler.getCatchType().getClassName() : "");
+		}
+		return finish();
+	}
+
+	/**
+	 * The wide forms are picked by the compiler from the constant pool index
+	 * or the code size, not from the source.
+	 */
+	private static int normalizedOpcode(short opcode) {
+		switch (opcode) {
+		case Const.LDC_W:
+			return Const.LDC;
+		case Const.GOTO_W:
+			return Const.GOTO;
+		case Const.JSR_W:
+			return Const.JSR;
+		default:
+			return opcode;
+		}
+	}
+
+	private static int indexOf(int[] positions, InstructionHandle ih) {
+		return ih != null ? Arrays.binarySearch(positions, ih.getPosition()) : -1;
+	}
+
+	private void mix(int value) {
+		for (int shift = 0; shift < 32; shift += 8)
+			hash = (hash ^ ((value >>> shift) & 0xff)) * PRIME;
+	}
+
+	private void mix(String value) {
+		if (value == null) {
+			mix(-1);
+			return;
+		}
+		mix(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			hash = (hash ^ (c & 0xff)) * PRIME;
+			hash = (hash ^ (c >>> 8)) * PRIME;
+		}
+	}
+
+	private long finish() {
+		long h = hash;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
@@ -3,132 +3,270 @@ package splab.ufcg.calltrack.core;
 import java.awt.Desktop;
 import java.io.File;
 import java.io.IOException;
-import java.util.Enumeration;
+import java.net.InetAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-
-import org.apache.bcel.classfile.ClassFormatException;
-import org.apache.bcel.classfile.ClassParser;
+import java.util.Map;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Logger;
 
+import splab.ufcg.calltrack.agent.RuntimeCalls;
+import splab.ufcg.calltrack.analysis.GraphLayout;
+import splab.ufcg.calltrack.analysis.ImpactAnalyzer;
+import splab.ufcg.calltrack.analysis.ImpactResult;
+import splab.ufcg.calltrack.analysis.ReachabilityIndex;
 import splab.ufcg.calltrack.exceptions.NodeNotFoundException;
+import splab.ufcg.calltrack.model.CompactGraph;
 import splab.ufcg.calltrack.model.Graph;
+import splab.ufcg.calltrack.model.GraphDelta;
+import splab.ufcg.calltrack.model.GraphMetrics;
+import splab.ufcg.calltrack.model.GraphSnapshot;
+import splab.ufcg.calltrack.model.SymbolTable;
 import splab.ufcg.calltrack.model.TypeNode;
 import splab.ufcg.calltrack.model.XMLRepresentation;
+import splab.ufcg.calltrack.server.GraphQueries;
+import splab.ufcg.calltrack.server.QueryServer;
+import splab.ufcg.calltrack.stats.RunStats;
+import splab.ufcg.calltrack.trace.ExecutionSamples;
+import splab.ufcg.calltrack.trace.JfrImporter;
+import splab.ufcg.calltrack.trace.TraceProcessor;
+import splab.ufcg.calltrack.trace.TraceTimings;
+import splab.ufcg.calltrack.utils.PackedEdge;
 import splab.ufcg.calltrack.utils.Utils;
 
 public class CallTrack {
 
+	private static final Logger LOG = Logger.getLogger(CallTrack.class.getName());
+	static final int QUEUE_SLOTS_PER_WORKER = 16;
+	public static final String CLASS_GRAPH = "class";
+	public static final String METHOD_GRAPH = "method";
+
 	private String jarName;
 	private String pattern;
-	private ClassVisitor visitor;
+	private int workers;
+	private File cacheFile;
+	private int cacheSize = AnalysisCache.DEFAULT_MAX_ENTRIES;
+	private boolean collapseCycles;
+	private ClassHierarchy.Resolution resolution = ClassHierarchy.Resolution.DECLARED;
+	private boolean layout = true;
+	private boolean watch;
+	private String bindHost;
+	private GraphUpdater updater;
+	private List<String> expandedIds = new ArrayList<String>();
+	private SymbolTable symbols = new SymbolTable();
+	private EdgeSink sink = new EdgeSink(symbols);
 	private Graph graphOfClass = new Graph();
 	private Graph graphOfMethods = new Graph();
+	private RunStats stats = new RunStats();
 
 	public CallTrack(String jarName, String pattern) {
+		this(jarName, pattern, Runtime.getRuntime().availableProcessors());
+	}
+
+	public CallTrack(String jarName, String pattern, int workers) {
 		this.jarName = jarName;
 		this.pattern = pattern;
+		this.workers = workers;
 	}
 
-	public void prepare() {
-		ClassParser cp;
+	/**
+	 * Keeps the edges of every class in the given file between runs, so that
+	 * only new or changed classes are parsed again.
+	 */
+	public void setCache(File cacheFile, int cacheSize) {
+		this.cacheFile = cacheFile;
+		this.cacheSize = cacheSize;
+	}
 
-		File f = new File(this.jarName);
-		if (!f.exists()) {
-			System.err.println("Jar file " + this.jarName + " does not exist");
-			System.exit(-1);
-		}
+	/**
+	 * Writes the graphs with every cycle of calls collapsed into one node.
+	 */
+	public void setCollapseCycles(boolean collapseCycles) {
+		this.collapseCycles = collapseCycles;
+	}
 
-		JarFile jar = null;
+	/**
+	 * How virtual calls are resolved: to the method of the type they are
+	 * invoked on only, or also to the overrides found by CHA or RTA.
+	 */
+	public void setResolution(ClassHierarchy.Resolution resolution) {
+		this.resolution = resolution;
+	}
 
-		try {
-			jar = new JarFile(f);
-		} catch (IOException e1) {
-			System.err.println("Error while processing jar: " + e1.getMessage());
-			e1.printStackTrace();
-			System.exit(-1);
-		}
+	/**
+	 * Computes the positions of the nodes, so the viewer does not have to.
+	 */
+	public void setLayout(boolean layout) {
+		this.layout = layout;
+	}
 
-		Enumeration<JarEntry> entries = jar.entries();
-		while (entries.hasMoreElements()) {
-			JarEntry entry = entries.nextElement();
-			if (entry.isDirectory())
-				continue;
+	/**
+	 * Keeps the edges of every class scanned, so that {@link #watch(int)} can
+	 * update the graphs when some of them change.
+	 */
+	public void setWatch(boolean watch) {
+		this.watch = watch;
+	}
+
+	/**
+	 * The host name or address the graphs are served on by
+	 * {@link #serve(int)} and {@link #watch(int)}, null for the loopback
+	 * address, so that other hosts can not query them by default.
+	 */
+	public void setBindHost(String bindHost) {
+		this.bindHost = bindHost;
+	}
 
-			if (!entry.getName().endsWith(".class"))
+	/**
+	 * The packages and classes shown expanded in the package view written by
+	 * {@link #exportView()}.
+	 */
+	public void setExpandedIds(List<String> expandedIds) {
+		this.expandedIds = expandedIds;
+	}
+
+	/**
+	 * The jars and class directories of a classpath, separated as the ones
+	 * of the java command are. All of them must exist.
+	 */
+	private static List<File> archives(String classpath) {
+		List<File> archives = new ArrayList<File>();
+		for (String name : classpath.split(File.pathSeparator)) {
+			if (name.isEmpty())
 				continue;
+			File archive = new File(name);
+			if (!archive.exists()) {
+				System.err.println("Jar file " + name + " does not exist");
+				System.exit(-1);
+			}
+			archives.add(archive);
+		}
+		if (archives.isEmpty()) {
+			System.err.println("No jar file in " + classpath);
+			System.exit(-1);
+		}
+		return archives;
+	}
 
-			cp = new ClassParser(this.jarName, entry.getName());
+	/**
+	 * Scans the classes of the jars and class directories for their edges.
+	 * The classes that can not be analysed are reported and counted in the
+	 * stats, and left out of the graphs, as the others are still scanned.
+	 *
+	 * @throws InterruptedException
+	 *             when the thread is interrupted during the scan, which
+	 *             leaves the edges incomplete
+	 */
+	public void prepare() throws InterruptedException {
+		List<File> archives = archives(this.jarName);
 
-			try {
-				visitor = new ClassVisitor(cp.parse(), this.pattern);
+		AnalysisCache cache = null;
+		if (this.cacheFile != null)
+			cache = AnalysisCache.load(this.cacheFile, this.cacheSize);
 
-				visitor.start();
-			} catch (ClassFormatException e) {
-				System.err.println("Error while processing jar: " + e.getMessage());
-				e.printStackTrace();
-			} catch (IOException e) {
-				System.err.println("Error while processing jar: " + e.getMessage());
-				e.printStackTrace();
+		EdgeExtractor extractor = new EdgeExtractor(this.pattern, this.sink, cache, stats);
+		try {
+			RunStats.Phase phase = stats.start(RunStats.SCAN);
+			int failures;
+			if (this.watch) {
+				// the updater puts the edges, and the ones of the hierarchy, in the graphs
+				updater = new GraphUpdater(this.pattern, extractor, this.symbols, graphOfClass, graphOfMethods,
+						this.resolution);
+				failures = updater.scan(archives, this.workers);
+			} else {
+				failures = new JarScanner(archives, this.workers, this.workers * QUEUE_SLOTS_PER_WORKER)
+						.scan(extractor);
+			}
+			if (failures > 0) {
+				stats.countFailedClasses(failures);
+				System.err.println(failures + " classes of " + this.jarName
+						+ " could not be analysed and are left out of the graphs");
+			}
+			if (cache != null)
+				cache.save();
+			phase.end();
+			if (this.resolution != ClassHierarchy.Resolution.DECLARED && updater == null) {
+				phase = stats.start("hierarchy");
+				ClassHierarchy.of(this.sink).expand(this.sink, this.resolution);
+				phase.end();
 			}
+		} catch (IOException e) {
+			System.err.println("Error while processing jar: " + e.getMessage());
+			e.printStackTrace();
+			System.exit(-1);
 		}
-
 	}
 
 	public void processInput() throws NodeNotFoundException {
-		for (String line : ClassVisitor.edgesMethods) {
-			String[] nodesDeVided = line.split(" ");
-
-			if (nodesDeVided[0].contains(":") && nodesDeVided[1].contains(":")
-					&& !nodesDeVided[0].equals(nodesDeVided[1])
-					&& !(nodesDeVided[0].contains("clinit") || nodesDeVided[0].contains("clinit"))) {
-				// Generating Label and creating "from Node"
-				String fromNodeId = nodesDeVided[1];
-				String[] nodeIdSplited = fromNodeId.split("\\.");
-				String label = nodeIdSplited[nodeIdSplited.length - 1];
-				graphOfMethods.putNode(fromNodeId, label, TypeNode.NORMAL);
-
-				// Generating Label and creating "to Node"
-				String toNodeId = nodesDeVided[0];
-				nodeIdSplited = toNodeId.split("\\.");
-				label = nodeIdSplited[nodeIdSplited.length - 1];
-				graphOfMethods.putNode(toNodeId, label, TypeNode.NORMAL);
+		RunStats.Phase phase = stats.start("edges");
+		putEdges();
+		phase.end();
 
-				// Generating Edge
-				if(!fromNodeId.equals(toNodeId))
-					graphOfMethods.putEdge(fromNodeId, toNodeId);
+		phase = stats.start("artifacts");
+		Utils util = new Utils();
+		attachArtifacts(util.getArtifactsRepresentation("conf\\artifacts-to-class.xml"),
+				util.getArtifactsRepresentation("conf\\artifacts-to-methods.xml"));
+		phase.end();
+	}
+
+	/**
+	 * Puts the edges found by {@link #prepare()} in the method and class
+	 * graphs.
+	 */
+	public void putEdges() throws NodeNotFoundException {
+		if (updater != null) {
+			updater.apply();
+			return;
+		}
+		for (long edge : sink.getMethodEdges()) {
+			int callerId = PackedEdge.from(edge);
+			int calleeId = PackedEdge.to(edge);
 
+			if (callerId != calleeId && !isClassInitializer(symbols, callerId)) {
+				// Creating "from Node"
+				String fromNodeId = symbols.methodNodeId(calleeId);
+				graphOfMethods.putNode(fromNodeId, TypeNode.NORMAL);
+
+				// Creating "to Node"
+				String toNodeId = symbols.methodNodeId(callerId);
+				graphOfMethods.putNode(toNodeId, TypeNode.NORMAL);
+
+				// Generating Edge
+				graphOfMethods.putEdge(fromNodeId, toNodeId);
 			} 
 		}
 		
 		
-		for(String line : ClassVisitor.edgesClass){
-			String[] nodesDeVided = line.split(" ");
-			// Generating Label and creating "from Node"
-			String fromNodeId = nodesDeVided[1];
-			String[] nodeIdSplited = fromNodeId.split("\\.");
-			String label = nodeIdSplited[nodeIdSplited.length - 1];
-			// Node fromNode = new Node(fromNodeId, label);
-			graphOfClass.putNode(fromNodeId, label, TypeNode.NORMAL);
-
-			// Generating Label and creating "to Node"
-			String toNodeId = nodesDeVided[0];
-			nodeIdSplited = toNodeId.split("\\.");
-			label = nodeIdSplited[nodeIdSplited.length - 1];
-			graphOfClass.putNode(toNodeId, label, TypeNode.NORMAL);
+		for (long edge : sink.getClassEdges()) {
+			int classId = PackedEdge.from(edge);
+			int referencedId = PackedEdge.to(edge);
+			if (classId == referencedId)
+				continue;
+
+			// Creating "from Node"
+			String fromNodeId = symbols.className(referencedId);
+			graphOfClass.putNode(fromNodeId, TypeNode.NORMAL);
+
+			// Creating "to Node"
+			String toNodeId = symbols.className(classId);
+			graphOfClass.putNode(toNodeId, TypeNode.NORMAL);
 
 			// Generating Edge
-			if(!fromNodeId.equals(toNodeId))
-				graphOfClass.putEdge(fromNodeId, toNodeId);
+			graphOfClass.putEdge(fromNodeId, toNodeId);
 		}
+	}
 
-		Utils util = new Utils();
-		util.deleteFiles("view/data-class.json");
-		util.deleteFiles("view/data-method.json");
-		
-		
-		List<XMLRepresentation> classArtifactsRepresentation = util.getArtifactsRepresentation("conf\\artifacts-to-class.xml");
+	/**
+	 * Puts the artifacts in the class and method graphs, linked to the nodes
+	 * they map to.
+	 */
+	public void attachArtifacts(List<XMLRepresentation> classArtifactsRepresentation,
+			List<XMLRepresentation> methodArtifactsRepresentation) throws NodeNotFoundException {
 		
 		for(XMLRepresentation representation : classArtifactsRepresentation){
 			TypeNode type;
@@ -152,10 +290,8 @@ public class CallTrack {
 			
 			
 		}
-		util.writeJSONFile("view/data-class.json", graphOfClass.getGraphDTO());
 		
 		
-		List<XMLRepresentation> methodArtifactsRepresentation = util.getArtifactsRepresentation("conf\\artifacts-to-methods.xml");
 		
 		for(XMLRepresentation representation : methodArtifactsRepresentation){
 			TypeNode type;
@@ -177,46 +313,636 @@ public class CallTrack {
 			
 			
 		}
-		util.writeJSONFile("view/data-method.json", graphOfMethods.getGraphDTO());
-		
-		
-		
+	}
+
+	/**
+	 * Adds the calls recorded by the agent to the graphs: every call between
+	 * methods the pattern matches is an edge of the method graph weighted by
+	 * the times it was taken, and an edge of the class graph.
+	 */
+	public void mergeRuntimeCalls(File file) throws NodeNotFoundException {
+		RuntimeCalls calls;
+		try {
+			calls = RuntimeCalls.read(file);
+		} catch (IOException e) {
+			System.err.println("Error while reading runtime calls " + file + ": " + e.getMessage());
+			e.printStackTrace();
+			return;
+		}
+
+		PackageMatcher matcher = new PackageMatcher(this.pattern);
+		String[] methods = calls.getMethods();
+		boolean[] matched = new boolean[methods.length];
+		String[] classNodeIds = new String[methods.length];
+		for (int i = 0; i < methods.length; i++) {
+			String className = methods[i].substring(0, methods[i].lastIndexOf(':'));
+			matched[i] = matcher.matches(className);
+			classNodeIds[i] = ClassVisitor.classNodeName(className);
+		}
+
+		long[] edges = calls.getEdges();
+		for (int i = 0; i < edges.length; i++) {
+			int callerId = PackedEdge.from(edges[i]);
+			int calleeId = PackedEdge.to(edges[i]);
+			// overloads share a node, class initializers run when the class is loaded
+			if (callerId == RuntimeCalls.OUTSIDE || !matched[callerId] || !matched[calleeId]
+					|| methods[callerId].equals(methods[calleeId]) || methods[callerId].contains("clinit")
+					|| methods[calleeId].contains("clinit"))
+				continue;
+
+			String fromNodeId = methods[calleeId];
+			String toNodeId = methods[callerId];
+			graphOfMethods.putNode(fromNodeId, TypeNode.NORMAL);
+			graphOfMethods.putNode(toNodeId, TypeNode.NORMAL);
+			graphOfMethods.putCalls(fromNodeId, toNodeId, calls.getCounts()[i]);
+
+			String fromClass = classNodeIds[calleeId];
+			String toClass = classNodeIds[callerId];
+			if (!fromClass.equals(toClass)) {
+				graphOfClass.putNode(fromClass, TypeNode.NORMAL);
+				graphOfClass.putNode(toClass, TypeNode.NORMAL);
+				graphOfClass.putEdge(fromClass, toClass);
+			}
+		}
+	}
+
+	/**
+	 * Adds the times of a call trace to the method graph: the self and total
+	 * times of the methods it has, and the times of the calls between them
+	 * it has an edge for.
+	 */
+	public void mergeTrace(File file) throws NodeNotFoundException {
+		TraceTimings timings;
+		try {
+			timings = new TraceProcessor(this.workers).process(file);
+		} catch (IOException e) {
+			System.err.println("Error while reading trace " + file + ": " + e.getMessage());
+			e.printStackTrace();
+			return;
+		} catch (InterruptedException e) {
+			System.err.println("Interrupted while reading trace " + file);
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		String[] methods = timings.getMethods();
+		int matched = 0;
+		for (int m = 0; m < methods.length; m++) {
+			if (graphOfMethods.containsNode(methods[m])) {
+				graphOfMethods.putTime(methods[m], timings.getSelfTimes()[m], timings.getTotalTimes()[m]);
+				matched++;
+			}
+		}
+		long[] edges = timings.getEdges();
+		for (int e = 0; e < edges.length; e++) {
+			String fromNodeId = methods[PackedEdge.to(edges[e])];
+			String toNodeId = methods[PackedEdge.from(edges[e])];
+			if (graphOfMethods.containsEdge(fromNodeId, toNodeId))
+				graphOfMethods.putEdgeTime(fromNodeId, toNodeId, timings.getEdgeTimes()[e]);
+		}
+		LOG.info("Timed " + matched + " of the " + methods.length + " methods of trace " + file);
+	}
+
+	/**
+	 * Adds the execution samples of a flight recording to the method graph:
+	 * the self and total samples of the methods it has, and the samples of
+	 * the calls between them it has an edge for.
+	 */
+	public void mergeSamples(File file) throws NodeNotFoundException {
+		ExecutionSamples samples;
+		try {
+			samples = new JfrImporter(symbols).read(file);
+		} catch (IOException e) {
+			System.err.println("Error while reading recording " + file + ": " + e.getMessage());
+			e.printStackTrace();
+			return;
+		}
+
+		long[] totalSamples = samples.getTotalSamples();
+		int matched = 0;
+		for (int m = 0; m < totalSamples.length; m++) {
+			String nodeId = symbols.methodNodeId(m);
+			if (totalSamples[m] > 0 && graphOfMethods.containsNode(nodeId)) {
+				graphOfMethods.putSamples(nodeId, samples.getSelfSamples()[m], totalSamples[m]);
+				matched++;
+			}
+		}
+		long[] edges = samples.getEdges();
+		for (int e = 0; e < edges.length; e++) {
+			String fromNodeId = symbols.methodNodeId(PackedEdge.to(edges[e]));
+			String toNodeId = symbols.methodNodeId(PackedEdge.from(edges[e]));
+			if (graphOfMethods.containsEdge(fromNodeId, toNodeId))
+				graphOfMethods.putEdgeSamples(fromNodeId, toNodeId, samples.getEdgeSamples()[e]);
+		}
+		LOG.info("Sampled " + matched + " methods in " + samples.getMatchedEvents() + " of the "
+				+ samples.getEvents() + " execution samples of recording " + file);
+	}
+
+	/**
+	 * Writes the data of the viewer and opens it. The package view starts
+	 * from the packages of the method graph.
+	 */
+	public void exportView() {
+		Utils util = new Utils();
+		util.deleteFiles("view/data-class.json");
+		util.deleteFiles("view/data-method.json");
+		util.deleteFiles("view/data-package.json");
+		CompactGraph classes = exported(graphOfClass);
+		util.writeJSONFile("view/data-class.json", classes, layoutOf(graphOfClass, classes));
+		CompactGraph methods = exported(graphOfMethods);
+		// the metrics are the ones of the nodes and edges of the graph, not of its cycles
+		GraphMetrics metrics = methods == graphOfMethods.compact() ? graphOfMethods.getMetrics() : null;
+		util.writeJSONFile("view/data-method.json", methods, layoutOf(graphOfMethods, methods), metrics);
+		try {
+			util.writeJSONFile("view/data-package.json", graphOfMethods.getHierarchy().view(expandedIds));
+		} catch (IllegalArgumentException e) {
+			System.err.println("Could not write the package view: " + e.getMessage());
+		}
+
 		File fClass = new File("view/index-class.html");
 		File fMethod = new File("view/index-method.html");
+		File fPackage = new File("view/index-package.html");
 		try {
-			Desktop.getDesktop().browse(fClass.toURI());
-			Desktop.getDesktop().browse(fMethod.toURI());
+			if (Desktop.isDesktopSupported()) {
+				Desktop.getDesktop().browse(fClass.toURI());
+				Desktop.getDesktop().browse(fMethod.toURI());
+				Desktop.getDesktop().browse(fPackage.toURI());
+			}
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			System.err.println("Could not open the views in a browser: " + e.getMessage());
 		}
-		
-		// TODO Create all Artifacts Nodes from method-mapping.artifacs and
-		// classes-mapping.artifacts and after put in Graph and link with
-		// referenced node.
+	}
+
+	/**
+	 * Keeps the graphs in memory and answers the queries of the viewer on the
+	 * given port, until the process is stopped.
+	 */
+	public void serve(int port) {
+		startServer(port, false);
+	}
 
-		// TODO Process all changes(Visit the nodes) and must be one graph to
-		// each change listed
+	private QueryServer startServer(int port, boolean nodeIds) {
+		Map<String, GraphQueries> graphs = new HashMap<String, GraphQueries>();
+		graphs.put(CLASS_GRAPH, queriesOf(graphOfClass));
+		graphs.put(METHOD_GRAPH, queriesOf(graphOfMethods));
+		QueryServer server = new QueryServer(graphs, new File("view"));
+		server.setNodeIds(nodeIds);
+		InetAddress address = InetAddress.getLoopbackAddress();
+		try {
+			if (bindHost != null)
+				address = InetAddress.getByName(bindHost);
+			server.start(address, port, this.workers);
+		} catch (IOException e) {
+			System.err.println("Could not start the server on port " + port + ": " + e.getMessage());
+			e.printStackTrace();
+			System.exit(-1);
+		}
 
-		// TODO Transform each change graph to one DTO Graph that will be used
-		// to show in JS framework.
+		String host = bindHost != null && !address.isAnyLocalAddress() ? bindHost : "localhost";
+		String url = "http://" + host + ":" + server.getPort() + "/index-package.html";
+		System.out.println("Serving the graphs on " + url);
+		try {
+			if (Desktop.isDesktopSupported())
+				Desktop.getDesktop().browse(URI.create(url));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return server;
+	}
 
+	private GraphQueries queriesOf(Graph graph) {
+		GraphQueries queries = new GraphQueries(graph.getReachabilityIndex(), layoutOf(graph, graph.compact()));
+		if (graph == graphOfMethods)
+			queries.setHierarchy(graph.getHierarchy());
+		return queries;
 	}
 
-	public Set<String> getEdgesSet() {
-		return ClassVisitor.edgesMethods;
+	/**
+	 * Serves the graphs like {@link #serve(int)}, then watches the jars and
+	 * class directories and updates the graphs when their classes change,
+	 * telling the open pages what changed so they do not load the graphs or
+	 * lay them out again. The classes must have been scanned for it, see
+	 * {@link #setWatch(boolean)}. Returns at once, the watching goes on until
+	 * the process is stopped.
+	 */
+	public void watch(int port) {
+		if (updater == null)
+			throw new IllegalStateException("The classes were not scanned to be watched");
+		final QueryServer server = startServer(port, true);
+		final ClasspathWatcher watcher;
+		try {
+			watcher = new ClasspathWatcher(archives(this.jarName), updater, this.workers);
+		} catch (IOException e) {
+			System.err.println("Could not watch " + this.jarName + ": " + e.getMessage());
+			e.printStackTrace();
+			return;
+		}
+		System.out.println("Watching " + this.jarName);
+
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						if (watcher.take() > 0)
+							update(server);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					try {
+						watcher.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}, "calltrack-watch");
+		thread.start();
 	}
 
-	public static void main(String[] args) {
-		CallTrack cg = new CallTrack(args[0], args[1]);
-		cg.prepare();
+	/**
+	 * Applies the classes the watcher read to the graphs, places the new
+	 * nodes next to the ones already placed, and sends the deltas to the
+	 * pages.
+	 */
+	private void update(QueryServer server) {
+		RunStats.Phase phase = stats.start("update");
+		CompactGraph classesBefore = graphOfClass.compact();
+		CompactGraph methodsBefore = graphOfMethods.compact();
+		GraphLayout classLayout = graphOfClass.getLayout();
+		GraphLayout methodLayout = graphOfMethods.getLayout();
+		List<GraphDelta> deltas;
 		try {
-			cg.processInput();
+			deltas = updater.apply();
 		} catch (NodeNotFoundException e) {
-			// TODO Auto-generated catch block
+			System.err.println("Error while updating the graphs: " + e.getMessage());
 			e.printStackTrace();
+			return;
+		}
+
+		for (GraphDelta delta : deltas) {
+			if (delta.isEmpty())
+				continue;
+			boolean classes = CLASS_GRAPH.equals(delta.getGraph());
+			Graph graph = classes ? graphOfClass : graphOfMethods;
+			GraphLayout before = classes ? classLayout : methodLayout;
+			if (before != null)
+				graph.setLayout(GraphLayout.extend(before, classes ? classesBefore : methodsBefore, graph.compact()));
+			server.update(delta.getGraph(), queriesOf(graph));
+			try {
+				server.publish(delta);
+			} catch (IOException e) {
+				System.err.println("Error while sending the changes: " + e.getMessage());
+				e.printStackTrace();
+			}
+			LOG.info("Updated the " + delta.getGraph() + " graph: " + delta.getAddedNodes().size()
+					+ " nodes and " + delta.addedEdgeCount() + " edges added, " + delta.getRemovedNodes().size()
+					+ " nodes and " + delta.removedEdgeCount() + " edges removed");
+		}
+		phase.end();
+	}
+
+	/**
+	 * Saves both graphs, artifacts included, their reachability indexes and
+	 * their layouts if they were computed, so that a later run can load them
+	 * instead of scanning the jar.
+	 */
+	public void saveSnapshot(File file) {
+		Map<String, CompactGraph> graphs = new LinkedHashMap<String, CompactGraph>();
+		graphs.put(CLASS_GRAPH, graphOfClass.compact());
+		graphs.put(METHOD_GRAPH, graphOfMethods.compact());
+		Map<String, GraphLayout> layouts = new HashMap<String, GraphLayout>();
+		if (graphOfClass.getLayout() != null)
+			layouts.put(CLASS_GRAPH, graphOfClass.getLayout());
+		if (graphOfMethods.getLayout() != null)
+			layouts.put(METHOD_GRAPH, graphOfMethods.getLayout());
+		Map<String, GraphLayout> cycleLayouts = new HashMap<String, GraphLayout>();
+		if (graphOfClass.getCycleLayout() != null)
+			cycleLayouts.put(CLASS_GRAPH, graphOfClass.getCycleLayout());
+		if (graphOfMethods.getCycleLayout() != null)
+			cycleLayouts.put(METHOD_GRAPH, graphOfMethods.getCycleLayout());
+		Map<String, ReachabilityIndex> indexes = new HashMap<String, ReachabilityIndex>();
+		indexes.put(CLASS_GRAPH, graphOfClass.getReachabilityIndex());
+		indexes.put(METHOD_GRAPH, graphOfMethods.getReachabilityIndex());
+		try {
+			GraphSnapshot.write(file, graphs, layouts, cycleLayouts, indexes);
+		} catch (IOException e) {
+			System.err.println("Error while saving snapshot " + file + ": " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Replaces both graphs with the ones of a snapshot. They can be queried
+	 * and exported but not changed.
+	 */
+	public void loadSnapshot(File file) {
+		try {
+			GraphSnapshot snapshot = GraphSnapshot.open(file);
+			if (snapshot.getGraph(CLASS_GRAPH) == null || snapshot.getGraph(METHOD_GRAPH) == null)
+				throw new IOException("the class or the method graph is missing");
+			graphOfClass = new Graph(snapshot.getGraph(CLASS_GRAPH));
+			graphOfMethods = new Graph(snapshot.getGraph(METHOD_GRAPH));
+			if (snapshot.getLayout(CLASS_GRAPH) != null)
+				graphOfClass.setLayout(snapshot.getLayout(CLASS_GRAPH));
+			if (snapshot.getLayout(METHOD_GRAPH) != null)
+				graphOfMethods.setLayout(snapshot.getLayout(METHOD_GRAPH));
+			if (snapshot.getCycleLayout(CLASS_GRAPH) != null)
+				graphOfClass.setCycleLayout(snapshot.getCycleLayout(CLASS_GRAPH));
+			if (snapshot.getCycleLayout(METHOD_GRAPH) != null)
+				graphOfMethods.setCycleLayout(snapshot.getCycleLayout(METHOD_GRAPH));
+			if (snapshot.getReachabilityIndex(CLASS_GRAPH) != null)
+				graphOfClass.setReachabilityIndex(snapshot.getReachabilityIndex(CLASS_GRAPH));
+			if (snapshot.getReachabilityIndex(METHOD_GRAPH) != null)
+				graphOfMethods.setReachabilityIndex(snapshot.getReachabilityIndex(METHOD_GRAPH));
+		} catch (IOException e) {
+			System.err.println("Error while loading snapshot " + file + ": " + e.getMessage());
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * Takes the layouts of a snapshot whose graphs are the same as the ones
+	 * just built, so an unchanged graph is not laid out again. Nothing is
+	 * taken when the file does not exist or cannot be read.
+	 */
+	public void reuseLayouts(File file) {
+		if (!file.exists())
+			return;
+		try {
+			GraphSnapshot snapshot = GraphSnapshot.open(file);
+			reuseLayouts(graphOfClass, snapshot, CLASS_GRAPH);
+			reuseLayouts(graphOfMethods, snapshot, METHOD_GRAPH);
+		} catch (IOException e) {
+			System.err.println("Could not read the layouts of snapshot " + file + ": " + e.getMessage());
+		}
+	}
+
+	private void reuseLayouts(Graph graph, GraphSnapshot snapshot, String name) {
+		CompactGraph saved = snapshot.getGraph(name);
+		if (saved == null || !saved.sameAs(graph.compact()))
+			return;
+		// copied, the file is about to be replaced by the new snapshot
+		GraphLayout layout = snapshot.getLayout(name);
+		if (layout != null && graph.getLayout() == null)
+			graph.setLayout(layout.copy());
+		GraphLayout cycleLayout = snapshot.getCycleLayout(name);
+		if (cycleLayout != null && graph.getCycleLayout() == null)
+			graph.setCycleLayout(cycleLayout.copy());
+	}
+
+	/**
+	 * Compares the jar with an older version of it and prints the methods and
+	 * classes that were added, removed or modified.
+	 */
+	public JarDiff diffAgainst(String oldJarName) {
+		List<File> oldArchives = archives(oldJarName);
+		List<File> newArchives = archives(this.jarName);
+
+		JarDiff diff = null;
+		try {
+			diff = JarDiff.compare(oldArchives, newArchives, this.pattern, this.workers);
+		} catch (IOException e) {
+			System.err.println("Error while comparing with " + oldJarName + ": " + e.getMessage());
+			e.printStackTrace();
+			System.exit(-1);
+		} catch (InterruptedException e) {
+			System.err.println("Interrupted while comparing with " + oldJarName);
+			Thread.currentThread().interrupt();
+			System.exit(-1);
+		}
+
+		printChanges("added", "method", diff.getAddedMethods());
+		printChanges("removed", "method", diff.getRemovedMethods());
+		printChanges("modified", "method", diff.getModifiedMethods());
+		printChanges("added", "class", diff.getAddedClasses());
+		printChanges("removed", "class", diff.getRemovedClasses());
+		printChanges("modified", "class", diff.getModifiedClasses());
+		return diff;
+	}
+
+	private void printChanges(String change, String kind, List<String> ids) {
+		for (String id : ids)
+			System.out.println(change + "\t" + kind + "\t" + id);
+	}
+
+	private CompactGraph exported(Graph graph) {
+		return collapseCycles ? graph.getCondensation().getDag() : graph.compact();
+	}
+
+	/**
+	 * The positions of the nodes of a graph as exported, or null when the
+	 * viewer places them. Collapsed graphs are laid out on their own, their
+	 * nodes being the cycles.
+	 */
+	private GraphLayout layoutOf(Graph graph, CompactGraph exported) {
+		if (!layout)
+			return null;
+		if (exported != graph.compact())
+			return graph.getCycleLayout(this.workers);
+		return graph.getLayout(this.workers);
+	}
+
+	static boolean isClassInitializer(SymbolTable symbols, int methodId) {
+		return symbols.methodName(methodId).contains("clinit")
+				|| symbols.className(symbols.methodClass(methodId)).contains("clinit");
+	}
+
+	public EdgeSink getEdgeSink() {
+		return sink;
+	}
+
+	/**
+	 * Uses the edges of a sink filled before, by {@link #prepare()} on
+	 * another instance, instead of scanning the jar again.
+	 */
+	public void setEdgeSink(EdgeSink sink) {
+		this.sink = sink;
+		this.symbols = sink.getSymbols();
+	}
+
+	/**
+	 * Prints the artifacts affected by a change in the given nodes: method ids
+	 * ("package.Class:method") are looked up in the method graph, the others
+	 * in the class graph.
+	 */
+	public void printImpact(List<String> changedIds) {
+		List<String> changedMethods = new ArrayList<String>();
+		List<String> changedClasses = new ArrayList<String>();
+		for (String id : changedIds) {
+			if (id.contains(":"))
+				changedMethods.add(id);
+			else
+				changedClasses.add(id);
+		}
+
+		if (!changedMethods.isEmpty())
+			printImpact(new ImpactAnalyzer(graphOfMethods.getReachabilityIndex()).analyze(changedMethods),
+					graphOfMethods.getMetrics());
+		if (!changedClasses.isEmpty())
+			printImpact(new ImpactAnalyzer(graphOfClass.getReachabilityIndex()).analyze(changedClasses), null);
+	}
+
+	/**
+	 * Prints the artifacts nearest first or, when the method graph was timed
+	 * or sampled, the hottest first: an artifact is as hot as the hottest of
+	 * the methods it calls, whose total time or samples follow it.
+	 */
+	private void printImpact(ImpactResult result, GraphMetrics metrics) {
+		long[] weights = metrics != null ? metrics.getNodeWeights() : null;
+		if (weights == null) {
+			for (int i = 0; i < result.size(); i++)
+				System.out.println(result.distance(i) + "\t" + result.type(i) + "\t" + result.id(i) + "\t" + result.label(i));
+			return;
+		}
+
+		CompactGraph graph = graphOfMethods.compact();
+		final long[] hotness = new long[result.size()];
+		Integer[] order = new Integer[result.size()];
+		for (int i = 0; i < order.length; i++) {
+			int node = result.node(i);
+			hotness[i] = weights[node];
+			for (int e = graph.firstIn(node), end = graph.endIn(node); e < end; e++)
+				hotness[i] = Math.max(hotness[i], weights[graph.source(e)]);
+			order[i] = i;
+		}
+		// the result is in distance order, which breaks the ties
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return hotness[a] != hotness[b] ? (hotness[a] > hotness[b] ? -1 : 1) : a.compareTo(b);
+			}
+		});
+		for (int i : order)
+			System.out.println(result.distance(i) + "\t" + result.type(i) + "\t" + result.id(i) + "\t" + result.label(i)
+					+ "\t" + hotness[i]);
+	}
+
+	public Graph getGraphOfMethods() {
+		return graphOfMethods;
+	}
+
+	public Graph getGraphOfClass() {
+		return graphOfClass;
+	}
+
+	/**
+	 * The times of the phases run so far and what the scan counted.
+	 */
+	public RunStats getStats() {
+		return stats;
+	}
+
+	public static void main(String[] args) {
+		Options options;
+		try {
+			options = Options.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(Options.USAGE);
+			System.exit(-1);
+			return;
+		}
+		if (options.getLogLevel() != null) {
+			Logger logger = Logger.getLogger("splab.ufcg.calltrack");
+			ConsoleHandler handler = new ConsoleHandler();
+			handler.setLevel(options.getLogLevel());
+			logger.addHandler(handler);
+			logger.setLevel(options.getLogLevel());
+			logger.setUseParentHandlers(false);
+		}
+
+		CallTrack cg = new CallTrack(options.getJarName(), options.getPattern(), options.getWorkers());
+		RunStats stats = cg.getStats();
+		stats.register();
+		RunStats.Phase phase;
+		if (options.getCacheFile() != null)
+			cg.setCache(new File(options.getCacheFile()), options.getCacheSize());
+		cg.setCollapseCycles(options.isCollapseCycles());
+		cg.setResolution(options.getResolution());
+		cg.setLayout(options.isLayout());
+		cg.setExpandedIds(options.getExpandedIds());
+		cg.setWatch(options.isWatch());
+		cg.setBindHost(options.getBindHost());
+		if (options.getLoadFile() != null) {
+			phase = stats.start("load");
+			cg.loadSnapshot(new File(options.getLoadFile()));
+			phase.end();
+			if (!options.getCallsFiles().isEmpty() || options.getTraceFile() != null || options.getJfrFile() != null)
+				System.err.println(
+						"The graphs of a snapshot can not be changed, the runtime calls, times and samples were not added");
+		} else {
+			try {
+				cg.prepare();
+				cg.processInput();
+				for (String callsFile : options.getCallsFiles()) {
+					phase = stats.start("calls");
+					cg.mergeRuntimeCalls(new File(callsFile));
+					phase.end();
+				}
+				if (options.getTraceFile() != null) {
+					phase = stats.start("trace");
+					cg.mergeTrace(new File(options.getTraceFile()));
+					phase.end();
+				}
+				if (options.getJfrFile() != null) {
+					phase = stats.start("jfr");
+					cg.mergeSamples(new File(options.getJfrFile()));
+					phase.end();
+				}
+			} catch (InterruptedException e) {
+				System.err.println("Interrupted while processing jar " + options.getJarName());
+				Thread.currentThread().interrupt();
+				return;
+			} catch (NodeNotFoundException e) {
+				System.err.println("Error while building the graphs: " + e.getMessage());
+				e.printStackTrace();
+				System.exit(-1);
+			}
+		}
+		if (options.getSaveFile() != null && options.getLoadFile() == null)
+			cg.reuseLayouts(new File(options.getSaveFile()));
+
+		List<String> changedIds = new ArrayList<String>(options.getImpactIds());
+		if (options.getDiffJarName() != null) {
+			phase = stats.start("diff");
+			changedIds.addAll(cg.diffAgainst(options.getDiffJarName()).getChangedIds());
+			phase.end();
+		}
+		if (!changedIds.isEmpty()) {
+			phase = stats.start("impact");
+			cg.printImpact(changedIds);
+			phase.end();
+		}
+
+		if (!options.isWatch()) {
+			if (options.getPort() >= 0) {
+				phase = stats.start("serve");
+				cg.serve(options.getPort());
+			} else {
+				phase = stats.start("export");
+				cg.exportView();
+			}
+			phase.end();
+		}
+		if (options.getSaveFile() != null) {
+			phase = stats.start("save");
+			cg.saveSnapshot(new File(options.getSaveFile()));
+			phase.end();
+		}
+
+		if (options.getStatsFile() != null) {
+			try {
+				stats.write(new File(options.getStatsFile()));
+			} catch (IOException e) {
+				System.err.println("Error while writing stats " + options.getStatsFile() + ": " + e.getMessage());
+				e.printStackTrace();
+			}
 		}
 
+		// last, so that the snapshot and the stats are of the graphs as scanned
+		if (options.isWatch())
+			cg.watch(Math.max(options.getPort(), 0));
 	}
 
 }
@@ -0,0 +1,112 @@
+package splab.ufcg.calltrack.core;
+
+/**
+ * Byte level reader of the constant pool of a class file, used to skip the
+ * BCEL parsing of classes that cannot contribute edges.
+ *
+ * Both the class edges and the method edges are only recorded when a class
+ * constant of the visited class is matched by the {@link PackageMatcher}
+ * (the class itself and the owners of every invoked method are class
+ * constants), so a class without such a constant can be discarded without
+ * being parsed. The check is done directly on the bytes of the
+ * CONSTANT_Utf8 entries and allocates nothing but one index table per
+ * class.
+ */
+public class ClassFilePreFilter {
+
+	private static final int MAGIC = 0xCAFEBABE;
+
+	private PackageMatcher matcher;
+
+	public ClassFilePreFilter(String pattern) {
+		this(new PackageMatcher(pattern));
+	}
+
+	public ClassFilePreFilter(PackageMatcher matcher) {
+		this.matcher = matcher;
+	}
+
+	/**
+	 * Answers whether the class may contribute edges. Anything that can not be
+	 * read here (truncated files, unknown constant tags) is accepted, so that
+	 * BCEL gets to report the problem.
+	 */
+	public boolean accepts(byte[] classBytes) {
+		if (!matcher.isAscii())
+			return true;
+		if (classBytes.length < 10 || readInt(classBytes, 0) != MAGIC)
+			return true;
+
+		int count = readUnsignedShort(classBytes, 8);
+		int[] utf8Offsets = new int[count];
+		int[] classNameIndexes = new int[count];
+		int classes = 0;
+
+		int offset = 10;
+		for (int index = 1; index < count; index++) {
+			// the largest entry takes 9 bytes and the pool is always followed by more
+			if (offset + 9 > classBytes.length)
+				return true;
+			int tag = classBytes[offset] & 0xFF;
+			switch (tag) {
+			case 1: // Utf8
+				utf8Offsets[index] = offset + 1;
+				offset += 3 + readUnsignedShort(classBytes, offset + 1);
+				break;
+			case 7: // Class
+				classNameIndexes[classes++] = readUnsignedShort(classBytes, offset + 1);
+				offset += 3;
+				break;
+			case 8: // String
+			case 16: // MethodType
+			case 19: // Module
+			case 20: // Package
+				offset += 3;
+				break;
+			case 15: // MethodHandle
+				offset += 4;
+				break;
+			case 3: // Integer
+			case 4: // Float
+			case 9: // Fieldref
+			case 10: // Methodref
+			case 11: // InterfaceMethodref
+			case 12: // NameAndType
+			case 17: // Dynamic
+			case 18: // InvokeDynamic
+				offset += 5;
+				break;
+			case 5: // Long
+			case 6: // Double
+				offset += 9;
+				index++;
+				break;
+			default:
+				return true;
+			}
+		}
+
+		CharSequence names = PackageMatcher.utf8(classBytes);
+		for (int i = 0; i < classes; i++) {
+			int nameIndex = classNameIndexes[i];
+			if (nameIndex <= 0 || nameIndex >= count || utf8Offsets[nameIndex] == 0)
+				return true;
+			int lengthOffset = utf8Offsets[nameIndex];
+			int start = lengthOffset + 2;
+			int end = Math.min(start + readUnsignedShort(classBytes, lengthOffset), classBytes.length);
+			if (matcher.matches(names, start, end))
+				return true;
+		}
+		return false;
+	}
+
+	private static int readUnsignedShort(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+				| ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+	}
+
+}
@@ -0,0 +1,294 @@
+package splab.ufcg.calltrack.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+import splab.ufcg.calltrack.model.SymbolTable;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+/**
+ * Supertypes, subtypes and declared methods of the classes visited by a
+ * scan, indexed by class id in flat arrays: the supertypes of class c are
+ * supertypes[superOffsets[c]..superOffsets[c + 1]), and the same goes for
+ * its direct subtypes and the methods it declares, sorted by name id.
+ *
+ * A call records the method of the type it is invoked on. With
+ * {@link #expand(EdgeSink, Resolution)} every virtual call is also linked to
+ * the overrides it can dispatch to, so a change in an override reaches the
+ * callers that go through a supertype:
+ * <ul>
+ * <li>CHA (class hierarchy analysis) takes every concrete subtype of the
+ * type invoked on;</li>
+ * <li>RTA (rapid type analysis) only the subtypes the scanned code
+ * instantiates, which keeps the impact sets smaller.</li>
+ * </ul>
+ * Methods are told apart by name only, like the nodes of the method graph.
+ */
+public class ClassHierarchy {
+
+	public static final int INTERFACE = 1;
+	public static final int ABSTRACT = 2;
+	public static final int MATCHED = 4;
+	private static final int VISITED = 8;
+	private static final int INSTANTIATED = 16;
+
+	public enum Resolution {
+		DECLARED, CHA, RTA
+	}
+
+	private SymbolTable symbols;
+	private byte[] flags;
+	private int[] superOffsets;
+	private int[] supertypes;
+	private int[] subOffsets;
+	private int[] subtypes;
+	private int[] methodOffsets;
+	private int[] methodNames;
+	private int[] methods;
+
+	private ClassHierarchy(SymbolTable symbols) {
+		this.symbols = symbols;
+	}
+
+	/**
+	 * Indexes the types and the instantiated classes collected by the sink.
+	 */
+	public static ClassHierarchy of(EdgeSink sink) {
+		SymbolTable symbols = sink.getSymbols();
+		List<int[]> types = sink.getTypes();
+		long[] instantiated = sink.getInstantiated();
+		ClassHierarchy hierarchy = new ClassHierarchy(symbols);
+		int classes = symbols.classCount();
+
+		int[] typeOf = new int[classes];
+		Arrays.fill(typeOf, -1);
+		hierarchy.flags = new byte[classes];
+		for (int t = 0; t < types.size(); t++) {
+			int[] type = types.get(t);
+			typeOf[type[0]] = t;
+			hierarchy.flags[type[0]] = (byte) (type[1] | VISITED);
+		}
+		for (long classId : instantiated)
+			hierarchy.flags[(int) classId] |= INSTANTIATED;
+
+		// supertypes and declared methods, in class id order
+		hierarchy.superOffsets = new int[classes + 1];
+		hierarchy.methodOffsets = new int[classes + 1];
+		int[] subCounts = new int[classes + 1];
+		for (int c = 0; c < classes; c++) {
+			int[] type = typeOf[c] < 0 ? null : types.get(typeOf[c]);
+			int supers = type == null ? 0 : type[2];
+			hierarchy.superOffsets[c + 1] = hierarchy.superOffsets[c] + supers;
+			hierarchy.methodOffsets[c + 1] = hierarchy.methodOffsets[c] + (type == null ? 0 : type.length - 3 - supers);
+			for (int s = 0; s < supers; s++)
+				subCounts[type[3 + s]]++;
+		}
+		hierarchy.supertypes = new int[hierarchy.superOffsets[classes]];
+		hierarchy.methods = new int[hierarchy.methodOffsets[classes]];
+		hierarchy.methodNames = new int[hierarchy.methods.length];
+		long[] byName = new long[0];
+		for (int c = 0; c < classes; c++) {
+			if (typeOf[c] < 0)
+				continue;
+			int[] type = types.get(typeOf[c]);
+			int supers = type[2];
+			System.arraycopy(type, 3, hierarchy.supertypes, hierarchy.superOffsets[c], supers);
+
+			int count = type.length - 3 - supers;
+			if (byName.length < count)
+				byName = new long[count];
+			for (int m = 0; m < count; m++) {
+				int methodId = type[3 + supers + m];
+				byName[m] = PackedEdge.of(symbols.methodNameId(methodId), methodId);
+			}
+			Arrays.sort(byName, 0, count);
+			for (int m = 0; m < count; m++) {
+				hierarchy.methodNames[hierarchy.methodOffsets[c] + m] = PackedEdge.from(byName[m]);
+				hierarchy.methods[hierarchy.methodOffsets[c] + m] = PackedEdge.to(byName[m]);
+			}
+		}
+
+		// direct subtypes, the reverse of the supertypes
+		hierarchy.subOffsets = new int[classes + 1];
+		for (int c = 0; c < classes; c++)
+			hierarchy.subOffsets[c + 1] = hierarchy.subOffsets[c] + subCounts[c];
+		hierarchy.subtypes = new int[hierarchy.subOffsets[classes]];
+		int[] next = Arrays.copyOf(hierarchy.subOffsets, classes);
+		for (int c = 0; c < classes; c++) {
+			for (int s = hierarchy.superOffsets[c]; s < hierarchy.superOffsets[c + 1]; s++)
+				hierarchy.subtypes[next[hierarchy.supertypes[s]]++] = c;
+		}
+		return hierarchy;
+	}
+
+	public int classCount() {
+		return flags.length;
+	}
+
+	/**
+	 * False for the classes that were only referenced by the scanned ones,
+	 * whose supertypes and methods are not known.
+	 */
+	public boolean isVisited(int classId) {
+		return classId < flags.length && (flags[classId] & VISITED) != 0;
+	}
+
+	public boolean isInterface(int classId) {
+		return classId < flags.length && (flags[classId] & INTERFACE) != 0;
+	}
+
+	public boolean isInstantiated(int classId) {
+		return classId < flags.length && (flags[classId] & INSTANTIATED) != 0;
+	}
+
+	/**
+	 * The super class, when known, then the interfaces of the class.
+	 */
+	public int[] supertypes(int classId) {
+		if (classId >= flags.length)
+			return new int[0];
+		return Arrays.copyOfRange(supertypes, superOffsets[classId], superOffsets[classId + 1]);
+	}
+
+	public int[] subtypes(int classId) {
+		if (classId >= flags.length)
+			return new int[0];
+		return Arrays.copyOfRange(subtypes, subOffsets[classId], subOffsets[classId + 1]);
+	}
+
+	/**
+	 * The method with the given name declared with a body by the class, or
+	 * -1 when it has none.
+	 */
+	public int declaredMethod(int classId, int methodNameId) {
+		if (classId >= flags.length)
+			return -1;
+		int found = Arrays.binarySearch(methodNames, methodOffsets[classId], methodOffsets[classId + 1], methodNameId);
+		return found >= 0 ? methods[found] : -1;
+	}
+
+	/**
+	 * The method run when a method of the given name is invoked on an
+	 * instance of the class: the closest one up its super classes, else a
+	 * default method of its interfaces. -1 when it is not among the visited
+	 * classes.
+	 */
+	public int resolve(int classId, int methodNameId) {
+		for (int c = classId; c >= 0 && isVisited(c); c = superclass(c)) {
+			int method = declaredMethod(c, methodNameId);
+			if (method >= 0)
+				return method;
+		}
+		return defaultMethod(classId, methodNameId, 0);
+	}
+
+	private int superclass(int classId) {
+		int first = superOffsets[classId];
+		if (first == superOffsets[classId + 1] || isInterface(supertypes[first]))
+			return -1;
+		return supertypes[first];
+	}
+
+	private int defaultMethod(int classId, int methodNameId, int depth) {
+		if (!isVisited(classId) || depth > classCount())
+			return -1;
+		for (int s = superOffsets[classId]; s < superOffsets[classId + 1]; s++) {
+			int supertype = supertypes[s];
+			int method = isInterface(supertype) ? declaredMethod(supertype, methodNameId) : -1;
+			if (method < 0)
+				method = defaultMethod(supertype, methodNameId, depth + 1);
+			if (method >= 0)
+				return method;
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds to the sink an edge from the caller of every virtual call to each
+	 * method it can dispatch to, besides the one it names, and a class edge
+	 * from the calling class to the class of that method. Only the methods of
+	 * classes matched by the pattern are added.
+	 */
+	public void expand(EdgeSink sink, Resolution resolution) {
+		if (resolution == Resolution.DECLARED)
+			return;
+		long[] calls = sink.getVirtualCalls();
+		// grouped by callee, so the targets of a callee are looked up once
+		for (int i = 0; i < calls.length; i++)
+			calls[i] = PackedEdge.of(PackedEdge.to(calls[i]), PackedEdge.from(calls[i]));
+		Arrays.sort(calls);
+
+		int[] mark = new int[classCount()];
+		int[] queue = new int[classCount()];
+		int[] targets = new int[16];
+		int stamp = 0;
+		for (int i = 0; i < calls.length;) {
+			int callee = PackedEdge.from(calls[i]);
+			int owner = symbols.methodClass(callee);
+			int nameId = symbols.methodNameId(callee);
+
+			// every subtype of the owner, each one once
+			int count = 0;
+			stamp++;
+			int head = 0;
+			int tail = 0;
+			if (owner < mark.length) {
+				mark[owner] = stamp;
+				queue[tail++] = owner;
+			}
+			while (head < tail) {
+				int c = queue[head++];
+				for (int s = subOffsets[c]; s < subOffsets[c + 1]; s++) {
+					int sub = subtypes[s];
+					if (mark[sub] != stamp) {
+						mark[sub] = stamp;
+						queue[tail++] = sub;
+					}
+				}
+				if (!dispatchable(c, resolution))
+					continue;
+				int target = resolve(c, nameId);
+				if (target < 0 || target == callee || (flags[symbols.methodClass(target)] & MATCHED) == 0)
+					continue;
+				if (indexOf(targets, count, target) < 0) {
+					if (count == targets.length)
+						targets = Arrays.copyOf(targets, count << 1);
+					targets[count++] = target;
+				}
+			}
+
+			for (; i < calls.length && PackedEdge.from(calls[i]) == callee; i++) {
+				int caller = PackedEdge.to(calls[i]);
+				int callerClass = classNode(symbols.methodClass(caller));
+				for (int t = 0; t < count; t++) {
+					sink.addMethodEdge(caller, targets[t]);
+					sink.addClassEdge(callerClass, classNode(symbols.methodClass(targets[t])));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Whether an instance of the class can receive a call: a concrete class
+	 * for CHA, and one the code instantiates for RTA.
+	 */
+	private boolean dispatchable(int classId, Resolution resolution) {
+		int classFlags = flags[classId];
+		if ((classFlags & VISITED) == 0 || (classFlags & (INTERFACE | ABSTRACT)) != 0)
+			return false;
+		return resolution == Resolution.CHA || (classFlags & INSTANTIATED) != 0;
+	}
+
+	private int classNode(int classId) {
+		return symbols.internClass(ClassVisitor.classNodeName(symbols.className(classId)));
+	}
+
+	private static int indexOf(int[] values, int count, int value) {
+		for (int i = 0; i < count; i++) {
+			if (values[i] == value)
+				return i;
+		}
+		return -1;
+	}
+
+}
@@ -1,71 +1,295 @@
 package splab.ufcg.calltrack.core;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
 
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
 import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantNameAndType;
 import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantUtf8;
 import org.apache.bcel.classfile.EmptyVisitor;
+import org.apache.bcel.classfile.ExceptionTable;
 import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.Method;
-import org.apache.bcel.generic.ConstantPoolGen;
-import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.classfile.Utility;
+
+import splab.ufcg.calltrack.model.SymbolTable;
 
 /**
- * The simplest of class visitors, invokes the method visitor class for each
- * method found.
+ * Visits a class once and collects both kinds of edges: the method visitor
+ * records the calls of each method and the classes its code refers to, the
+ * class visitor the super class, the interfaces and the exceptions thrown or
+ * caught.
+ *
+ * It also records the type of the class for the {@link ClassHierarchy}: its
+ * supertypes, the methods it declares and the classes its code instantiates.
+ *
+ * Referenced classes and invoked methods come as constant pool indexes, and
+ * each index is matched, resolved and interned once per class.
  */
 public class ClassVisitor extends EmptyVisitor {
 
+    private static final int UNRESOLVED = -2;
+    private static final int NOT_MATCHED = -1;
+    private static final byte MATCHED = 1;
+    private static final byte REJECTED = 2;
+    private static final byte NOT_A_CLASS = 3;
+
     private JavaClass javaClass;
-    private ConstantPoolGen constants;
-    private String classReferenceFormat;
-    private String pattern;
-    public static Set<String> edgesMethods = new HashSet<String>();
-    public static Set<String> edgesClass = new HashSet<String>();
-    
-    public ClassVisitor(JavaClass jClass,String pattern) {
+    private ConstantPool constantPool;
+    private int classNodeId;
+    private PackageMatcher matcher;
+    private EdgeSink sink;
+    private int[] classIds;
+    private int[] methodIds;
+    private int[] typeIds;
+    private byte[] matched;
+    private int instructions;
+    private int keptEdges;
+    private int rejectedEdges;
+
+    public ClassVisitor(JavaClass jClass,String pattern, EdgeSink sink) {
+        this(jClass, new PackageMatcher(pattern), sink);
+    }
+
+    public ClassVisitor(JavaClass jClass, PackageMatcher matcher, EdgeSink sink) {
         javaClass = jClass;
-        constants = new ConstantPoolGen(javaClass.getConstantPool());
-        classReferenceFormat = javaClass.getClassName() + " %s";
-        this.pattern = pattern;
+        constantPool = javaClass.getConstantPool();
+        this.matcher = matcher;
+        this.sink = sink;
+        classNodeId = sink.getSymbols().internClass(classNodeName(javaClass.getClassName()));
+        classIds = new int[constantPool.getLength()];
+        Arrays.fill(classIds, UNRESOLVED);
+        methodIds = new int[constantPool.getLength()];
+        Arrays.fill(methodIds, UNRESOLVED);
+        typeIds = new int[constantPool.getLength()];
+        Arrays.fill(typeIds, UNRESOLVED);
+        matched = new byte[constantPool.getLength()];
     }
 
     public void visitJavaClass(JavaClass jClass) {
-        jClass.getConstantPool().accept(this);
+        addClassEdge(jClass.getSuperclassNameIndex());
+        for (int index : jClass.getInterfaceIndices())
+            addClassEdge(index);
         Method[] methods = jClass.getMethods();
         for (int i = 0; i < methods.length; i++)
             methods[i].accept(this);
+        addType(jClass);
+    }
+
+    private void addType(JavaClass jClass) {
+        SymbolTable symbols = sink.getSymbols();
+        String[] interfaces = jClass.getInterfaceNames();
+        boolean hasSuperclass = jClass.getSuperclassNameIndex() > 0;
+        int[] supertypeIds = new int[interfaces.length + (hasSuperclass ? 1 : 0)];
+        int count = 0;
+        if (hasSuperclass)
+            supertypeIds[count++] = symbols.internClass(jClass.getSuperclassName());
+        for (String name : interfaces)
+            supertypeIds[count++] = symbols.internClass(name);
+
+        // the methods an invokevirtual or invokeinterface can end in
+        int classId = symbols.internClass(jClass.getClassName());
+        int[] methodIds = new int[jClass.getMethods().length];
+        count = 0;
+        for (Method method : jClass.getMethods()) {
+            if (!method.isAbstract() && !method.isStatic() && !method.isPrivate() && !method.getName().startsWith("<"))
+                methodIds[count++] = symbols.internMethod(classId, method.getName());
+        }
+
+        int flags = 0;
+        if (jClass.isInterface())
+            flags |= ClassHierarchy.INTERFACE;
+        if (jClass.isAbstract())
+            flags |= ClassHierarchy.ABSTRACT;
+        if (matcher.matches(jClass.getClassName()))
+            flags |= ClassHierarchy.MATCHED;
+        sink.addType(classId, flags, supertypeIds, Arrays.copyOf(methodIds, count));
+    }
+
+    /**
+     * Records that the code of the class instantiates the class at the given
+     * index of the constant pool.
+     */
+    void addInstantiated(int classIndex) {
+        int id = typeIds[classIndex];
+        if (id == UNRESOLVED) {
+            Constant name = constantPool.getConstant(((ConstantClass) constantPool.getConstant(classIndex)).getNameIndex());
+            id = sink.getSymbols().internClass(((ConstantUtf8) name).getBytes().replace('/', '.'));
+            typeIds[classIndex] = id;
+        }
+        sink.addInstantiated(id);
+    }
+
+    /**
+     * Adds an edge from the visited class to the class at the given index of
+     * the constant pool, if its name matches the pattern. Only the classes
+     * whose name does not match count as rejected, not the other constants.
+     */
+    void addClassEdge(int classIndex) {
+        int referencedId = classIdAt(classIndex);
+        if (referencedId >= 0) {
+            sink.addClassEdge(classNodeId, referencedId);
+            keptEdges++;
+        } else if (classIndex > 0 && classIndex < matched.length && matched[classIndex] == REJECTED) {
+            rejectedEdges++;
+        }
+    }
+
+    /**
+     * Adds the edge to the class a method is invoked on, the call being
+     * counted on its own by {@link #countCall(boolean)}.
+     */
+    void addCalledClassEdge(int classIndex) {
+        int referencedId = classIdAt(classIndex);
+        if (referencedId >= 0)
+            sink.addClassEdge(classNodeId, referencedId);
+    }
+
+    /**
+     * Counts a call of a method, kept when the class it is invoked on is
+     * matched by the rules.
+     */
+    void countCall(boolean kept) {
+        if (kept)
+            keptEdges++;
+        else
+            rejectedEdges++;
+    }
+
+    void countInstructions(int count) {
+        instructions += count;
+    }
+
+    /**
+     * Answers whether the class at the given index of the constant pool is
+     * matched by the rules, without building any string.
+     */
+    boolean matchesClassAt(int classIndex) {
+        if (classIndex <= 0 || classIndex >= matched.length)
+            return false;
+        if (matched[classIndex] == 0) {
+            Constant constant = constantPool.getConstant(classIndex);
+            if (!(constant instanceof ConstantClass))
+                matched[classIndex] = NOT_A_CLASS;
+            else if (matcher.matches(
+                    ((ConstantUtf8) constantPool.getConstant(((ConstantClass) constant).getNameIndex())).getBytes()))
+                matched[classIndex] = MATCHED;
+            else
+                matched[classIndex] = REJECTED;
+        }
+        return matched[classIndex] == MATCHED;
+    }
+
+    /**
+     * The interned node of the class at the given index of the constant pool,
+     * or -1 when it is not a class or is not matched by the rules.
+     */
+    private int classIdAt(int classIndex) {
+        if (!matchesClassAt(classIndex))
+            return NOT_MATCHED;
+        int id = classIds[classIndex];
+        if (id != UNRESOLVED)
+            return id;
+
+        id = NOT_MATCHED;
+        Constant name = constantPool.getConstant(((ConstantClass) constantPool.getConstant(classIndex)).getNameIndex());
+        String nodeName = classNodeName(((ConstantUtf8) name).getBytes().replace('/', '.'));
+        if (nodeName != null)
+            id = sink.getSymbols().internClass(nodeName);
+        classIds[classIndex] = id;
+        return id;
+    }
+
+    /**
+     * The interned method of the Methodref or InterfaceMethodref at the given
+     * index of the constant pool, named after the class it is invoked on.
+     */
+    int methodIdAt(int methodrefIndex) {
+        int id = methodIds[methodrefIndex];
+        if (id != UNRESOLVED)
+            return id;
+
+        ConstantCP methodref = (ConstantCP) constantPool.getConstant(methodrefIndex);
+        ConstantClass type = (ConstantClass) constantPool.getConstant(methodref.getClassIndex());
+        String className = ((ConstantUtf8) constantPool.getConstant(type.getNameIndex())).getBytes();
+        // arrays are named as in the source, int[] or java.lang.Object[]
+        className = className.charAt(0) == '[' ? Utility.signatureToString(className, false)
+                : className.replace('/', '.');
+        ConstantNameAndType nameAndType = (ConstantNameAndType) constantPool.getConstant(methodref.getNameAndTypeIndex());
+        String methodName = ((ConstantUtf8) constantPool.getConstant(nameAndType.getNameIndex())).getBytes();
+
+        id = sink.getSymbols().internMethod(className, methodName);
+        methodIds[methodrefIndex] = id;
+        return id;
     }
 
-    public void visitConstantPool(ConstantPool constantPool) {
-        for (int i = 0; i < constantPool.getLength(); i++) {
-            Constant constant = constantPool.getConstant(i);
-            if (constant == null)
-                continue;
-            if (constant.getTag() == 7 ) {
-                String referencedClass = 
-                    constantPool.constantToString(constant);
-                
-                if(referencedClass.contains(pattern)){
-                	String output = String.format(classReferenceFormat,
-                			referencedClass).replaceAll("[$\\d]+", "");
-                	output = output.replaceAll("\\[L", "");
-                	output = output.replaceAll("<init>", "").replaceAll("<cinit>", "");
-                	ClassVisitor.edgesClass.add(output);
-                	
-                }
+    /**
+     * Name of the node that stands for the class in the class graph: inner
+     * and anonymous classes are folded into their outer class and arrays
+     * stand for their element class. Null for arrays of primitives.
+     */
+    static String classNodeName(String className) {
+        int start = 0;
+        int end = className.length();
+        while (start < end && className.charAt(start) == '[')
+            start++;
+        if (start > 0) {
+            // array descriptor, [[Lpackage.Class;
+            if (start == end || className.charAt(start) != 'L')
+                return null;
+            start++;
+            if (className.charAt(end - 1) == ';')
+                end--;
+        }
+        for (int i = start; i < end; i++) {
+            if (className.charAt(i) == '$') {
+                end = i;
+                break;
             }
         }
+        return className.substring(start, end);
     }
 
     public void visitMethod(Method method) {
-        MethodGen mg = new MethodGen(method, javaClass.getClassName(), constants);
-        MethodVisitor visitor = new MethodVisitor(mg, javaClass, this.pattern);
-        visitor.start(); 
+        ExceptionTable thrown = method.getExceptionTable();
+        if (thrown != null) {
+            for (int index : thrown.getExceptionIndexTable())
+                addClassEdge(index);
+        }
+        Code code = method.getCode();
+        if (code != null) {
+            for (CodeException handler : code.getExceptionTable())
+                addClassEdge(handler.getCatchType());
+        }
+
+        MethodVisitor visitor = new MethodVisitor(method, javaClass, this.sink, this);
+        visitor.start();
     }
 
     public void start() {
         visitJavaClass(javaClass);
     }
+
+    /**
+     * The instructions of the methods visited.
+     */
+    public int getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * The calls and class references found, duplicates included, that the
+     * rules kept.
+     */
+    public int getKeptEdges() {
+        return keptEdges;
+    }
+
+    public int getRejectedEdges() {
+        return rejectedEdges;
+    }
 }
@@ -0,0 +1,193 @@
+package splab.ufcg.calltrack.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches the jars and class directories of a classpath with a
+ * {@link WatchService} and hands what changed in them to a
+ * {@link GraphUpdater}: a jar that changed is read again, and only its
+ * classes that changed are visited, while a class file that changed in a
+ * directory is read on its own.
+ *
+ * Changes are taken once the files stay quiet for a moment, so that a build
+ * writing many of them, or writing a jar in many steps, makes one update.
+ */
+public class ClasspathWatcher implements Closeable {
+
+	private static final Logger LOG = Logger.getLogger(ClasspathWatcher.class.getName());
+	private static final long QUIET_MILLIS = 300;
+
+	private List<File> archives;
+	private GraphUpdater updater;
+	private int workers;
+	private WatchService service;
+	private Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+	// by the absolute path of the jar or directory
+	private Map<Path, File> jars = new HashMap<Path, File>();
+	private Map<Path, File> classDirectories = new HashMap<Path, File>();
+
+	public ClasspathWatcher(List<File> archives, GraphUpdater updater, int workers) throws IOException {
+		this.archives = archives;
+		this.updater = updater;
+		this.workers = workers;
+		this.service = FileSystems.getDefault().newWatchService();
+		for (File archive : archives) {
+			Path path = archive.toPath().toAbsolutePath().normalize();
+			if (archive.isDirectory()) {
+				classDirectories.put(path, archive);
+				registerTree(path);
+			} else {
+				// a jar is usually replaced by the build, so its directory is watched
+				jars.put(path, archive);
+				register(path.getParent());
+			}
+		}
+	}
+
+	private void register(Path directory) throws IOException {
+		if (!directories.containsValue(directory))
+			directories.put(directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), directory);
+	}
+
+	private void registerTree(Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes)
+					throws IOException {
+				register(directory);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Waits for jars or class files to change and reads them with the
+	 * updater, returning the number of jars and class files read. Jars that
+	 * can not be read, like one the build is still writing, are left for the
+	 * next change.
+	 */
+	public int take() throws InterruptedException {
+		Set<File> changedJars = new LinkedHashSet<File>();
+		// the class directory of every class file
+		Map<File, File> changedClasses = new LinkedHashMap<File, File>();
+		boolean overflow = false;
+
+		WatchKey key = service.take();
+		do {
+			Path directory = directories.get(key);
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+					overflow = true;
+					continue;
+				}
+				Path path = directory.resolve((Path) event.context());
+				if (jars.containsKey(path)) {
+					changedJars.add(jars.get(path));
+					continue;
+				}
+				File root = classDirectoryOf(path);
+				if (root == null)
+					continue;
+				if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path))
+					overflow |= !addTree(path, root, changedClasses);
+				else if (path.toString().endsWith(".class"))
+					changedClasses.put(path.toFile(), root);
+			}
+			if (!key.reset())
+				directories.remove(key);
+		} while ((key = service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+		if (overflow) {
+			// events were lost, everything is read again
+			changedJars.addAll(archives);
+			changedClasses.clear();
+		}
+		int read = 0;
+		for (File archive : changedJars) {
+			if (!archive.exists()) {
+				LOG.info(archive + " is gone, its classes are kept until it is back");
+				continue;
+			}
+			try {
+				int failures = updater.scan(Collections.singletonList(archive), workers);
+				if (failures > 0)
+					LOG.info("Could not read " + failures + " classes of " + archive + " yet");
+				else
+					read++;
+			} catch (IOException e) {
+				LOG.info("Could not read " + archive + " yet: " + e.getMessage());
+			}
+		}
+		for (Map.Entry<File, File> changed : changedClasses.entrySet()) {
+			try {
+				updater.read(changed.getValue(), changed.getKey());
+				read++;
+			} catch (IOException e) {
+				LOG.info("Could not read " + changed.getKey() + " yet: " + e.getMessage());
+			}
+		}
+		if (LOG.isLoggable(Level.FINE))
+			LOG.fine("Read " + read + " changed jars and class files, " + updater.pendingClasses()
+					+ " classes changed");
+		return read;
+	}
+
+	/**
+	 * The class directory a path is in, null for none.
+	 */
+	private File classDirectoryOf(Path path) {
+		for (Map.Entry<Path, File> directory : classDirectories.entrySet()) {
+			if (path.startsWith(directory.getKey()))
+				return directory.getValue();
+		}
+		return null;
+	}
+
+	/**
+	 * Watches a directory created in a class directory, and takes the class
+	 * files already in it as changed. Returns false when it could not.
+	 */
+	private boolean addTree(Path directory, final File root, final Map<File, File> changedClasses) {
+		try {
+			registerTree(directory);
+			Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+					if (file.toString().endsWith(".class"))
+						changedClasses.put(file.toFile(), root);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+			return true;
+		} catch (IOException e) {
+			LOG.info("Could not watch " + directory + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	public void close() throws IOException {
+		service.close();
+	}
+
+}
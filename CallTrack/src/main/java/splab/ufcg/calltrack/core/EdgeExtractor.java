@@ -0,0 +1,91 @@
+package splab.ufcg.calltrack.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.apache.bcel.classfile.ClassParser;
+
+import splab.ufcg.calltrack.stats.RunStats;
+
+/**
+ * Parses the classes handed out by the {@link JarScanner} and visits them,
+ * collecting the edges in a shared {@link EdgeSink}. Classes rejected by the
+ * {@link ClassFilePreFilter} are not parsed at all, and classes found in the
+ * optional {@link AnalysisCache} are replayed from it. Every class is
+ * counted in the {@link RunStats} of the run.
+ */
+public class EdgeExtractor implements JarScanner.ClassHandler {
+
+	private String pattern;
+	private PackageMatcher matcher;
+	private EdgeSink sink;
+	private ClassFilePreFilter preFilter;
+	private AnalysisCache cache;
+	private RunStats stats;
+
+	public EdgeExtractor(String pattern, EdgeSink sink) {
+		this(pattern, sink, null);
+	}
+
+	public EdgeExtractor(String pattern, EdgeSink sink, AnalysisCache cache) {
+		this(pattern, sink, cache, new RunStats());
+	}
+
+	public EdgeExtractor(String pattern, EdgeSink sink, AnalysisCache cache, RunStats stats) {
+		this.pattern = pattern;
+		this.sink = sink;
+		this.cache = cache;
+		this.stats = stats;
+		this.matcher = new PackageMatcher(pattern);
+		this.preFilter = new ClassFilePreFilter(matcher);
+	}
+
+	public void handle(String entryName, String source, byte[] classBytes) throws Exception {
+		EdgeSink classEdges = extract(entryName, classBytes);
+		if (classEdges != null)
+			sink.addAll(classEdges);
+	}
+
+	/**
+	 * The edges of one class, replayed from the cache or visited, in a sink
+	 * of their own, or null when the class is skipped.
+	 */
+	public EdgeSink extract(String entryName, byte[] classBytes) throws IOException {
+		if (matcher.excludes(entryName, 0, entryName.length() - ".class".length())
+				|| !preFilter.accepts(classBytes)) {
+			stats.countSkippedClass();
+			return null;
+		}
+
+		EdgeSink classEdges = new EdgeSink(sink.getSymbols());
+		AnalysisCache.Key key = null;
+		if (cache != null) {
+			key = AnalysisCache.keyOf(this.pattern, classBytes);
+			if (cache.replay(key, classEdges)) {
+				stats.countCachedClass();
+				return classEdges;
+			}
+		}
+
+		visit(entryName, classBytes, classEdges);
+		if (cache != null)
+			cache.put(key, classEdges);
+		return classEdges;
+	}
+
+	private void visit(String entryName, byte[] classBytes, EdgeSink target) throws IOException {
+		ClassParser cp = new ClassParser(new ByteArrayInputStream(classBytes), entryName);
+		ClassVisitor visitor = new ClassVisitor(cp.parse(), this.matcher, target);
+		visitor.start();
+		stats.countVisitedClass(visitor.getInstructions(), visitor.getKeptEdges(), visitor.getRejectedEdges());
+	}
+
+	public int getSkippedClasses() {
+		return (int) stats.getClassesSkipped();
+	}
+
+	public int getCachedClasses() {
+		return (int) stats.getClassesCached();
+	}
+
+}
@@ -0,0 +1,118 @@
+package splab.ufcg.calltrack.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import splab.ufcg.calltrack.model.SymbolTable;
+import splab.ufcg.calltrack.utils.LongHashSet;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+/**
+ * Destination for the edges found while visiting classes. Edges are kept as
+ * packed pairs of symbol ids: method edges go from the calling method to the
+ * invoked one, class edges from the visited class to the referenced one.
+ *
+ * The scanner workers fill a sink of their own per class and merge it into
+ * the shared sink of the run with {@link #addAll(EdgeSink)}, which is the only
+ * synchronized step.
+ *
+ * The sink also keeps what the {@link ClassHierarchy} is built from: the
+ * type of every visited class, the classes instantiated by their code, and
+ * which method edges are virtual calls that may reach an override.
+ */
+public class EdgeSink {
+
+	private SymbolTable symbols;
+	private LongHashSet edgesMethods = new LongHashSet();
+	private LongHashSet edgesClass = new LongHashSet();
+	private LongHashSet virtualCalls = new LongHashSet();
+	private LongHashSet instantiated = new LongHashSet();
+	private List<int[]> types = new ArrayList<int[]>();
+
+	public EdgeSink(SymbolTable symbols) {
+		this.symbols = symbols;
+	}
+
+	public SymbolTable getSymbols() {
+		return symbols;
+	}
+
+	public void addMethodEdge(int callerMethodId, int calleeMethodId) {
+		edgesMethods.add(PackedEdge.of(callerMethodId, calleeMethodId));
+	}
+
+	public void addClassEdge(int fromClassId, int referencedClassId) {
+		edgesClass.add(PackedEdge.of(fromClassId, referencedClassId));
+	}
+
+	/**
+	 * A method edge that goes through an invokevirtual or an invokeinterface.
+	 */
+	public void addVirtualCall(int callerMethodId, int calleeMethodId) {
+		addMethodEdge(callerMethodId, calleeMethodId);
+		virtualCalls.add(PackedEdge.of(callerMethodId, calleeMethodId));
+	}
+
+	public void addInstantiated(int classId) {
+		instantiated.add(classId);
+	}
+
+	/**
+	 * The type of a visited class: its flags ({@link ClassHierarchy#INTERFACE}
+	 * and the others), its super class and interfaces, and the methods it
+	 * declares that can be invoked virtually.
+	 */
+	public void addType(int classId, int flags, int[] supertypeIds, int[] methodIds) {
+		int[] type = new int[3 + supertypeIds.length + methodIds.length];
+		type[0] = classId;
+		type[1] = flags;
+		type[2] = supertypeIds.length;
+		System.arraycopy(supertypeIds, 0, type, 3, supertypeIds.length);
+		System.arraycopy(methodIds, 0, type, 3 + supertypeIds.length, methodIds.length);
+		types.add(type);
+	}
+
+	public synchronized void addAll(EdgeSink other) {
+		edgesMethods.addAll(other.edgesMethods);
+		edgesClass.addAll(other.edgesClass);
+		virtualCalls.addAll(other.virtualCalls);
+		instantiated.addAll(other.instantiated);
+		types.addAll(other.types);
+	}
+
+	/**
+	 * Adds what the {@link ClassHierarchy} is built from, the types, the
+	 * instantiated classes and the virtual calls of the other sink, without
+	 * its edges.
+	 */
+	synchronized void addHierarchyOf(EdgeSink other) {
+		virtualCalls.addAll(other.virtualCalls);
+		instantiated.addAll(other.instantiated);
+		types.addAll(other.types);
+	}
+
+	public synchronized long[] getMethodEdges() {
+		return edgesMethods.toArray();
+	}
+
+	public synchronized long[] getClassEdges() {
+		return edgesClass.toArray();
+	}
+
+	public synchronized long[] getVirtualCalls() {
+		return virtualCalls.toArray();
+	}
+
+	public synchronized long[] getInstantiated() {
+		return instantiated.toArray();
+	}
+
+	/**
+	 * The types added so far, each one as {classId, flags, supertypes,
+	 * supertypeIds..., methodIds...}.
+	 */
+	public synchronized List<int[]> getTypes() {
+		return new ArrayList<int[]>(types);
+	}
+
+}
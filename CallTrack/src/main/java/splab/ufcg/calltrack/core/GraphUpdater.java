@@ -0,0 +1,266 @@
+package splab.ufcg.calltrack.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import splab.ufcg.calltrack.exceptions.NodeNotFoundException;
+import splab.ufcg.calltrack.model.Graph;
+import splab.ufcg.calltrack.model.GraphDelta;
+import splab.ufcg.calltrack.model.SymbolTable;
+import splab.ufcg.calltrack.model.TypeNode;
+import splab.ufcg.calltrack.utils.LongIntHashMap;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+/**
+ * Keeps the edges of every class of the jars and class directories read, so
+ * that when some of them change only those are visited again and the graphs
+ * get the edges they gained and lose the ones they lost, instead of being
+ * built again.
+ *
+ * An edge of the graphs can come from more than one class, the inner classes
+ * of a class sharing its node of the class graph, and from the hierarchy of
+ * the classes with CHA or RTA, so every edge counts the classes it comes
+ * from. It is put in the graph when its count leaves 0 and removed when the
+ * count goes back to 0, along with the nodes it leaves without edges. The
+ * edges of the new classes are counted before the ones of the old classes
+ * are dropped, so the nodes and edges that stay are never removed on the way.
+ *
+ * Classes are read from many threads, {@link #apply()} runs on one.
+ */
+public class GraphUpdater {
+
+	private static final ClassEdges DELETED = new ClassEdges(null, null);
+
+	private String pattern;
+	private EdgeExtractor extractor;
+	private SymbolTable symbols;
+	private Graph graphOfClass;
+	private Graph graphOfMethods;
+	private ClassHierarchy.Resolution resolution;
+	// by the source of the class, its file or "archive!/entry"
+	private Map<String, ClassEdges> classes = new ConcurrentHashMap<String, ClassEdges>();
+	private Map<String, ClassEdges> pending = new ConcurrentHashMap<String, ClassEdges>();
+	// the edges added by the resolution of the virtual calls
+	private EdgeSink expansion;
+	private LongIntHashMap methodEdgeCounts = new LongIntHashMap();
+	private LongIntHashMap classEdgeCounts = new LongIntHashMap();
+
+	public GraphUpdater(String pattern, EdgeExtractor extractor, SymbolTable symbols, Graph graphOfClass,
+			Graph graphOfMethods, ClassHierarchy.Resolution resolution) {
+		this.pattern = pattern;
+		this.extractor = extractor;
+		this.symbols = symbols;
+		this.graphOfClass = graphOfClass;
+		this.graphOfMethods = graphOfMethods;
+		this.resolution = resolution;
+	}
+
+	/**
+	 * Reads every class of the jars and class directories, all of them at
+	 * once, and keeps the ones that are new or changed since the last time,
+	 * and the ones that are gone, for {@link #apply()}. Returns the number of
+	 * classes that could not be read; when there are any, no class is taken
+	 * as gone.
+	 */
+	public int scan(List<File> archives, int workers) throws IOException, InterruptedException {
+		final Set<String> seen = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		JarScanner scanner = new JarScanner(archives, workers, workers * CallTrack.QUEUE_SLOTS_PER_WORKER);
+		int failures = scanner.scan(new JarScanner.ClassHandler() {
+			public void handle(String entryName, String source, byte[] classBytes) throws Exception {
+				seen.add(source);
+				read(source, entryName, classBytes);
+			}
+		});
+		// the classes that could not be read are not taken as gone
+		if (failures > 0)
+			return failures;
+		List<String> prefixes = new ArrayList<String>();
+		for (File archive : archives)
+			prefixes.add(archive.getPath() + (archive.isDirectory() ? File.separator : "!/"));
+		for (String key : classes.keySet()) {
+			if (seen.contains(key))
+				continue;
+			for (String prefix : prefixes) {
+				if (key.startsWith(prefix)) {
+					pending.put(key, DELETED);
+					break;
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Reads one class file of a class directory, or takes it as gone when it
+	 * does not exist anymore.
+	 */
+	public void read(File directory, File classFile) throws IOException {
+		Path root = directory.toPath().toAbsolutePath().normalize();
+		String relative = root.relativize(classFile.toPath().toAbsolutePath().normalize()).toString();
+		String entryName = relative.replace(File.separatorChar, '/');
+		// the source the scan gives the file
+		String key = new File(directory, relative).getPath();
+		if (!classFile.isFile()) {
+			if (classes.containsKey(key))
+				pending.put(key, DELETED);
+			return;
+		}
+		read(key, entryName, JarScanner.readFully(new FileInputStream(classFile), classFile.length()));
+	}
+
+	private void read(String key, String entryName, byte[] classBytes) throws IOException {
+		AnalysisCache.Key hash = AnalysisCache.keyOf(pattern, classBytes);
+		ClassEdges known = classes.get(key);
+		if (known != null && known.hash.equals(hash)) {
+			pending.remove(key);
+			return;
+		}
+		pending.put(key, new ClassEdges(hash, extractor.extract(entryName, classBytes)));
+	}
+
+	/**
+	 * The classes read that are new, changed or gone, not applied yet.
+	 */
+	public int pendingClasses() {
+		return pending.size();
+	}
+
+	/**
+	 * Puts in the graphs the edges of the classes read since the last time
+	 * and removes the ones of the classes they replace, returning what
+	 * changed in the class graph and in the method graph.
+	 */
+	public List<GraphDelta> apply() throws NodeNotFoundException {
+		GraphDelta classDelta = new GraphDelta(CallTrack.CLASS_GRAPH);
+		GraphDelta methodDelta = new GraphDelta(CallTrack.METHOD_GRAPH);
+		if (pending.isEmpty())
+			return Arrays.asList(classDelta, methodDelta);
+
+		List<EdgeSink> replaced = new ArrayList<EdgeSink>();
+		for (Map.Entry<String, ClassEdges> change : pending.entrySet()) {
+			ClassEdges now = change.getValue();
+			ClassEdges before = now == DELETED ? classes.remove(change.getKey()) : classes.put(change.getKey(), now);
+			if (now != DELETED)
+				count(now.edges, 1, classDelta, methodDelta);
+			if (before != null)
+				replaced.add(before.edges);
+		}
+		pending.clear();
+
+		if (resolution != ClassHierarchy.Resolution.DECLARED) {
+			replaced.add(expansion);
+			expansion = expand();
+			count(expansion, 1, classDelta, methodDelta);
+		}
+		for (EdgeSink edges : replaced)
+			count(edges, -1, classDelta, methodDelta);
+		return Arrays.asList(classDelta, methodDelta);
+	}
+
+	/**
+	 * The edges from the callers of the virtual calls of every class to the
+	 * overrides they can dispatch to.
+	 */
+	private EdgeSink expand() {
+		EdgeSink hierarchy = new EdgeSink(symbols);
+		for (ClassEdges known : classes.values()) {
+			if (known.edges != null)
+				hierarchy.addHierarchyOf(known.edges);
+		}
+		ClassHierarchy.of(hierarchy).expand(hierarchy, resolution);
+		return hierarchy;
+	}
+
+	/**
+	 * Adds by to the counts of the edges of the sink, in the direction of
+	 * the graphs, skipping the ones {@link CallTrack#putEdges()} skips.
+	 */
+	private void count(EdgeSink edges, int by, GraphDelta classDelta, GraphDelta methodDelta)
+			throws NodeNotFoundException {
+		if (edges == null)
+			return;
+		for (long edge : edges.getMethodEdges()) {
+			int callerId = PackedEdge.from(edge);
+			int calleeId = PackedEdge.to(edge);
+			if (callerId != calleeId && !CallTrack.isClassInitializer(symbols, callerId))
+				count(graphOfMethods, methodEdgeCounts, PackedEdge.of(calleeId, callerId), true, by, methodDelta);
+		}
+		for (long edge : edges.getClassEdges()) {
+			int classId = PackedEdge.from(edge);
+			int referencedId = PackedEdge.to(edge);
+			if (classId != referencedId)
+				count(graphOfClass, classEdgeCounts, PackedEdge.of(referencedId, classId), false, by, classDelta);
+		}
+	}
+
+	private void count(Graph graph, LongIntHashMap counts, long edge, boolean methods, int by, GraphDelta delta)
+			throws NodeNotFoundException {
+		int count = counts.get(edge, 0) + by;
+		if (count > 0)
+			counts.put(edge, count);
+		else
+			counts.remove(edge, 0);
+		if (by > 0 ? count != 1 : count != 0)
+			return;
+
+		String fromNodeId = nodeId(PackedEdge.from(edge), methods);
+		String toNodeId = nodeId(PackedEdge.to(edge), methods);
+		if (by > 0) {
+			putNode(graph, fromNodeId, delta);
+			putNode(graph, toNodeId, delta);
+			graph.putEdge(fromNodeId, toNodeId);
+			delta.addEdge(fromNodeId, toNodeId);
+		} else {
+			graph.removeEdge(fromNodeId, toNodeId);
+			delta.removeEdge(fromNodeId, toNodeId);
+			removeIfAlone(graph, fromNodeId, delta);
+			removeIfAlone(graph, toNodeId, delta);
+		}
+	}
+
+	private String nodeId(int symbolId, boolean methods) {
+		return methods ? symbols.methodNodeId(symbolId) : symbols.className(symbolId);
+	}
+
+	private static void putNode(Graph graph, String nodeId, GraphDelta delta) {
+		if (!graph.containsNode(nodeId)) {
+			graph.putNode(nodeId, TypeNode.NORMAL);
+			delta.addNode(nodeId);
+		}
+	}
+
+	/**
+	 * Removes a node left without edges. The ones linked to an artifact keep
+	 * that edge, and stay.
+	 */
+	private static void removeIfAlone(Graph graph, String nodeId, GraphDelta delta) {
+		if (graph.containsNode(nodeId) && graph.degree(nodeId) == 0) {
+			graph.removeNode(nodeId);
+			delta.removeNode(nodeId);
+		}
+	}
+
+	/**
+	 * The hash of the bytes of a class and its edges, null when the class is
+	 * skipped.
+	 */
+	private static class ClassEdges {
+		private AnalysisCache.Key hash;
+		private EdgeSink edges;
+
+		ClassEdges(AnalysisCache.Key hash, EdgeSink edges) {
+			this.hash = hash;
+			this.edges = edges;
+		}
+	}
+
+}
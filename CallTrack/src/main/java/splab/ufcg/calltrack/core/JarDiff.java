@@ -0,0 +1,223 @@
+package splab.ufcg.calltrack.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.MethodGen;
+
+/**
+ * The methods and classes matching the pattern that were added, removed or
+ * modified between two versions of a jar. Both jars are scanned at the same
+ * time and every class is reduced to the {@link BytecodeHasher} fingerprints
+ * of its methods as soon as it is parsed, so only the ids and their hashes
+ * are kept in memory.
+ *
+ * Ids are the ones of the graphs: "package.Class:method" for methods, where
+ * the overloads of a method share one id, and the outer class name for
+ * classes, which also changes when one of its inner classes does.
+ */
+public class JarDiff {
+
+	private static final int QUEUE_SLOTS_PER_WORKER = 16;
+
+	private List<String> addedMethods = new ArrayList<String>();
+	private List<String> removedMethods = new ArrayList<String>();
+	private List<String> modifiedMethods = new ArrayList<String>();
+	private List<String> addedClasses = new ArrayList<String>();
+	private List<String> removedClasses = new ArrayList<String>();
+	private List<String> modifiedClasses = new ArrayList<String>();
+
+	private JarDiff() {
+	}
+
+	public static JarDiff compare(File oldJar, File newJar, String pattern, int workers)
+			throws IOException, InterruptedException {
+		return compare(Collections.singletonList(oldJar), Collections.singletonList(newJar), pattern, workers);
+	}
+
+	/**
+	 * Compares two versions of a classpath, each a list of jars and class
+	 * directories read as one by {@link JarScanner}.
+	 */
+	public static JarDiff compare(List<File> oldArchives, List<File> newArchives, String pattern, int workers)
+			throws IOException, InterruptedException {
+		int workersPerJar = Math.max(1, workers / 2);
+		PackageMatcher matcher = new PackageMatcher(pattern);
+		Fingerprints before = new Fingerprints(matcher);
+		Fingerprints after = new Fingerprints(matcher);
+
+		ExecutorService oldScan = Executors.newSingleThreadExecutor();
+		try {
+			Future<Integer> done = oldScan.submit(scan(oldArchives, workersPerJar, before));
+			int failures = new JarScanner(newArchives, workersPerJar, workersPerJar * QUEUE_SLOTS_PER_WORKER)
+					.scan(after);
+			failures += done.get();
+			// a class that could not be read would be taken as removed
+			if (failures > 0)
+				throw new IOException(failures + " classes could not be read");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof InterruptedException)
+				throw (InterruptedException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			oldScan.shutdownNow();
+		}
+
+		JarDiff diff = new JarDiff();
+		compare(before.methods, after.methods, diff.addedMethods, diff.removedMethods, diff.modifiedMethods);
+		compare(before.classes, after.classes, diff.addedClasses, diff.removedClasses, diff.modifiedClasses);
+		return diff;
+	}
+
+	private static Callable<Integer> scan(final List<File> archives, final int workers,
+			final Fingerprints fingerprints) {
+		return new Callable<Integer>() {
+			public Integer call() throws Exception {
+				return new JarScanner(archives, workers, workers * QUEUE_SLOTS_PER_WORKER).scan(fingerprints);
+			}
+		};
+	}
+
+	private static void compare(Map<String, Long> before, Map<String, Long> after, List<String> added,
+			List<String> removed, List<String> modified) {
+		for (Map.Entry<String, Long> entry : after.entrySet()) {
+			Long old = before.get(entry.getKey());
+			if (old == null)
+				added.add(entry.getKey());
+			else if (!old.equals(entry.getValue()))
+				modified.add(entry.getKey());
+		}
+		for (String id : before.keySet()) {
+			if (!after.containsKey(id))
+				removed.add(id);
+		}
+		Collections.sort(added);
+		Collections.sort(removed);
+		Collections.sort(modified);
+	}
+
+	/**
+	 * Every id that was added, removed or modified. Ids that are not in the
+	 * graph of the new jar, like the removed ones, are ignored by the impact
+	 * analysis.
+	 */
+	public List<String> getChangedIds() {
+		List<String> ids = new ArrayList<String>();
+		ids.addAll(addedMethods);
+		ids.addAll(removedMethods);
+		ids.addAll(modifiedMethods);
+		ids.addAll(addedClasses);
+		ids.addAll(removedClasses);
+		ids.addAll(modifiedClasses);
+		return ids;
+	}
+
+	public List<String> getAddedMethods() {
+		return addedMethods;
+	}
+
+	public List<String> getRemovedMethods() {
+		return removedMethods;
+	}
+
+	public List<String> getModifiedMethods() {
+		return modifiedMethods;
+	}
+
+	public List<String> getAddedClasses() {
+		return addedClasses;
+	}
+
+	public List<String> getRemovedClasses() {
+		return removedClasses;
+	}
+
+	public List<String> getModifiedClasses() {
+		return modifiedClasses;
+	}
+
+	/**
+	 * Hashes the classes of one jar whose name matches the pattern. The
+	 * overloads of a method are combined in the order of their descriptors,
+	 * and the methods of a class in the order of their names and
+	 * descriptors, so a body moved from one overload to another changes the
+	 * hash. The inner classes of a class are summed into one hash, each with
+	 * its own name, which does not depend on the order they come in.
+	 */
+	private static class Fingerprints implements JarScanner.ClassHandler {
+		private PackageMatcher matcher;
+		private ThreadLocal<BytecodeHasher> hashers = new ThreadLocal<BytecodeHasher>() {
+			protected BytecodeHasher initialValue() {
+				return new BytecodeHasher();
+			}
+		};
+		private Map<String, Long> methods = new HashMap<String, Long>();
+		private Map<String, Long> classes = new HashMap<String, Long>();
+
+		Fingerprints(PackageMatcher matcher) {
+			this.matcher = matcher;
+		}
+
+		public void handle(String entryName, String source, byte[] classBytes) throws Exception {
+			if (!matcher.matches(entryName, 0, entryName.length() - ".class".length()))
+				return;
+
+			JavaClass javaClass = new ClassParser(new ByteArrayInputStream(classBytes), entryName).parse();
+			ConstantPoolGen constants = new ConstantPoolGen(javaClass.getConstantPool());
+			BytecodeHasher hasher = hashers.get();
+			// by name and descriptor
+			Map<String, Long> signatures = new TreeMap<String, Long>();
+			for (Method method : javaClass.getMethods()) {
+				signatures.put(method.getName() + method.getSignature(),
+						hasher.hashMethod(new MethodGen(method, javaClass.getClassName(), constants)));
+			}
+
+			long classHash = combine(hasher.hashClass(javaClass), javaClass.getClassName().hashCode());
+			Map<String, Long> methodHashes = new HashMap<String, Long>();
+			for (Map.Entry<String, Long> signature : signatures.entrySet()) {
+				String id = javaClass.getClassName() + ":"
+						+ signature.getKey().substring(0, signature.getKey().indexOf('('));
+				Long overloads = methodHashes.get(id);
+				methodHashes.put(id, overloads != null ? combine(overloads, signature.getValue()) : signature.getValue());
+				classHash = combine(classHash, signature.getValue());
+			}
+
+			synchronized (this) {
+				add(classes, ClassVisitor.classNodeName(javaClass.getClassName()), classHash);
+				for (Map.Entry<String, Long> method : methodHashes.entrySet())
+					add(methods, method.getKey(), method.getValue());
+			}
+		}
+
+		/**
+		 * Mixes a value into a hash, in an order that matters.
+		 */
+		private static long combine(long hash, long value) {
+			return (Long.rotateLeft(hash, 31) ^ value) * 0x9e3779b97f4a7c15L;
+		}
+
+		private static void add(Map<String, Long> hashes, String id, long hash) {
+			Long previous = hashes.get(id);
+			hashes.put(id, previous != null ? previous + hash : hash);
+		}
+	}
+
+}
@@ -0,0 +1,278 @@
+package splab.ufcg.calltrack.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Two stage pipeline over the classes of a classpath of jars and class
+ * directories. Every archive is opened once by a reader thread of its own,
+ * up to one per worker, which inflates the .class entries into a bounded
+ * queue; a pool of worker threads takes them from the queue and hands them
+ * to a {@link ClassHandler}.
+ *
+ * Jars nested in a jar, like the BOOT-INF/lib jars of a Spring Boot jar,
+ * are read as a stream from the outer one, without being extracted. The
+ * classes under BOOT-INF/classes and WEB-INF/classes are named from there.
+ *
+ * A class the handler fails on is reported and counted, and the scan goes
+ * on with the others. An error thrown by the handler stops the workers from
+ * handling more classes; they still take what is queued, so the readers are
+ * never left waiting, and the error is thrown again by {@link #scan}.
+ */
+public class JarScanner {
+
+	/**
+	 * Receives the bytes of every class found in the jar, with the name of its
+	 * entry from the root of its package and its source, the path of its file
+	 * or "archive!/entry", nested jars included, which tells apart the classes
+	 * of the same name. Called concurrently from the worker threads.
+	 */
+	public interface ClassHandler {
+		void handle(String entryName, String source, byte[] classBytes) throws Exception;
+	}
+
+	private static final ClassEntry END = new ClassEntry(null, null, null);
+	private static final String[] CLASS_ROOTS = { "BOOT-INF/classes/", "WEB-INF/classes/" };
+
+	private List<File> archives;
+	private int workers;
+	private int queueCapacity;
+
+	public JarScanner(File jarFile, int workers, int queueCapacity) {
+		this(Collections.singletonList(jarFile), workers, queueCapacity);
+	}
+
+	public JarScanner(List<File> archives, int workers, int queueCapacity) {
+		if (workers < 1)
+			throw new IllegalArgumentException("At least one worker is needed, got " + workers);
+		if (queueCapacity < 1)
+			throw new IllegalArgumentException("Queue capacity must be positive, got " + queueCapacity);
+		this.archives = archives;
+		this.workers = workers;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Hands every class to the handler, returning the number of classes it
+	 * failed on.
+	 */
+	public int scan(ClassHandler handler) throws IOException, InterruptedException {
+		BlockingQueue<ClassEntry> queue = new ArrayBlockingQueue<ClassEntry>(queueCapacity);
+		AtomicInteger failures = new AtomicInteger();
+		AtomicReference<Error> error = new AtomicReference<Error>();
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		try {
+			for (int i = 0; i < workers; i++)
+				pool.execute(new Worker(queue, handler, failures, error));
+
+			read(queue);
+
+			for (int i = 0; i < workers; i++)
+				queue.put(END);
+			pool.shutdown();
+			while (!pool.awaitTermination(1, TimeUnit.SECONDS))
+				;
+		} finally {
+			// stops the workers when the classes could not all be read
+			pool.shutdownNow();
+		}
+		if (error.get() != null)
+			throw error.get();
+		return failures.get();
+	}
+
+	private void read(final BlockingQueue<ClassEntry> queue) throws IOException, InterruptedException {
+		if (archives.size() == 1) {
+			read(archives.get(0), queue);
+			return;
+		}
+
+		ExecutorService readers = Executors.newFixedThreadPool(Math.min(archives.size(), workers));
+		try {
+			List<Future<Void>> done = new ArrayList<Future<Void>>();
+			for (final File archive : archives) {
+				done.add(readers.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						read(archive, queue);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> archive : done)
+				archive.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof InterruptedException)
+				throw (InterruptedException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			readers.shutdownNow();
+		}
+	}
+
+	private static void read(File archive, BlockingQueue<ClassEntry> queue) throws IOException, InterruptedException {
+		if (archive.isDirectory()) {
+			readDirectory(archive, "", queue);
+			return;
+		}
+
+		JarFile jar = new JarFile(archive);
+		try {
+			Enumeration<JarEntry> entries = jar.entries();
+			while (entries.hasMoreElements()) {
+				JarEntry entry = entries.nextElement();
+				if (entry.isDirectory())
+					continue;
+
+				String source = archive + "!/" + entry.getName();
+				if (entry.getName().endsWith(".class")) {
+					queue.put(new ClassEntry(className(entry.getName()), readFully(jar.getInputStream(entry),
+							entry.getSize()), source));
+				} else if (entry.getName().endsWith(".jar")) {
+					ZipInputStream nested = new ZipInputStream(jar.getInputStream(entry));
+					try {
+						readNested(nested, source, queue);
+					} finally {
+						nested.close();
+					}
+				}
+			}
+		} finally {
+			jar.close();
+		}
+	}
+
+	/**
+	 * Reads the classes of a jar nested in another one, and of the jars
+	 * nested in it, as they come in the stream.
+	 */
+	private static void readNested(ZipInputStream jar, String jarSource, BlockingQueue<ClassEntry> queue)
+			throws IOException, InterruptedException {
+		for (ZipEntry entry = jar.getNextEntry(); entry != null; entry = jar.getNextEntry()) {
+			String source = jarSource + "!/" + entry.getName();
+			if (entry.isDirectory())
+				continue;
+			if (entry.getName().endsWith(".class"))
+				queue.put(new ClassEntry(className(entry.getName()), read(jar, entry.getSize()), source));
+			else if (entry.getName().endsWith(".jar"))
+				readNested(new ZipInputStream(jar), source, queue);
+		}
+	}
+
+	private static void readDirectory(File directory, String path, BlockingQueue<ClassEntry> queue)
+			throws IOException, InterruptedException {
+		File[] files = directory.listFiles();
+		if (files == null)
+			throw new IOException("Could not list " + directory);
+		for (File file : files) {
+			String name = path + file.getName();
+			if (file.isDirectory())
+				readDirectory(file, name + "/", queue);
+			else if (name.endsWith(".class"))
+				queue.put(new ClassEntry(name, readFully(new FileInputStream(file), file.length()), file.getPath()));
+		}
+	}
+
+	/**
+	 * The name of the entry of a class from the root of its package, where
+	 * the class loader finds it.
+	 */
+	static String className(String entryName) {
+		for (String root : CLASS_ROOTS) {
+			if (entryName.startsWith(root))
+				return entryName.substring(root.length());
+		}
+		return entryName;
+	}
+
+	static byte[] readFully(InputStream in, long size) throws IOException {
+		try {
+			return read(in, size);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the stream to its end, leaving it open.
+	 */
+	private static byte[] read(InputStream in, long size) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(size > 0 ? (int) size : 4096);
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1)
+			out.write(buffer, 0, read);
+		return out.toByteArray();
+	}
+
+	private static class ClassEntry {
+		private String name;
+		private byte[] bytes;
+		// where the class was read from
+		private String source;
+
+		ClassEntry(String name, byte[] bytes, String source) {
+			this.name = name;
+			this.bytes = bytes;
+			this.source = source;
+		}
+	}
+
+	private static class Worker implements Runnable {
+		private BlockingQueue<ClassEntry> queue;
+		private ClassHandler handler;
+		private AtomicInteger failures;
+		private AtomicReference<Error> error;
+
+		Worker(BlockingQueue<ClassEntry> queue, ClassHandler handler, AtomicInteger failures,
+				AtomicReference<Error> error) {
+			this.queue = queue;
+			this.handler = handler;
+			this.failures = failures;
+			this.error = error;
+		}
+
+		public void run() {
+			try {
+				for (ClassEntry entry = queue.take(); entry != END; entry = queue.take()) {
+					if (error.get() != null)
+						continue;
+					try {
+						handler.handle(entry.name, entry.source, entry.bytes);
+					} catch (Exception e) {
+						failures.incrementAndGet();
+						System.err.println("Error while processing " + entry.source + ": " + e.getMessage());
+						e.printStackTrace();
+					} catch (Error e) {
+						error.compareAndSet(null, e);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
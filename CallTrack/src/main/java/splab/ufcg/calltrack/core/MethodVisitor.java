@@ -1,103 +1,160 @@
 package splab.ufcg.calltrack.core;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantPool;
 import org.apache.bcel.classfile.JavaClass;
-import org.apache.bcel.generic.ConstantPoolGen;
-import org.apache.bcel.generic.ConstantPushInstruction;
-import org.apache.bcel.generic.EmptyVisitor;
-import org.apache.bcel.generic.FieldOrMethod;
-import org.apache.bcel.generic.INVOKEINTERFACE;
-import org.apache.bcel.generic.INVOKESPECIAL;
-import org.apache.bcel.generic.INVOKESTATIC;
-import org.apache.bcel.generic.INVOKEVIRTUAL;
-import org.apache.bcel.generic.Instruction;
-import org.apache.bcel.generic.InstructionConstants;
-import org.apache.bcel.generic.InstructionHandle;
-import org.apache.bcel.generic.MethodGen;
-import org.apache.bcel.generic.NEW;
-import org.apache.bcel.generic.ReturnInstruction;
+import org.apache.bcel.classfile.Method;
 
 /**
- * The simplest of method visitors, prints any invoked method
- * signature for all method invocations.
- * 
+ * Walks the instructions of a method and records the methods it invokes, and
+ * the classes it invokes, instantiates, casts to or whose fields it uses as
+ * class edges of the {@link ClassVisitor}.
+ *
+ * The walk reads the bytes of the Code attribute as they are: only the
+ * opcodes and the constant pool indexes of the instructions are decoded, no
+ * instruction objects are built, and every constant is resolved through the
+ * per class caches of the {@link ClassVisitor}, so a method whose constants
+ * are already known is walked without allocating.
+ *
  * Class copied with modifications from CJKM: http://www.spinellis.gr/sw/ckjm/
  */
-public class MethodVisitor extends EmptyVisitor {
+public class MethodVisitor {
 
-    JavaClass visitedClass;
-    private MethodGen methodGen;
-    private ConstantPoolGen cp;
-    private String format;
-    private String pattern;
-    private List<String> peers;
-    
-    public MethodVisitor(MethodGen mGen, JavaClass javaClass,String pattern) {
-        visitedClass = javaClass;
-        methodGen = mGen;
-        cp = methodGen.getConstantPool();
-        format = visitedClass.getClassName() + ":" + methodGen.getName() 
-            + " " + "%s:%s";
-        this.pattern = pattern;
-        this.peers = new ArrayList<String>();
+    private static final byte VARIABLE = 0;
+    private static final byte[] LENGTHS = new byte[256];
+
+    static {
+        Arrays.fill(LENGTHS, (byte) 1);
+        set(2, Const.BIPUSH, Const.LDC, Const.RET, Const.NEWARRAY);
+        set(2, Const.ILOAD, Const.LLOAD, Const.FLOAD, Const.DLOAD, Const.ALOAD);
+        set(2, Const.ISTORE, Const.LSTORE, Const.FSTORE, Const.DSTORE, Const.ASTORE);
+        set(3, Const.SIPUSH, Const.LDC_W, Const.LDC2_W, Const.IINC, Const.NEW,
+                Const.ANEWARRAY, Const.CHECKCAST, Const.INSTANCEOF, Const.IFNULL, Const.IFNONNULL);
+        for (int opcode = Const.IFEQ; opcode <= Const.JSR; opcode++)
+            LENGTHS[opcode] = 3;
+        for (int opcode = Const.GETSTATIC; opcode <= Const.INVOKESTATIC; opcode++)
+            LENGTHS[opcode] = 3;
+        set(4, Const.MULTIANEWARRAY);
+        set(5, Const.INVOKEINTERFACE, Const.INVOKEDYNAMIC, Const.GOTO_W, Const.JSR_W);
+        set(VARIABLE, Const.TABLESWITCH, Const.LOOKUPSWITCH, Const.WIDE);
     }
 
-    public List<String> start() {
-        if (methodGen.isAbstract() || methodGen.isNative())
-            return null;
-        for (InstructionHandle ih = methodGen.getInstructionList().getStart(); 
-                ih != null; ih = ih.getNext()) {
-            Instruction i = ih.getInstruction();
-            
-            if (!visitInstruction(i))
-                i.accept(this);
-        }
-        
-        return peers;
+    private static void set(int length, short... opcodes) {
+        for (short opcode : opcodes)
+            LENGTHS[opcode] = (byte) length;
     }
 
-    private boolean visitInstruction(Instruction i) {
-        short opcode = i.getOpcode();
+    private JavaClass visitedClass;
+    private Method method;
+    private ConstantPool constantPool;
+    private int callerId;
+    private EdgeSink sink;
+    private ClassVisitor owner;
 
-        return ((InstructionConstants.INSTRUCTIONS[opcode] != null)
-                //&& !(i instanceof ConstantPushInstruction) 
-                && !(i instanceof ReturnInstruction));
+    public MethodVisitor(Method method, JavaClass javaClass, EdgeSink sink, ClassVisitor owner) {
+        visitedClass = javaClass;
+        this.method = method;
+        constantPool = javaClass.getConstantPool();
+        callerId = -1;
+        this.sink = sink;
+        this.owner = owner;
     }
 
-    @Override
-    public void visitINVOKEVIRTUAL(INVOKEVIRTUAL i) {
-    	String output = String.format(format,i.getReferenceType(cp),i.getMethodName(cp));
-    	if(i.getReferenceType(cp).toString().contains(this.pattern) ){
-    		ClassVisitor.edgesMethods.add(output);
-    	}
+    public void start() {
+        Code code = method.getCode();
+        if (method.isAbstract() || method.isNative() || code == null)
+            return;
+        byte[] bytes = code.getCode();
+        int pc = 0;
+        int instructions = 0;
+        while (pc < bytes.length) {
+            int opcode = bytes[pc] & 0xFF;
+            switch (opcode) {
+            case Const.INVOKEVIRTUAL:
+            case Const.INVOKEINTERFACE:
+                addEdge(index(bytes, pc + 1), true);
+                break;
+            case Const.INVOKESPECIAL:
+            case Const.INVOKESTATIC:
+                addEdge(index(bytes, pc + 1), false);
+                break;
+            case Const.GETSTATIC:
+            case Const.PUTSTATIC:
+            case Const.GETFIELD:
+            case Const.PUTFIELD:
+                owner.addClassEdge(((ConstantCP) constantPool.getConstant(index(bytes, pc + 1))).getClassIndex());
+                break;
+            case Const.NEW:
+                owner.addClassEdge(index(bytes, pc + 1));
+                owner.addInstantiated(index(bytes, pc + 1));
+                break;
+            case Const.ANEWARRAY:
+            case Const.MULTIANEWARRAY:
+            case Const.CHECKCAST:
+            case Const.INSTANCEOF:
+            case Const.LDC_W:
+                owner.addClassEdge(index(bytes, pc + 1));
+                break;
+            case Const.LDC:
+                // class literals, the other constants are not classes
+                owner.addClassEdge(bytes[pc + 1] & 0xFF);
+                break;
+            default:
+                break;
+            }
+            pc += length(bytes, pc, opcode);
+            instructions++;
+        }
+        owner.countInstructions(instructions);
     }
 
-    @Override
-    public void visitINVOKEINTERFACE(INVOKEINTERFACE i) {
-    	String output = String.format(format,i.getReferenceType(cp),i.getMethodName(cp));
-    	if(i.getReferenceType(cp).toString().contains(this.pattern) ){
-    		
-    		ClassVisitor.edgesMethods.add(output);
-    	}
+    private static int index(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
+    /**
+     * Length of the instruction at pc, switches being padded to a multiple
+     * of 4 from the start of the code.
+     */
+    static int length(byte[] bytes, int pc, int opcode) {
+        int length = LENGTHS[opcode];
+        if (length != VARIABLE)
+            return length;
+        if (opcode == Const.WIDE)
+            return (bytes[pc + 1] & 0xFF) == Const.IINC ? 6 : 4;
+
+        int operands = (pc + 4) & ~3;
+        if (opcode == Const.TABLESWITCH) {
+            int low = readInt(bytes, operands + 4);
+            int high = readInt(bytes, operands + 8);
+            return operands - pc + 12 + 4 * (high - low + 1);
+        }
+        int pairs = readInt(bytes, operands + 4);
+        return operands - pc + 8 + 8 * pairs;
     }
 
-    @Override
-    public void visitINVOKESPECIAL(INVOKESPECIAL i) {
-    	String output = String.format(format,i.getReferenceType(cp),i.getMethodName(cp));
-    	if(i.getReferenceType(cp).toString().contains(this.pattern) ){ 		
-    		ClassVisitor.edgesMethods.add(output);
-    	}
+    private static int readInt(byte[] bytes, int offset) {
+        return (index(bytes, offset) << 16) | index(bytes, offset + 2);
     }
 
-    @Override
-    public void visitINVOKESTATIC(INVOKESTATIC i) {
-    	String output = String.format(format,i.getReferenceType(cp),i.getMethodName(cp));
-    	if(i.getReferenceType(cp).toString().contains(this.pattern) ){
-    		ClassVisitor.edgesMethods.add(output);
-    	}
+    private void addEdge(int methodrefIndex, boolean virtual) {
+        int classIndex = ((ConstantCP) constantPool.getConstant(methodrefIndex)).getClassIndex();
+        owner.addCalledClassEdge(classIndex);
+        // rejected owners are dropped before any name is built
+        boolean matches = owner.matchesClassAt(classIndex);
+        owner.countCall(matches);
+        if (!matches)
+            return;
+        if (callerId < 0)
+            callerId = sink.getSymbols().internMethod(visitedClass.getClassName(), method.getName());
+        if (virtual)
+            sink.addVirtualCall(callerId, owner.methodIdAt(methodrefIndex));
+        else
+            sink.addMethodEdge(callerId, owner.methodIdAt(methodrefIndex));
     }
-    
 
 }
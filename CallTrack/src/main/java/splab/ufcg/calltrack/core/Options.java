@@ -0,0 +1,261 @@
+package splab.ufcg.calltrack.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Command line of CallTrack: the jar or classpath, the package pattern and the optional
+ * flags that follow them.
+ */
+public class Options {
+
+	public static final String USAGE = "usage: calltrack path/of/jarfile.jar project.package.to.match [options]\n"
+			+ "  the pattern is a text the class names contain, or comma separated rules like\n"
+			+ "  com.acme.*,!com.acme.generated.* (packages to include, and to exclude after a !)\n"
+			+ "  the jar can be a classpath of jars and class directories, like a.jar:b.jar:classes\n"
+			+ "  --workers N          threads that parse the classes of the jar\n"
+			+ "  --cache FILE         reuse the edges of unchanged classes kept in FILE\n"
+			+ "  --cache-size N       maximum number of classes kept in the cache\n"
+			+ "  --impact ID[,ID...]  print the artifacts affected by a change in the given methods or classes\n"
+			+ "  --callgraph cha|rta  also link virtual calls to the overrides of the subtypes (rta: instantiated ones)\n"
+			+ "  --calls FILE         add the calls recorded by the agent in FILE (can be repeated)\n"
+			+ "  --trace FILE         add the self and total times of the methods of a call trace FILE\n"
+			+ "  --jfr FILE           add the execution samples of a flight recording FILE and rank the impact by them\n"
+			+ "  --collapse-cycles    show every cycle of calls as a single node in the viewer\n"
+			+ "  --no-layout          let the viewer place the nodes instead of computing their positions\n"
+			+ "  --expand ID[,ID...]  show the given packages and classes expanded in the package view\n"
+			+ "  --diff OLD.jar       print what changed since OLD.jar and the artifacts affected by it\n"
+			+ "  --save FILE          save the graphs to a snapshot FILE\n"
+			+ "  --load FILE          use the graphs of a snapshot FILE instead of scanning the jar\n"
+			+ "  --serve PORT         serve the viewer and the graph queries on PORT instead of writing the graphs\n"
+			+ "  --watch              serve the graphs and update them, and the open viewer, when the classes change\n"
+			+ "  --bind HOST          serve on HOST, e.g. 0.0.0.0 for every interface, instead of the loopback address\n"
+			+ "  --stats FILE         write the times of the phases and what the scan counted to a JSON FILE\n"
+			+ "  --log LEVEL          log at LEVEL (FINE, FINER...) to the console, e.g. the artifacts read";
+
+	private String jarName;
+	private String pattern;
+	private int workers = Runtime.getRuntime().availableProcessors();
+	private String cacheFile;
+	private int cacheSize = AnalysisCache.DEFAULT_MAX_ENTRIES;
+	private List<String> impactIds = new ArrayList<String>();
+	private ClassHierarchy.Resolution resolution = ClassHierarchy.Resolution.DECLARED;
+	private List<String> callsFiles = new ArrayList<String>();
+	private String traceFile;
+	private String jfrFile;
+	private boolean collapseCycles;
+	private boolean layout = true;
+	private List<String> expandedIds = new ArrayList<String>();
+	private String diffJarName;
+	private String saveFile;
+	private String loadFile;
+	private int port = -1;
+	private boolean watch;
+	private String bindHost;
+	private String statsFile;
+	private Level logLevel;
+
+	public static Options parse(String[] args) {
+		if (args.length < 2)
+			throw new IllegalArgumentException("the jar and the pattern are required");
+
+		Options options = new Options();
+		options.jarName = args[0];
+		options.pattern = args[1];
+		for (int i = 2; i < args.length; i++) {
+			String flag = args[i];
+			if ("--workers".equals(flag))
+				options.workers = intValue(flag, value(args, ++i, flag));
+			else if ("--cache".equals(flag))
+				options.cacheFile = value(args, ++i, flag);
+			else if ("--cache-size".equals(flag))
+				options.cacheSize = intValue(flag, value(args, ++i, flag));
+			else if ("--impact".equals(flag))
+				options.impactIds.addAll(Arrays.asList(value(args, ++i, flag).split(",")));
+			else if ("--callgraph".equals(flag))
+				options.resolution = resolution(flag, value(args, ++i, flag));
+			else if ("--calls".equals(flag))
+				options.callsFiles.add(value(args, ++i, flag));
+			else if ("--trace".equals(flag))
+				options.traceFile = value(args, ++i, flag);
+			else if ("--jfr".equals(flag))
+				options.jfrFile = value(args, ++i, flag);
+			else if ("--collapse-cycles".equals(flag))
+				options.collapseCycles = true;
+			else if ("--no-layout".equals(flag))
+				options.layout = false;
+			else if ("--expand".equals(flag))
+				options.expandedIds.addAll(Arrays.asList(value(args, ++i, flag).split(",")));
+			else if ("--diff".equals(flag))
+				options.diffJarName = value(args, ++i, flag);
+			else if ("--save".equals(flag))
+				options.saveFile = value(args, ++i, flag);
+			else if ("--load".equals(flag))
+				options.loadFile = value(args, ++i, flag);
+			else if ("--serve".equals(flag))
+				options.port = intValue(flag, value(args, ++i, flag));
+			else if ("--watch".equals(flag))
+				options.watch = true;
+			else if ("--bind".equals(flag))
+				options.bindHost = value(args, ++i, flag);
+			else if ("--stats".equals(flag))
+				options.statsFile = value(args, ++i, flag);
+			else if ("--log".equals(flag))
+				options.logLevel = level(flag, value(args, ++i, flag));
+			else
+				throw new IllegalArgumentException("unknown option " + flag);
+		}
+		// the graphs of a snapshot can not change, and the measures of a graph would not follow its changes
+		if (options.watch && (options.loadFile != null || !options.callsFiles.isEmpty() || options.traceFile != null
+				|| options.jfrFile != null))
+			throw new IllegalArgumentException("--watch can not be used with --load, --calls, --trace or --jfr");
+		if (options.bindHost != null && options.port < 0 && !options.watch)
+			throw new IllegalArgumentException("--bind needs --serve or --watch");
+		return options;
+	}
+
+	private static String value(String[] args, int i, String flag) {
+		if (i >= args.length)
+			throw new IllegalArgumentException("missing value for " + flag);
+		return args[i];
+	}
+
+	private static int intValue(String flag, String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("expected a number for " + flag + ", got " + value);
+		}
+	}
+
+	private static Level level(String flag, String value) {
+		try {
+			return Level.parse(value.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("expected a log level like FINE for " + flag + ", got " + value);
+		}
+	}
+
+	private static ClassHierarchy.Resolution resolution(String flag, String value) {
+		for (ClassHierarchy.Resolution resolution : ClassHierarchy.Resolution.values()) {
+			if (resolution.name().equalsIgnoreCase(value))
+				return resolution;
+		}
+		throw new IllegalArgumentException("expected declared, cha or rta for " + flag + ", got " + value);
+	}
+
+	public String getJarName() {
+		return jarName;
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	public String getCacheFile() {
+		return cacheFile;
+	}
+
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	public List<String> getImpactIds() {
+		return impactIds;
+	}
+
+	public ClassHierarchy.Resolution getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * The files of runtime calls recorded by the agent.
+	 */
+	public List<String> getCallsFiles() {
+		return callsFiles;
+	}
+
+	/**
+	 * The call trace whose times are added to the method graph.
+	 */
+	public String getTraceFile() {
+		return traceFile;
+	}
+
+	/**
+	 * The flight recording whose execution samples are added to the method
+	 * graph.
+	 */
+	public String getJfrFile() {
+		return jfrFile;
+	}
+
+	public boolean isCollapseCycles() {
+		return collapseCycles;
+	}
+
+	public boolean isLayout() {
+		return layout;
+	}
+
+	public List<String> getExpandedIds() {
+		return expandedIds;
+	}
+
+	public String getDiffJarName() {
+		return diffJarName;
+	}
+
+	public String getSaveFile() {
+		return saveFile;
+	}
+
+	public String getLoadFile() {
+		return loadFile;
+	}
+
+	/**
+	 * The port to serve the graphs on, -1 to write them to the view
+	 * directory.
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Whether the graphs are served and updated as the classes of the jar
+	 * change, on the port of {@link #getPort()} or on any free one.
+	 */
+	public boolean isWatch() {
+		return watch;
+	}
+
+	/**
+	 * The host name or address the graphs are served on, null for the
+	 * loopback address.
+	 */
+	public String getBindHost() {
+		return bindHost;
+	}
+
+	/**
+	 * The file the stats of the run are written to at its end.
+	 */
+	public String getStatsFile() {
+		return statsFile;
+	}
+
+	/**
+	 * The level logged to the console, null to keep the default one.
+	 */
+	public Level getLogLevel() {
+		return logLevel;
+	}
+
+}
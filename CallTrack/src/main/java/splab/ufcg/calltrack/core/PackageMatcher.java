@@ -0,0 +1,268 @@
+package splab.ufcg.calltrack.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The classes to analyse, given as comma separated rules:
+ * <pre>
+ * com.acme.*              classes of com.acme and its sub packages
+ * !com.acme.generated.*   but not those of com.acme.generated
+ * internship.sample       classes whose name contains the text
+ * </pre>
+ * A rule starting with ! excludes, the others include. Rules ending with *
+ * are prefixes: they are compiled into a trie, but for the rare ones beyond
+ * ASCII, and the longest prefix of a class name decides. The other rules
+ * are the single pattern of older versions, matched anywhere in the name.
+ * With exclude rules only, the classes they do not exclude are included.
+ *
+ * Names can be given dotted or in the internal form of the class files,
+ * slash separated and as array descriptors, and are read without building
+ * any string.
+ */
+public class PackageMatcher {
+
+	private static final byte NONE = 0;
+	private static final byte INCLUDE = 1;
+	private static final byte EXCLUDE = 2;
+	private static final int ASCII = 128;
+
+	private String rules;
+	private int[][] next = new int[1][];
+	private byte[] decision = new byte[1];
+	private int nodes = 1;
+	private char[][] includedTexts;
+	private char[][] excludedTexts;
+	private char[][] widePrefixes = new char[0][];
+	private byte[] wideDecisions = new byte[0];
+	private boolean includes;
+	private boolean ascii = true;
+
+	public PackageMatcher(String rules) {
+		this.rules = rules;
+		List<char[]> included = new ArrayList<char[]>();
+		List<char[]> excluded = new ArrayList<char[]>();
+		for (String rule : rules.split(",")) {
+			rule = rule.trim();
+			boolean exclude = rule.startsWith("!");
+			if (exclude)
+				rule = rule.substring(1).trim();
+			if (rule.length() == 0)
+				continue;
+			includes |= !exclude;
+			for (int i = 0; i < rule.length(); i++)
+				ascii &= rule.charAt(i) > 0 && rule.charAt(i) < ASCII;
+
+			if (rule.endsWith("*"))
+				addPrefix(rule.substring(0, rule.length() - 1), exclude ? EXCLUDE : INCLUDE);
+			else
+				(exclude ? excluded : included).add(normalize(rule).toCharArray());
+		}
+		includedTexts = included.toArray(new char[included.size()][]);
+		excludedTexts = excluded.toArray(new char[excluded.size()][]);
+	}
+
+	private void addPrefix(String prefix, byte rule) {
+		String normalized = normalize(prefix);
+		int node = 0;
+		for (int i = 0; i < normalized.length(); i++) {
+			char c = normalized.charAt(i);
+			if (c >= ASCII) {
+				addWidePrefix(normalized.toCharArray(), rule);
+				return;
+			}
+			if (next[node] == null)
+				next[node] = new int[ASCII];
+			if (next[node][c] == 0)
+				next[node][c] = newNode();
+			node = next[node][c];
+		}
+		decision[node] = rule;
+	}
+
+	/**
+	 * Keeps a prefix the trie can not hold, compared with the names one by
+	 * one as rare as such rules are.
+	 */
+	private void addWidePrefix(char[] prefix, byte rule) {
+		int n = widePrefixes.length;
+		widePrefixes = Arrays.copyOf(widePrefixes, n + 1);
+		wideDecisions = Arrays.copyOf(wideDecisions, n + 1);
+		widePrefixes[n] = prefix;
+		wideDecisions[n] = rule;
+	}
+
+	private int newNode() {
+		if (nodes == next.length) {
+			next = Arrays.copyOf(next, nodes << 1);
+			decision = Arrays.copyOf(decision, nodes << 1);
+		}
+		return nodes++;
+	}
+
+	private static String normalize(String name) {
+		return name.replace('.', '/');
+	}
+
+	/**
+	 * Answers whether the class is analysed, its name being dotted or slash
+	 * separated.
+	 */
+	public boolean matches(CharSequence className) {
+		return matches(className, 0, className.length());
+	}
+
+	/**
+	 * Answers for the class whose name is in the given range of the
+	 * characters, like the ones of {@link #utf8(byte[])}.
+	 */
+	boolean matches(CharSequence name, int start, int end) {
+		byte found = decide(name, start, end);
+		if (found != NONE)
+			return found == INCLUDE;
+
+		for (char[] text : includedTexts) {
+			if (contains(name, start, end, text))
+				return true;
+		}
+		return !includes;
+	}
+
+	/**
+	 * Answers whether an exclude rule leaves the class out, in which case
+	 * not even the calls it makes are analysed.
+	 */
+	boolean excludes(CharSequence name, int start, int end) {
+		return decide(name, start, end) == EXCLUDE;
+	}
+
+	/**
+	 * The decision of the exclude texts, then of the longest prefix rule,
+	 * or NONE when no such rule applies.
+	 */
+	private byte decide(CharSequence name, int start, int end) {
+		for (char[] text : excludedTexts) {
+			if (contains(name, start, end, text))
+				return EXCLUDE;
+		}
+
+		// array descriptors, [[Lcom/acme/Type;
+		int from = start;
+		while (from < end && name.charAt(from) == '[')
+			from++;
+		if (from > start && from < end && name.charAt(from) == 'L')
+			from++;
+
+		byte found = decision[0];
+		int length = 0;
+		int node = 0;
+		for (int i = from; i < end && next[node] != null; i++) {
+			char c = normalize(name.charAt(i));
+			if (c >= ASCII || (node = next[node][c]) == 0)
+				break;
+			if (decision[node] != NONE) {
+				found = decision[node];
+				length = i + 1 - from;
+			}
+		}
+		for (int i = 0; i < widePrefixes.length; i++) {
+			char[] prefix = widePrefixes[i];
+			if (prefix.length > length && startsWith(name, from, end, prefix)) {
+				found = wideDecisions[i];
+				length = prefix.length;
+			}
+		}
+		return found;
+	}
+
+	private static boolean startsWith(CharSequence name, int start, int end, char[] prefix) {
+		if (end - start < prefix.length)
+			return false;
+		for (int j = 0; j < prefix.length; j++) {
+			if (normalize(name.charAt(start + j)) != prefix[j])
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean contains(CharSequence name, int start, int end, char[] text) {
+		int last = end - text.length;
+		outer: for (int i = start; i <= last; i++) {
+			for (int j = 0; j < text.length; j++) {
+				if (normalize(name.charAt(i + j)) != text[j])
+					continue outer;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private static char normalize(char c) {
+		return c == '.' ? '/' : c;
+	}
+
+	/**
+	 * False when a rule has characters that can not be compared with the
+	 * bytes of a class file one by one.
+	 */
+	public boolean isAscii() {
+		return ascii;
+	}
+
+	public String getRules() {
+		return rules;
+	}
+
+	/**
+	 * The bytes of a class file seen as characters, which they are for ASCII
+	 * names, to match the names of its constant pool in place.
+	 */
+	static CharSequence utf8(byte[] bytes) {
+		return new Utf8Bytes(bytes);
+	}
+
+	/**
+	 * A range of the bytes, a byte being a character.
+	 */
+	private static class Utf8Bytes implements CharSequence {
+		private byte[] bytes;
+		private int offset;
+		private int length;
+
+		Utf8Bytes(byte[] bytes) {
+			this(bytes, 0, bytes.length);
+		}
+
+		private Utf8Bytes(byte[] bytes, int offset, int length) {
+			this.bytes = bytes;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public char charAt(int index) {
+			if (index < 0 || index >= length)
+				throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+			return (char) (bytes[offset + index] & 0xFF);
+		}
+
+		public int length() {
+			return length;
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || end > length || start > end)
+				throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+			return new Utf8Bytes(bytes, offset + start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			char[] chars = new char[length];
+			for (int i = 0; i < length; i++)
+				chars[i] = (char) (bytes[offset + i] & 0xFF);
+			return new String(chars);
+		}
+	}
+
+}
@@ -0,0 +1,212 @@
+package splab.ufcg.calltrack.model;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+/**
+ * Immutable compressed sparse row form of a {@link Graph}. Nodes are numbered
+ * 0..n-1 in the order of their ids, and both the forward and the reverse
+ * adjacency are kept as an offsets array plus one flat array of neighbours:
+ * the successors of node n are {@code target(i)} for
+ * {@code firstOut(n) <= i < endOut(n)}.
+ *
+ * The arrays can be walked without allocating anything, which is what the
+ * exporters and the traversals rely on. They are held in buffers, which wrap
+ * plain arrays for a graph built in memory and the mapped file for a graph
+ * opened from a {@link GraphSnapshot}.
+ */
+public class CompactGraph {
+
+	private static final TypeNode[] TYPES = TypeNode.values();
+
+	private StringColumn ids;
+	private StringColumn labels;
+	private ByteBuffer types;
+	private IntBuffer outOffsets;
+	private IntBuffer outTargets;
+	private IntBuffer inOffsets;
+	private IntBuffer inSources;
+
+	CompactGraph(StringColumn ids, StringColumn labels, ByteBuffer types, IntBuffer outOffsets, IntBuffer outTargets,
+			IntBuffer inOffsets, IntBuffer inSources) {
+		this.ids = ids;
+		this.labels = labels;
+		this.types = types;
+		this.outOffsets = outOffsets;
+		this.outTargets = outTargets;
+		this.inOffsets = inOffsets;
+		this.inSources = inSources;
+	}
+
+	/**
+	 * Builds the graph in one pass over the edges. The ids must be sorted and
+	 * distinct, a null label is derived from the id, the types are TypeNode
+	 * ordinals and the edges are packed (from, to) pairs of indexes into the
+	 * ids, without duplicates.
+	 */
+	public static CompactGraph build(String[] ids, String[] labels, byte[] types, long[] edges) {
+		int n = ids.length;
+		int[] outOffsets = new int[n + 1];
+		int[] inOffsets = new int[n + 1];
+		for (long edge : edges) {
+			outOffsets[PackedEdge.from(edge) + 1]++;
+			inOffsets[PackedEdge.to(edge) + 1]++;
+		}
+		for (int i = 0; i < n; i++) {
+			outOffsets[i + 1] += outOffsets[i];
+			inOffsets[i + 1] += inOffsets[i];
+		}
+
+		int[] outTargets = new int[edges.length];
+		int[] inSources = new int[edges.length];
+		int[] outFill = Arrays.copyOf(outOffsets, n);
+		int[] inFill = Arrays.copyOf(inOffsets, n);
+		for (long edge : edges) {
+			int from = PackedEdge.from(edge);
+			int to = PackedEdge.to(edge);
+			outTargets[outFill[from]++] = to;
+			inSources[inFill[to]++] = from;
+		}
+		for (int i = 0; i < n; i++) {
+			Arrays.sort(outTargets, outOffsets[i], outOffsets[i + 1]);
+			Arrays.sort(inSources, inOffsets[i], inOffsets[i + 1]);
+		}
+		return new CompactGraph(StringColumn.of(ids), StringColumn.of(labels), ByteBuffer.wrap(types),
+				IntBuffer.wrap(outOffsets), IntBuffer.wrap(outTargets), IntBuffer.wrap(inOffsets), IntBuffer.wrap(inSources));
+	}
+
+	public int nodeCount() {
+		return ids.size();
+	}
+
+	public int edgeCount() {
+		return outTargets.limit();
+	}
+
+	/**
+	 * Index of the node with the given id, or -1 when there is none.
+	 */
+	public int indexOf(String nodeId) {
+		return ids.indexOf(nodeId);
+	}
+
+	public String id(int node) {
+		return ids.get(node);
+	}
+
+	public String label(int node) {
+		String label = labels.get(node);
+		return label != null ? label : SymbolTable.label(ids.get(node));
+	}
+
+	public TypeNode type(int node) {
+		return TYPES[types.get(node)];
+	}
+
+	public boolean isArtifact(int node) {
+		return types.get(node) != TypeNode.NORMAL.ordinal();
+	}
+
+	public int firstOut(int node) {
+		return outOffsets.get(node);
+	}
+
+	public int endOut(int node) {
+		return outOffsets.get(node + 1);
+	}
+
+	public int target(int edge) {
+		return outTargets.get(edge);
+	}
+
+	/**
+	 * Index of the edge from one node to another, or -1 when there is none.
+	 */
+	public int edgeIndex(int from, int to) {
+		int low = outOffsets.get(from);
+		int high = outOffsets.get(from + 1) - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int target = outTargets.get(middle);
+			if (target < to)
+				low = middle + 1;
+			else if (target > to)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -1;
+	}
+
+	public int outDegree(int node) {
+		return outOffsets.get(node + 1) - outOffsets.get(node);
+	}
+
+	public int firstIn(int node) {
+		return inOffsets.get(node);
+	}
+
+	public int endIn(int node) {
+		return inOffsets.get(node + 1);
+	}
+
+	public int source(int edge) {
+		return inSources.get(edge);
+	}
+
+	public int inDegree(int node) {
+		return inOffsets.get(node + 1) - inOffsets.get(node);
+	}
+
+	/**
+	 * True when the other graph has the same nodes, with the same labels and
+	 * types, and the same edges.
+	 */
+	public boolean sameAs(CompactGraph other) {
+		int n = nodeCount();
+		if (other.nodeCount() != n || other.edgeCount() != edgeCount())
+			return false;
+		if (!types.equals(other.types) || !outOffsets.equals(other.outOffsets) || !outTargets.equals(other.outTargets))
+			return false;
+		for (int node = 0; node < n; node++) {
+			if (!id(node).equals(other.id(node)))
+				return false;
+			String label = explicitLabel(node);
+			String otherLabel = other.explicitLabel(node);
+			if (label == null ? otherLabel != null : !label.equals(otherLabel))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The label given to the node, or null when it is derived from the id.
+	 */
+	String explicitLabel(int node) {
+		return labels.get(node);
+	}
+
+	IntBuffer outOffsets() {
+		return outOffsets.duplicate();
+	}
+
+	IntBuffer outTargets() {
+		return outTargets.duplicate();
+	}
+
+	IntBuffer inOffsets() {
+		return inOffsets.duplicate();
+	}
+
+	IntBuffer inSources() {
+		return inSources.duplicate();
+	}
+
+	ByteBuffer types() {
+		return types.duplicate();
+	}
+
+}
@@ -1,70 +1,429 @@
 package splab.ufcg.calltrack.model;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import splab.ufcg.calltrack.analysis.Condensation;
+import splab.ufcg.calltrack.analysis.GraphHierarchy;
+import splab.ufcg.calltrack.analysis.GraphLayout;
+import splab.ufcg.calltrack.analysis.ReachabilityIndex;
 import splab.ufcg.calltrack.exceptions.NodeNotFoundException;
-import splab.ufcg.calltrack.model.Node;
-import splab.ufcg.calltrack.model.dto.EdgeDTO;
-import splab.ufcg.calltrack.model.dto.EdgeDTOData;
-import splab.ufcg.calltrack.model.dto.GraphDTO;
-import splab.ufcg.calltrack.model.dto.NodeDTO;
-import splab.ufcg.calltrack.model.dto.NodeDTOData;
+import splab.ufcg.calltrack.utils.LongHashSet;
+import splab.ufcg.calltrack.utils.LongIntHashMap;
+import splab.ufcg.calltrack.utils.PackedEdge;
 
+/**
+ * Collects the nodes and edges of a graph. Nodes get an int index in the
+ * order they are put and edges are kept as packed pairs of indexes; the
+ * {@link CompactGraph} used by the exporters and the traversals is built from
+ * them in one pass by {@link #compact()}.
+ */
 public class Graph {
-	
-	private Map<String, Node> nodes = new TreeMap<String, Node>();
-	
-	
+
+	private static final Logger LOG = Logger.getLogger(Graph.class.getName());
+
+	private Map<String, Integer> nodes = new HashMap<String, Integer>();
+	private String[] ids = new String[64];
+	private String[] labels = new String[64];
+	private byte[] types = new byte[64];
+	// edges in and out of every node
+	private int[] degrees = new int[64];
+	private int nodeCount;
+	private int removedNodes;
+	private LongHashSet edges = new LongHashSet();
+	// times the edges were taken at run time, for the ones that were
+	private LongIntHashMap calls = new LongIntHashMap();
+	private LongHashSet calledEdges = new LongHashSet();
+	// times of a call trace and samples of a recording
+	private MeasureSums times = new MeasureSums();
+	private MeasureSums samples = new MeasureSums();
+	private GraphMetrics metrics;
+	private CompactGraph compact;
+	private Condensation condensation;
+	private ReachabilityIndex reachabilityIndex;
+	private GraphLayout layout;
+	private GraphLayout cycleLayout;
+	private GraphHierarchy hierarchy;
+	private boolean readOnly;
+
+	public Graph() {
+	}
+
+	/**
+	 * A graph built before, like one opened from a {@link GraphSnapshot}. It
+	 * can be queried and exported but not changed.
+	 */
+	public Graph(CompactGraph compact) {
+		this.compact = compact;
+		this.readOnly = true;
+	}
+
 	public void putNode(String nodeId, String label, TypeNode type){
+		checkWritable();
 		if(!nodes.containsKey(nodeId)){
-			if(type == TypeNode.ARTIFACT_US)
-				System.out.println("Adding " + nodeId);
-			nodes.put(nodeId, new Node(nodeId, label, type));
+			if (LOG.isLoggable(Level.FINE) && type == TypeNode.ARTIFACT_US)
+				LOG.fine("Adding " + nodeId);
+			if (nodeCount == ids.length) {
+				ids = Arrays.copyOf(ids, nodeCount << 1);
+				labels = Arrays.copyOf(labels, nodeCount << 1);
+				types = Arrays.copyOf(types, nodeCount << 1);
+				degrees = Arrays.copyOf(degrees, nodeCount << 1);
+			}
+			ids[nodeCount] = nodeId;
+			labels[nodeCount] = label;
+			types[nodeCount] = (byte) type.ordinal();
+			nodes.put(nodeId, nodeCount++);
+			changed();
 		}
 	}
 
+	/**
+	 * Puts a node whose label is derived from its id when the graph is
+	 * exported.
+	 */
+	public void putNode(String nodeId, TypeNode type){
+		putNode(nodeId, null, type);
+	}
+
+	public boolean containsNode(String nodeId) {
+		if (readOnly)
+			return compact.indexOf(nodeId) >= 0;
+		return nodes.containsKey(nodeId);
+	}
+
+	public int nodeCount() {
+		return readOnly ? compact.nodeCount() : nodeCount - removedNodes;
+	}
 
-	public Map<String, Node> getNodes() {
-		return nodes;
+	public int edgeCount() {
+		return readOnly ? compact.edgeCount() : edges.size();
 	}
 
 
 	public void putEdge(String fromNodeId, String toNodeId) throws NodeNotFoundException {
-		if(!nodes.containsKey(fromNodeId) )
+		checkWritable();
+		Integer from = nodes.get(fromNodeId);
+		if(from == null)
 			throw new NodeNotFoundException("The node " + fromNodeId + " was not found.");
-		if(!nodes.containsKey(toNodeId))
+		Integer to = nodes.get(toNodeId);
+		if(to == null)
 			throw new NodeNotFoundException("The node " + toNodeId + " was not found.");
-		
-		Node fromNode = nodes.get(fromNodeId);
-		Node toNode = nodes.get(toNodeId);
-		toNode.visit();
-		fromNode.putEdge(toNode);
-		
-		
-	}
-	
-	public GraphDTO getGraphDTO(){
-		GraphDTO transactionDataGraph = new GraphDTO();
-		
-		for(Node n : this.nodes.values()){
-			
-			if(!n.isVisited() && n.getEdges().size() < 1)
+
+		if (edges.add(PackedEdge.of(from, to))) {
+			degrees[from]++;
+			degrees[to]++;
+			changed();
+		}
+	}
+
+	/**
+	 * Removes an edge, for a graph that follows the classes as they change.
+	 * The calls, times and samples put for it would be lost, so the edges of
+	 * a measured graph can not be removed.
+	 */
+	public void removeEdge(String fromNodeId, String toNodeId) {
+		checkWritable();
+		checkUnmeasured();
+		Integer from = nodes.get(fromNodeId);
+		Integer to = nodes.get(toNodeId);
+		if (from != null && to != null && edges.remove(PackedEdge.of(from, to))) {
+			degrees[from]--;
+			degrees[to]--;
+			changed();
+		}
+	}
+
+	/**
+	 * Removes a node whose edges were all removed. Its index is not given to
+	 * the nodes put after it.
+	 */
+	public void removeNode(String nodeId) {
+		checkWritable();
+		checkUnmeasured();
+		Integer node = nodes.get(nodeId);
+		if (node == null)
+			return;
+		if (degrees[node] > 0)
+			throw new IllegalStateException("The node " + nodeId + " still has " + degrees[node] + " edges");
+		nodes.remove(nodeId);
+		ids[node] = null;
+		labels[node] = null;
+		removedNodes++;
+		changed();
+	}
+
+	/**
+	 * The number of edges into and out of a node, 0 for a node the graph
+	 * does not have.
+	 */
+	public int degree(String nodeId) {
+		if (readOnly) {
+			int node = compact.indexOf(nodeId);
+			return node < 0 ? 0 : compact.inDegree(node) + compact.outDegree(node);
+		}
+		Integer node = nodes.get(nodeId);
+		return node == null ? 0 : degrees[node];
+	}
+
+	/**
+	 * Puts an edge that was taken count times at run time, adding to the
+	 * times already put for it. Counts beyond Integer.MAX_VALUE are kept as
+	 * Integer.MAX_VALUE.
+	 */
+	public void putCalls(String fromNodeId, String toNodeId, long count) throws NodeNotFoundException {
+		putEdge(fromNodeId, toNodeId);
+		long edge = PackedEdge.of(nodes.get(fromNodeId), nodes.get(toNodeId));
+		long total = calls.get(edge, 0) + Math.max(count, 0);
+		calls.put(edge, (int) Math.min(total, Integer.MAX_VALUE));
+		calledEdges.add(edge);
+		metrics = null;
+	}
+
+	public boolean containsEdge(String fromNodeId, String toNodeId) {
+		Integer from = nodes.get(fromNodeId);
+		Integer to = nodes.get(toNodeId);
+		return from != null && to != null && edges.contains(PackedEdge.of(from, to));
+	}
+
+	/**
+	 * Adds the self and total times measured for a node, in nanoseconds.
+	 */
+	public void putTime(String nodeId, long selfTime, long totalTime) throws NodeNotFoundException {
+		checkWritable();
+		times.addNode(nodeIndex(nodeId), selfTime, totalTime);
+		metrics = null;
+	}
+
+	/**
+	 * Adds the time measured for an edge, in nanoseconds. The edge must have
+	 * been put.
+	 */
+	public void putEdgeTime(String fromNodeId, String toNodeId, long time) {
+		checkWritable();
+		times.addEdge(existingEdge(fromNodeId, toNodeId), time);
+		metrics = null;
+	}
+
+	/**
+	 * Adds the samples of a profiler in which the node was the first one of
+	 * the stack, and the ones in which it was anywhere in the stack.
+	 */
+	public void putSamples(String nodeId, long selfSamples, long totalSamples) throws NodeNotFoundException {
+		checkWritable();
+		samples.addNode(nodeIndex(nodeId), selfSamples, totalSamples);
+		metrics = null;
+	}
+
+	/**
+	 * Adds the samples of a profiler in which the edge was in the stack. The
+	 * edge must have been put.
+	 */
+	public void putEdgeSamples(String fromNodeId, String toNodeId, long count) {
+		checkWritable();
+		samples.addEdge(existingEdge(fromNodeId, toNodeId), count);
+		metrics = null;
+	}
+
+	private int nodeIndex(String nodeId) throws NodeNotFoundException {
+		Integer node = nodes.get(nodeId);
+		if (node == null)
+			throw new NodeNotFoundException("The node " + nodeId + " was not found.");
+		return node;
+	}
+
+	private long existingEdge(String fromNodeId, String toNodeId) {
+		if (!containsEdge(fromNodeId, toNodeId))
+			throw new IllegalArgumentException("There is no edge from " + fromNodeId + " to " + toNodeId);
+		return PackedEdge.of(nodes.get(fromNodeId), nodes.get(toNodeId));
+	}
+
+	/**
+	 * The calls, times and samples put for the nodes and edges of
+	 * {@link #compact()}, 0 for the ones that have none, or null when none
+	 * were put.
+	 */
+	public GraphMetrics getMetrics() {
+		if (readOnly || (calls.size() == 0 && times.isEmpty() && samples.isEmpty()))
+			return null;
+		if (metrics != null)
+			return metrics;
+
+		CompactGraph graph = compact();
+		int[] position = new int[nodeCount];
+		for (int i = 0; i < nodeCount; i++)
+			position[i] = ids[i] != null ? graph.indexOf(ids[i]) : -1;
+
+		int[] callCounts = null;
+		if (calls.size() > 0) {
+			callCounts = new int[graph.edgeCount()];
+			for (long edge : calledEdges.toArray())
+				callCounts[graph.edgeIndex(position[PackedEdge.from(edge)], position[PackedEdge.to(edge)])] =
+						calls.get(edge, 0);
+		}
+		metrics = new GraphMetrics(callCounts);
+		metrics.setTimes(times.selfByNode(position), times.totalByNode(position), times.byEdge(graph, position));
+		metrics.setSamples(samples.selfByNode(position), samples.totalByNode(position),
+				samples.byEdge(graph, position));
+		return metrics;
+	}
+
+	private void checkWritable() {
+		if (readOnly)
+			throw new UnsupportedOperationException("The graph was built before and can not be changed");
+	}
+
+	private void checkUnmeasured() {
+		if (calls.size() > 0 || !times.isEmpty() || !samples.isEmpty())
+			throw new IllegalStateException("The graph was measured, its nodes and edges can not be removed");
+	}
+
+	private void changed() {
+		compact = null;
+		condensation = null;
+		reachabilityIndex = null;
+		layout = null;
+		cycleLayout = null;
+		hierarchy = null;
+		metrics = null;
+	}
+
+	/**
+	 * The compressed form of the graph as it is now, rebuilt only after the
+	 * graph changed.
+	 */
+	public CompactGraph compact() {
+		if (compact != null)
+			return compact;
+
+		String[] sortedIds = new String[nodeCount - removedNodes];
+		for (int i = 0, n = 0; i < nodeCount; i++) {
+			if (ids[i] != null)
+				sortedIds[n++] = ids[i];
+		}
+		Arrays.sort(sortedIds);
+		int[] position = new int[nodeCount];
+		String[] sortedLabels = new String[sortedIds.length];
+		byte[] sortedTypes = new byte[sortedIds.length];
+		for (int i = 0; i < nodeCount; i++) {
+			if (ids[i] == null)
 				continue;
-			
-			NodeDTOData nodeData = new NodeDTOData(n.hashCode() + "", n.getLabel(), n.getType());
-			NodeDTO node = new NodeDTO(nodeData);
-			transactionDataGraph.putNode(node);
-			
-			for(Node e : n.getEdges()){
-				EdgeDTOData edgeData = new EdgeDTOData(n.hashCode()+ "-" + e.hashCode(), n.hashCode() + "", e.hashCode() + "");
-				EdgeDTO edge = new EdgeDTO(edgeData);
-				transactionDataGraph.putEdge(edge);
-			}
-			
+			int p = Arrays.binarySearch(sortedIds, ids[i]);
+			position[i] = p;
+			sortedLabels[p] = labels[i];
+			sortedTypes[p] = types[i];
 		}
-		
-		return transactionDataGraph;
+
+		long[] packed = edges.toArray();
+		for (int i = 0; i < packed.length; i++)
+			packed[i] = PackedEdge.of(position[PackedEdge.from(packed[i])], position[PackedEdge.to(packed[i])]);
+
+		compact = CompactGraph.build(sortedIds, sortedLabels, sortedTypes, packed);
+		return compact;
+	}
+
+	/**
+	 * The artifacts reached by every node, built on first use and kept until
+	 * the graph changes.
+	 */
+	public ReachabilityIndex getReachabilityIndex() {
+		if (reachabilityIndex == null)
+			reachabilityIndex = ReachabilityIndex.build(getCondensation());
+		return reachabilityIndex;
 	}
-	
+
+	/**
+	 * Sets an index built before for this same graph, like the one of a
+	 * snapshot.
+	 */
+	public void setReachabilityIndex(ReachabilityIndex index) {
+		if (index.getGraph().nodeCount() != compact().nodeCount())
+			throw new IllegalArgumentException("The index has " + index.getGraph().nodeCount()
+					+ " nodes, the graph " + compact().nodeCount());
+		this.reachabilityIndex = index;
+	}
+
+	/**
+	 * The strongly connected components of the graph, kept until the graph
+	 * changes.
+	 */
+	public Condensation getCondensation() {
+		if (condensation == null)
+			condensation = Condensation.of(compact());
+		return condensation;
+	}
+
+	/**
+	 * The package, class and method levels of a method graph, kept until the
+	 * graph changes.
+	 */
+	public GraphHierarchy getHierarchy() {
+		if (hierarchy == null)
+			hierarchy = GraphHierarchy.of(compact());
+		return hierarchy;
+	}
+
+	/**
+	 * The positions of the nodes, computed on first use and kept until the
+	 * graph changes.
+	 */
+	public GraphLayout getLayout(int workers) {
+		if (layout == null)
+			layout = GraphLayout.compute(compact(), workers);
+		return layout;
+	}
+
+	/**
+	 * The positions of the nodes if they were computed or set, null
+	 * otherwise.
+	 */
+	public GraphLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Sets positions computed before for this same graph, like the ones of a
+	 * snapshot.
+	 */
+	public void setLayout(GraphLayout layout) {
+		if (layout.nodeCount() != compact().nodeCount())
+			throw new IllegalArgumentException("The layout has " + layout.nodeCount() + " nodes, the graph "
+					+ compact().nodeCount());
+		this.layout = layout;
+	}
+
+	/**
+	 * The positions of the components of the condensation, for the graph
+	 * drawn with its cycles collapsed, computed on first use and kept until
+	 * the graph changes.
+	 */
+	public GraphLayout getCycleLayout(int workers) {
+		CompactGraph dag = getCondensation().getDag();
+		if (cycleLayout == null)
+			cycleLayout = GraphLayout.compute(dag, workers);
+		else if (cycleLayout.nodeCount() != dag.nodeCount())
+			throw new IllegalStateException("The cycle layout has " + cycleLayout.nodeCount()
+					+ " nodes, the condensed graph " + dag.nodeCount());
+		return cycleLayout;
+	}
+
+	/**
+	 * The positions of the components if they were computed or set, null
+	 * otherwise.
+	 */
+	public GraphLayout getCycleLayout() {
+		return cycleLayout;
+	}
+
+	/**
+	 * Sets positions computed before for the components of this same graph,
+	 * like the ones of a snapshot. They are checked against the condensation
+	 * when they are used, so that it is not built for nothing.
+	 */
+	public void setCycleLayout(GraphLayout cycleLayout) {
+		this.cycleLayout = cycleLayout;
+	}
+
 }
@@ -0,0 +1,82 @@
+package splab.ufcg.calltrack.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What an update changed in one graph: the ids of the nodes added and
+ * removed, and the edges added and removed as pairs of node ids, in the
+ * direction of the graph.
+ */
+public class GraphDelta {
+
+	private String graph;
+	private List<String> addedNodes = new ArrayList<String>();
+	private List<String> removedNodes = new ArrayList<String>();
+	private List<String> addedEdges = new ArrayList<String>();
+	private List<String> removedEdges = new ArrayList<String>();
+
+	public GraphDelta(String graph) {
+		this.graph = graph;
+	}
+
+	public void addNode(String nodeId) {
+		addedNodes.add(nodeId);
+	}
+
+	public void removeNode(String nodeId) {
+		removedNodes.add(nodeId);
+	}
+
+	public void addEdge(String fromNodeId, String toNodeId) {
+		addedEdges.add(fromNodeId);
+		addedEdges.add(toNodeId);
+	}
+
+	public void removeEdge(String fromNodeId, String toNodeId) {
+		removedEdges.add(fromNodeId);
+		removedEdges.add(toNodeId);
+	}
+
+	public boolean isEmpty() {
+		return addedNodes.isEmpty() && removedNodes.isEmpty() && addedEdges.isEmpty() && removedEdges.isEmpty();
+	}
+
+	/**
+	 * The name of the graph changed, like {@code "class"} or {@code "method"}.
+	 */
+	public String getGraph() {
+		return graph;
+	}
+
+	public List<String> getAddedNodes() {
+		return addedNodes;
+	}
+
+	public List<String> getRemovedNodes() {
+		return removedNodes;
+	}
+
+	/**
+	 * The edges added, each one as its source followed by its target.
+	 */
+	public List<String> getAddedEdges() {
+		return addedEdges;
+	}
+
+	/**
+	 * The edges removed, each one as its source followed by its target.
+	 */
+	public List<String> getRemovedEdges() {
+		return removedEdges;
+	}
+
+	public int addedEdgeCount() {
+		return addedEdges.size() / 2;
+	}
+
+	public int removedEdgeCount() {
+		return removedEdges.size() / 2;
+	}
+
+}
@@ -0,0 +1,97 @@
+package splab.ufcg.calltrack.model;
+
+/**
+ * What was measured at run time on the nodes and edges of a
+ * {@link CompactGraph}, by node and edge index: the times the edges were
+ * taken, recorded by the agent, the self and total times of a call trace, in
+ * nanoseconds, and the samples of a profiler. An array is null when nothing
+ * of its kind was measured.
+ */
+public class GraphMetrics {
+
+	private int[] calls;
+	private long[] selfTimes;
+	private long[] totalTimes;
+	private long[] edgeTimes;
+	private long[] selfSamples;
+	private long[] totalSamples;
+	private long[] edgeSamples;
+
+	public GraphMetrics(int[] calls) {
+		this.calls = calls;
+	}
+
+	public void setTimes(long[] selfTimes, long[] totalTimes, long[] edgeTimes) {
+		this.selfTimes = selfTimes;
+		this.totalTimes = totalTimes;
+		this.edgeTimes = edgeTimes;
+	}
+
+	public void setSamples(long[] selfSamples, long[] totalSamples, long[] edgeSamples) {
+		this.selfSamples = selfSamples;
+		this.totalSamples = totalSamples;
+		this.edgeSamples = edgeSamples;
+	}
+
+	public int[] getCalls() {
+		return calls;
+	}
+
+	public long[] getSelfTimes() {
+		return selfTimes;
+	}
+
+	public long[] getTotalTimes() {
+		return totalTimes;
+	}
+
+	public long[] getEdgeTimes() {
+		return edgeTimes;
+	}
+
+	public long[] getSelfSamples() {
+		return selfSamples;
+	}
+
+	public long[] getTotalSamples() {
+		return totalSamples;
+	}
+
+	public long[] getEdgeSamples() {
+		return edgeSamples;
+	}
+
+	/**
+	 * The total time of the nodes, or their total samples when there are no
+	 * times; null when there are neither.
+	 */
+	public long[] getNodeWeights() {
+		return totalTimes != null ? totalTimes : totalSamples;
+	}
+
+	public long[] getEdgeWeights() {
+		return edgeTimes != null ? edgeTimes : edgeSamples;
+	}
+
+	/**
+	 * The weight of the node over the largest one, from 0 to 1.
+	 */
+	public float nodeHeat(int node) {
+		return heat(getNodeWeights(), node);
+	}
+
+	/**
+	 * The weight of the edge over the largest one, from 0 to 1.
+	 */
+	public float edgeHeat(int edge) {
+		return heat(getEdgeWeights(), edge);
+	}
+
+	private static float heat(long[] weights, int i) {
+		long max = 0;
+		for (long weight : weights)
+			max = Math.max(max, weight);
+		return max == 0 ? 0 : (float) weights[i] / max;
+	}
+
+}
@@ -0,0 +1,452 @@
+package splab.ufcg.calltrack.model;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import splab.ufcg.calltrack.analysis.GraphLayout;
+import splab.ufcg.calltrack.analysis.ReachabilityIndex;
+
+/**
+ * Binary snapshot of built graphs, so that a later run or a query server can
+ * use them without scanning the jar again. Opening a snapshot maps the file
+ * read-only and wraps its regions in buffers: nothing is parsed or copied,
+ * the graphs are read straight from the page cache.
+ *
+ * File layout (little endian, every region starts at a multiple of 4):
+ * <pre>
+ * int magic, int version, int graphs
+ * graphs * {
+ *     int nameBytes, byte[] name (UTF-8)
+ *     int nodes, int edges, int idBytes, int labelBytes
+ *     int[nodes + 1] idOffsets, int[nodes + 1] labelOffsets
+ *     int[nodes + 1] outOffsets, int[edges] outTargets
+ *     int[nodes + 1] inOffsets, int[edges] inSources
+ *     byte[nodes] types, byte[idBytes] ids (UTF-8), byte[labelBytes] labels (UTF-8)
+ *     int layoutNodes (0 or nodes), float[layoutNodes] x, float[layoutNodes] y
+ *     int cycleLayoutNodes (0 or components), float[cycleLayoutNodes] x, float[cycleLayoutNodes] y
+ *     int indexNodes (0 or nodes), int artifacts, int sets, int setArtifacts
+ *     int[artifacts] artifactNodes, int[indexNodes] nodeSets
+ *     int[sets + 1] setOffsets, int[setArtifacts] setArtifacts
+ * }
+ * </pre>
+ * Version 1 files have no layout, version 2 files no reachability index and
+ * version 3 files no cycle layout, the positions of the components of the
+ * graph when its cycles are collapsed.
+ * The index is read into memory when the snapshot is opened, which costs a
+ * copy of its arrays instead of a condensation and a pass over the graph.
+ * Ids are sorted, as in {@link CompactGraph}, and a node whose label is
+ * derived from its id has an empty label. The artifacts are the nodes whose
+ * type is not NORMAL, mapped to the nodes they depend on by their edges.
+ */
+public class GraphSnapshot {
+
+	private static final int MAGIC = 0x53475443; // "CTGS"
+	public static final int VERSION = 4;
+	private static final int HEADER_INTS = 4;
+
+	private Map<String, CompactGraph> graphs;
+	private Map<String, GraphLayout> layouts;
+	private Map<String, GraphLayout> cycleLayouts;
+	private Map<String, ReachabilityIndex> indexes;
+
+	private GraphSnapshot(Map<String, CompactGraph> graphs, Map<String, GraphLayout> layouts,
+			Map<String, GraphLayout> cycleLayouts, Map<String, ReachabilityIndex> indexes) {
+		this.graphs = graphs;
+		this.layouts = layouts;
+		this.cycleLayouts = cycleLayouts;
+		this.indexes = indexes;
+	}
+
+	/**
+	 * The graph saved under the given name, or null when there is none.
+	 */
+	public CompactGraph getGraph(String name) {
+		return graphs.get(name);
+	}
+
+	public Map<String, CompactGraph> getGraphs() {
+		return graphs;
+	}
+
+	/**
+	 * The positions saved with the graph of the given name, or null when
+	 * there are none.
+	 */
+	public GraphLayout getLayout(String name) {
+		return layouts.get(name);
+	}
+
+	/**
+	 * The positions saved for the components of the graph of the given name,
+	 * or null when there are none.
+	 */
+	public GraphLayout getCycleLayout(String name) {
+		return cycleLayouts.get(name);
+	}
+
+	/**
+	 * The reachability index saved with the graph of the given name, or null
+	 * when there is none.
+	 */
+	public ReachabilityIndex getReachabilityIndex(String name) {
+		return indexes.get(name);
+	}
+
+	public static GraphSnapshot open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		ByteBuffer mapped;
+		try {
+			if (raf.length() > Integer.MAX_VALUE)
+				throw new IOException("Snapshot " + file + " is larger than 2GB");
+			mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+		mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (mapped.limit() < 12 || mapped.getInt(0) != MAGIC)
+			throw new IOException(file + " is not a graph snapshot");
+		int version = mapped.getInt(4);
+		if (version < 1 || version > VERSION)
+			throw new IOException("Unsupported version " + version + " of snapshot " + file);
+
+		Map<String, CompactGraph> graphs = new LinkedHashMap<String, CompactGraph>();
+		Map<String, GraphLayout> layouts = new HashMap<String, GraphLayout>();
+		Map<String, GraphLayout> cycleLayouts = new HashMap<String, GraphLayout>();
+		Map<String, ReachabilityIndex> indexes = new HashMap<String, ReachabilityIndex>();
+		int count = mapped.getInt(8);
+		int position = 12;
+		for (int g = 0; g < count; g++) {
+			int nameBytes = intAt(mapped, position, file);
+			byte[] name = new byte[nameBytes];
+			ByteBuffer nameRegion = region(mapped, position + 4, nameBytes, file);
+			nameRegion.get(name);
+			position = align(position + 4 + nameBytes);
+
+			int nodes = intAt(mapped, position, file);
+			int edges = intAt(mapped, position + 4, file);
+			int idBytes = intAt(mapped, position + 8, file);
+			int labelBytes = intAt(mapped, position + 12, file);
+			position += HEADER_INTS * 4;
+
+			IntBuffer idOffsets = ints(mapped, position, nodes + 1, file);
+			position += 4 * (nodes + 1);
+			IntBuffer labelOffsets = ints(mapped, position, nodes + 1, file);
+			position += 4 * (nodes + 1);
+			IntBuffer outOffsets = ints(mapped, position, nodes + 1, file);
+			position += 4 * (nodes + 1);
+			IntBuffer outTargets = ints(mapped, position, edges, file);
+			position += 4 * edges;
+			IntBuffer inOffsets = ints(mapped, position, nodes + 1, file);
+			position += 4 * (nodes + 1);
+			IntBuffer inSources = ints(mapped, position, edges, file);
+			position += 4 * edges;
+			ByteBuffer types = region(mapped, position, nodes, file);
+			position = align(position + nodes);
+			ByteBuffer ids = region(mapped, position, idBytes, file);
+			position = align(position + idBytes);
+			ByteBuffer labels = region(mapped, position, labelBytes, file);
+			position = align(position + labelBytes);
+
+			String graphName = new String(name, StringColumn.UTF8);
+			CompactGraph graph = new CompactGraph(StringColumn.map(ids, idOffsets),
+					StringColumn.map(labels, labelOffsets), types, outOffsets, outTargets, inOffsets, inSources);
+			graphs.put(graphName, graph);
+
+			if (version >= 2)
+				position = readLayout(mapped, position, graphName, layouts, file);
+			if (version >= 4)
+				position = readLayout(mapped, position, graphName, cycleLayouts, file);
+
+			if (version >= 3) {
+				int indexNodes = intAt(mapped, position, file);
+				int artifacts = intAt(mapped, position + 4, file);
+				int sets = intAt(mapped, position + 8, file);
+				int setArtifacts = intAt(mapped, position + 12, file);
+				position += 16;
+				if (indexNodes > 0) {
+					if (indexNodes != nodes)
+						throw new IOException("The reachability index of " + graphName + " in snapshot " + file
+								+ " has " + indexNodes + " nodes, the graph " + nodes);
+					int[] artifactNodes = toArray(ints(mapped, position, artifacts, file));
+					position += 4 * artifacts;
+					int[] nodeSets = toArray(ints(mapped, position, indexNodes, file));
+					position += 4 * indexNodes;
+					IntBuffer setOffsets = ints(mapped, position, sets + 1, file);
+					position += 4 * (sets + 1);
+					IntBuffer setContents = ints(mapped, position, setArtifacts, file);
+					position += 4 * setArtifacts;
+
+					int[][] setArrays = new int[sets][];
+					for (int set = 0; set < sets; set++) {
+						setArrays[set] = new int[setOffsets.get(set + 1) - setOffsets.get(set)];
+						setContents.position(setOffsets.get(set));
+						setContents.get(setArrays[set]);
+					}
+					indexes.put(graphName, ReachabilityIndex.of(graph, artifactNodes, nodeSets, setArrays));
+				}
+			}
+		}
+		return new GraphSnapshot(graphs, layouts, cycleLayouts, indexes);
+	}
+
+	/**
+	 * Reads a layout, when there is one, returning the position after it.
+	 */
+	private static int readLayout(ByteBuffer mapped, int position, String graphName, Map<String, GraphLayout> layouts,
+			File file) throws IOException {
+		int layoutNodes = intAt(mapped, position, file);
+		position += 4;
+		if (layoutNodes > 0) {
+			FloatBuffer x = region(mapped, position, 4 * layoutNodes, file).asFloatBuffer();
+			position += 4 * layoutNodes;
+			FloatBuffer y = region(mapped, position, 4 * layoutNodes, file).asFloatBuffer();
+			position += 4 * layoutNodes;
+			layouts.put(graphName, new GraphLayout(x, y));
+		}
+		return position;
+	}
+
+	private static int intAt(ByteBuffer mapped, int position, File file) throws IOException {
+		if (position + 4 > mapped.limit())
+			throw new IOException("Snapshot " + file + " is truncated");
+		return mapped.getInt(position);
+	}
+
+	private static IntBuffer ints(ByteBuffer mapped, int position, int count, File file) throws IOException {
+		return region(mapped, position, 4 * count, file).asIntBuffer();
+	}
+
+	private static int[] toArray(IntBuffer values) {
+		int[] array = new int[values.remaining()];
+		values.get(array);
+		return array;
+	}
+
+	private static ByteBuffer region(ByteBuffer mapped, int position, int length, File file) throws IOException {
+		if (length < 0 || position + length > mapped.limit())
+			throw new IOException("Snapshot " + file + " is truncated");
+		ByteBuffer region = mapped.duplicate();
+		region.position(position);
+		region.limit(position + length);
+		return region.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static int align(int position) {
+		return (position + 3) & ~3;
+	}
+
+	public static void write(File file, Map<String, CompactGraph> graphs) throws IOException {
+		write(file, graphs, new HashMap<String, GraphLayout>(), new HashMap<String, GraphLayout>(),
+				new HashMap<String, ReachabilityIndex>());
+	}
+
+	/**
+	 * Writes the graphs under their names, with the layouts, cycle layouts
+	 * and reachability indexes found under the same names, replacing the file
+	 * at once when they are all written.
+	 */
+	public static void write(File file, Map<String, CompactGraph> graphs, Map<String, GraphLayout> layouts,
+			Map<String, GraphLayout> cycleLayouts, Map<String, ReachabilityIndex> indexes) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null)
+			parent.mkdirs();
+		File tmp = new File(file.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(tmp);
+		try {
+			Output out = new Output(stream.getChannel());
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(graphs.size());
+			for (Map.Entry<String, CompactGraph> entry : graphs.entrySet()) {
+				byte[] name = entry.getKey().getBytes(StringColumn.UTF8);
+				out.putInt(name.length);
+				out.putBytes(name);
+				writeGraph(out, entry.getValue());
+				writeLayout(out, layouts.get(entry.getKey()));
+				writeLayout(out, cycleLayouts.get(entry.getKey()));
+				writeIndex(out, indexes.get(entry.getKey()));
+			}
+			out.flush();
+		} finally {
+			stream.close();
+		}
+
+		if (file.exists() && !file.delete())
+			throw new IOException("Could not replace " + file);
+		if (!tmp.renameTo(file))
+			throw new IOException("Could not rename " + tmp + " to " + file);
+	}
+
+	private static void writeGraph(Output out, CompactGraph graph) throws IOException {
+		int nodes = graph.nodeCount();
+		byte[][] ids = new byte[nodes][];
+		byte[][] labels = new byte[nodes][];
+		int idBytes = 0;
+		int labelBytes = 0;
+		for (int n = 0; n < nodes; n++) {
+			ids[n] = graph.id(n).getBytes(StringColumn.UTF8);
+			String label = graph.explicitLabel(n);
+			labels[n] = label != null ? label.getBytes(StringColumn.UTF8) : new byte[0];
+			idBytes += ids[n].length;
+			labelBytes += labels[n].length;
+		}
+
+		out.putInt(nodes);
+		out.putInt(graph.edgeCount());
+		out.putInt(idBytes);
+		out.putInt(labelBytes);
+		putOffsets(out, ids);
+		putOffsets(out, labels);
+		out.putInts(graph.outOffsets());
+		out.putInts(graph.outTargets());
+		out.putInts(graph.inOffsets());
+		out.putInts(graph.inSources());
+		out.putBytes(graph.types());
+		for (byte[] id : ids)
+			out.write(id);
+		out.pad();
+		for (byte[] label : labels)
+			out.write(label);
+		out.pad();
+	}
+
+	private static void writeLayout(Output out, GraphLayout layout) throws IOException {
+		if (layout == null) {
+			out.putInt(0);
+			return;
+		}
+		out.putInt(layout.nodeCount());
+		FloatBuffer x = layout.getX();
+		while (x.hasRemaining())
+			out.putInt(Float.floatToRawIntBits(x.get()));
+		FloatBuffer y = layout.getY();
+		while (y.hasRemaining())
+			out.putInt(Float.floatToRawIntBits(y.get()));
+	}
+
+	private static void writeIndex(Output out, ReachabilityIndex index) throws IOException {
+		if (index == null) {
+			for (int i = 0; i < 4; i++)
+				out.putInt(0);
+			return;
+		}
+		int nodes = index.getGraph().nodeCount();
+		int setArtifacts = 0;
+		for (int set = 0; set < index.distinctSets(); set++)
+			setArtifacts += index.set(set).length;
+
+		out.putInt(nodes);
+		out.putInt(index.artifactCount());
+		out.putInt(index.distinctSets());
+		out.putInt(setArtifacts);
+		for (int artifact = 0; artifact < index.artifactCount(); artifact++)
+			out.putInt(index.artifactNode(artifact));
+		for (int node = 0; node < nodes; node++)
+			out.putInt(index.setOf(node));
+		int offset = 0;
+		out.putInt(0);
+		for (int set = 0; set < index.distinctSets(); set++) {
+			offset += index.set(set).length;
+			out.putInt(offset);
+		}
+		for (int set = 0; set < index.distinctSets(); set++) {
+			for (int artifact : index.set(set))
+				out.putInt(artifact);
+		}
+	}
+
+	private static void putOffsets(Output out, byte[][] strings) throws IOException {
+		int offset = 0;
+		out.putInt(0);
+		for (byte[] string : strings) {
+			offset += string.length;
+			out.putInt(offset);
+		}
+	}
+
+	/**
+	 * Little endian writes through one buffer, keeping count of the position
+	 * so regions can be padded.
+	 */
+	private static class Output {
+		private FileChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		private long position;
+
+		Output(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void putInt(int value) throws IOException {
+			ensure(4);
+			buffer.putInt(value);
+			position += 4;
+		}
+
+		void putInts(IntBuffer values) throws IOException {
+			while (values.hasRemaining())
+				putInt(values.get());
+		}
+
+		void putBytes(ByteBuffer values) throws IOException {
+			while (values.hasRemaining()) {
+				ensure(1);
+				int length = Math.min(values.remaining(), buffer.remaining());
+				ByteBuffer chunk = values.duplicate();
+				chunk.limit(chunk.position() + length);
+				buffer.put(chunk);
+				values.position(values.position() + length);
+				position += length;
+			}
+			pad();
+		}
+
+		void putBytes(byte[] values) throws IOException {
+			write(values);
+			pad();
+		}
+
+		void write(byte[] values) throws IOException {
+			int offset = 0;
+			while (offset < values.length) {
+				ensure(1);
+				int length = Math.min(values.length - offset, buffer.remaining());
+				buffer.put(values, offset, length);
+				offset += length;
+				position += length;
+			}
+		}
+
+		void pad() throws IOException {
+			while ((position & 3) != 0) {
+				ensure(1);
+				buffer.put((byte) 0);
+				position++;
+			}
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes)
+				flush();
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+package splab.ufcg.calltrack.model;
+
+import java.util.Arrays;
+
+import splab.ufcg.calltrack.utils.LongIntHashMap;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+/**
+ * Sums of something measured on a {@link Graph} after it was built, like
+ * times or samples: a self and a total sum by node index, and a sum by
+ * packed edge.
+ */
+class MeasureSums {
+
+	private long[] selfSums;
+	private long[] totalSums;
+	private LongIntHashMap edgeSlots = new LongIntHashMap();
+	// the edges in the order they were first added
+	private long[] edges = new long[16];
+	private long[] edgeSums = new long[16];
+	private int edgeCount;
+
+	void addNode(int node, long self, long total) {
+		if (selfSums == null || node >= selfSums.length) {
+			int length = Math.max(node + 1, selfSums == null ? 64 : selfSums.length << 1);
+			selfSums = selfSums == null ? new long[length] : Arrays.copyOf(selfSums, length);
+			totalSums = totalSums == null ? new long[length] : Arrays.copyOf(totalSums, length);
+		}
+		selfSums[node] += self;
+		totalSums[node] += total;
+	}
+
+	void addEdge(long edge, long value) {
+		int slot = edgeSlots.get(edge, -1);
+		if (slot < 0) {
+			if (edgeCount == edges.length) {
+				edges = Arrays.copyOf(edges, edgeCount << 1);
+				edgeSums = Arrays.copyOf(edgeSums, edgeCount << 1);
+			}
+			slot = edgeCount++;
+			edges[slot] = edge;
+			edgeSlots.put(edge, slot);
+		}
+		edgeSums[slot] += value;
+	}
+
+	boolean isEmpty() {
+		return selfSums == null && edgeCount == 0;
+	}
+
+	/**
+	 * The self sums by node of the compact graph, given the position there
+	 * of every node index, or null when none were added.
+	 */
+	long[] selfByNode(int[] position) {
+		return byNode(selfSums, position);
+	}
+
+	long[] totalByNode(int[] position) {
+		return byNode(totalSums, position);
+	}
+
+	private static long[] byNode(long[] sums, int[] position) {
+		if (sums == null)
+			return null;
+		long[] byNode = new long[position.length];
+		for (int i = 0; i < position.length && i < sums.length; i++)
+			byNode[position[i]] = sums[i];
+		return byNode;
+	}
+
+	/**
+	 * The sums by edge of the compact graph, or null when none were added.
+	 */
+	long[] byEdge(CompactGraph graph, int[] position) {
+		if (edgeCount == 0)
+			return null;
+		long[] byEdge = new long[graph.edgeCount()];
+		for (int slot = 0; slot < edgeCount; slot++) {
+			long edge = edges[slot];
+			byEdge[graph.edgeIndex(position[PackedEdge.from(edge)], position[PackedEdge.to(edge)])] = edgeSums[slot];
+		}
+		return byEdge;
+	}
+
+}
@@ -0,0 +1,90 @@
+package splab.ufcg.calltrack.model;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * The ids or the labels of the nodes of a {@link CompactGraph}. Either an
+ * array of strings, or UTF-8 bytes and their offsets in a buffer, like the
+ * ones mapped from a {@link GraphSnapshot}; those are only decoded when a
+ * string is asked for, and kept from then on.
+ *
+ * A buffer backed column reads an empty string as null, which is how a
+ * missing label is written.
+ */
+class StringColumn {
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private String[] strings;
+	private ByteBuffer bytes;
+	private IntBuffer offsets;
+
+	private StringColumn(String[] strings, ByteBuffer bytes, IntBuffer offsets) {
+		this.strings = strings;
+		this.bytes = bytes;
+		this.offsets = offsets;
+	}
+
+	static StringColumn of(String[] strings) {
+		return new StringColumn(strings, null, null);
+	}
+
+	/**
+	 * A column of offsets.limit() - 1 strings, the string i being the bytes
+	 * from offsets[i] to offsets[i + 1].
+	 */
+	static StringColumn map(ByteBuffer bytes, IntBuffer offsets) {
+		return new StringColumn(new String[offsets.limit() - 1], bytes, offsets);
+	}
+
+	int size() {
+		return strings.length;
+	}
+
+	String get(int i) {
+		String string = strings[i];
+		if (string != null || bytes == null)
+			return string;
+
+		int start = offsets.get(i);
+		int length = offsets.get(i + 1) - start;
+		if (length == 0)
+			return null;
+		byte[] encoded = new byte[length];
+		ByteBuffer slice = bytes.duplicate();
+		slice.position(start);
+		slice.get(encoded);
+		string = new String(encoded, UTF8);
+		// a race only decodes the same string twice
+		strings[i] = string;
+		return string;
+	}
+
+	/**
+	 * Index of the string in a sorted column, or -1 when it is not there.
+	 */
+	int indexOf(String string) {
+		if (bytes == null) {
+			int index = Arrays.binarySearch(strings, string);
+			return index >= 0 ? index : -1;
+		}
+
+		int low = 0;
+		int high = strings.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = get(middle).compareTo(string);
+			if (comparison < 0)
+				low = middle + 1;
+			else if (comparison > 0)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -1;
+	}
+
+}
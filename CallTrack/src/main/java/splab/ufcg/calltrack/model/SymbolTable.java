@@ -0,0 +1,155 @@
+package splab.ufcg.calltrack.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+/**
+ * Interns the class and method names met while visiting the bytecode into
+ * dense int ids. A method is the pair (class id, method name id); its
+ * "Class:method" node id and its label are only built when asked for.
+ *
+ * Interning is thread-safe: lookups of known names go through concurrent
+ * maps, new names are appended under the table lock.
+ */
+public class SymbolTable {
+
+	private ConcurrentHashMap<String, Integer> classIds = new ConcurrentHashMap<String, Integer>();
+	private ConcurrentHashMap<String, Integer> methodNameIds = new ConcurrentHashMap<String, Integer>();
+	// by the (class id, method name id) pair packed in a long
+	private ConcurrentHashMap<Long, Integer> methodIds = new ConcurrentHashMap<Long, Integer>(1024);
+
+	private String[] classNames = new String[256];
+	private int classCount;
+	private String[] methodNames = new String[256];
+	private int methodNameCount;
+	private int[] methodClass = new int[1024];
+	private int[] methodName = new int[1024];
+	private String[] methodNodeIds = new String[1024];
+	private int methodCount;
+
+	public int internClass(String className) {
+		Integer id = classIds.get(className);
+		if (id != null)
+			return id;
+		synchronized (this) {
+			id = classIds.get(className);
+			if (id != null)
+				return id;
+			if (classCount == classNames.length)
+				classNames = Arrays.copyOf(classNames, classCount << 1);
+			classNames[classCount] = className;
+			classIds.put(className, classCount);
+			return classCount++;
+		}
+	}
+
+	public int internMethod(int classId, String name) {
+		long key = PackedEdge.of(classId, internMethodName(name));
+		Integer id = methodIds.get(key);
+		if (id != null)
+			return id;
+		synchronized (this) {
+			id = methodIds.get(key);
+			if (id != null)
+				return id;
+			if (methodCount == methodClass.length) {
+				methodClass = Arrays.copyOf(methodClass, methodCount << 1);
+				methodName = Arrays.copyOf(methodName, methodCount << 1);
+				methodNodeIds = Arrays.copyOf(methodNodeIds, methodCount << 1);
+			}
+			methodClass[methodCount] = classId;
+			methodName[methodCount] = PackedEdge.to(key);
+			methodIds.put(key, methodCount);
+			return methodCount++;
+		}
+	}
+
+	public int internMethod(String className, String name) {
+		return internMethod(internClass(className), name);
+	}
+
+	/**
+	 * The id of a class interned before, -1 when there is none.
+	 */
+	public int classId(String className) {
+		Integer id = classIds.get(className);
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * The id of a method interned before, -1 when there is none.
+	 */
+	public int methodId(int classId, String name) {
+		Integer nameId = classId < 0 ? null : methodNameIds.get(name);
+		if (nameId == null)
+			return -1;
+		Integer id = methodIds.get(PackedEdge.of(classId, nameId));
+		return id != null ? id : -1;
+	}
+
+	private int internMethodName(String name) {
+		Integer id = methodNameIds.get(name);
+		if (id != null)
+			return id;
+		synchronized (this) {
+			id = methodNameIds.get(name);
+			if (id != null)
+				return id;
+			if (methodNameCount == methodNames.length)
+				methodNames = Arrays.copyOf(methodNames, methodNameCount << 1);
+			methodNames[methodNameCount] = name;
+			methodNameIds.put(name, methodNameCount);
+			return methodNameCount++;
+		}
+	}
+
+	public synchronized int classCount() {
+		return classCount;
+	}
+
+	public synchronized int methodCount() {
+		return methodCount;
+	}
+
+	public synchronized String className(int classId) {
+		return classNames[classId];
+	}
+
+	public synchronized int methodClass(int methodId) {
+		return methodClass[methodId];
+	}
+
+	public synchronized String methodName(int methodId) {
+		return methodNames[methodName[methodId]];
+	}
+
+	/**
+	 * The id of the name of the method, the same for the methods of every
+	 * class that have that name.
+	 */
+	public synchronized int methodNameId(int methodId) {
+		return methodName[methodId];
+	}
+
+	/**
+	 * The "package.Class:method" id used for the method nodes of the graph.
+	 */
+	public synchronized String methodNodeId(int methodId) {
+		String nodeId = methodNodeIds[methodId];
+		if (nodeId == null) {
+			nodeId = classNames[methodClass[methodId]] + ":" + methodNames[methodName[methodId]];
+			methodNodeIds[methodId] = nodeId;
+		}
+		return nodeId;
+	}
+
+	/**
+	 * The label shown for a node: its id without the package.
+	 */
+	public static String label(String nodeId) {
+		return nodeId.substring(nodeId.lastIndexOf('.') + 1);
+	}
+
+}
@@ -1,15 +0,0 @@
-package splab.ufcg.calltrack.model.dto;
-
-import com.google.gson.annotations.SerializedName;
-
-public class EdgeDTO{
-	@SerializedName("@data@")
-	EdgeDTOData data;
-
-	public EdgeDTO(EdgeDTOData data) {
-		this.data = data;
-	}
-	
-	
-	
-}
\ No newline at end of file
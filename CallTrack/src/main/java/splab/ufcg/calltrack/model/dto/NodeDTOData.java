@@ -34,12 +34,16 @@ public class NodeDTOData {
 		return shape;
 	}
 	private void setShape(TypeNode type){
+		this.shape = shapeOf(type);
+	}
+	
+	public static String shapeOf(TypeNode type){
 		if(type == TypeNode.ARTIFACT_US)
-			this.shape = "rectangle";
+			return "rectangle";
 		else if(type == TypeNode.ARTIFACT_TC)
-			this.shape = "triangle";
+			return "triangle";
 		else
-			this.shape = "ellipse";
+			return "ellipse";
 			
 	}
 	
@@ -69,12 +73,17 @@ public class NodeDTOData {
 
 
 	private void setBackgroundColor(TypeNode type) {
+		this.backgroundColor = backgroundColorOf(type);
+	}
+
+
+	public static String backgroundColorOf(TypeNode type) {
 		if(type == TypeNode.ARTIFACT_US)
-			this.backgroundColor = "#FF9900";
+			return "#FF9900";
 		else if(type == TypeNode.ARTIFACT_TC)
-			this.backgroundColor = "#FF9900";
+			return "#FF9900";
 		else
-			this.backgroundColor ="#A0A0A0";
+			return "#A0A0A0";
 	}
 
 
@@ -84,10 +93,15 @@ public class NodeDTOData {
 
 
 	private void setColorHighlight(TypeNode type) {
+		this.colorHighlight = colorHighlightOf(type);
+	}
+
+
+	public static String colorHighlightOf(TypeNode type) {
 		if(type == TypeNode.ARTIFACT_US || type == TypeNode.ARTIFACT_TC)
-			this.colorHighlight = "#FF0000";
+			return "#FF0000";
 		else
-			this.colorHighlight ="#61bffc";
+			return "#61bffc";
 	}
 	
 	
@@ -0,0 +1,93 @@
+package splab.ufcg.calltrack.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * The stream of Server-Sent Events the open pages listen to, to hear about
+ * the changes of the graphs. A page stays connected until it is closed; the
+ * events it misses while it is away are not sent again.
+ *
+ * Every client is written to under its own lock, and dropped at the first
+ * write that fails. A comment is sent every little while, so that a page
+ * that went away is noticed even when nothing changes.
+ */
+public class GraphEvents implements HttpHandler {
+
+	private static final long HEARTBEAT_SECONDS = 20;
+
+	private List<HttpExchange> clients = new CopyOnWriteArrayList<HttpExchange>();
+	private ScheduledExecutorService heartbeat;
+
+	public void handle(HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+		exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		exchange.sendResponseHeaders(200, 0);
+		// the exchange is left open, the events are written to it as they come
+		clients.add(exchange);
+		send(exchange, "retry: 2000\n\n");
+	}
+
+	public void start() {
+		heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "calltrack-events");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		heartbeat.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				sendAll(":\n\n");
+			}
+		}, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	public void stop() {
+		if (heartbeat != null)
+			heartbeat.shutdownNow();
+		for (HttpExchange client : clients)
+			client.close();
+		clients.clear();
+	}
+
+	/**
+	 * Sends an event to every page connected. The data must be on one line,
+	 * like JSON written without indentation.
+	 */
+	public void publish(String event, String data) {
+		sendAll("event: " + event + "\ndata: " + data + "\n\n");
+	}
+
+	public int clientCount() {
+		return clients.size();
+	}
+
+	private void sendAll(String message) {
+		for (HttpExchange client : clients)
+			send(client, message);
+	}
+
+	private void send(HttpExchange client, String message) {
+		synchronized (client) {
+			try {
+				OutputStream out = client.getResponseBody();
+				out.write(message.getBytes("UTF-8"));
+				out.flush();
+			} catch (IOException e) {
+				clients.remove(client);
+				client.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,261 @@
+package splab.ufcg.calltrack.server;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import splab.ufcg.calltrack.analysis.GraphHierarchy;
+import splab.ufcg.calltrack.analysis.GraphLayout;
+import splab.ufcg.calltrack.analysis.ImpactAnalyzer;
+import splab.ufcg.calltrack.analysis.ImpactResult;
+import splab.ufcg.calltrack.analysis.ReachabilityIndex;
+import splab.ufcg.calltrack.model.CompactGraph;
+import splab.ufcg.calltrack.utils.LongHashSet;
+
+/**
+ * The questions the viewer asks about one graph. Every answer is a small set
+ * of nodes, capped by a limit, so that the page only holds what it shows.
+ *
+ * Queries only read the graph, so they can run from many server threads at
+ * once. What a query allocates is sized to its answer: the searches that
+ * need arrays as large as the graph keep them per thread, and reset only the
+ * entries they touched.
+ */
+public class GraphQueries {
+
+	private CompactGraph graph;
+	private ReachabilityIndex index;
+	private GraphLayout layout;
+	private GraphHierarchy hierarchy;
+	private ThreadLocal<ImpactAnalyzer> analyzers = new ThreadLocal<ImpactAnalyzer>() {
+		protected ImpactAnalyzer initialValue() {
+			return new ImpactAnalyzer(index);
+		}
+	};
+	private ThreadLocal<PathSearch> pathSearches = new ThreadLocal<PathSearch>() {
+		protected PathSearch initialValue() {
+			return new PathSearch(graph);
+		}
+	};
+
+	/**
+	 * Queries of the graph of the index, which gives the artifacts an impact
+	 * reaches.
+	 */
+	public GraphQueries(ReachabilityIndex index) {
+		this(index, null);
+	}
+
+	/**
+	 * Queries whose nodes are placed where the layout puts them, if there is
+	 * one.
+	 */
+	public GraphQueries(ReachabilityIndex index, GraphLayout layout) {
+		this.graph = index.getGraph();
+		this.index = index;
+		this.layout = layout;
+	}
+
+	public CompactGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * The positions of the nodes, or null when the viewer places them.
+	 */
+	public GraphLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Answers {@link #hierarchy(List)} with the levels of the graph, for a
+	 * method graph.
+	 */
+	public void setHierarchy(GraphHierarchy hierarchy) {
+		this.hierarchy = hierarchy;
+	}
+
+	/**
+	 * The packages of the graph, with the given packages and classes
+	 * expanded.
+	 *
+	 * @throws IllegalArgumentException
+	 *             when the graph has no levels or an id is unknown
+	 */
+	public GraphHierarchy.View hierarchy(List<String> expanded) {
+		if (hierarchy == null)
+			throw new IllegalArgumentException("The graph has no packages to expand");
+		return hierarchy.view(expanded);
+	}
+
+	/**
+	 * Nodes whose id or label contains the text, ignoring case.
+	 */
+	public Subgraph search(String text, int limit) {
+		String wanted = text.toLowerCase(Locale.ENGLISH);
+		Subgraph found = new Subgraph();
+		for (int n = 0; n < graph.nodeCount() && found.size() < limit; n++) {
+			if (graph.id(n).toLowerCase(Locale.ENGLISH).contains(wanted)
+					|| graph.label(n).toLowerCase(Locale.ENGLISH).contains(wanted))
+				found.add(n);
+		}
+		return found;
+	}
+
+	/**
+	 * The nodes at most hops edges away from the given ones, following the
+	 * edges both ways, in breadth first order.
+	 */
+	public Subgraph neighborhood(int[] nodes, int hops, int limit) {
+		Subgraph found = new Subgraph();
+		for (int node : nodes) {
+			if (found.size() < limit)
+				found.add(node);
+		}
+
+		int levelStart = 0;
+		for (int hop = 0; hop < hops && found.size() < limit; hop++) {
+			int levelEnd = found.size();
+			for (int i = levelStart; i < levelEnd && found.size() < limit; i++) {
+				int node = found.node(i);
+				for (int e = graph.firstOut(node), end = graph.endOut(node); e < end && found.size() < limit; e++)
+					found.add(graph.target(e));
+				for (int e = graph.firstIn(node), end = graph.endIn(node); e < end && found.size() < limit; e++)
+					found.add(graph.source(e));
+			}
+			levelStart = levelEnd;
+		}
+		return found;
+	}
+
+	/**
+	 * Everything a change in the given nodes reaches, in breadth first order
+	 * and capped by the limit, and all the artifacts it reaches whatever the
+	 * limit.
+	 */
+	public Subgraph impact(int[] nodes, int limit) {
+		Subgraph found = new Subgraph();
+		for (int node : nodes) {
+			if (found.size() < limit)
+				found.add(node);
+		}
+		for (int i = 0; i < found.size() && found.size() < limit; i++) {
+			int node = found.node(i);
+			for (int e = graph.firstOut(node), end = graph.endOut(node); e < end && found.size() < limit; e++)
+				found.add(graph.target(e));
+		}
+
+		found.artifacts = analyzers.get().analyze(nodes, nodes.length);
+		for (int i = 0; i < found.artifacts.size(); i++)
+			found.add(found.artifacts.node(i));
+		return found;
+	}
+
+	/**
+	 * One of the shortest paths from a node to another, following the edges,
+	 * or an empty subgraph when the second is not reachable from the first.
+	 */
+	public Subgraph path(int from, int to) {
+		return pathSearches.get().find(from, to);
+	}
+
+	/**
+	 * Nodes of the graph in the order they were found, without duplicates.
+	 */
+	public static class Subgraph {
+		private LongHashSet members = new LongHashSet();
+		private int[] nodes = new int[16];
+		private int size;
+		private ImpactResult artifacts;
+
+		void add(int node) {
+			if (!members.add(node))
+				return;
+			if (size == nodes.length)
+				nodes = Arrays.copyOf(nodes, size << 1);
+			nodes[size++] = node;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int node(int i) {
+			return nodes[i];
+		}
+
+		public boolean contains(int node) {
+			return members.contains(node);
+		}
+
+		/**
+		 * The artifacts found by an impact query, null for the others.
+		 */
+		public ImpactResult getArtifacts() {
+			return artifacts;
+		}
+	}
+
+	/**
+	 * Breadth first search for a shortest path, whose arrays are kept from
+	 * one search to the next. Not thread-safe.
+	 */
+	private static class PathSearch {
+		private CompactGraph graph;
+		private int[] parent;
+		private int[] queue;
+		private long[] visited;
+
+		PathSearch(CompactGraph graph) {
+			this.graph = graph;
+			this.parent = new int[graph.nodeCount()];
+			this.queue = new int[graph.nodeCount()];
+			this.visited = new long[(graph.nodeCount() + 63) >>> 6];
+		}
+
+		Subgraph find(int from, int to) {
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = from;
+			mark(from);
+			parent[from] = -1;
+			boolean reached = from == to;
+			while (head < tail && !reached) {
+				int node = queue[head++];
+				for (int e = graph.firstOut(node), end = graph.endOut(node); e < end && !reached; e++) {
+					int target = graph.target(e);
+					if (mark(target)) {
+						parent[target] = node;
+						queue[tail++] = target;
+						reached = target == to;
+					}
+				}
+			}
+
+			Subgraph found = new Subgraph();
+			if (reached) {
+				int length = 0;
+				for (int node = to; node >= 0; node = parent[node])
+					length++;
+				int[] path = new int[length];
+				for (int node = to; node >= 0; node = parent[node])
+					path[--length] = node;
+				for (int node : path)
+					found.add(node);
+			}
+			for (int i = 0; i < tail; i++)
+				visited[queue[i] >>> 6] &= ~(1L << queue[i]);
+			return found;
+		}
+
+		private boolean mark(int node) {
+			long bit = 1L << node;
+			int word = node >>> 6;
+			if ((visited[word] & bit) != 0)
+				return false;
+			visited[word] |= bit;
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,457 @@
+package splab.ufcg.calltrack.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import splab.ufcg.calltrack.analysis.GraphHierarchy;
+import splab.ufcg.calltrack.analysis.GraphLayout;
+import splab.ufcg.calltrack.analysis.ImpactResult;
+import splab.ufcg.calltrack.model.CompactGraph;
+import splab.ufcg.calltrack.model.GraphDelta;
+import splab.ufcg.calltrack.model.TypeNode;
+import splab.ufcg.calltrack.model.dto.NodeDTOData;
+
+/**
+ * Serves the viewer and answers its questions about the graphs kept in
+ * memory, so the page loads the parts of a graph it shows instead of the
+ * whole of it. Built on the HTTP server of the JDK.
+ *
+ * <pre>
+ * GET /api/{graph}/search?q=TEXT[&amp;limit=N]
+ * GET /api/{graph}/neighborhood?node=N|id=ID[&amp;hops=K][&amp;limit=N]
+ * GET /api/{graph}/impact?node=N|id=ID[,ID...][&amp;limit=N]
+ * GET /api/{graph}/path?from=N|ID&amp;to=N|ID
+ * GET /api/method/hierarchy[?expand=ID[,ID...]]
+ * GET /api/events
+ * </pre>
+ * Every answer is a JSON object with the nodes and the edges between them in
+ * the format of the viewer, node ids being node indexes, or the ids of the
+ * nodes for graphs that change; an impact also lists the artifacts reached
+ * and their distance. Nodes have x and y when the
+ * graph has a layout. A hierarchy answer is the view of the packages with the
+ * given packages and classes expanded, in the format of data-package.json.
+ * The events are a stream of the changes of the graphs, one delta event per
+ * graph changed with the nodes and edges added and the ids of the ones
+ * removed. Other paths are files of the view directory.
+ *
+ * There is no authentication, so the server only listens on the loopback
+ * address unless it is given another one.
+ */
+public class QueryServer {
+
+	private static final int DEFAULT_LIMIT = 200;
+	private static final int MAX_LIMIT = 5000;
+
+	private Map<String, GraphQueries> graphs;
+	private File viewDirectory;
+	private boolean nodeIds;
+	private GraphEvents events = new GraphEvents();
+	private HttpServer server;
+	private ExecutorService executor;
+
+	public QueryServer(Map<String, GraphQueries> graphs, File viewDirectory) {
+		this.graphs = new ConcurrentHashMap<String, GraphQueries>(graphs);
+		this.viewDirectory = viewDirectory;
+	}
+
+	/**
+	 * Names the nodes of the answers by their ids instead of their indexes,
+	 * which change with the graph, so that a page can keep what it holds
+	 * across the updates of {@link #update(String, GraphQueries)}.
+	 */
+	public void setNodeIds(boolean nodeIds) {
+		this.nodeIds = nodeIds;
+	}
+
+	public void start(int port, int workers) throws IOException {
+		start(InetAddress.getLoopbackAddress(), port, workers);
+	}
+
+	/**
+	 * Listens on the given address, which every host that reaches it can
+	 * query.
+	 */
+	public void start(InetAddress address, int port, int workers) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(address, port), 0);
+		server.createContext("/api/events", events);
+		server.createContext("/api/", new ApiHandler());
+		server.createContext("/", new FileHandler());
+		executor = Executors.newFixedThreadPool(workers);
+		server.setExecutor(executor);
+		events.start();
+		server.start();
+	}
+
+	public void stop() {
+		events.stop();
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	/**
+	 * Answers the queries on a graph with the new one from now on.
+	 */
+	public void update(String graph, GraphQueries queries) {
+		graphs.put(graph, queries);
+	}
+
+	/**
+	 * Tells the open pages what changed in a graph, already updated with
+	 * {@link #update(String, GraphQueries)}.
+	 */
+	public void publish(GraphDelta delta) throws IOException {
+		GraphQueries queries = graphs.get(delta.getGraph());
+		events.publish("delta", toJson(queries.getGraph(), queries.getLayout(), delta));
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private class ApiHandler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				String[] path = exchange.getRequestURI().getPath().split("/");
+				GraphQueries queries = path.length == 4 ? graphs.get(path[2]) : null;
+				if (queries == null) {
+					sendError(exchange, 404, "Unknown graph or query " + exchange.getRequestURI().getPath());
+					return;
+				}
+				Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+				if ("hierarchy".equals(path[3])) {
+					send(exchange, 200, "application/json", toJson(queries.hierarchy(expanded(parameters))));
+					return;
+				}
+				GraphQueries.Subgraph answer = answer(queries, path[3], parameters);
+				if (answer == null) {
+					sendError(exchange, 404, "Unknown query " + path[3]);
+					return;
+				}
+				send(exchange, 200, "application/json", toJson(queries.getGraph(), queries.getLayout(), answer, nodeIds));
+			} catch (IllegalArgumentException e) {
+				sendError(exchange, 400, e.getMessage());
+			} catch (RuntimeException e) {
+				System.err.println("Error while answering " + exchange.getRequestURI() + ": " + e.getMessage());
+				e.printStackTrace();
+				sendError(exchange, 500, String.valueOf(e.getMessage()));
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	private GraphQueries.Subgraph answer(GraphQueries queries, String query, Map<String, String> parameters) {
+		CompactGraph graph = queries.getGraph();
+		int limit = Math.min(intParameter(parameters, "limit", DEFAULT_LIMIT), MAX_LIMIT);
+		if ("search".equals(query))
+			return queries.search(required(parameters, "q"), limit);
+		if ("neighborhood".equals(query))
+			return queries.neighborhood(nodes(graph, parameters), intParameter(parameters, "hops", 1), limit);
+		if ("impact".equals(query))
+			return queries.impact(nodes(graph, parameters), limit);
+		if ("path".equals(query))
+			return queries.path(node(graph, required(parameters, "from")), node(graph, required(parameters, "to")));
+		return null;
+	}
+
+	/**
+	 * The nodes given by index in the node parameter or by id, comma
+	 * separated, in the id parameter.
+	 */
+	private static int[] nodes(CompactGraph graph, Map<String, String> parameters) {
+		if (parameters.containsKey("node"))
+			return new int[] { node(graph, parameters.get("node")) };
+		String[] ids = required(parameters, "id").split(",");
+		int[] nodes = new int[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			nodes[i] = node(graph, ids[i]);
+		return nodes;
+	}
+
+	/**
+	 * A node given by its index or by its id.
+	 */
+	private static int node(CompactGraph graph, String value) {
+		int node = graph.indexOf(value);
+		if (node >= 0)
+			return node;
+		try {
+			node = Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Unknown node " + value);
+		}
+		if (node < 0 || node >= graph.nodeCount())
+			throw new IllegalArgumentException("Unknown node " + value);
+		return node;
+	}
+
+	private static List<String> expanded(Map<String, String> parameters) {
+		String value = parameters.get("expand");
+		if (value == null || value.length() == 0)
+			return new ArrayList<String>();
+		return Arrays.asList(value.split(","));
+	}
+
+	private static String required(Map<String, String> parameters, String name) {
+		String value = parameters.get(name);
+		if (value == null || value.length() == 0)
+			throw new IllegalArgumentException("Missing parameter " + name);
+		return value;
+	}
+
+	private static int intParameter(Map<String, String> parameters, String name, int missing) {
+		String value = parameters.get(name);
+		if (value == null)
+			return missing;
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Expected a number for " + name + ", got " + value);
+		}
+	}
+
+	private static Map<String, String> parameters(String query) throws UnsupportedEncodingException {
+		Map<String, String> parameters = new HashMap<String, String>();
+		if (query == null)
+			return parameters;
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals > 0)
+				parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+						URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+		}
+		return parameters;
+	}
+
+	static String toJson(CompactGraph graph, GraphLayout layout, GraphQueries.Subgraph subgraph, boolean nodeIds)
+			throws IOException {
+		StringWriter buffer = new StringWriter();
+		JsonWriter json = new JsonWriter(buffer);
+		json.beginObject();
+		json.name("nodes").beginArray();
+		for (int i = 0; i < subgraph.size(); i++)
+			writeNode(json, graph, layout, subgraph.node(i), nodeIds);
+		json.endArray();
+
+		json.name("edges").beginArray();
+		for (int i = 0; i < subgraph.size(); i++) {
+			int node = subgraph.node(i);
+			for (int e = graph.firstOut(node), end = graph.endOut(node); e < end; e++) {
+				int target = graph.target(e);
+				if (subgraph.contains(target))
+					writeEdge(json, elementId(graph, node, nodeIds), elementId(graph, target, nodeIds));
+			}
+		}
+		json.endArray();
+
+		ImpactResult artifacts = subgraph.getArtifacts();
+		if (artifacts != null) {
+			json.name("artifacts").beginArray();
+			for (int i = 0; i < artifacts.size(); i++) {
+				json.beginObject();
+				json.name("node").value(elementId(graph, artifacts.node(i), nodeIds));
+				json.name("distance").value(artifacts.distance(i));
+				json.endObject();
+			}
+			json.endArray();
+		}
+		json.endObject();
+		json.close();
+		return buffer.toString();
+	}
+
+	/**
+	 * A delta of a graph, its nodes named by their ids: the nodes and edges
+	 * added, in the format of the answers, and the ids of the ones removed.
+	 */
+	static String toJson(CompactGraph graph, GraphLayout layout, GraphDelta delta) throws IOException {
+		StringWriter buffer = new StringWriter();
+		JsonWriter json = new JsonWriter(buffer);
+		json.beginObject();
+		json.name("graph").value(delta.getGraph());
+		json.name("nodes").beginArray();
+		for (String nodeId : delta.getAddedNodes())
+			writeNode(json, graph, layout, graph.indexOf(nodeId), true);
+		json.endArray();
+		json.name("edges").beginArray();
+		List<String> edges = delta.getAddedEdges();
+		for (int i = 0; i < edges.size(); i += 2)
+			writeEdge(json, edges.get(i), edges.get(i + 1));
+		json.endArray();
+		json.name("removedNodes").beginArray();
+		for (String nodeId : delta.getRemovedNodes())
+			json.value(nodeId);
+		json.endArray();
+		json.name("removedEdges").beginArray();
+		edges = delta.getRemovedEdges();
+		for (int i = 0; i < edges.size(); i += 2)
+			json.value(edgeId(edges.get(i), edges.get(i + 1)));
+		json.endArray();
+		json.endObject();
+		json.close();
+		return buffer.toString();
+	}
+
+	private static void writeNode(JsonWriter json, CompactGraph graph, GraphLayout layout, int node, boolean nodeIds)
+			throws IOException {
+		TypeNode type = graph.type(node);
+		json.beginObject().name("data").beginObject();
+		json.name("id").value(elementId(graph, node, nodeIds));
+		json.name("name").value(graph.id(node));
+		json.name("label").value(graph.label(node));
+		json.name("type").value(type.toString());
+		json.name("shape").value(NodeDTOData.shapeOf(type));
+		json.name("color").value(NodeDTOData.backgroundColorOf(type));
+		json.name("colorHighlight").value(NodeDTOData.colorHighlightOf(type));
+		if (layout != null) {
+			json.name("x").value(Float.valueOf(layout.x(node)));
+			json.name("y").value(Float.valueOf(layout.y(node)));
+		}
+		json.endObject().endObject();
+	}
+
+	private static void writeEdge(JsonWriter json, String source, String target) throws IOException {
+		json.beginObject().name("data").beginObject();
+		json.name("id").value(edgeId(source, target));
+		json.name("source").value(source);
+		json.name("target").value(target);
+		json.endObject().endObject();
+	}
+
+	private static String elementId(CompactGraph graph, int node, boolean nodeIds) {
+		return nodeIds ? graph.id(node) : Integer.toString(node);
+	}
+
+	private static String edgeId(String source, String target) {
+		return source + "-" + target;
+	}
+
+	static String toJson(GraphHierarchy.View view) throws IOException {
+		CompactGraph graph = view.getGraph();
+		StringWriter buffer = new StringWriter();
+		JsonWriter json = new JsonWriter(buffer);
+		json.beginObject();
+		json.name("nodes").beginArray();
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			TypeNode type = graph.type(node);
+			json.beginObject().name("data").beginObject();
+			json.name("id").value(Integer.toString(node));
+			json.name("name").value(graph.id(node));
+			json.name("label").value(graph.label(node));
+			json.name("type").value(type.toString());
+			json.name("level").value(view.levelName(node));
+			if (view.container(node) != null)
+				json.name("container").value(view.container(node));
+			json.name("expandable").value(view.isExpandable(node));
+			json.name("shape").value(NodeDTOData.shapeOf(type));
+			json.name("color").value(NodeDTOData.backgroundColorOf(type));
+			json.name("colorHighlight").value(NodeDTOData.colorHighlightOf(type));
+			json.endObject().endObject();
+		}
+		json.endArray();
+
+		json.name("edges").beginArray();
+		for (int node = 0; node < graph.nodeCount(); node++) {
+			for (int e = graph.firstOut(node), end = graph.endOut(node); e < end; e++) {
+				int target = graph.target(e);
+				json.beginObject().name("data").beginObject();
+				json.name("id").value(node + "-" + target);
+				json.name("source").value(Integer.toString(node));
+				json.name("target").value(Integer.toString(target));
+				json.name("weight").value(view.weight(e));
+				json.endObject().endObject();
+			}
+		}
+		json.endArray();
+		json.endObject();
+		json.close();
+		return buffer.toString();
+	}
+
+	/**
+	 * Serves the files of the view directory. The data scripts are answered
+	 * with an empty graph, which tells the page to ask the server instead.
+	 */
+	private class FileHandler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				String path = exchange.getRequestURI().getPath();
+				if ("/".equals(path))
+					path = "/index-package.html";
+				if (path.matches("/data-\\w+\\.json")) {
+					send(exchange, 200, "application/javascript", "data = null;");
+					return;
+				}
+
+				File file = new File(viewDirectory, path.substring(1));
+				String root = viewDirectory.getCanonicalPath() + File.separator;
+				if (!file.getCanonicalPath().startsWith(root) || !file.isFile()) {
+					sendError(exchange, 404, "Not found " + path);
+					return;
+				}
+				exchange.getResponseHeaders().set("Content-Type", contentType(file.getName()));
+				exchange.sendResponseHeaders(200, file.length());
+				InputStream in = new FileInputStream(file);
+				OutputStream out = exchange.getResponseBody();
+				try {
+					byte[] buffer = new byte[8192];
+					int read;
+					while ((read = in.read(buffer)) != -1)
+						out.write(buffer, 0, read);
+				} finally {
+					in.close();
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	private static String contentType(String fileName) {
+		if (fileName.endsWith(".html"))
+			return "text/html; charset=utf-8";
+		if (fileName.endsWith(".css"))
+			return "text/css";
+		if (fileName.endsWith(".js") || fileName.endsWith(".json"))
+			return "application/javascript";
+		return "application/octet-stream";
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		StringWriter buffer = new StringWriter();
+		JsonWriter json = new JsonWriter(buffer);
+		json.beginObject().name("error").value(message).endObject();
+		json.close();
+		send(exchange, status, "application/json", buffer.toString());
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+	}
+
+}
@@ -0,0 +1,255 @@
+package splab.ufcg.calltrack.stats;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * What a run did and how long it took: the wall and CPU time of each phase,
+ * in the order they first ran, the classes scanned and the ones that could
+ * not be analysed, the instructions of their methods, the edges their code has that the pattern kept and
+ * rejected, and the peak heap.
+ *
+ * The counters are added to from the scanner workers, once per class, and
+ * can be read while the run goes on once the stats are registered with JMX.
+ */
+public class RunStats implements RunStatsMXBean {
+
+	public static final String OBJECT_NAME = "splab.ufcg.calltrack:type=RunStats";
+	public static final String SCAN = "scan";
+
+	private static final Logger LOG = Logger.getLogger(RunStats.class.getName());
+
+	// wall and cpu nanoseconds by phase
+	private Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+	private volatile Phase running;
+
+	private LongAdder classesVisited = new LongAdder();
+	private LongAdder classesSkipped = new LongAdder();
+	private LongAdder classesCached = new LongAdder();
+	private LongAdder classesFailed = new LongAdder();
+	private LongAdder instructions = new LongAdder();
+	private LongAdder keptEdges = new LongAdder();
+	private LongAdder rejectedEdges = new LongAdder();
+
+	/**
+	 * Starts timing a phase, to be ended by {@link Phase#end()}. The times of
+	 * a phase run more than once are added.
+	 */
+	public Phase start(String name) {
+		Phase phase = new Phase(name);
+		running = phase;
+		return phase;
+	}
+
+	public class Phase {
+		private String name;
+		private long start = System.nanoTime();
+		private long cpuStart = cpuTime();
+
+		Phase(String name) {
+			this.name = name;
+		}
+
+		public void end() {
+			long wall = System.nanoTime() - start;
+			long cpu = cpuTime() - cpuStart;
+			synchronized (phases) {
+				long[] times = phases.get(name);
+				if (times == null)
+					phases.put(name, times = new long[2]);
+				times[0] += wall;
+				times[1] += cpu;
+			}
+			if (running == this)
+				running = null;
+			if (LOG.isLoggable(Level.FINE))
+				LOG.fine(name + " took " + TimeUnit.NANOSECONDS.toMillis(wall) + " ms, "
+						+ TimeUnit.NANOSECONDS.toMillis(cpu) + " ms of CPU");
+		}
+	}
+
+	/**
+	 * The CPU time of every thread of the process, or of the calling thread
+	 * when the JVM does not tell.
+	 */
+	private static long cpuTime() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean)
+			return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+		return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+	}
+
+	/**
+	 * Counts a class whose code was visited, with the edges it has that the
+	 * pattern kept and rejected, duplicates included.
+	 */
+	public void countVisitedClass(int instructions, int keptEdges, int rejectedEdges) {
+		classesVisited.increment();
+		this.instructions.add(instructions);
+		this.keptEdges.add(keptEdges);
+		this.rejectedEdges.add(rejectedEdges);
+	}
+
+	public void countSkippedClass() {
+		classesSkipped.increment();
+	}
+
+	/**
+	 * Counts a class whose edges were replayed from the analysis cache.
+	 */
+	public void countCachedClass() {
+		classesCached.increment();
+	}
+
+	/**
+	 * Counts the classes the scan could not analyse, left out of the graphs.
+	 */
+	public void countFailedClasses(int classes) {
+		classesFailed.add(classes);
+	}
+
+	public String getPhase() {
+		Phase phase = running;
+		return phase != null ? phase.name : "";
+	}
+
+	public Map<String, Long> getPhaseWallMillis() {
+		return millis(0);
+	}
+
+	public Map<String, Long> getPhaseCpuMillis() {
+		return millis(1);
+	}
+
+	private Map<String, Long> millis(int time) {
+		Map<String, Long> millis = new LinkedHashMap<String, Long>();
+		synchronized (phases) {
+			for (Map.Entry<String, long[]> phase : phases.entrySet())
+				millis.put(phase.getKey(), TimeUnit.NANOSECONDS.toMillis(phase.getValue()[time]));
+		}
+		return millis;
+	}
+
+	public long getClassesVisited() {
+		return classesVisited.sum();
+	}
+
+	public long getClassesSkipped() {
+		return classesSkipped.sum();
+	}
+
+	public long getClassesCached() {
+		return classesCached.sum();
+	}
+
+	public long getClassesFailed() {
+		return classesFailed.sum();
+	}
+
+	/**
+	 * The classes scanned, visited, skipped or cached, per second of the
+	 * scan phase, the one running included.
+	 */
+	public double getClassesPerSecond() {
+		long nanos;
+		Phase phase = running;
+		synchronized (phases) {
+			long[] times = phases.get(SCAN);
+			nanos = times != null ? times[0] : 0;
+		}
+		if (phase != null && phase.name.equals(SCAN))
+			nanos += System.nanoTime() - phase.start;
+		long classes = getClassesVisited() + getClassesSkipped() + getClassesCached();
+		return nanos > 0 ? classes * 1e9 / nanos : 0;
+	}
+
+	public long getInstructionsVisited() {
+		return instructions.sum();
+	}
+
+	public long getEdgesKept() {
+		return keptEdges.sum();
+	}
+
+	public long getEdgesRejected() {
+		return rejectedEdges.sum();
+	}
+
+	public long getHeapUsedBytes() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * The sum of the peaks of the heap pools since the JVM started.
+	 */
+	public long getPeakHeapBytes() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		}
+		return peak;
+	}
+
+	/**
+	 * Registers the stats with the platform MBean server, so that they can be
+	 * watched with jconsole or any JMX client while the run goes on.
+	 */
+	public void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		} catch (JMException e) {
+			System.err.println("Could not register the run stats: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the stats to a JSON file.
+	 */
+	public void write(File file) throws IOException {
+		Map<String, Long> wall = getPhaseWallMillis();
+		Map<String, Long> cpu = getPhaseCpuMillis();
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			out.println("{");
+			out.println("  \"phases\": [");
+			int i = 0;
+			for (String name : wall.keySet()) {
+				out.println("    { \"name\": \"" + name + "\", \"wallMillis\": " + wall.get(name) + ", \"cpuMillis\": "
+						+ cpu.get(name) + " }" + (++i < wall.size() ? "," : ""));
+			}
+			out.println("  ],");
+			out.println("  \"classesVisited\": " + getClassesVisited() + ",");
+			out.println("  \"classesSkipped\": " + getClassesSkipped() + ",");
+			out.println("  \"classesCached\": " + getClassesCached() + ",");
+			out.println("  \"classesFailed\": " + getClassesFailed() + ",");
+			out.println("  \"classesPerSecond\": " + Math.round(getClassesPerSecond()) + ",");
+			out.println("  \"instructionsVisited\": " + getInstructionsVisited() + ",");
+			out.println("  \"edgesKept\": " + getEdgesKept() + ",");
+			out.println("  \"edgesRejected\": " + getEdgesRejected() + ",");
+			out.println("  \"peakHeapBytes\": " + getPeakHeapBytes());
+			out.println("}");
+		} finally {
+			out.close();
+		}
+		if (out.checkError())
+			throw new IOException("Could not write " + file);
+	}
+
+}
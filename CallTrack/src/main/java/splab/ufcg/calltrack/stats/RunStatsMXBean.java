@@ -0,0 +1,43 @@
+package splab.ufcg.calltrack.stats;
+
+import java.util.Map;
+
+/**
+ * The {@link RunStats} of a run as seen through JMX, registered as
+ * {@value RunStats#OBJECT_NAME}.
+ */
+public interface RunStatsMXBean {
+
+	/**
+	 * The phase running, empty between phases.
+	 */
+	String getPhase();
+
+	Map<String, Long> getPhaseWallMillis();
+
+	Map<String, Long> getPhaseCpuMillis();
+
+	long getClassesVisited();
+
+	long getClassesSkipped();
+
+	long getClassesCached();
+
+	/**
+	 * The classes the scan could not analyse, left out of the graphs.
+	 */
+	long getClassesFailed();
+
+	double getClassesPerSecond();
+
+	long getInstructionsVisited();
+
+	long getEdgesKept();
+
+	long getEdgesRejected();
+
+	long getHeapUsedBytes();
+
+	long getPeakHeapBytes();
+
+}
@@ -0,0 +1,68 @@
+package splab.ufcg.calltrack.trace;
+
+/**
+ * The execution samples of a recording, folded onto the methods of a
+ * {@link splab.ufcg.calltrack.model.SymbolTable}. For every method, by its
+ * id, the samples in which it was the first method of the stack the table
+ * has, its self samples, and the ones in which it was anywhere in the stack,
+ * its total samples. For every call edge between those methods, the samples
+ * in which it was in the stack.
+ *
+ * A sample is counted once for a method or an edge however many times they
+ * are in its stack, so a recursive method is not counted more than once.
+ */
+public class ExecutionSamples {
+
+	private long[] selfSamples;
+	private long[] totalSamples;
+	private long[] edges;
+	private long[] edgeSamples;
+	private long events;
+	private long matchedEvents;
+
+	ExecutionSamples(long[] selfSamples, long[] totalSamples, long[] edges, long[] edgeSamples, long events,
+			long matchedEvents) {
+		this.selfSamples = selfSamples;
+		this.totalSamples = totalSamples;
+		this.edges = edges;
+		this.edgeSamples = edgeSamples;
+		this.events = events;
+		this.matchedEvents = matchedEvents;
+	}
+
+	public long[] getSelfSamples() {
+		return selfSamples;
+	}
+
+	public long[] getTotalSamples() {
+		return totalSamples;
+	}
+
+	/**
+	 * The call edges as packed (caller, callee) pairs of method ids. Frames
+	 * of methods the table does not have, like the ones of the JDK, are
+	 * skipped, so the caller may have called the callee through them.
+	 */
+	public long[] getEdges() {
+		return edges;
+	}
+
+	public long[] getEdgeSamples() {
+		return edgeSamples;
+	}
+
+	/**
+	 * The execution samples of the recording.
+	 */
+	public long getEvents() {
+		return events;
+	}
+
+	/**
+	 * The execution samples with at least one method of the table.
+	 */
+	public long getMatchedEvents() {
+		return matchedEvents;
+	}
+
+}
@@ -0,0 +1,134 @@
+package splab.ufcg.calltrack.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+import splab.ufcg.calltrack.model.SymbolTable;
+import splab.ufcg.calltrack.utils.LongIntHashMap;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+/**
+ * Computes the {@link ExecutionSamples} of a Java Flight Recorder recording:
+ * the stacks of its jdk.ExecutionSample events are folded onto the methods
+ * of a symbol table, matched by class and method name.
+ *
+ * The recording is read one event at a time. Nothing but the sums by method
+ * and edge and a bounded cache of the methods met is kept, whatever the size
+ * of the recording.
+ */
+public class JfrImporter {
+
+	private static final String EXECUTION_SAMPLE = "jdk.ExecutionSample";
+	// the recording shares the methods of the stacks of a chunk, cached by identity
+	private static final int MAX_CACHED_METHODS = 65536;
+
+	private SymbolTable symbols;
+	private Map<RecordedMethod, Integer> methodIds = new IdentityHashMap<RecordedMethod, Integer>();
+
+	private long[] selfSamples;
+	private long[] totalSamples;
+	// the event a method or edge was last counted for
+	private int[] methodEvents;
+	private LongIntHashMap edgeSlots = new LongIntHashMap();
+	private long[] edges = new long[256];
+	private long[] edgeSamples = new long[256];
+	private int[] edgeEvents = new int[256];
+	private int edgeCount;
+	private int events;
+	private long matchedEvents;
+
+	public JfrImporter(SymbolTable symbols) {
+		this.symbols = symbols;
+	}
+
+	public ExecutionSamples read(File file) throws IOException {
+		int methodCount = symbols.methodCount();
+		selfSamples = new long[methodCount];
+		totalSamples = new long[methodCount];
+		methodEvents = new int[methodCount];
+
+		RecordingFile recording = new RecordingFile(file.toPath());
+		try {
+			while (recording.hasMoreEvents()) {
+				RecordedEvent event = recording.readEvent();
+				if (event.getEventType().getName().equals(EXECUTION_SAMPLE) && event.getStackTrace() != null)
+					add(event.getStackTrace());
+			}
+		} finally {
+			recording.close();
+		}
+		return new ExecutionSamples(selfSamples, totalSamples, Arrays.copyOf(edges, edgeCount),
+				Arrays.copyOf(edgeSamples, edgeCount), events, matchedEvents);
+	}
+
+	/**
+	 * Counts a stack, its top frame first. The events are numbered from 1, an
+	 * event of 0 is none.
+	 */
+	private void add(RecordedStackTrace stackTrace) {
+		int event = ++events;
+		int callee = -1;
+		List<RecordedFrame> frames = stackTrace.getFrames();
+		for (int f = 0; f < frames.size(); f++) {
+			RecordedFrame frame = frames.get(f);
+			if (!frame.isJavaFrame())
+				continue;
+			int method = methodId(frame.getMethod());
+			if (method < 0)
+				continue;
+			if (callee < 0) {
+				selfSamples[method]++;
+				matchedEvents++;
+			}
+			if (methodEvents[method] != event) {
+				methodEvents[method] = event;
+				totalSamples[method]++;
+			}
+			if (callee >= 0 && callee != method)
+				addEdge(PackedEdge.of(method, callee), event);
+			callee = method;
+		}
+	}
+
+	private void addEdge(long edge, int event) {
+		int slot = edgeSlots.get(edge, -1);
+		if (slot < 0) {
+			if (edgeCount == edges.length) {
+				edges = Arrays.copyOf(edges, edgeCount << 1);
+				edgeSamples = Arrays.copyOf(edgeSamples, edgeCount << 1);
+				edgeEvents = Arrays.copyOf(edgeEvents, edgeCount << 1);
+			}
+			slot = edgeCount++;
+			edges[slot] = edge;
+			edgeSlots.put(edge, slot);
+		}
+		if (edgeEvents[slot] != event) {
+			edgeEvents[slot] = event;
+			edgeSamples[slot]++;
+		}
+	}
+
+	private int methodId(RecordedMethod method) {
+		Integer id = methodIds.get(method);
+		if (id != null)
+			return id;
+		if (methodIds.size() == MAX_CACHED_METHODS)
+			methodIds.clear();
+		int methodId = symbols.methodId(symbols.classId(method.getType().getName()), method.getName());
+		// methods interned after the table was sized are left out
+		if (methodId >= selfSamples.length)
+			methodId = -1;
+		methodIds.put(method, methodId);
+		return methodId;
+	}
+
+}
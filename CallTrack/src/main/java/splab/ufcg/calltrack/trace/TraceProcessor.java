@@ -0,0 +1,531 @@
+package splab.ufcg.calltrack.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import splab.ufcg.calltrack.utils.LongIntHashMap;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+/**
+ * Computes the {@link TraceTimings} of a call trace, one line per entry or
+ * exit of a method:
+ * <pre>
+ * [&gt;&lt;][depth][thread]package.Class:method=nanoseconds
+ * </pre>
+ * where &gt; is an entry, &lt; an exit and the depth the number of frames
+ * under the method in its thread.
+ *
+ * The trace is mapped and cut in chunks at line boundaries, which are parsed
+ * in parallel with a stack of frames per thread. The frames a chunk sees
+ * exit without their entry, the ones still open at its end and the time of
+ * the calls made from frames entered before it are kept apart, then joined
+ * to the frames left open by the chunks before it, in the order of the
+ * trace. Nothing but the open frames and the sums is kept, whatever the size
+ * of the trace.
+ */
+public class TraceProcessor {
+
+	private static final long MAX_CHUNK_BYTES = 256L << 20;
+	private static final long MIN_CHUNK_BYTES = 1L << 20;
+	private static final int CHUNKS_PER_WORKER = 4;
+	private static final int MAX_REPORTED_ERRORS = 10;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private int workers;
+
+	private String[] methods = new String[1024];
+	private Map<String, Integer> methodIds = new HashMap<String, Integer>();
+	private Counts methodCounts = new Counts();
+	private Counts edgeCounts = new Counts();
+	private Map<Long, Frames> openFrames = new HashMap<Long, Frames>();
+	private long errors;
+
+	public TraceProcessor(int workers) {
+		this.workers = workers;
+	}
+
+	public TraceTimings process(File trace) throws IOException, InterruptedException {
+		RandomAccessFile file = new RandomAccessFile(trace, "r");
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		try {
+			FileChannel channel = file.getChannel();
+			long[] bounds = bounds(channel);
+			List<Future<Chunk>> chunks = new ArrayList<Future<Chunk>>();
+			for (int c = 0; c + 1 < bounds.length; c++) {
+				final long start = bounds[c];
+				final ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, bounds[c + 1] - start);
+				chunks.add(pool.submit(new Callable<Chunk>() {
+					public Chunk call() {
+						Chunk chunk = new Chunk(start);
+						chunk.parse(bytes);
+						return chunk;
+					}
+				}));
+			}
+			// joined in order as they are parsed
+			for (Future<Chunk> chunk : chunks)
+				join(chunk.get());
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdown();
+			file.close();
+		}
+		return timings();
+	}
+
+	/**
+	 * The offsets the chunks start at, each one the start of a line, and the
+	 * size of the trace last.
+	 */
+	private long[] bounds(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long chunks = Math.max((long) workers * CHUNKS_PER_WORKER, (size + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+		chunks = Math.max(1, Math.min(chunks, size / MIN_CHUNK_BYTES));
+		long[] bounds = new long[(int) chunks + 1];
+		bounds[(int) chunks] = size;
+		ByteBuffer probe = ByteBuffer.allocate(4096);
+		for (int c = 1; c < chunks; c++)
+			bounds[c] = lineStart(channel, Math.max(bounds[c - 1], size / chunks * c), probe);
+		return bounds;
+	}
+
+	/**
+	 * The start of the first line at or after the given offset.
+	 */
+	private static long lineStart(FileChannel channel, long offset, ByteBuffer probe) throws IOException {
+		long position = offset - 1;
+		while (true) {
+			probe.clear();
+			int read = channel.read(probe, position);
+			if (read <= 0)
+				return channel.size();
+			for (int i = 0; i < read; i++) {
+				if (probe.get(i) == '\n')
+					return position + i + 1;
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * Adds the sums of a chunk and joins its frames to the ones left open by
+	 * the chunks before it.
+	 */
+	private void join(Chunk chunk) {
+		int[] global = new int[chunk.names.size()];
+		for (int m = 0; m < global.length; m++)
+			global[m] = methodId(chunk.names.get(m));
+
+		Counts counts = chunk.methodCounts;
+		for (int i = 0; i < counts.size; i++)
+			methodCounts.add(global[(int) counts.keys[i]], counts.calls[i], counts.times[i], counts.selfTimes[i]);
+		counts = chunk.edgeCounts;
+		for (int i = 0; i < counts.size; i++) {
+			long edge = PackedEdge.of(global[PackedEdge.from(counts.keys[i])], global[PackedEdge.to(counts.keys[i])]);
+			edgeCounts.add(edge, counts.calls[i], counts.times[i], 0);
+		}
+
+		for (Map.Entry<Long, ThreadTrace> entry : chunk.threads.entrySet()) {
+			ThreadTrace thread = entry.getValue();
+			Frames open = openFrames.get(entry.getKey());
+			if (open == null) {
+				open = new Frames();
+				openFrames.put(entry.getKey(), open);
+			}
+
+			// calls from frames entered before the chunk, the frame one level up
+			Counts calls = thread.callsFromBefore;
+			for (int i = 0; i < calls.size; i++) {
+				int depth = PackedEdge.from(calls.keys[i]);
+				int caller = open.atDepth(depth - 1);
+				if (caller < 0)
+					continue;
+				open.children[caller] += calls.times[i];
+				edgeCounts.add(PackedEdge.of(open.methods[caller], global[PackedEdge.to(calls.keys[i])]),
+						calls.calls[i], calls.times[i], 0);
+			}
+
+			Frames exits = thread.exitsFromBefore;
+			for (int i = 0; i < exits.size; i++) {
+				int top = open.size - 1;
+				if (top < 0 || open.methods[top] != global[exits.methods[i]] || open.depths[top] != exits.depths[i]) {
+					error("Exit of " + chunk.names.get(exits.methods[i]) + " at depth " + exits.depths[i]
+							+ " in thread " + entry.getKey() + " does not match its entry");
+					continue;
+				}
+				long total = exits.times[i] - open.times[top];
+				methodCounts.add(open.methods[top], 1, total, total - open.children[top]);
+				open.size--;
+				if (top > 0) {
+					open.children[top - 1] += total;
+					edgeCounts.add(PackedEdge.of(open.methods[top - 1], open.methods[top]), 1, total, 0);
+				}
+			}
+
+			Frames stack = thread.stack;
+			for (int i = 0; i < stack.size; i++)
+				open.push(global[stack.methods[i]], stack.depths[i], stack.times[i], stack.children[i]);
+		}
+
+		for (String message : chunk.messages)
+			error(message);
+		errors += chunk.errors - chunk.messages.size();
+	}
+
+	private int methodId(String method) {
+		Integer id = methodIds.get(method);
+		if (id == null) {
+			id = methodIds.size();
+			if (id == methods.length)
+				methods = Arrays.copyOf(methods, id << 1);
+			methods[id] = method;
+			methodIds.put(method, id);
+		}
+		return id;
+	}
+
+	private TraceTimings timings() {
+		int n = methodIds.size();
+		long[] calls = new long[n];
+		long[] selfTimes = new long[n];
+		long[] totalTimes = new long[n];
+		for (int i = 0; i < methodCounts.size; i++) {
+			int m = (int) methodCounts.keys[i];
+			calls[m] = methodCounts.calls[i];
+			totalTimes[m] = methodCounts.times[i];
+			selfTimes[m] = methodCounts.selfTimes[i];
+		}
+		int open = 0;
+		for (Frames frames : openFrames.values())
+			open += frames.size;
+		if (open > 0)
+			System.err.println(open + " methods of the trace were entered and never exited, their time is not counted");
+		return new TraceTimings(Arrays.copyOf(methods, n), calls, selfTimes, totalTimes,
+				Arrays.copyOf(edgeCounts.keys, edgeCounts.size),
+				Arrays.copyOf(edgeCounts.calls, edgeCounts.size),
+				Arrays.copyOf(edgeCounts.times, edgeCounts.size), errors);
+	}
+
+	private void error(String message) {
+		errors++;
+		report(message);
+	}
+
+	private void report(String message) {
+		if (errors <= MAX_REPORTED_ERRORS)
+			System.err.println(message);
+		else if (errors == MAX_REPORTED_ERRORS + 1)
+			System.err.println("...");
+	}
+
+	/**
+	 * The lines between two offsets of the trace, parsed on their own.
+	 */
+	private static class Chunk {
+		private long offset;
+		MethodNames names = new MethodNames();
+		Counts methodCounts = new Counts();
+		// packed (caller, callee) pairs of indexes into the names
+		Counts edgeCounts = new Counts();
+		Map<Long, ThreadTrace> threads = new HashMap<Long, ThreadTrace>();
+		long errors;
+		List<String> messages = new ArrayList<String>();
+
+		private long lastThreadId = -1;
+		private ThreadTrace lastThread;
+		// where the number being parsed ends
+		private int cursor;
+
+		Chunk(long offset) {
+			this.offset = offset;
+		}
+
+		void parse(ByteBuffer bytes) {
+			int limit = bytes.limit();
+			int start = 0;
+			while (start < limit) {
+				int end = start;
+				while (end < limit && bytes.get(end) != '\n')
+					end++;
+				int next = end + 1;
+				if (end > start && bytes.get(end - 1) == '\r')
+					end--;
+				if (end > start)
+					line(bytes, start, end);
+				start = next;
+			}
+		}
+
+		private void line(ByteBuffer bytes, int start, int end) {
+			byte kind = bytes.get(start);
+			long depth = number(bytes, start + 1, end);
+			long threadId = depth < 0 ? -1 : number(bytes, cursor, end);
+			int equals = end - 1;
+			while (equals > cursor && bytes.get(equals) != '=')
+				equals--;
+			long time = threadId < 0 || equals <= cursor ? -1 : digits(bytes, equals + 1, end);
+			if ((kind != '>' && kind != '<') || depth > Integer.MAX_VALUE || time < 0) {
+				error("Cannot parse the line at byte " + (offset + start) + " of the trace");
+				return;
+			}
+
+			int method = names.intern(bytes, cursor, equals);
+			ThreadTrace thread = thread(threadId);
+			if (kind == '>')
+				thread.stack.push(method, (int) depth, time, 0);
+			else
+				exit(thread, method, (int) depth, time, start);
+		}
+
+		private void exit(ThreadTrace thread, int method, int depth, long time, int start) {
+			Frames stack = thread.stack;
+			int top = stack.size - 1;
+			if (top < 0) {
+				thread.exitsFromBefore.push(method, depth, time, 0);
+				return;
+			}
+			if (stack.methods[top] != method || stack.depths[top] != depth) {
+				error("Exit at byte " + (offset + start) + " of the trace does not match the method entered last");
+				return;
+			}
+
+			long total = time - stack.times[top];
+			methodCounts.add(method, 1, total, total - stack.children[top]);
+			stack.size--;
+			if (top > 0) {
+				stack.children[top - 1] += total;
+				edgeCounts.add(PackedEdge.of(stack.methods[top - 1], method), 1, total, 0);
+			} else {
+				thread.callsFromBefore.add(PackedEdge.of(depth, method), 1, total, 0);
+			}
+		}
+
+		private ThreadTrace thread(long threadId) {
+			if (threadId == lastThreadId)
+				return lastThread;
+			ThreadTrace thread = threads.get(threadId);
+			if (thread == null) {
+				thread = new ThreadTrace();
+				threads.put(threadId, thread);
+			}
+			lastThreadId = threadId;
+			lastThread = thread;
+			return thread;
+		}
+
+		/**
+		 * The number between brackets at the given position, -1 when there
+		 * is none. The cursor is left after the closing bracket.
+		 */
+		private long number(ByteBuffer bytes, int start, int end) {
+			if (start >= end || bytes.get(start) != '[')
+				return -1;
+			int close = start + 1;
+			while (close < end && bytes.get(close) != ']')
+				close++;
+			if (close == end)
+				return -1;
+			cursor = close + 1;
+			return digits(bytes, start + 1, close);
+		}
+
+		private static long digits(ByteBuffer bytes, int start, int end) {
+			if (start == end || end - start > 18)
+				return -1;
+			long value = 0;
+			for (int i = start; i < end; i++) {
+				int digit = bytes.get(i) - '0';
+				if (digit < 0 || digit > 9)
+					return -1;
+				value = value * 10 + digit;
+			}
+			return value;
+		}
+
+		private void error(String message) {
+			if (errors++ < MAX_REPORTED_ERRORS)
+				messages.add(message);
+		}
+	}
+
+	/**
+	 * What a chunk saw of one thread.
+	 */
+	private static class ThreadTrace {
+		// the frames entered in the chunk and not exited yet
+		Frames stack = new Frames();
+		// the exits of frames entered before the chunk, in order
+		Frames exitsFromBefore = new Frames();
+		// the calls made from frames entered before the chunk, by packed (depth, callee)
+		Counts callsFromBefore = new Counts();
+	}
+
+	/**
+	 * A stack of frames: the method, the depth and the entry time of each
+	 * one, and the total time of the calls made from it.
+	 */
+	private static class Frames {
+		int[] methods = new int[64];
+		int[] depths = new int[64];
+		long[] times = new long[64];
+		long[] children = new long[64];
+		int size;
+
+		void push(int method, int depth, long time, long childTime) {
+			if (size == methods.length) {
+				methods = Arrays.copyOf(methods, size << 1);
+				depths = Arrays.copyOf(depths, size << 1);
+				times = Arrays.copyOf(times, size << 1);
+				children = Arrays.copyOf(children, size << 1);
+			}
+			methods[size] = method;
+			depths[size] = depth;
+			times[size] = time;
+			children[size] = childTime;
+			size++;
+		}
+
+		/**
+		 * The index of the frame at the given depth, -1 when there is none.
+		 */
+		int atDepth(int depth) {
+			for (int i = size - 1; i >= 0 && depths[i] >= depth; i--) {
+				if (depths[i] == depth)
+					return i;
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Calls, total time and self time summed by a long key.
+	 */
+	private static class Counts {
+		private LongIntHashMap slots = new LongIntHashMap();
+		long[] keys = new long[16];
+		long[] calls = new long[16];
+		long[] times = new long[16];
+		long[] selfTimes = new long[16];
+		int size;
+
+		void add(long key, long calls, long time, long selfTime) {
+			int slot = slots.get(key, -1);
+			if (slot < 0) {
+				if (size == keys.length) {
+					keys = Arrays.copyOf(keys, size << 1);
+					this.calls = Arrays.copyOf(this.calls, size << 1);
+					times = Arrays.copyOf(times, size << 1);
+					selfTimes = Arrays.copyOf(selfTimes, size << 1);
+				}
+				slot = size++;
+				keys[slot] = key;
+				slots.put(key, slot);
+			}
+			this.calls[slot] += calls;
+			times[slot] += time;
+			selfTimes[slot] += selfTime;
+		}
+	}
+
+	/**
+	 * Gives an index to every method name of a chunk, read from the mapped
+	 * bytes without making a String of every line.
+	 */
+	private static class MethodNames {
+		// index + 1 of the name in each slot, 0 for a free one
+		private int[] slots = new int[1024];
+		private int[] hashes = new int[256];
+		private byte[][] names = new byte[256][];
+		private int size;
+
+		int intern(ByteBuffer bytes, int start, int end) {
+			int hash = 0;
+			for (int i = start; i < end; i++)
+				hash = 31 * hash + bytes.get(i);
+			int mask = slots.length - 1;
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while (slots[slot] != 0) {
+				int name = slots[slot] - 1;
+				if (hashes[name] == hash && equal(names[name], bytes, start, end))
+					return name;
+				slot = (slot + 1) & mask;
+			}
+
+			if (size == names.length) {
+				names = Arrays.copyOf(names, size << 1);
+				hashes = Arrays.copyOf(hashes, size << 1);
+			}
+			byte[] name = new byte[end - start];
+			for (int i = start; i < end; i++)
+				name[i - start] = bytes.get(i);
+			names[size] = name;
+			hashes[size] = hash;
+			slots[slot] = ++size;
+			if (2 * size > slots.length)
+				rehash();
+			return size - 1;
+		}
+
+		private static boolean equal(byte[] name, ByteBuffer bytes, int start, int end) {
+			if (name.length != end - start)
+				return false;
+			for (int i = 0; i < name.length; i++) {
+				if (name[i] != bytes.get(start + i))
+					return false;
+			}
+			return true;
+		}
+
+		private void rehash() {
+			slots = new int[slots.length << 1];
+			int mask = slots.length - 1;
+			for (int name = 0; name < size; name++) {
+				int slot = (hashes[name] ^ (hashes[name] >>> 16)) & mask;
+				while (slots[slot] != 0)
+					slot = (slot + 1) & mask;
+				slots[slot] = name + 1;
+			}
+		}
+
+		int size() {
+			return size;
+		}
+
+		String get(int name) {
+			return new String(names[name], UTF8);
+		}
+	}
+
+	/**
+	 * Prints the self time of every method of a trace, the slowest first,
+	 * followed by its total time and its calls; with --edges, the time of
+	 * every call edge instead.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1) {
+			System.err.println("usage: TraceProcessor trace-file [--edges]");
+			System.exit(-1);
+		}
+		TraceTimings timings = new TraceProcessor(Runtime.getRuntime().availableProcessors()).process(new File(args[0]));
+		if (args.length > 1 && "--edges".equals(args[1]))
+			timings.printEdges(System.out);
+		else
+			timings.print(System.out);
+	}
+
+}
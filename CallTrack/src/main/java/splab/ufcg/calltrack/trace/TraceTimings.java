@@ -0,0 +1,119 @@
+package splab.ufcg.calltrack.trace;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+/**
+ * The times measured by a call trace, in nanoseconds. For every method, how
+ * many times it ran, its total time, from entry to exit, and its self time,
+ * the total time minus the total time of the methods it called. For every
+ * call edge, how many times it was taken and the total time of the callee
+ * when called from that caller.
+ *
+ * The total time of a recursive method counts every level of the recursion.
+ */
+public class TraceTimings {
+
+	private String[] methods;
+	private long[] calls;
+	private long[] selfTimes;
+	private long[] totalTimes;
+	private long[] edges;
+	private long[] edgeCalls;
+	private long[] edgeTimes;
+	private long errors;
+
+	TraceTimings(String[] methods, long[] calls, long[] selfTimes, long[] totalTimes, long[] edges,
+			long[] edgeCalls, long[] edgeTimes, long errors) {
+		this.methods = methods;
+		this.calls = calls;
+		this.selfTimes = selfTimes;
+		this.totalTimes = totalTimes;
+		this.edges = edges;
+		this.edgeCalls = edgeCalls;
+		this.edgeTimes = edgeTimes;
+		this.errors = errors;
+	}
+
+	public String[] getMethods() {
+		return methods;
+	}
+
+	public long[] getCalls() {
+		return calls;
+	}
+
+	public long[] getSelfTimes() {
+		return selfTimes;
+	}
+
+	public long[] getTotalTimes() {
+		return totalTimes;
+	}
+
+	/**
+	 * The call edges as packed (caller, callee) pairs of indexes into the
+	 * methods.
+	 */
+	public long[] getEdges() {
+		return edges;
+	}
+
+	public long[] getEdgeCalls() {
+		return edgeCalls;
+	}
+
+	public long[] getEdgeTimes() {
+		return edgeTimes;
+	}
+
+	/**
+	 * The lines that could not be parsed and the entries and exits that did
+	 * not match, which were left out.
+	 */
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Prints every method with its self time, the slowest first, then its
+	 * total time and its calls.
+	 */
+	public void print(PrintStream out) {
+		Integer[] order = new Integer[methods.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return selfTimes[a] != selfTimes[b] ? (selfTimes[a] > selfTimes[b] ? -1 : 1) : a.compareTo(b);
+			}
+		});
+		for (int m : order) {
+			if (calls[m] > 0)
+				out.println(methods[m] + " " + selfTimes[m] + " " + totalTimes[m] + " " + calls[m]);
+		}
+	}
+
+	/**
+	 * Prints every call edge, caller first, with its total time and calls,
+	 * the slowest first.
+	 */
+	public void printEdges(PrintStream out) {
+		Integer[] order = new Integer[edges.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return edgeTimes[a] != edgeTimes[b] ? (edgeTimes[a] > edgeTimes[b] ? -1 : 1) : a.compareTo(b);
+			}
+		});
+		for (int e : order) {
+			out.println(methods[PackedEdge.from(edges[e])] + " -> " + methods[PackedEdge.to(edges[e])] + " "
+					+ edgeTimes[e] + " " + edgeCalls[e]);
+		}
+	}
+
+}
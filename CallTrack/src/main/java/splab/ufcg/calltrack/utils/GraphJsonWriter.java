@@ -0,0 +1,245 @@
+package splab.ufcg.calltrack.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import splab.ufcg.calltrack.analysis.GraphHierarchy;
+import splab.ufcg.calltrack.analysis.GraphLayout;
+import splab.ufcg.calltrack.model.CompactGraph;
+import splab.ufcg.calltrack.model.GraphMetrics;
+import splab.ufcg.calltrack.model.TypeNode;
+import splab.ufcg.calltrack.model.dto.NodeDTOData;
+
+/**
+ * Writes the {@code data = {...}} script read by the viewer straight from a
+ * {@link CompactGraph}: one pass over the nodes and one over the edges, with
+ * nothing kept in memory but the current node. Nodes without edges are left
+ * out, node ids are the node indexes and keys are not quoted. Given a
+ * {@link GraphLayout}, the position of every node is written with its data.
+ *
+ * The layout and the escaping are the ones of the Gson based writer this
+ * replaces, so the files stay the same.
+ */
+public class GraphJsonWriter {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private Writer out;
+
+	public GraphJsonWriter(Writer out) {
+		this.out = out;
+	}
+
+	public void write(CompactGraph graph) throws IOException {
+		write(graph, null);
+	}
+
+	/**
+	 * Writes the graph with the x and y of every node taken from the layout,
+	 * when there is one.
+	 */
+	public void write(CompactGraph graph, GraphLayout layout) throws IOException {
+		write(graph, layout, null);
+	}
+
+	/**
+	 * Writes the graph with what was measured at run time, when there are
+	 * metrics: the calls of the edges, the self and total times of the nodes,
+	 * the times of the edges, the samples of the nodes and edges, and the heat
+	 * of the timed or sampled nodes and edges, their time, or samples, over
+	 * the largest one.
+	 */
+	public void write(CompactGraph graph, GraphLayout layout, GraphMetrics metrics) throws IOException {
+		boolean timedNodes = metrics != null && metrics.getTotalTimes() != null;
+		boolean sampledNodes = metrics != null && metrics.getTotalSamples() != null;
+		boolean heatNodes = timedNodes || sampledNodes;
+		int[] calls = metrics != null ? metrics.getCalls() : null;
+		long[] edgeTimes = metrics != null ? metrics.getEdgeTimes() : null;
+		long[] edgeSamples = metrics != null ? metrics.getEdgeSamples() : null;
+		boolean heatEdges = edgeTimes != null || edgeSamples != null;
+
+		out.write("data = {\n  nodes: [");
+		boolean first = true;
+		for (int n = 0; n < graph.nodeCount(); n++) {
+			if (graph.inDegree(n) < 1 && graph.outDegree(n) < 1)
+				continue;
+			out.write(first ? "\n" : ",\n");
+			first = false;
+
+			TypeNode type = graph.type(n);
+			out.write("    {\n      data: {\n");
+			field("id", Integer.toString(n), true);
+			field("label", graph.label(n), true);
+			field("type", type.toString(), true);
+			field("shape", NodeDTOData.shapeOf(type), true);
+			field("color", NodeDTOData.backgroundColorOf(type), true);
+			field("colorHighlight", NodeDTOData.colorHighlightOf(type), layout != null || heatNodes);
+			if (layout != null) {
+				number("x", layout.x(n), true);
+				number("y", layout.y(n), heatNodes);
+			}
+			if (timedNodes) {
+				number("self", metrics.getSelfTimes()[n], true);
+				number("total", metrics.getTotalTimes()[n], true);
+			}
+			if (sampledNodes) {
+				number("selfSamples", metrics.getSelfSamples()[n], true);
+				number("samples", metrics.getTotalSamples()[n], true);
+			}
+			if (heatNodes)
+				number("heat", metrics.nodeHeat(n), false);
+			out.write("      }\n    }");
+		}
+		out.write(first ? "],\n  edges: [" : "\n  ],\n  edges: [");
+
+		first = true;
+		for (int n = 0; n < graph.nodeCount(); n++) {
+			for (int e = graph.firstOut(n), end = graph.endOut(n); e < end; e++) {
+				int target = graph.target(e);
+				out.write(first ? "\n" : ",\n");
+				first = false;
+
+				out.write("    {\n      data: {\n");
+				field("id", n + "-" + target, true);
+				field("source", Integer.toString(n), true);
+				field("target", Integer.toString(target), calls != null || heatEdges);
+				if (calls != null)
+					number("calls", calls[e], heatEdges);
+				if (edgeTimes != null)
+					number("time", edgeTimes[e], true);
+				if (edgeSamples != null)
+					number("samples", edgeSamples[e], true);
+				if (heatEdges)
+					number("heat", metrics.edgeHeat(e), false);
+				out.write("      }\n    }");
+			}
+		}
+		out.write(first ? "]\n}" : "\n  ]\n}");
+	}
+
+	/**
+	 * Writes a view of a {@link GraphHierarchy}, every node of it included.
+	 * Nodes also have their id in the hierarchy as name, their level, the id
+	 * of the package or class they belong to as container and whether they
+	 * can be expanded; edges have their weight.
+	 */
+	public void write(GraphHierarchy.View view) throws IOException {
+		CompactGraph graph = view.getGraph();
+		out.write("data = {\n  nodes: [");
+		for (int n = 0; n < graph.nodeCount(); n++) {
+			out.write(n == 0 ? "\n" : ",\n");
+
+			TypeNode type = graph.type(n);
+			String container = view.container(n);
+			out.write("    {\n      data: {\n");
+			field("id", Integer.toString(n), true);
+			field("name", graph.id(n), true);
+			field("label", graph.label(n), true);
+			field("type", type.toString(), true);
+			field("level", view.levelName(n), true);
+			if (container != null)
+				field("container", container, true);
+			literal("expandable", Boolean.toString(view.isExpandable(n)), true);
+			field("shape", NodeDTOData.shapeOf(type), true);
+			field("color", NodeDTOData.backgroundColorOf(type), true);
+			field("colorHighlight", NodeDTOData.colorHighlightOf(type), false);
+			out.write("      }\n    }");
+		}
+		out.write(graph.nodeCount() == 0 ? "],\n  edges: [" : "\n  ],\n  edges: [");
+
+		boolean first = true;
+		for (int n = 0; n < graph.nodeCount(); n++) {
+			for (int e = graph.firstOut(n), end = graph.endOut(n); e < end; e++) {
+				int target = graph.target(e);
+				out.write(first ? "\n" : ",\n");
+				first = false;
+
+				out.write("    {\n      data: {\n");
+				field("id", n + "-" + target, true);
+				field("source", Integer.toString(n), true);
+				field("target", Integer.toString(target), true);
+				number("weight", view.weight(e), false);
+				out.write("      }\n    }");
+			}
+		}
+		out.write(first ? "]\n}" : "\n  ]\n}");
+	}
+
+	private void number(String key, float value, boolean more) throws IOException {
+		literal(key, Float.toString(value), more);
+	}
+
+	private void number(String key, int value, boolean more) throws IOException {
+		literal(key, Integer.toString(value), more);
+	}
+
+	private void number(String key, long value, boolean more) throws IOException {
+		literal(key, Long.toString(value), more);
+	}
+
+	/**
+	 * A value written as is, without quotes.
+	 */
+	private void literal(String key, String value, boolean more) throws IOException {
+		out.write("        ");
+		out.write(key);
+		out.write(": ");
+		out.write(value);
+		out.write(more ? ",\n" : "\n");
+	}
+
+	private void field(String key, String value, boolean more) throws IOException {
+		out.write("        ");
+		out.write(key);
+		out.write(": '");
+		escape(value);
+		out.write(more ? "',\n" : "'\n");
+	}
+
+	/**
+	 * Escapes like Gson does by default, HTML characters included, with the
+	 * double quote written \' as the old writer left it, so that the value is
+	 * safe in a single quoted script string.
+	 */
+	private void escape(String value) throws IOException {
+		int start = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			String replacement;
+			if (c == '\\')
+				replacement = "\\\\";
+			else if (c == '"')
+				// the old writer turned the quotes of Gson's \" into single ones
+				replacement = "\\'";
+			else if (c == '\t')
+				replacement = "\\t";
+			else if (c == '\b')
+				replacement = "\\b";
+			else if (c == '\n')
+				replacement = "\\n";
+			else if (c == '\r')
+				replacement = "\\r";
+			else if (c == '\f')
+				replacement = "\\f";
+			else if (c < 0x20 || c == '<' || c == '>' || c == '&' || c == '=' || c == '\''
+					|| c == '\u2028' || c == '\u2029')
+				replacement = null;
+			else
+				continue;
+
+			out.write(value, start, i - start);
+			if (replacement != null) {
+				out.write(replacement);
+			} else {
+				out.write("\\u");
+				out.write(HEX[(c >>> 12) & 0xf]);
+				out.write(HEX[(c >>> 8) & 0xf]);
+				out.write(HEX[(c >>> 4) & 0xf]);
+				out.write(HEX[c & 0xf]);
+			}
+			start = i + 1;
+		}
+		out.write(value, start, value.length() - start);
+	}
+
+}
@@ -0,0 +1,176 @@
+package splab.ufcg.calltrack.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing set of primitive longs, used to hold packed edges without
+ * boxing them. Not thread-safe.
+ */
+public class LongHashSet {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private boolean containsZero;
+	private int size;
+	private int mask;
+	private int resizeAt;
+
+	public LongHashSet() {
+		this(MIN_CAPACITY);
+	}
+
+	public LongHashSet(int expectedSize) {
+		allocate(capacityFor(expectedSize));
+	}
+
+	/**
+	 * Returns true when the value was not in the set yet.
+	 */
+	public boolean add(long value) {
+		if (value == 0) {
+			if (containsZero)
+				return false;
+			containsZero = true;
+			size++;
+			return true;
+		}
+		int slot = slot(value);
+		while (keys[slot] != 0) {
+			if (keys[slot] == value)
+				return false;
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = value;
+		if (++size > resizeAt)
+			rehash(keys.length << 1);
+		return true;
+	}
+
+	public void addAll(LongHashSet other) {
+		if (other.containsZero)
+			add(0);
+		long[] otherKeys = other.keys;
+		for (int i = 0; i < otherKeys.length; i++) {
+			if (otherKeys[i] != 0)
+				add(otherKeys[i]);
+		}
+	}
+
+	public boolean contains(long value) {
+		if (value == 0)
+			return containsZero;
+		int slot = slot(value);
+		while (keys[slot] != 0) {
+			if (keys[slot] == value)
+				return true;
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	public boolean remove(long value) {
+		if (value == 0) {
+			if (!containsZero)
+				return false;
+			containsZero = false;
+			size--;
+			return true;
+		}
+		int slot = slot(value);
+		while (keys[slot] != 0) {
+			if (keys[slot] == value) {
+				shiftBack(slot);
+				size--;
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		containsZero = false;
+		size = 0;
+	}
+
+	public long[] toArray() {
+		long[] values = new long[size];
+		int n = 0;
+		if (containsZero)
+			values[n++] = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0)
+				values[n++] = keys[i];
+		}
+		return values;
+	}
+
+	/**
+	 * Closes the gap left at the slot by moving back the entries of the same
+	 * probe sequence.
+	 */
+	private void shiftBack(int slot) {
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		while (keys[next] != 0) {
+			int ideal = slot(keys[next]);
+			if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[gap] = 0;
+	}
+
+	private int slot(long value) {
+		return (int) mix(value) & mask;
+	}
+
+	private void rehash(int capacity) {
+		long[] old = keys;
+		allocate(capacity);
+		for (int i = 0; i < old.length; i++) {
+			long value = old[i];
+			if (value == 0)
+				continue;
+			int slot = slot(value);
+			while (keys[slot] != 0)
+				slot = (slot + 1) & mask;
+			keys[slot] = value;
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		mask = capacity - 1;
+		resizeAt = (int) (capacity * 0.6f);
+	}
+
+	static int capacityFor(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity * 0.6f < expectedSize)
+			capacity <<= 1;
+		return capacity;
+	}
+
+	static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+
+}
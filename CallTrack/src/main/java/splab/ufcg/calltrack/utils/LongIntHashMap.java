@@ -0,0 +1,120 @@
+package splab.ufcg.calltrack.utils;
+
+/**
+ * Open addressing map from primitive longs to non negative ints. Not
+ * thread-safe.
+ */
+public class LongIntHashMap {
+
+	private long[] keys;
+	// value + 1, so that 0 marks a free slot
+	private int[] values;
+	private int size;
+	private int mask;
+	private int resizeAt;
+
+	public LongIntHashMap() {
+		this(16);
+	}
+
+	public LongIntHashMap(int expectedSize) {
+		allocate(LongHashSet.capacityFor(expectedSize));
+	}
+
+	/**
+	 * Returns the value of the key, or missing when there is none.
+	 */
+	public int get(long key, int missing) {
+		int slot = slot(key);
+		while (values[slot] != 0) {
+			if (keys[slot] == key)
+				return values[slot] - 1;
+			slot = (slot + 1) & mask;
+		}
+		return missing;
+	}
+
+	public void put(long key, int value) {
+		if (value < 0)
+			throw new IllegalArgumentException("Negative values are not supported: " + value);
+		int slot = slot(key);
+		while (values[slot] != 0) {
+			if (keys[slot] == key) {
+				values[slot] = value + 1;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value + 1;
+		if (++size > resizeAt)
+			rehash(keys.length << 1);
+	}
+
+	/**
+	 * Removes the key, returning its value, or missing when there was none.
+	 */
+	public int remove(long key, int missing) {
+		int slot = slot(key);
+		while (values[slot] != 0) {
+			if (keys[slot] == key) {
+				int value = values[slot] - 1;
+				shiftBack(slot);
+				size--;
+				return value;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return missing;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Closes the gap left at the slot by moving back the entries of the same
+	 * probe sequence.
+	 */
+	private void shiftBack(int slot) {
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		while (values[next] != 0) {
+			int ideal = slot(keys[next]);
+			if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		values[gap] = 0;
+	}
+
+	private int slot(long key) {
+		return (int) LongHashSet.mix(key) & mask;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] == 0)
+				continue;
+			int slot = slot(oldKeys[i]);
+			while (values[slot] != 0)
+				slot = (slot + 1) & mask;
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		resizeAt = (int) (capacity * 0.6f);
+	}
+
+}
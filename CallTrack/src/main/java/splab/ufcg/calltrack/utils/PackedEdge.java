@@ -0,0 +1,24 @@
+package splab.ufcg.calltrack.utils;
+
+/**
+ * Packs an edge between two int ids in a single long: the source in the high
+ * half and the target in the low half.
+ */
+public final class PackedEdge {
+
+	private PackedEdge() {
+	}
+
+	public static long of(int from, int to) {
+		return ((long) from << 32) | (to & 0xFFFFFFFFL);
+	}
+
+	public static int from(long edge) {
+		return (int) (edge >>> 32);
+	}
+
+	public static int to(long edge) {
+		return (int) edge;
+	}
+
+}
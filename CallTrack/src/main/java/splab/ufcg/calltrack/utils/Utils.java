@@ -1,11 +1,17 @@
 package splab.ufcg.calltrack.utils;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -15,15 +21,17 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
+import splab.ufcg.calltrack.analysis.GraphHierarchy;
+import splab.ufcg.calltrack.analysis.GraphLayout;
+import splab.ufcg.calltrack.model.CompactGraph;
 import splab.ufcg.calltrack.model.EdgeBruteLine;
+import splab.ufcg.calltrack.model.GraphMetrics;
 import splab.ufcg.calltrack.model.XMLRepresentation;
-import splab.ufcg.calltrack.model.dto.GraphDTO;
 
 public class Utils {
 
+	private static final Logger LOG = Logger.getLogger(Utils.class.getName());
+
 	public void writeFile(String fileName, Map<String, List<EdgeBruteLine>> graphModel) {
 		try {
 			// String filename= "MyGraph.txt";
@@ -35,7 +43,8 @@ public class Utils {
 			// fw.write(content + "\r\n");//appends the string to the file
 			for (String id : graphModel.keySet()) {
 				String[] nodeContent = id.split("\\.");
-				System.out.println("Spliting " + id + " ...");
+				if (LOG.isLoggable(Level.FINEST))
+					LOG.finest("Spliting " + id + " ...");
 				idContents += id + " " + nodeContent[nodeContent.length - 1] + "\r\n";
 
 				for (EdgeBruteLine edge : graphModel.get(id)) {
@@ -53,24 +62,58 @@ public class Utils {
 		}
 	}
 
-	public void writeJSONFile(String fileName, GraphDTO graph) {
-		Gson gson = new GsonBuilder().setPrettyPrinting().create();
-		String json = gson.toJson(graph);
+	/**
+	 * Writes the graph as the data script of the viewer, streaming it to the
+	 * file with {@link GraphJsonWriter}.
+	 */
+	public void writeJSONFile(String fileName, CompactGraph graph) {
+		writeJSONFile(fileName, graph, null);
+	}
 
-		json = "data = " + json.replaceAll("\"@", "").replaceAll("@\"", "").replace("\"", "'");
-		System.out.println(json);
+	/**
+	 * Writes the graph with the positions of a layout, null for none.
+	 */
+	public void writeJSONFile(String fileName, CompactGraph graph, GraphLayout layout) {
+		writeJSONFile(fileName, graph, layout, null);
+	}
 
+	/**
+	 * Writes the graph with the positions of a layout and what was measured
+	 * at run time on its nodes and edges, null for none.
+	 */
+	public void writeJSONFile(String fileName, CompactGraph graph, GraphLayout layout, GraphMetrics metrics) {
 		try {
-			FileWriter fw = new FileWriter(fileName, true);
-			fw.write(json);
-			fw.close();
+			Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), "UTF-8"));
+			try {
+				new GraphJsonWriter(out).write(graph, layout, metrics);
+			} finally {
+				out.close();
+			}
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
+			System.err.println("Error while writing " + fileName + ": " + e.getMessage());
 			e.printStackTrace();
 		}
 
 	}
 
+	/**
+	 * Writes a view of the package, class and method levels as the data
+	 * script of the viewer.
+	 */
+	public void writeJSONFile(String fileName, GraphHierarchy.View view) {
+		try {
+			Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), "UTF-8"));
+			try {
+				new GraphJsonWriter(out).write(view);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Error while writing " + fileName + ": " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
 	public void deleteFiles(String filePath) {
 
 		File f = new File(filePath);
@@ -93,7 +136,8 @@ public class Utils {
 
 			NodeList nList = doc.getElementsByTagName("artifact");
 			
-			System.out.println(nList.getLength());
+			if (LOG.isLoggable(Level.FINE))
+				LOG.fine(nList.getLength() + " artifacts in " + artifactsFile);
 			
 			for (int i = 0; i < nList.getLength(); i++) {
 				Node node = nList.item(i);
@@ -105,35 +149,22 @@ public class Utils {
 					
 					
 					String artifactId = artifactElement.getAttribute("id");
-					System.out.println("Artifact id : " + artifactId);
-					
 					String artifactType = artifactElement.getAttribute("type");
-					System.out.println("Artifact type : " + artifactType);
-					
 					String artifactName = artifactElement.getElementsByTagName("name").item(0).getTextContent();
-					System.out.println("First Name : " + artifactName);
-					
 					String openOnClick =  artifactElement.getAttribute("openUrlOnClick");
-					System.out.println("Artifact openUrlOnClick : " + openOnClick);
 					
 					String onClickURL = "true".equals(openOnClick) && 
 							artifactElement.getElementsByTagName("OnClickURL").getLength() > 0 ? artifactElement.getElementsByTagName("OnClickURL").item(0).getTextContent() 
 									: "#"; 
-					System.out.println("OnClickURL : " + onClickURL);
-					
-					
-					System.out.println("Size of to from " + artifactName + " artifact: " + artifactElement.getElementsByTagName("to").getLength());
 					
 					Document toListDoc = artifactElement.getElementsByTagName("to").item(0).getOwnerDocument();
 					
 					
 					Node child =  artifactElement.getElementsByTagName("to").item(0).getFirstChild();
 					
-					System.out.println("To nodes IDs:");
 					List<String> toListValues = new LinkedList<String>();		
 					while(child != null){
 						if(child.getNodeType() == Node.ELEMENT_NODE){
-							System.out.println("\t" + child.getTextContent());
 							toListValues.add(child.getTextContent());
 						}
 						child = child.getNextSibling();
@@ -142,9 +173,9 @@ public class Utils {
 
 					XMLRepresentation XMLNodeRepresentation = new XMLRepresentation(artifactId, artifactName, onClickURL, artifactType, "true".equals(openOnClick), toListValues);
 					artifactsList.add(XMLNodeRepresentation);
-					
-					System.out.println();
-					System.out.println();
+					if (LOG.isLoggable(Level.FINER))
+						LOG.finer("Artifact " + artifactId + " (" + artifactType + ") " + artifactName + ", opens "
+								+ onClickURL + ", maps to " + toListValues);
 					
 					
 					
@@ -0,0 +1,177 @@
+package splab.ufcg.calltrack.agent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.classfile.StackMap;
+import org.junit.Test;
+
+import splab.ufcg.calltrack.core.PackageMatcher;
+
+public class CallInstrumenterTest {
+
+	private static final String FIXTURE = "splab.ufcg.calltrack.fixture.";
+	private static final String BRANCHES = FIXTURE + "Branches";
+
+	/**
+	 * Loads the fixture classes instrumented, the others from its parent, and
+	 * keeps the instrumented bytes.
+	 */
+	private static class InstrumentingLoader extends ClassLoader {
+		private CallInstrumenter instrumenter = new CallInstrumenter(new PackageMatcher(FIXTURE + "*"));
+		private Map<String, byte[]> instrumented = new HashMap<String, byte[]>();
+
+		InstrumentingLoader() {
+			super(CallInstrumenterTest.class.getClassLoader());
+		}
+
+		protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!name.startsWith(FIXTURE))
+				return super.loadClass(name, resolve);
+			Class<?> loaded = findLoadedClass(name);
+			if (loaded == null) {
+				byte[] bytes = instrumenter.transform(this, name.replace('.', '/'), null, null, original(name));
+				if (bytes == null)
+					throw new ClassNotFoundException(name + " was not instrumented");
+				instrumented.put(name, bytes);
+				loaded = defineClass(name, bytes, 0, bytes.length);
+			}
+			if (resolve)
+				resolveClass(loaded);
+			return loaded;
+		}
+	}
+
+	private static byte[] original(String className) throws ClassNotFoundException {
+		InputStream in = CallInstrumenterTest.class.getClassLoader()
+				.getResourceAsStream(className.replace('.', '/') + ".class");
+		if (in == null)
+			throw new ClassNotFoundException(className);
+		try {
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				for (int read; (read = in.read(buffer)) > 0;)
+					out.write(buffer, 0, read);
+				return out.toByteArray();
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new ClassNotFoundException(className, e);
+		}
+	}
+
+	/**
+	 * The counts of the edges recorded into the methods registered from the
+	 * given id on, keyed by "caller -> callee" without the package.
+	 */
+	private static Map<String, Long> callsSince(int firstId) {
+		RuntimeCalls calls = CallRecorder.snapshot();
+		String[] methods = calls.getMethods();
+		Map<String, Long> counts = new HashMap<String, Long>();
+		for (int i = 0; i < calls.getEdges().length; i++) {
+			long edge = calls.getEdges()[i];
+			int caller = (int) (edge >> 32);
+			if ((int) edge < firstId)
+				continue;
+			String callee = methods[(int) edge];
+			String from = caller == CallRecorder.OUTSIDE ? "OUTSIDE" : methods[caller].substring(FIXTURE.length());
+			counts.put(from + " -> " + callee.substring(FIXTURE.length()), calls.getCounts()[i]);
+		}
+		return counts;
+	}
+
+	private static JavaClass parse(byte[] bytes, String className) throws IOException {
+		return new ClassParser(new ByteArrayInputStream(bytes), className).parse();
+	}
+
+	private static List<StackMap> frames(JavaClass javaClass) {
+		List<StackMap> frames = new ArrayList<StackMap>();
+		for (Method method : javaClass.getMethods()) {
+			if (method.getCode() == null)
+				continue;
+			for (Attribute attribute : method.getCode().getAttributes()) {
+				if (attribute instanceof StackMap)
+					frames.add((StackMap) attribute);
+			}
+		}
+		return frames;
+	}
+
+	@Test
+	public void runsTheInstrumentedCodeThroughTheVerifier() throws Exception {
+		InstrumentingLoader loader = new InstrumentingLoader();
+		Class<?> branches = loader.loadClass(BRANCHES);
+
+		assertEquals(32, branches.getMethod("run", int.class).invoke(null, 6));
+		assertTrue(loader.instrumented.containsKey(BRANCHES + "$Box"));
+		assertTrue(loader.instrumented.containsKey(BRANCHES + "$Lazy"));
+	}
+
+	@Test
+	public void countsTheCallsBetweenTheInstrumentedMethods() throws Exception {
+		int firstId = CallRecorder.names().length;
+		InstrumentingLoader loader = new InstrumentingLoader();
+		loader.loadClass(BRANCHES).getMethod("run", int.class).invoke(null, 6);
+
+		Map<String, Long> expected = new HashMap<String, Long>();
+		expected.put("OUTSIDE -> Branches:run", 1L);
+		expected.put("Branches:run -> Branches:one", 2L);
+		expected.put("Branches:run -> Branches:two", 2L);
+		expected.put("Branches:run -> Branches:parse", 2L);
+		expected.put("Branches:two -> Branches$Box:<init>", 1L);
+		expected.put("Branches:parse -> Branches:fail", 2L);
+		// the handler cleared the caller left by the call that threw
+		expected.put("OUTSIDE -> Branches$Lazy:<clinit>", 1L);
+		expected.put("Branches$Lazy:<clinit> -> Branches$Lazy:compute", 1L);
+		assertEquals(expected, callsSince(firstId));
+	}
+
+	@Test
+	public void writesTheFramesAgainAtTheNewOffsets() throws Exception {
+		InstrumentingLoader loader = new InstrumentingLoader();
+		loader.loadClass(BRANCHES);
+		JavaClass before = parse(original(BRANCHES), BRANCHES);
+		JavaClass after = parse(loader.instrumented.get(BRANCHES), BRANCHES);
+
+		List<StackMap> framesBefore = frames(before);
+		List<StackMap> framesAfter = frames(after);
+		assertFalse(framesBefore.isEmpty());
+		assertEquals(framesBefore.size(), framesAfter.size());
+		for (int i = 0; i < framesBefore.size(); i++) {
+			assertEquals(framesBefore.get(i).getMapLength(), framesAfter.get(i).getMapLength());
+			int offsetBefore = framesBefore.get(i).getStackMap()[0].getByteCodeOffset();
+			int offsetAfter = framesAfter.get(i).getStackMap()[0].getByteCodeOffset();
+			assertTrue(offsetAfter > offsetBefore);
+		}
+	}
+
+	@Test
+	public void leavesTheJdkAndTheAgentAlone() {
+		CallInstrumenter instrumenter = new CallInstrumenter(new PackageMatcher("!com.acme.*"));
+		ClassLoader loader = CallInstrumenterTest.class.getClassLoader();
+
+		assertTrue(instrumenter.accepts(loader, "org/other/Service"));
+		assertFalse(instrumenter.accepts(loader, "com/acme/Service"));
+		assertFalse(instrumenter.accepts(loader, "java/util/ArrayList"));
+		assertFalse(instrumenter.accepts(loader, "splab/ufcg/calltrack/agent/CallRecorder"));
+		assertFalse(instrumenter.accepts(loader, "org/apache/bcel/classfile/JavaClass"));
+		assertFalse(instrumenter.accepts(null, "org/other/Service"));
+	}
+
+}
@@ -0,0 +1,123 @@
+package splab.ufcg.calltrack.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import splab.ufcg.calltrack.model.CompactGraph;
+import splab.ufcg.calltrack.model.TypeNode;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+public class CondensationTest {
+
+	/**
+	 * A graph of n nodes n0, n1... whose ids sort in node order, with the
+	 * given (from, to) edges.
+	 */
+	static CompactGraph graph(int n, int... edges) {
+		String[] ids = new String[n];
+		for (int i = 0; i < n; i++)
+			ids[i] = String.format("n%07d", i);
+		long[] packed = new long[edges.length / 2];
+		for (int i = 0; i < packed.length; i++)
+			packed[i] = PackedEdge.of(edges[2 * i], edges[2 * i + 1]);
+		byte[] types = new byte[n];
+		return CompactGraph.build(ids, new String[n], types, packed);
+	}
+
+	private static boolean hasEdge(CompactGraph graph, int from, int to) {
+		for (int e = graph.firstOut(from); e < graph.endOut(from); e++) {
+			if (graph.target(e) == to)
+				return true;
+		}
+		return false;
+	}
+
+	@Test
+	public void keepsANodeWithASelfLoopAlone() {
+		// 0 -> 0, 0 -> 1
+		Condensation condensation = Condensation.of(graph(2, 0, 0, 0, 1));
+
+		assertEquals(2, condensation.componentCount());
+		assertEquals(1, condensation.size(condensation.componentOf(0)));
+		CompactGraph dag = condensation.getDag();
+		assertEquals(1, dag.edgeCount());
+		int from = condensation.componentOf(0);
+		assertFalse(hasEdge(dag, from, from));
+		assertTrue(hasEdge(dag, from, condensation.componentOf(1)));
+	}
+
+	@Test
+	public void givesEveryNodeOfAnAcyclicGraphItsOwnComponent() {
+		// 0 -> 1 -> 2, 0 -> 2, 3 alone
+		Condensation condensation = Condensation.of(graph(4, 0, 1, 1, 2, 0, 2));
+
+		assertEquals(4, condensation.componentCount());
+		for (int node = 0; node < 4; node++) {
+			assertEquals(node, condensation.componentOf(node));
+			assertEquals(1, condensation.size(node));
+			assertEquals(node, condensation.member(node, 0));
+		}
+		assertEquals(3, condensation.getDag().edgeCount());
+		assertEquals("n0000001", condensation.getDag().label(1));
+	}
+
+	@Test
+	public void collapsesACycleIntoItsFirstMember() {
+		// 1 -> 2 -> 3 -> 1, 0 -> 2, 3 -> 4
+		Condensation condensation = Condensation.of(graph(5, 1, 2, 2, 3, 3, 1, 0, 2, 3, 4));
+
+		assertEquals(3, condensation.componentCount());
+		int cycle = condensation.componentOf(1);
+		assertEquals(cycle, condensation.componentOf(2));
+		assertEquals(cycle, condensation.componentOf(3));
+		assertEquals(3, condensation.size(cycle));
+		assertEquals(1, condensation.member(cycle, 0));
+		assertEquals(3, condensation.member(cycle, 2));
+
+		CompactGraph dag = condensation.getDag();
+		assertEquals("n0000001", dag.id(cycle));
+		assertEquals("n0000001 (+2)", dag.label(cycle));
+		assertEquals(TypeNode.NORMAL, dag.type(cycle));
+		assertEquals(2, dag.edgeCount());
+		assertTrue(hasEdge(dag, condensation.componentOf(0), cycle));
+		assertTrue(hasEdge(dag, cycle, condensation.componentOf(4)));
+	}
+
+	@Test
+	public void ordersEveryComponentAfterTheOnesItReaches() {
+		// two cycles, 0 <-> 1 and 3 <-> 4, with 1 -> 2 -> 3 and 5 -> 0
+		CompactGraph graph = graph(6, 0, 1, 1, 0, 1, 2, 2, 3, 3, 4, 4, 3, 5, 0);
+		Condensation condensation = Condensation.of(graph);
+		int[] order = condensation.reverseTopologicalOrder();
+		int[] position = new int[order.length];
+		for (int i = 0; i < order.length; i++)
+			position[order[i]] = i;
+
+		CompactGraph dag = condensation.getDag();
+		for (int c = 0; c < dag.nodeCount(); c++) {
+			for (int e = dag.firstOut(c); e < dag.endOut(c); e++)
+				assertTrue(position[c] > position[dag.target(e)]);
+		}
+		assertNotEquals(condensation.componentOf(0), condensation.componentOf(3));
+	}
+
+	@Test
+	public void condensesALongCycleWithoutRecursion() {
+		int n = 200000;
+		int[] edges = new int[2 * n];
+		for (int i = 0; i < n; i++) {
+			edges[2 * i] = i;
+			edges[2 * i + 1] = (i + 1) % n;
+		}
+		Condensation condensation = Condensation.of(graph(n, edges));
+
+		assertEquals(1, condensation.componentCount());
+		assertEquals(n, condensation.size(0));
+		assertEquals(0, condensation.getDag().edgeCount());
+	}
+
+}
@@ -0,0 +1,144 @@
+package splab.ufcg.calltrack.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import splab.ufcg.calltrack.exceptions.NodeNotFoundException;
+import splab.ufcg.calltrack.model.CompactGraph;
+import splab.ufcg.calltrack.model.Graph;
+import splab.ufcg.calltrack.model.TypeNode;
+
+public class GraphHierarchyTest {
+
+	private GraphHierarchy hierarchy;
+
+	/**
+	 * Methods of the classes a.A, a.B, b.C and Default, in the default
+	 * package, and a use case mapped on b.C:m.
+	 */
+	@Before
+	public void createHierarchy() throws NodeNotFoundException {
+		Graph graph = new Graph();
+		for (String method : new String[] { "a.A:m1", "a.A:m2", "a.B:m", "b.C:m", "b.C:n", "Default:run" })
+			graph.putNode(method, TypeNode.NORMAL);
+		graph.putNode("uc.Login", "Login", TypeNode.ARTIFACT_US);
+		graph.putEdge("a.A:m1", "a.B:m");
+		graph.putEdge("a.A:m2", "a.B:m");
+		graph.putEdge("a.A:m1", "a.A:m2");
+		graph.putEdge("a.B:m", "b.C:m");
+		graph.putEdge("a.B:m", "b.C:n");
+		graph.putEdge("b.C:n", "Default:run");
+		graph.putEdge("b.C:m", "uc.Login");
+		hierarchy = GraphHierarchy.of(graph.compact());
+	}
+
+	private static List<String> ids(CompactGraph graph) {
+		List<String> ids = new ArrayList<String>();
+		for (int node = 0; node < graph.nodeCount(); node++)
+			ids.add(graph.id(node));
+		return ids;
+	}
+
+	/**
+	 * The weight of the edge of the view between the nodes, 0 when there is
+	 * none.
+	 */
+	private static int weight(GraphHierarchy.View view, String from, String to) {
+		CompactGraph graph = view.getGraph();
+		int source = graph.indexOf(from);
+		for (int e = graph.firstOut(source); e < graph.endOut(source); e++) {
+			if (graph.id(graph.target(e)).equals(to))
+				return view.weight(e);
+		}
+		return 0;
+	}
+
+	private static int totalWeight(GraphHierarchy.View view) {
+		int total = 0;
+		for (int e = 0; e < view.getGraph().edgeCount(); e++)
+			total += view.weight(e);
+		return total;
+	}
+
+	@Test
+	public void groupsTheMethodsByClassAndTheClassesByPackage() {
+		assertEquals(Arrays.asList("Default", "a.A", "a.B", "b.C", "uc.Login"), ids(hierarchy.getClasses()));
+		assertEquals(Arrays.asList(GraphHierarchy.DEFAULT_PACKAGE, "a", "b", "uc.Login"),
+				ids(hierarchy.getPackages()));
+		CompactGraph packages = hierarchy.getPackages();
+		assertEquals("Login", packages.label(packages.indexOf("uc.Login")));
+		assertEquals(TypeNode.ARTIFACT_US, packages.type(packages.indexOf("uc.Login")));
+	}
+
+	@Test
+	public void countsTheMethodEdgesBehindEveryEdge() {
+		GraphHierarchy.View packages = hierarchy.view(Collections.<String> emptyList());
+
+		assertEquals(3, packages.getGraph().edgeCount());
+		assertEquals(2, weight(packages, "a", "b"));
+		assertEquals(1, weight(packages, "b", GraphHierarchy.DEFAULT_PACKAGE));
+		assertEquals(1, weight(packages, "b", "uc.Login"));
+
+		CompactGraph classes = hierarchy.getClasses();
+		int a = classes.indexOf("a.A");
+		assertEquals(1, classes.outDegree(a));
+		assertEquals(2, hierarchy.classWeight(classes.firstOut(a)));
+	}
+
+	@Test
+	public void expandsAPackageIntoItsClasses() {
+		GraphHierarchy.View view = hierarchy.view(Arrays.asList("b"));
+		CompactGraph graph = view.getGraph();
+
+		assertEquals(Arrays.asList(GraphHierarchy.DEFAULT_PACKAGE, "a", "b.C", "uc.Login"), ids(graph));
+		assertEquals(2, weight(view, "a", "b.C"));
+		assertEquals(1, weight(view, "b.C", GraphHierarchy.DEFAULT_PACKAGE));
+		assertEquals(1, weight(view, "b.C", "uc.Login"));
+		int c = graph.indexOf("b.C");
+		assertEquals(GraphHierarchy.CLASS, view.level(c));
+		assertEquals("b", view.container(c));
+		assertNull(view.container(graph.indexOf("a")));
+	}
+
+	@Test
+	public void expandsTheClassAndItsPackageCountingEveryMethodEdgeOnce() {
+		GraphHierarchy.View view = hierarchy.view(Arrays.asList("a.B"));
+		CompactGraph graph = view.getGraph();
+
+		assertEquals(Arrays.asList(GraphHierarchy.DEFAULT_PACKAGE, "a.A", "a.B:m", "b", "uc.Login"), ids(graph));
+		assertEquals(2, weight(view, "a.A", "a.B:m"));
+		assertEquals(2, weight(view, "a.B:m", "b"));
+		// every method edge but the one inside a.A, which is collapsed
+		assertEquals(6, totalWeight(view));
+		assertEquals(7, totalWeight(hierarchy.view(Arrays.asList("a.A", "a.B", "b.C"))));
+		assertEquals("a.B", view.container(graph.indexOf("a.B:m")));
+		assertEquals("method", view.levelName(graph.indexOf("a.B:m")));
+	}
+
+	@Test
+	public void leavesTheArtifactsAsTheyAre() {
+		GraphHierarchy.View view = hierarchy.view(Arrays.asList("uc.Login"));
+		int login = view.getGraph().indexOf("uc.Login");
+
+		assertEquals(ids(hierarchy.getPackages()), ids(view.getGraph()));
+		assertEquals("artifact", view.levelName(login));
+		assertFalse(view.isExpandable(login));
+		assertTrue(view.isExpandable(view.getGraph().indexOf("a")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAnIdThatIsNeitherAPackageNorAClass() {
+		hierarchy.view(Arrays.asList("a.A:m1"));
+	}
+
+}
@@ -0,0 +1,155 @@
+package splab.ufcg.calltrack.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import splab.ufcg.calltrack.model.CompactGraph;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+public class GraphLayoutTest {
+
+	/**
+	 * Two rings of ten nodes, 0..9 and 10..19, joined by the edge 9 -> 10.
+	 */
+	private static CompactGraph rings() {
+		int[] edges = new int[2 * 21];
+		int e = 0;
+		for (int ring = 0; ring < 2; ring++) {
+			for (int i = 0; i < 10; i++) {
+				edges[e++] = ring * 10 + i;
+				edges[e++] = ring * 10 + (i + 1) % 10;
+			}
+		}
+		edges[e++] = 9;
+		edges[e++] = 10;
+		return CondensationTest.graph(20, edges);
+	}
+
+	private static double distance(GraphLayout layout, int a, int b) {
+		double dx = layout.x(a) - layout.x(b);
+		double dy = layout.y(a) - layout.y(b);
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	@Test
+	public void givesTheSamePositionsWhateverTheWorkers() {
+		CompactGraph graph = rings();
+		GraphLayout one = GraphLayout.compute(graph, 1);
+		GraphLayout three = GraphLayout.compute(graph, 3);
+
+		assertEquals(20, one.nodeCount());
+		for (int node = 0; node < 20; node++) {
+			assertEquals(one.x(node), three.x(node), 0f);
+			assertEquals(one.y(node), three.y(node), 0f);
+		}
+	}
+
+	@Test
+	public void keepsTheNeighboursCloserThanTheOtherNodes() {
+		GraphLayout layout = GraphLayout.compute(rings(), 2);
+
+		double neighbours = 0;
+		double others = 0;
+		for (int i = 0; i < 10; i++) {
+			neighbours += distance(layout, i, (i + 1) % 10) + distance(layout, 10 + i, 10 + (i + 1) % 10);
+			others += distance(layout, i, 10 + i) + distance(layout, i, (i + 5) % 10);
+		}
+		assertTrue(neighbours < others);
+	}
+
+	@Test
+	public void pushesApartTheNodesWithoutEdges() {
+		GraphLayout layout = GraphLayout.compute(CondensationTest.graph(30), 2);
+
+		for (int a = 0; a < 30; a++) {
+			assertFalse(Float.isNaN(layout.x(a)) || Float.isInfinite(layout.x(a)));
+			assertFalse(Float.isNaN(layout.y(a)) || Float.isInfinite(layout.y(a)));
+			for (int b = a + 1; b < 30; b++)
+				assertTrue(distance(layout, a, b) > 1);
+		}
+	}
+
+	@Test
+	public void putsASingleNodeAtTheCentre() {
+		GraphLayout layout = GraphLayout.compute(CondensationTest.graph(1), 2);
+
+		assertEquals(0f, layout.x(0), 0f);
+		assertEquals(0f, layout.y(0), 0f);
+		assertEquals(0, GraphLayout.compute(CondensationTest.graph(0), 2).nodeCount());
+	}
+
+	/**
+	 * The rings without node 5, with a chain 3 -> 20 -> 21 and a node 22
+	 * linked to nothing, named as the rings are so the kept nodes are found.
+	 */
+	private static CompactGraph changedRings() {
+		String[] ids = new String[22];
+		int[] indexOf = new int[23];
+		int next = 0;
+		for (int i = 0; i < 23; i++) {
+			indexOf[i] = i == 5 ? -1 : next;
+			if (i != 5)
+				ids[next++] = String.format("n%07d", i);
+		}
+		long[] edges = new long[19 + 2];
+		int e = 0;
+		for (int ring = 0; ring < 2; ring++) {
+			for (int i = 0; i < 10; i++) {
+				int from = indexOf[ring * 10 + i];
+				int to = indexOf[ring * 10 + (i + 1) % 10];
+				if (from >= 0 && to >= 0)
+					edges[e++] = PackedEdge.of(from, to);
+			}
+		}
+		edges[e++] = PackedEdge.of(indexOf[9], indexOf[10]);
+		edges[e++] = PackedEdge.of(indexOf[3], indexOf[20]);
+		edges[e++] = PackedEdge.of(indexOf[20], indexOf[21]);
+		return CompactGraph.build(ids, new String[ids.length], new byte[ids.length], Arrays.copyOf(edges, e));
+	}
+
+	@Test
+	public void keepsThePositionsOfTheNodesAGraphKeeps() {
+		CompactGraph before = rings();
+		GraphLayout layout = GraphLayout.compute(before, 2);
+		CompactGraph after = changedRings();
+
+		GraphLayout extended = GraphLayout.extend(layout, before, after);
+
+		assertEquals(after.nodeCount(), extended.nodeCount());
+		for (int node = 0; node < after.nodeCount(); node++) {
+			int old = before.indexOf(after.id(node));
+			if (old >= 0) {
+				assertEquals(layout.x(old), extended.x(node), 0f);
+				assertEquals(layout.y(old), extended.y(node), 0f);
+			}
+		}
+	}
+
+	@Test
+	public void putsTheNewNodesNextToTheirNeighbours() {
+		CompactGraph before = rings();
+		GraphLayout layout = GraphLayout.compute(before, 2);
+		CompactGraph after = changedRings();
+
+		GraphLayout extended = GraphLayout.extend(layout, before, after);
+
+		int three = after.indexOf("n0000003");
+		int twenty = after.indexOf("n0000020");
+		int twentyOne = after.indexOf("n0000021");
+		int alone = after.indexOf("n0000022");
+		// a chain of new nodes grows out of the placed one
+		assertTrue(distance(extended, three, twenty) < distance(extended, three, after.indexOf("n0000015")));
+		assertTrue(distance(extended, twenty, twentyOne) < distance(extended, three, after.indexOf("n0000015")));
+		for (int node = 0; node < after.nodeCount(); node++) {
+			assertFalse(Float.isNaN(extended.x(node)) || Float.isNaN(extended.y(node)));
+			if (node != alone)
+				assertTrue(distance(extended, alone, node) > 1);
+		}
+	}
+
+}
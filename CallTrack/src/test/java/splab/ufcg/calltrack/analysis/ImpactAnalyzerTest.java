@@ -0,0 +1,90 @@
+package splab.ufcg.calltrack.analysis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import splab.ufcg.calltrack.model.CompactGraph;
+import splab.ufcg.calltrack.model.TypeNode;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+public class ImpactAnalyzerTest {
+
+	/**
+	 * A graph of n nodes with random edges, some of them going back so that
+	 * there are cycles, and an artifact every tenth node.
+	 */
+	private static CompactGraph randomGraph(Random random, int n, int edges) {
+		String[] ids = new String[n];
+		byte[] types = new byte[n];
+		for (int i = 0; i < n; i++) {
+			ids[i] = String.format("n%07d", i);
+			if (i % 10 == 9)
+				types[i] = (byte) (random.nextBoolean() ? TypeNode.ARTIFACT_US : TypeNode.ARTIFACT_TC).ordinal();
+		}
+		long[] packed = new long[edges];
+		for (int i = 0; i < edges; i++) {
+			int from = random.nextInt(n);
+			int to = random.nextInt(8) == 0 ? random.nextInt(n) : Math.min(n - 1, from + 1 + random.nextInt(20));
+			packed[i] = PackedEdge.of(from, to);
+		}
+		return CompactGraph.build(ids, new String[n], types, packed);
+	}
+
+	/**
+	 * The artifacts of the result sorted by node, with their distances.
+	 */
+	private static long[] artifacts(ImpactResult result) {
+		long[] artifacts = new long[result.size()];
+		for (int i = 0; i < result.size(); i++)
+			artifacts[i] = ((long) result.node(i) << 32) | result.distance(i);
+		Arrays.sort(artifacts);
+		return artifacts;
+	}
+
+	@Test
+	public void findsWithTheIndexWhatTheWholeSearchFinds() {
+		Random random = new Random(7);
+		for (int round = 0; round < 20; round++) {
+			CompactGraph graph = randomGraph(random, 50 + random.nextInt(300), 100 + random.nextInt(600));
+			ImpactAnalyzer search = new ImpactAnalyzer(graph);
+			ImpactAnalyzer indexed = new ImpactAnalyzer(ReachabilityIndex.build(graph));
+
+			for (int query = 0; query < 30; query++) {
+				int[] changed = new int[1 + random.nextInt(3)];
+				for (int i = 0; i < changed.length; i++)
+					changed[i] = random.nextInt(graph.nodeCount());
+
+				ImpactResult expected = search.analyze(changed, changed.length);
+				ImpactResult actual = indexed.analyze(changed, changed.length);
+				assertArrayEquals(artifacts(expected), artifacts(actual));
+				for (int i = 1; i < actual.size(); i++)
+					assertTrue(actual.distance(i - 1) <= actual.distance(i));
+			}
+		}
+	}
+
+	@Test
+	public void answersWithoutASearchWhenNoArtifactIsReached() {
+		// 0 -> 1 -> 2 -> 1, 3 is the artifact of 4
+		String[] ids = { "n0", "n1", "n2", "n3", "n4" };
+		byte[] types = new byte[5];
+		types[3] = (byte) TypeNode.ARTIFACT_TC.ordinal();
+		CompactGraph graph = CompactGraph.build(ids, new String[5], types, new long[] { PackedEdge.of(0, 1),
+				PackedEdge.of(1, 2), PackedEdge.of(2, 1), PackedEdge.of(4, 3) });
+		ImpactAnalyzer analyzer = new ImpactAnalyzer(ReachabilityIndex.build(graph));
+
+		assertEquals(0, analyzer.analyze(Arrays.asList("n0")).size());
+		ImpactResult result = analyzer.analyze(Arrays.asList("n0", "n4"));
+		assertEquals(1, result.size());
+		assertEquals("n3", result.id(0));
+		assertEquals(1, result.distance(0));
+		assertEquals(0, analyzer.analyze(Arrays.asList("unknown")).size());
+	}
+
+}
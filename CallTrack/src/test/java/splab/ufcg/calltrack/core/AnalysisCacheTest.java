@@ -0,0 +1,141 @@
+package splab.ufcg.calltrack.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import splab.ufcg.calltrack.model.SymbolTable;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+public class AnalysisCacheTest {
+
+	private static final String PATTERN = "com.acme";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * The edges a visitor would have found in the class named by the bytes.
+	 */
+	private static EdgeSink edgesOf(byte[] classBytes, SymbolTable symbols) {
+		String name = "com.acme." + new String(classBytes);
+		EdgeSink sink = new EdgeSink(symbols);
+		int run = symbols.internMethod(name, "run");
+		sink.addMethodEdge(run, symbols.internMethod("com.acme.Shared", "call"));
+		sink.addMethodEdge(run, symbols.internMethod(name, "help"));
+		sink.addClassEdge(symbols.internClass(name), symbols.internClass("com.acme.Shared"));
+		return sink;
+	}
+
+	/**
+	 * The edges of the sink by name, whatever the ids of its symbol table.
+	 */
+	private static Set<String> names(EdgeSink sink) {
+		SymbolTable symbols = sink.getSymbols();
+		Set<String> names = new HashSet<String>();
+		for (long edge : sink.getMethodEdges())
+			names.add(symbols.methodNodeId(PackedEdge.from(edge)) + " -> "
+					+ symbols.methodNodeId(PackedEdge.to(edge)));
+		for (long edge : sink.getClassEdges())
+			names.add(symbols.className(PackedEdge.from(edge)) + " => " + symbols.className(PackedEdge.to(edge)));
+		return names;
+	}
+
+	private static void cache(AnalysisCache cache, byte[] classBytes) {
+		cache.put(cache.keyOf(PATTERN, classBytes), edgesOf(classBytes, new SymbolTable()));
+	}
+
+	private static boolean hits(AnalysisCache cache, byte[] classBytes) {
+		return cache.replay(cache.keyOf(PATTERN, classBytes), new EdgeSink(new SymbolTable()));
+	}
+
+	@Test
+	public void replaysTheEdgesOfTheClassesItSaved() throws IOException {
+		File file = new File(folder.getRoot(), "cache/edges.bin");
+		AnalysisCache cache = AnalysisCache.load(file, 10);
+		cache(cache, "A".getBytes());
+		cache(cache, "B".getBytes());
+		cache.save();
+
+		AnalysisCache loaded = AnalysisCache.load(file, 10);
+		SymbolTable symbols = new SymbolTable();
+		symbols.internClass("com.acme.Other");
+		EdgeSink sink = new EdgeSink(symbols);
+		assertEquals(2, loaded.size());
+		assertTrue(loaded.replay(loaded.keyOf(PATTERN, "A".getBytes()), sink));
+		assertEquals(names(edgesOf("A".getBytes(), new SymbolTable())), names(sink));
+	}
+
+	@Test
+	public void missesChangedClassesAndOtherPatterns() throws IOException {
+		File file = folder.newFile("edges.bin");
+		AnalysisCache cache = AnalysisCache.load(file, 10);
+		cache(cache, "A".getBytes());
+		cache.save();
+
+		AnalysisCache loaded = AnalysisCache.load(file, 10);
+		EdgeSink sink = new EdgeSink(new SymbolTable());
+		assertFalse(loaded.replay(loaded.keyOf(PATTERN, "A2".getBytes()), sink));
+		assertFalse(loaded.replay(loaded.keyOf("com.other", "A".getBytes()), sink));
+		assertEquals(0, sink.getMethodEdges().length);
+		assertTrue(hits(loaded, "A".getBytes()));
+	}
+
+	@Test
+	public void evictsTheEntriesUsedLongestAgo() throws IOException {
+		File file = folder.newFile("edges.bin");
+		AnalysisCache first = AnalysisCache.load(file, 2);
+		cache(first, "A".getBytes());
+		cache(first, "B".getBytes());
+		first.save();
+
+		AnalysisCache second = AnalysisCache.load(file, 2);
+		assertTrue(hits(second, "A".getBytes()));
+		cache(second, "C".getBytes());
+		assertEquals(3, second.size());
+		second.save();
+
+		AnalysisCache third = AnalysisCache.load(file, 2);
+		assertEquals(2, third.size());
+		assertTrue(hits(third, "A".getBytes()));
+		assertTrue(hits(third, "C".getBytes()));
+		assertFalse(hits(third, "B".getBytes()));
+	}
+
+	@Test
+	public void ignoresTheFilesOfAnotherVersion() throws IOException {
+		File file = folder.newFile("edges.bin");
+		AnalysisCache cache = AnalysisCache.load(file, 10);
+		cache(cache, "A".getBytes());
+		cache.save();
+
+		RandomAccessFile raw = new RandomAccessFile(file, "rw");
+		try {
+			raw.seek(4);
+			int version = raw.readInt();
+			raw.seek(4);
+			raw.writeInt(version - 1);
+		} finally {
+			raw.close();
+		}
+
+		AnalysisCache older = AnalysisCache.load(file, 10);
+		assertEquals(0, older.size());
+		cache(older, "B".getBytes());
+		older.save();
+		AnalysisCache rewritten = AnalysisCache.load(file, 10);
+		assertTrue(hits(rewritten, "B".getBytes()));
+		assertFalse(hits(rewritten, "A".getBytes()));
+	}
+
+}
@@ -0,0 +1,68 @@
+package splab.ufcg.calltrack.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CallTrackTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File classes;
+
+	/**
+	 * A class directory where com.acme.A calls B, com.acme.C calls D and
+	 * com.acme.Broken is not a class.
+	 */
+	@Before
+	public void writeTheClasses() throws IOException {
+		classes = folder.newFolder("classes");
+		GraphUpdaterTest.write(classes, "com.acme.A", GraphUpdaterTest.caller("com.acme.A", "run", "com.acme.B:m"));
+		GraphUpdaterTest.write(classes, "com.acme.C", GraphUpdaterTest.caller("com.acme.C", "run", "com.acme.D:n"));
+		GraphUpdaterTest.write(classes, "com.acme.Broken", "not a class".getBytes());
+	}
+
+	private void assertScannedAllButTheBrokenClass(boolean watch) throws Exception {
+		CallTrack callTrack = new CallTrack(classes.getPath(), "com.acme.*", 2);
+		callTrack.setWatch(watch);
+		callTrack.prepare();
+		callTrack.putEdges();
+
+		assertEquals(1, callTrack.getStats().getClassesFailed());
+		assertTrue(callTrack.getGraphOfMethods().containsEdge("com.acme.B:m", "com.acme.A:run"));
+		assertTrue(callTrack.getGraphOfMethods().containsEdge("com.acme.D:n", "com.acme.C:run"));
+		assertFalse(callTrack.getGraphOfClass().containsNode("com.acme.Broken"));
+	}
+
+	@Test
+	public void goesOnAfterAClassItCannotAnalyse() throws Exception {
+		assertScannedAllButTheBrokenClass(false);
+	}
+
+	@Test
+	public void goesOnAfterAClassItCannotAnalyseWhenWatching() throws Exception {
+		assertScannedAllButTheBrokenClass(true);
+	}
+
+	@Test(expected = InterruptedException.class)
+	public void stopsWhenInterrupted() throws Exception {
+		CallTrack callTrack = new CallTrack(classes.getPath(), "com.acme.*", 2);
+		Thread.currentThread().interrupt();
+		try {
+			callTrack.prepare();
+		} finally {
+			// cleared whether or not the scan did, for the next test
+			Thread.interrupted();
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+package splab.ufcg.calltrack.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.junit.Test;
+
+public class ClassFilePreFilterTest {
+
+	/**
+	 * Answers as the visitors do, from the class constants BCEL parses.
+	 */
+	private static boolean hasMatchingClass(byte[] classBytes, String pattern) throws IOException {
+		JavaClass javaClass = new ClassParser(new ByteArrayInputStream(classBytes), "parsed").parse();
+		ConstantPool constants = javaClass.getConstantPool();
+		for (int i = 1; i < constants.getLength(); i++) {
+			Constant constant = constants.getConstant(i);
+			if (constant instanceof ConstantClass
+					&& ((ConstantClass) constant).getBytes(constants).replace('/', '.').contains(pattern))
+				return true;
+		}
+		return false;
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		for (int read; (read = in.read(buffer)) > 0;)
+			out.write(buffer, 0, read);
+		in.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * A class that refers to com.acme.Target after long and double constants,
+	 * which take two entries of the pool.
+	 */
+	private static byte[] classWithWideConstants() {
+		ClassGen classGen = new ClassGen("org.other.Source", "java.lang.Object", "Source.java", Const.ACC_PUBLIC,
+				null);
+		ConstantPoolGen constants = classGen.getConstantPool();
+		constants.addLong(1L << 40);
+		constants.addDouble(0.5);
+		constants.addString("com.acme.InAString");
+		constants.addClass("com.acme.Target");
+		return classGen.getJavaClass().getBytes();
+	}
+
+	@Test
+	public void neverRejectsAClassBcelWouldMatch() throws IOException {
+		File jar = new File(JavaClass.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+		String[] patterns = { "org.apache.bcel.generic", "java.util.Hash", "Visitor", "bcel.classfile.Code", "$",
+				"no.such.package" };
+		JarFile classes = new JarFile(jar);
+		int checked = 0;
+		try {
+			for (Enumeration<JarEntry> entries = classes.entries(); entries.hasMoreElements();) {
+				JarEntry entry = entries.nextElement();
+				if (!entry.getName().endsWith(".class"))
+					continue;
+				byte[] bytes = read(classes.getInputStream(entry));
+				for (String pattern : patterns) {
+					assertEquals(entry.getName() + " with " + pattern, hasMatchingClass(bytes, pattern),
+							new ClassFilePreFilter(pattern).accepts(bytes));
+				}
+				checked++;
+			}
+		} finally {
+			classes.close();
+		}
+		assertTrue(checked > 100);
+	}
+
+	@Test
+	public void stepsOverTheConstantsThatTakeTwoEntries() throws IOException {
+		byte[] bytes = classWithWideConstants();
+
+		assertTrue(new ClassFilePreFilter("com.acme.Target").accepts(bytes));
+		assertFalse(new ClassFilePreFilter("com.acme.InAString").accepts(bytes));
+		assertEquals(hasMatchingClass(bytes, "com.acme"), new ClassFilePreFilter("com.acme").accepts(bytes));
+	}
+
+	@Test
+	public void leavesToBcelWhatItCannotRead() {
+		byte[] bytes = classWithWideConstants();
+		ClassFilePreFilter filter = new ClassFilePreFilter("no.such.package");
+
+		assertFalse(filter.accepts(bytes));
+		assertTrue(filter.accepts(Arrays.copyOf(bytes, 40)));
+		assertTrue(filter.accepts(new byte[] { 1, 2, 3 }));
+		byte[] unknownTag = bytes.clone();
+		unknownTag[10] = 99;
+		assertTrue(filter.accepts(unknownTag));
+	}
+
+	@Test
+	public void acceptsEverythingWithAPatternItCannotCompareByteByByte() {
+		byte[] bytes = classWithWideConstants();
+
+		assertTrue(new ClassFilePreFilter("com.acmé").accepts(bytes));
+		assertTrue(new ClassFilePreFilter("").accepts(bytes));
+	}
+
+}
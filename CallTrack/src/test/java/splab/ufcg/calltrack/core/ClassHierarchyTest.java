@@ -0,0 +1,199 @@
+package splab.ufcg.calltrack.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.InstructionConst;
+import org.apache.bcel.generic.InstructionFactory;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.Type;
+import org.junit.Test;
+
+import splab.ufcg.calltrack.core.ClassHierarchy.Resolution;
+import splab.ufcg.calltrack.model.SymbolTable;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+public class ClassHierarchyTest {
+
+	private static final String SHAPES = "splab.ufcg.calltrack.fixture.Shapes";
+	private static final String[] FIXTURE = { "", "$Shape", "$Polygon", "$Square", "$Rectangle", "$Circle" };
+
+	private static JavaClass parse(String className) throws IOException {
+		InputStream in = ClassHierarchyTest.class.getClassLoader()
+				.getResourceAsStream(className.replace('.', '/') + ".class");
+		try {
+			return new ClassParser(in, className).parse();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static EdgeSink visit(String pattern, JavaClass... classes) {
+		EdgeSink sink = new EdgeSink(new SymbolTable());
+		for (JavaClass javaClass : classes)
+			new ClassVisitor(javaClass, pattern, sink).start();
+		return sink;
+	}
+
+	private static EdgeSink shapes() throws IOException {
+		JavaClass[] classes = new JavaClass[FIXTURE.length];
+		for (int i = 0; i < FIXTURE.length; i++)
+			classes[i] = parse(SHAPES + FIXTURE[i]);
+		return visit("splab.ufcg.calltrack.fixture.*", classes);
+	}
+
+	/**
+	 * The method edges of the sink, without the package of the fixture.
+	 */
+	private static Set<String> methodEdges(EdgeSink sink) {
+		SymbolTable symbols = sink.getSymbols();
+		Set<String> edges = new HashSet<String>();
+		for (long edge : sink.getMethodEdges()) {
+			edges.add(symbols.methodNodeId(PackedEdge.from(edge)).replace("splab.ufcg.calltrack.fixture.", "")
+					+ " -> " + symbols.methodNodeId(PackedEdge.to(edge)).replace("splab.ufcg.calltrack.fixture.", ""));
+		}
+		return edges;
+	}
+
+	/**
+	 * The method edges the resolution adds to those of the calls as declared.
+	 */
+	private static Set<String> expanded(EdgeSink sink, Resolution resolution) {
+		Set<String> declared = methodEdges(sink);
+		ClassHierarchy.of(sink).expand(sink, resolution);
+		Set<String> added = methodEdges(sink);
+		added.removeAll(declared);
+		return added;
+	}
+
+	private static Set<String> set(String... values) {
+		return new HashSet<String>(Arrays.asList(values));
+	}
+
+	@Test
+	public void indexesTheSupertypesAndSubtypes() throws IOException {
+		EdgeSink sink = shapes();
+		SymbolTable symbols = sink.getSymbols();
+		ClassHierarchy hierarchy = ClassHierarchy.of(sink);
+		int shape = symbols.internClass(SHAPES + "$Shape");
+		int polygon = symbols.internClass(SHAPES + "$Polygon");
+		int square = symbols.internClass(SHAPES + "$Square");
+		int circle = symbols.internClass(SHAPES + "$Circle");
+
+		assertTrue(hierarchy.isInterface(shape));
+		assertEquals(ids(polygon, circle), ids(hierarchy.subtypes(shape)));
+		assertEquals(polygon, hierarchy.supertypes(square)[0]);
+		assertTrue(hierarchy.isInstantiated(square));
+		assertFalse(hierarchy.isInstantiated(circle));
+		assertFalse(hierarchy.isVisited(symbols.internClass("java.lang.Object")));
+	}
+
+	private static Set<Integer> ids(int... values) {
+		Set<Integer> set = new HashSet<Integer>();
+		for (int value : values)
+			set.add(value);
+		return set;
+	}
+
+	@Test
+	public void resolvesAMethodUpTheSuperClasses() throws IOException {
+		EdgeSink sink = shapes();
+		SymbolTable symbols = sink.getSymbols();
+		ClassHierarchy hierarchy = ClassHierarchy.of(sink);
+		int name = symbols.methodNameId(symbols.internMethod(SHAPES + "$Shape", "name"));
+
+		assertEquals(symbols.internMethod(SHAPES + "$Polygon", "name"),
+				hierarchy.resolve(symbols.internClass(SHAPES + "$Square"), name));
+		assertEquals(symbols.internMethod(SHAPES + "$Rectangle", "name"),
+				hierarchy.resolve(symbols.internClass(SHAPES + "$Rectangle"), name));
+		assertEquals(-1, hierarchy.declaredMethod(symbols.internClass(SHAPES + "$Shape"), name));
+	}
+
+	@Test
+	public void keepsTheCallsAsDeclared() throws IOException {
+		assertEquals(set(), expanded(shapes(), Resolution.DECLARED));
+	}
+
+	@Test
+	public void linksTheVirtualCallsToTheOverridesOfEveryConcreteSubtype() throws IOException {
+		Set<String> added = expanded(shapes(), Resolution.CHA);
+
+		assertEquals(set("Shapes:total -> Shapes$Square:area", "Shapes:total -> Shapes$Rectangle:area",
+				"Shapes:total -> Shapes$Circle:area", "Shapes:label -> Shapes$Polygon:name",
+				"Shapes:label -> Shapes$Rectangle:name", "Shapes:label -> Shapes$Circle:name",
+				"Shapes:describe -> Shapes$Rectangle:name"), added);
+	}
+
+	@Test
+	public void linksTheVirtualCallsToTheOverridesOfTheInstantiatedSubtypesOnly() throws IOException {
+		Set<String> added = expanded(shapes(), Resolution.RTA);
+
+		assertEquals(set("Shapes:total -> Shapes$Square:area", "Shapes:total -> Shapes$Rectangle:area",
+				"Shapes:label -> Shapes$Polygon:name", "Shapes:label -> Shapes$Rectangle:name",
+				"Shapes:describe -> Shapes$Rectangle:name"), added);
+	}
+
+	private static boolean contains(long[] values, long value) {
+		for (long each : values) {
+			if (each == value)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * An interface com.acme.Base with a default method hello, com.acme.Sub
+	 * extending it, com.acme.Impl implementing Sub without overriding hello,
+	 * and com.acme.Main that instantiates Impl and calls hello on it.
+	 */
+	private static JavaClass[] defaultMethod() {
+		int abstractInterface = Const.ACC_PUBLIC | Const.ACC_INTERFACE | Const.ACC_ABSTRACT;
+		ClassGen base = new ClassGen("com.acme.Base", "java.lang.Object", "Base.java", abstractInterface, null);
+		InstructionList body = new InstructionList(InstructionConst.RETURN);
+		base.addMethod(new MethodGen(Const.ACC_PUBLIC, Type.VOID, Type.NO_ARGS, null, "hello", "com.acme.Base",
+				body, base.getConstantPool()).getMethod());
+		ClassGen sub = new ClassGen("com.acme.Sub", "java.lang.Object", "Sub.java", abstractInterface,
+				new String[] { "com.acme.Base" });
+		ClassGen impl = new ClassGen("com.acme.Impl", "java.lang.Object", "Impl.java", Const.ACC_PUBLIC,
+				new String[] { "com.acme.Sub" });
+
+		ClassGen main = new ClassGen("com.acme.Main", "java.lang.Object", "Main.java", Const.ACC_PUBLIC, null);
+		InstructionFactory factory = new InstructionFactory(main);
+		InstructionList code = new InstructionList();
+		code.append(factory.createNew("com.acme.Impl"));
+		code.append(factory.createInvoke("com.acme.Impl", "hello", Type.VOID, Type.NO_ARGS, Const.INVOKEVIRTUAL));
+		code.append(InstructionConst.RETURN);
+		MethodGen run = new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.VOID, Type.NO_ARGS, null, "run",
+				"com.acme.Main", code, main.getConstantPool());
+		run.setMaxStack();
+		main.addMethod(run.getMethod());
+		return new JavaClass[] { base.getJavaClass(), sub.getJavaClass(), impl.getJavaClass(),
+				main.getJavaClass() };
+	}
+
+	@Test
+	public void findsTheDefaultMethodsOfTheSuperInterfaces() {
+		for (Resolution resolution : new Resolution[] { Resolution.CHA, Resolution.RTA }) {
+			EdgeSink sink = visit("com.acme.*", defaultMethod());
+			SymbolTable symbols = sink.getSymbols();
+			long classEdge = PackedEdge.of(symbols.internClass("com.acme.Main"), symbols.internClass("com.acme.Base"));
+			assertFalse(contains(sink.getClassEdges(), classEdge));
+
+			assertEquals(set("com.acme.Main:run -> com.acme.Base:hello"), expanded(sink, resolution));
+			assertTrue(contains(sink.getClassEdges(), classEdge));
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+package splab.ufcg.calltrack.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import splab.ufcg.calltrack.model.Graph;
+import splab.ufcg.calltrack.model.SymbolTable;
+
+public class ClasspathWatcherTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Graph graphOfClass = new Graph();
+	private Graph graphOfMethods = new Graph();
+	private GraphUpdater updater;
+	private ClasspathWatcher watcher;
+
+	@Before
+	public void createTheUpdater() {
+		SymbolTable symbols = new SymbolTable();
+		EdgeExtractor extractor = new EdgeExtractor("com.acme.*", new EdgeSink(symbols));
+		updater = new GraphUpdater("com.acme.*", extractor, symbols, graphOfClass, graphOfMethods,
+				ClassHierarchy.Resolution.DECLARED);
+	}
+
+	@After
+	public void closeTheWatcher() throws IOException {
+		if (watcher != null)
+			watcher.close();
+	}
+
+	/**
+	 * Reads the archive and watches it.
+	 */
+	private void watch(File archive) throws Exception {
+		updater.scan(Collections.singletonList(archive), 2);
+		updater.apply();
+		watcher = new ClasspathWatcher(Collections.singletonList(archive), updater, 2);
+	}
+
+	private static void writeJar(File jar, String className, byte[] bytes) throws IOException {
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+		try {
+			out.putNextEntry(new ZipEntry(className.replace('.', '/') + ".class"));
+			out.write(bytes);
+			out.closeEntry();
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void readsTheClassFilesWrittenInAClassDirectory() throws Exception {
+		File classes = folder.newFolder("classes");
+		GraphUpdaterTest.write(classes, "com.acme.A", GraphUpdaterTest.caller("com.acme.A", "run", "com.acme.B:m"));
+		watch(classes);
+
+		GraphUpdaterTest.write(classes, "com.acme.A", GraphUpdaterTest.caller("com.acme.A", "run", "com.acme.C:n"));
+		GraphUpdaterTest.write(classes, "com.acme.D", GraphUpdaterTest.caller("com.acme.D", "run", "com.acme.C:n"));
+		while (updater.pendingClasses() < 2)
+			assertTrue(watcher.take() > 0);
+		updater.apply();
+
+		assertTrue(graphOfMethods.containsEdge("com.acme.C:n", "com.acme.A:run"));
+		assertTrue(graphOfMethods.containsEdge("com.acme.C:n", "com.acme.D:run"));
+		assertFalse(graphOfMethods.containsNode("com.acme.B:m"));
+	}
+
+	@Test(timeout = 30000)
+	public void readsTheClassesOfANewPackageAndTheClassFilesDeleted() throws Exception {
+		File classes = folder.newFolder("classes");
+		GraphUpdaterTest.write(classes, "com.acme.A", GraphUpdaterTest.caller("com.acme.A", "run", "com.acme.B:m"));
+		watch(classes);
+
+		GraphUpdaterTest.write(classes, "com.acme.sub.E",
+				GraphUpdaterTest.caller("com.acme.sub.E", "run", "com.acme.B:m"));
+		while (updater.pendingClasses() < 1)
+			watcher.take();
+		updater.apply();
+		assertTrue(graphOfMethods.containsEdge("com.acme.B:m", "com.acme.sub.E:run"));
+
+		assertTrue(new File(classes, "com/acme/A.class").delete());
+		while (updater.pendingClasses() < 1)
+			watcher.take();
+		updater.apply();
+		assertFalse(graphOfMethods.containsNode("com.acme.A:run"));
+		assertEquals(1, graphOfMethods.edgeCount());
+	}
+
+	@Test(timeout = 30000)
+	public void readsAJarReplacedByTheBuild() throws Exception {
+		File jar = new File(folder.newFolder("lib"), "app.jar");
+		writeJar(jar, "com.acme.A", GraphUpdaterTest.caller("com.acme.A", "run", "com.acme.B:m"));
+		watch(jar);
+
+		File written = new File(jar.getParentFile(), "app.jar.tmp");
+		writeJar(written, "com.acme.A", GraphUpdaterTest.caller("com.acme.A", "run", "com.acme.C:n"));
+		assertTrue(written.renameTo(jar));
+		while (updater.pendingClasses() < 1)
+			watcher.take();
+		updater.apply();
+
+		assertTrue(graphOfMethods.containsEdge("com.acme.C:n", "com.acme.A:run"));
+		assertFalse(graphOfMethods.containsNode("com.acme.B:m"));
+	}
+
+}
@@ -0,0 +1,400 @@
+package splab.ufcg.calltrack.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.InstructionConst;
+import org.apache.bcel.generic.InstructionFactory;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.Type;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import splab.ufcg.calltrack.model.CompactGraph;
+import splab.ufcg.calltrack.model.Graph;
+import splab.ufcg.calltrack.model.GraphDelta;
+import splab.ufcg.calltrack.model.SymbolTable;
+import splab.ufcg.calltrack.model.TypeNode;
+
+public class GraphUpdaterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File classes;
+	private Graph graphOfClass;
+	private Graph graphOfMethods;
+
+	@Before
+	public void createTheClassDirectory() throws IOException {
+		classes = folder.newFolder("classes");
+		graphOfClass = new Graph();
+		graphOfMethods = new Graph();
+	}
+
+	private GraphUpdater updater(ClassHierarchy.Resolution resolution) {
+		SymbolTable symbols = new SymbolTable();
+		EdgeExtractor extractor = new EdgeExtractor("com.acme.*", new EdgeSink(symbols));
+		return new GraphUpdater("com.acme.*", extractor, symbols, graphOfClass, graphOfMethods, resolution);
+	}
+
+	/**
+	 * A class with a method that calls the given "class:method" static
+	 * methods.
+	 */
+	static byte[] caller(String className, String methodName, String... callees) {
+		ClassGen classGen = new ClassGen(className, "java.lang.Object", "Caller.java", Const.ACC_PUBLIC, null);
+		InstructionFactory factory = new InstructionFactory(classGen);
+		InstructionList code = new InstructionList();
+		for (String callee : callees) {
+			String[] method = callee.split(":");
+			code.append(factory.createInvoke(method[0], method[1], Type.VOID, Type.NO_ARGS, Const.INVOKESTATIC));
+		}
+		code.append(InstructionConst.RETURN);
+		addMethod(classGen, Const.ACC_PUBLIC | Const.ACC_STATIC, methodName, code);
+		return classGen.getJavaClass().getBytes();
+	}
+
+	private static void addMethod(ClassGen classGen, int flags, String name, InstructionList code) {
+		MethodGen method = new MethodGen(flags, Type.VOID, Type.NO_ARGS, null, name, classGen.getClassName(), code,
+				classGen.getConstantPool());
+		if (code != null) {
+			method.setMaxStack();
+			method.setMaxLocals();
+		}
+		classGen.addMethod(method.getMethod());
+	}
+
+	/**
+	 * com.acme.Shape, an interface with a method area, or a class that
+	 * implements it.
+	 */
+	private static byte[] shape(String className) {
+		if (className.equals("com.acme.Shape")) {
+			ClassGen shape = new ClassGen(className, "java.lang.Object", "Shape.java",
+					Const.ACC_PUBLIC | Const.ACC_INTERFACE | Const.ACC_ABSTRACT, null);
+			addMethod(shape, Const.ACC_PUBLIC | Const.ACC_ABSTRACT, "area", null);
+			return shape.getJavaClass().getBytes();
+		}
+		ClassGen classGen = new ClassGen(className, "java.lang.Object", "Shape.java", Const.ACC_PUBLIC,
+				new String[] { "com.acme.Shape" });
+		addMethod(classGen, Const.ACC_PUBLIC, "area", new InstructionList(InstructionConst.RETURN));
+		return classGen.getJavaClass().getBytes();
+	}
+
+	/**
+	 * com.acme.Main, whose method run calls area on a Shape.
+	 */
+	private static byte[] main() {
+		ClassGen classGen = new ClassGen("com.acme.Main", "java.lang.Object", "Main.java", Const.ACC_PUBLIC, null);
+		InstructionFactory factory = new InstructionFactory(classGen);
+		InstructionList code = new InstructionList();
+		code.append(InstructionConst.ACONST_NULL);
+		code.append(factory.createInvoke("com.acme.Shape", "area", Type.VOID, Type.NO_ARGS, Const.INVOKEINTERFACE));
+		code.append(InstructionConst.RETURN);
+		addMethod(classGen, Const.ACC_PUBLIC | Const.ACC_STATIC, "run", code);
+		return classGen.getJavaClass().getBytes();
+	}
+
+	/**
+	 * com.acme.Factory, whose method make instantiates the given class.
+	 */
+	private static byte[] factory(String instantiated) {
+		ClassGen classGen = new ClassGen("com.acme.Factory", "java.lang.Object", "Factory.java", Const.ACC_PUBLIC,
+				null);
+		InstructionFactory factory = new InstructionFactory(classGen);
+		InstructionList code = new InstructionList();
+		code.append(factory.createNew(instantiated));
+		code.append(InstructionConst.POP);
+		code.append(InstructionConst.RETURN);
+		addMethod(classGen, Const.ACC_PUBLIC | Const.ACC_STATIC, "make", code);
+		return classGen.getJavaClass().getBytes();
+	}
+
+	static File write(File directory, String className, byte[] bytes) throws IOException {
+		File file = new File(directory, className.replace('.', '/') + ".class");
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * A jar of the given entries.
+	 */
+	private static byte[] jar(Map<String, byte[]> entries) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		JarOutputStream out = new JarOutputStream(bytes);
+		for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+			out.putNextEntry(new ZipEntry(entry.getKey()));
+			out.write(entry.getValue());
+			out.closeEntry();
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private File write(String className, byte[] bytes) throws IOException {
+		return write(classes, className, bytes);
+	}
+
+	private void delete(String className) {
+		assertTrue(new File(classes, className.replace('.', '/') + ".class").delete());
+	}
+
+	/**
+	 * Reads the class directory again and applies what changed.
+	 */
+	private List<GraphDelta> update(GraphUpdater updater) throws Exception {
+		updater.scan(Collections.singletonList(classes), 2);
+		return updater.apply();
+	}
+
+	static Set<String> set(String... values) {
+		return new HashSet<String>(Arrays.asList(values));
+	}
+
+	static Set<String> set(List<String> values) {
+		return new HashSet<String>(values);
+	}
+
+	/**
+	 * The edges of the list as "from -> to".
+	 */
+	static Set<String> edges(List<String> ends) {
+		Set<String> edges = new HashSet<String>();
+		for (int i = 0; i < ends.size(); i += 2)
+			edges.add(ends.get(i) + " -> " + ends.get(i + 1));
+		return edges;
+	}
+
+	@Test
+	public void addsChangesAndDeletesClasses() throws Exception {
+		GraphUpdater updater = updater(ClassHierarchy.Resolution.DECLARED);
+		write("com.acme.A", caller("com.acme.A", "run", "com.acme.B:m"));
+		write("com.acme.B", caller("com.acme.B", "m", "com.acme.C:n"));
+		write("com.acme.C", caller("com.acme.C", "n"));
+
+		updater.scan(Collections.singletonList(classes), 2);
+		assertEquals(3, updater.pendingClasses());
+		List<GraphDelta> deltas = updater.apply();
+		GraphDelta classDelta = deltas.get(0);
+		GraphDelta methodDelta = deltas.get(1);
+		assertEquals(CallTrack.CLASS_GRAPH, classDelta.getGraph());
+		assertEquals(set("com.acme.A", "com.acme.B", "com.acme.C"), set(classDelta.getAddedNodes()));
+		assertEquals(set("com.acme.B -> com.acme.A", "com.acme.C -> com.acme.B"), edges(classDelta.getAddedEdges()));
+		assertEquals(set("com.acme.A:run", "com.acme.B:m", "com.acme.C:n"), set(methodDelta.getAddedNodes()));
+		assertEquals(set("com.acme.B:m -> com.acme.A:run", "com.acme.C:n -> com.acme.B:m"),
+				edges(methodDelta.getAddedEdges()));
+
+		// A calls C instead of B, B keeps the edge from C
+		write("com.acme.A", caller("com.acme.A", "run", "com.acme.C:n"));
+		deltas = update(updater);
+		methodDelta = deltas.get(1);
+		assertEquals(set("com.acme.C:n -> com.acme.A:run"), edges(methodDelta.getAddedEdges()));
+		assertEquals(set("com.acme.B:m -> com.acme.A:run"), edges(methodDelta.getRemovedEdges()));
+		assertTrue(methodDelta.getAddedNodes().isEmpty() && methodDelta.getRemovedNodes().isEmpty());
+		assertEquals(set("com.acme.C -> com.acme.A"), edges(deltas.get(0).getAddedEdges()));
+		assertEquals(set("com.acme.B -> com.acme.A"), edges(deltas.get(0).getRemovedEdges()));
+
+		// B is gone, and its method with it
+		delete("com.acme.B");
+		deltas = update(updater);
+		methodDelta = deltas.get(1);
+		assertEquals(set("com.acme.C:n -> com.acme.B:m"), edges(methodDelta.getRemovedEdges()));
+		assertEquals(set("com.acme.B:m"), set(methodDelta.getRemovedNodes()));
+		assertEquals(set("com.acme.B"), set(deltas.get(0).getRemovedNodes()));
+
+		write("com.acme.D", caller("com.acme.D", "run", "com.acme.C:n"));
+		deltas = update(updater);
+		assertEquals(set("com.acme.D:run"), set(deltas.get(1).getAddedNodes()));
+		assertEquals(set("com.acme.C:n -> com.acme.D:run"), edges(deltas.get(1).getAddedEdges()));
+
+		assertEquals(3, graphOfMethods.nodeCount());
+		assertEquals(2, graphOfMethods.edgeCount());
+		assertTrue(graphOfMethods.containsEdge("com.acme.C:n", "com.acme.A:run"));
+		assertTrue(graphOfMethods.containsEdge("com.acme.C:n", "com.acme.D:run"));
+		assertFalse(graphOfMethods.containsNode("com.acme.B:m"));
+		assertFalse(graphOfClass.containsNode("com.acme.B"));
+		assertTrue(graphOfClass.containsEdge("com.acme.C", "com.acme.D"));
+	}
+
+	@Test
+	public void changesNothingWhenNoClassChanged() throws Exception {
+		GraphUpdater updater = updater(ClassHierarchy.Resolution.DECLARED);
+		write("com.acme.A", caller("com.acme.A", "run", "com.acme.B:m"));
+		update(updater);
+
+		updater.scan(Collections.singletonList(classes), 2);
+		assertEquals(0, updater.pendingClasses());
+		for (GraphDelta delta : updater.apply())
+			assertTrue(delta.isEmpty());
+		assertEquals(1, graphOfMethods.edgeCount());
+	}
+
+	@Test
+	public void keepsAnEdgeOfTheClassGraphWhileAClassStillHasIt() throws Exception {
+		GraphUpdater updater = updater(ClassHierarchy.Resolution.DECLARED);
+		// an inner class shares the node of its outer class in the class graph
+		write("com.acme.A", caller("com.acme.A", "run", "com.acme.B:m"));
+		write("com.acme.A$1", caller("com.acme.A$1", "run", "com.acme.B:m"));
+		update(updater);
+		assertEquals(1, graphOfClass.edgeCount());
+
+		delete("com.acme.A$1");
+		List<GraphDelta> deltas = update(updater);
+		assertTrue(deltas.get(0).isEmpty());
+		assertTrue(graphOfClass.containsEdge("com.acme.B", "com.acme.A"));
+		assertEquals(set("com.acme.B:m -> com.acme.A$1:run"), edges(deltas.get(1).getRemovedEdges()));
+		assertEquals(set("com.acme.A$1:run"), set(deltas.get(1).getRemovedNodes()));
+
+		delete("com.acme.A");
+		deltas = update(updater);
+		assertEquals(set("com.acme.B -> com.acme.A"), edges(deltas.get(0).getRemovedEdges()));
+		assertEquals(set("com.acme.A", "com.acme.B"), set(deltas.get(0).getRemovedNodes()));
+		assertEquals(0, graphOfClass.nodeCount());
+	}
+
+	@Test
+	public void keepsTheNodesLinkedToAnArtifact() throws Exception {
+		GraphUpdater updater = updater(ClassHierarchy.Resolution.DECLARED);
+		write("com.acme.A", caller("com.acme.A", "run", "com.acme.B:m"));
+		update(updater);
+		graphOfMethods.putNode("Login", TypeNode.ARTIFACT_US);
+		graphOfMethods.putEdge("com.acme.B:m", "Login");
+
+		delete("com.acme.A");
+		List<GraphDelta> deltas = update(updater);
+
+		assertEquals(set("com.acme.A:run"), set(deltas.get(1).getRemovedNodes()));
+		assertTrue(graphOfMethods.containsEdge("com.acme.B:m", "Login"));
+		assertEquals(1, graphOfMethods.degree("com.acme.B:m"));
+	}
+
+	@Test
+	public void linksTheCallsToTheOverridesOfTheClassesInstantiatedSinceTheLastUpdate() throws Exception {
+		GraphUpdater updater = updater(ClassHierarchy.Resolution.RTA);
+		write("com.acme.Shape", shape("com.acme.Shape"));
+		write("com.acme.Square", shape("com.acme.Square"));
+		write("com.acme.Circle", shape("com.acme.Circle"));
+		write("com.acme.Main", main());
+		update(updater);
+		assertEquals(set("com.acme.Shape:area -> com.acme.Main:run"), edges(graphOfMethods));
+
+		write("com.acme.Factory", factory("com.acme.Square"));
+		List<GraphDelta> deltas = update(updater);
+		assertEquals(set("com.acme.Square:area -> com.acme.Main:run"), edges(deltas.get(1).getAddedEdges()));
+		assertTrue(graphOfClass.containsEdge("com.acme.Square", "com.acme.Main"));
+
+		write("com.acme.Factory", factory("com.acme.Circle"));
+		deltas = update(updater);
+		assertEquals(set("com.acme.Circle:area -> com.acme.Main:run"), edges(deltas.get(1).getAddedEdges()));
+		assertEquals(set("com.acme.Square:area -> com.acme.Main:run"), edges(deltas.get(1).getRemovedEdges()));
+		assertEquals(set("com.acme.Square:area"), set(deltas.get(1).getRemovedNodes()));
+
+		delete("com.acme.Factory");
+		update(updater);
+		assertEquals(set("com.acme.Shape:area -> com.acme.Main:run"), edges(graphOfMethods));
+	}
+
+	@Test
+	public void linksTheCallsToTheOverridesOfANewSubtype() throws Exception {
+		GraphUpdater updater = updater(ClassHierarchy.Resolution.CHA);
+		write("com.acme.Shape", shape("com.acme.Shape"));
+		write("com.acme.Square", shape("com.acme.Square"));
+		write("com.acme.Main", main());
+		update(updater);
+		assertEquals(set("com.acme.Shape:area -> com.acme.Main:run", "com.acme.Square:area -> com.acme.Main:run"),
+				edges(graphOfMethods));
+
+		write("com.acme.Circle", shape("com.acme.Circle"));
+		List<GraphDelta> deltas = update(updater);
+
+		assertEquals(set("com.acme.Circle:area -> com.acme.Main:run"), edges(deltas.get(1).getAddedEdges()));
+		assertTrue(deltas.get(1).getRemovedEdges().isEmpty());
+	}
+
+	@Test
+	public void keepsTheEdgesOfAClassItCannotRead() throws Exception {
+		GraphUpdater updater = updater(ClassHierarchy.Resolution.DECLARED);
+		write("com.acme.A", caller("com.acme.A", "run", "com.acme.B:m"));
+		update(updater);
+
+		// caught while the compiler writes it, nothing is taken as gone
+		write("com.acme.A", "not a class yet".getBytes());
+		assertEquals(1, updater.scan(Collections.singletonList(classes), 2));
+
+		for (GraphDelta delta : updater.apply())
+			assertTrue(delta.isEmpty());
+		assertTrue(graphOfMethods.containsEdge("com.acme.B:m", "com.acme.A:run"));
+	}
+
+	@Test
+	public void keepsTheClassesOfTheSameNameInTwoNestedJars() throws Exception {
+		GraphUpdater updater = updater(ClassHierarchy.Resolution.DECLARED);
+		Map<String, byte[]> boot = new LinkedHashMap<String, byte[]>();
+		boot.put("BOOT-INF/lib/one.jar", jar(Collections.singletonMap("com/acme/A.class",
+				caller("com.acme.A", "run", "com.acme.B:m"))));
+		boot.put("BOOT-INF/lib/two.jar", jar(Collections.singletonMap("com/acme/A.class",
+				caller("com.acme.A", "run", "com.acme.C:n"))));
+		File jar = new File(folder.getRoot(), "boot.jar");
+		OutputStream out = new FileOutputStream(jar);
+		try {
+			out.write(jar(boot));
+		} finally {
+			out.close();
+		}
+		write("com.acme.D", caller("com.acme.D", "run", "com.acme.B:m"));
+
+		updater.scan(Arrays.asList(jar, classes), 2);
+		assertEquals(3, updater.pendingClasses());
+		updater.apply();
+		assertTrue(graphOfMethods.containsEdge("com.acme.B:m", "com.acme.A:run"));
+		assertTrue(graphOfMethods.containsEdge("com.acme.C:n", "com.acme.A:run"));
+
+		// gone from the class directory only, the jar is read with it
+		delete("com.acme.D");
+		updater.scan(Arrays.asList(jar, classes), 2);
+		assertEquals(1, updater.pendingClasses());
+		updater.apply();
+		assertFalse(graphOfMethods.containsNode("com.acme.D:run"));
+		assertTrue(graphOfMethods.containsEdge("com.acme.B:m", "com.acme.A:run"));
+		assertTrue(graphOfMethods.containsEdge("com.acme.C:n", "com.acme.A:run"));
+	}
+
+	private static Set<String> edges(Graph graph) {
+		CompactGraph compact = graph.compact();
+		Set<String> edges = new HashSet<String>();
+		for (int node = 0; node < compact.nodeCount(); node++) {
+			for (int e = compact.firstOut(node); e < compact.endOut(node); e++)
+				edges.add(compact.id(node) + " -> " + compact.id(compact.target(e)));
+		}
+		return edges;
+	}
+
+}
@@ -0,0 +1,134 @@
+package splab.ufcg.calltrack.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.InstructionConst;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.PUSH;
+import org.apache.bcel.generic.Type;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JarDiffTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File before;
+	private File after;
+
+	@Before
+	public void createDirectories() throws IOException {
+		before = folder.newFolder("before");
+		after = folder.newFolder("after");
+	}
+
+	/**
+	 * A method of the class: its name, its only argument and the int it
+	 * returns.
+	 */
+	private static Object[] method(String name, Type argument, int returned) {
+		return new Object[] { name, argument, returned };
+	}
+
+	/**
+	 * Writes a class whose static methods return constants, under its
+	 * package in the directory. Padding shifts its constant pool.
+	 */
+	private static void write(File directory, String className, int padding, Object[]... methods)
+			throws IOException {
+		ClassGen classGen = new ClassGen(className, "java.lang.Object", className + ".java", Const.ACC_PUBLIC,
+				null);
+		ConstantPoolGen constants = classGen.getConstantPool();
+		for (int i = 0; i < padding; i++)
+			constants.addUtf8("padding" + i);
+		for (Object[] method : methods) {
+			InstructionList code = new InstructionList();
+			code.append(new PUSH(constants, (Integer) method[2]));
+			code.append(InstructionConst.IRETURN);
+			MethodGen methodGen = new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.INT,
+					new Type[] { (Type) method[1] }, new String[] { "value" }, (String) method[0], className, code,
+					constants);
+			methodGen.setMaxStack();
+			methodGen.setMaxLocals();
+			classGen.addMethod(methodGen.getMethod());
+		}
+		File file = new File(directory, className.replace('.', '/') + ".class");
+		file.getParentFile().mkdirs();
+		classGen.getJavaClass().dump(file);
+	}
+
+	private JarDiff compare(String pattern) throws Exception {
+		return JarDiff.compare(Collections.singletonList(before), Collections.singletonList(after), pattern, 2);
+	}
+
+	@Test
+	public void findsNothingInTheSameCodeWithAnotherConstantPool() throws Exception {
+		write(before, "com.acme.A", 0, method("run", Type.INT, 1), method("stop", Type.INT, 2));
+		write(after, "com.acme.A", 3, method("run", Type.INT, 1), method("stop", Type.INT, 2));
+
+		assertTrue(compare("com.acme").getChangedIds().isEmpty());
+	}
+
+	@Test
+	public void findsTheAddedRemovedAndModifiedMethods() throws Exception {
+		write(before, "com.acme.A", 0, method("run", Type.INT, 1), method("stop", Type.INT, 2));
+		write(after, "com.acme.A", 0, method("run", Type.INT, 5), method("start", Type.INT, 2));
+		write(after, "com.acme.B", 0, method("run", Type.INT, 1));
+
+		JarDiff diff = compare("com.acme");
+
+		assertEquals(Arrays.asList("com.acme.A:start", "com.acme.B:run"), diff.getAddedMethods());
+		assertEquals(Arrays.asList("com.acme.A:stop"), diff.getRemovedMethods());
+		assertEquals(Arrays.asList("com.acme.A:run"), diff.getModifiedMethods());
+		assertEquals(Arrays.asList("com.acme.B"), diff.getAddedClasses());
+		assertEquals(Arrays.asList("com.acme.A"), diff.getModifiedClasses());
+		assertTrue(diff.getRemovedClasses().isEmpty());
+	}
+
+	@Test
+	public void findsTheBodiesSwappedBetweenOverloads() throws Exception {
+		write(before, "com.acme.A", 0, method("run", Type.INT, 1), method("run", Type.LONG, 2));
+		write(after, "com.acme.A", 0, method("run", Type.INT, 2), method("run", Type.LONG, 1));
+
+		JarDiff diff = compare("com.acme");
+
+		assertEquals(Arrays.asList("com.acme.A:run"), diff.getModifiedMethods());
+		assertEquals(Arrays.asList("com.acme.A"), diff.getModifiedClasses());
+	}
+
+	@Test
+	public void takesAChangedAnonymousClassForAChangeOfItsOuterClass() throws Exception {
+		write(before, "com.acme.A", 0, method("run", Type.INT, 1));
+		write(before, "com.acme.A$1", 0, method("run", Type.INT, 1));
+		write(after, "com.acme.A", 0, method("run", Type.INT, 1));
+		write(after, "com.acme.A$1", 0, method("run", Type.INT, 2));
+
+		JarDiff diff = compare("com.acme");
+
+		assertEquals(Arrays.asList("com.acme.A$1:run"), diff.getModifiedMethods());
+		assertEquals(Arrays.asList("com.acme.A"), diff.getModifiedClasses());
+	}
+
+	@Test
+	public void leavesOutTheClassesThePatternDoesNotMatch() throws Exception {
+		write(before, "org.other.C", 0, method("run", Type.INT, 1));
+		write(after, "org.other.C", 0, method("run", Type.INT, 2));
+		write(after, "com.acme.A", 0, method("run", Type.INT, 1));
+
+		assertEquals(Arrays.asList("com.acme.A:run", "com.acme.A"), compare("com.acme").getChangedIds());
+	}
+
+}
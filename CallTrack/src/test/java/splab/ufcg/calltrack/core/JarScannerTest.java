@@ -0,0 +1,211 @@
+package splab.ufcg.calltrack.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JarScannerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Collects the entry names handed out with the text of their bytes and
+	 * their sources.
+	 */
+	private static class Collector implements JarScanner.ClassHandler {
+		private Map<String, String> classes = new TreeMap<String, String>();
+		private Map<String, String> sources = new TreeMap<String, String>();
+
+		public void handle(String entryName, String source, byte[] classBytes) throws Exception {
+			synchronized (classes) {
+				classes.put(entryName, new String(classBytes, "UTF-8"));
+				sources.put(source, entryName);
+			}
+		}
+	}
+
+	/**
+	 * A jar of the given entries, each with its name as its content unless
+	 * the content is given, deflated or, like the nested jars of Spring Boot,
+	 * stored.
+	 */
+	private static byte[] jar(boolean stored, Map<String, byte[]> entries) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		JarOutputStream out = new JarOutputStream(bytes);
+		for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+			ZipEntry zipEntry = new ZipEntry(entry.getKey());
+			byte[] content = entry.getValue();
+			if (stored) {
+				CRC32 crc = new CRC32();
+				crc.update(content);
+				zipEntry.setMethod(ZipEntry.STORED);
+				zipEntry.setSize(content.length);
+				zipEntry.setCrc(crc.getValue());
+			}
+			out.putNextEntry(zipEntry);
+			out.write(content);
+			out.closeEntry();
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static Map<String, byte[]> entries(String... names) {
+		Map<String, byte[]> entries = new TreeMap<String, byte[]>();
+		for (String name : names)
+			entries.put(name, name.getBytes());
+		return entries;
+	}
+
+	private File write(String name, byte[] bytes) throws IOException {
+		File file = new File(folder.getRoot(), name);
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static Map<String, String> scan(int workers, File... archives) throws Exception {
+		Collector collector = new Collector();
+		new JarScanner(Arrays.asList(archives), workers, 2).scan(collector);
+		return collector.classes;
+	}
+
+	@Test
+	public void readsTheClassesOfAJarAndNothingElse() throws Exception {
+		File jar = write("app.jar", jar(false, entries("com/acme/A.class", "com/acme/B.class", "META-INF/MANIFEST.MF",
+				"com/acme/messages.properties")));
+
+		Map<String, String> expected = new HashMap<String, String>();
+		expected.put("com/acme/A.class", "com/acme/A.class");
+		expected.put("com/acme/B.class", "com/acme/B.class");
+		for (int workers : new int[] { 1, 4 })
+			assertEquals(expected, scan(workers, jar));
+	}
+
+	@Test
+	public void namesTheClassesOfABootJarFromTheirPackageRoot() throws Exception {
+		Map<String, byte[]> deep = entries("com/acme/deep/D.class");
+		Map<String, byte[]> inner = entries("com/acme/lib/C.class");
+		inner.put("lib/deep.jar", jar(false, deep));
+		Map<String, byte[]> boot = entries("BOOT-INF/classes/com/acme/B.class",
+				"org/springframework/boot/loader/Launcher.class");
+		boot.put("BOOT-INF/lib/inner.jar", jar(true, inner));
+		File jar = write("boot.jar", jar(false, boot));
+
+		Map<String, String> classes = scan(3, jar);
+
+		Map<String, String> expected = new HashMap<String, String>();
+		expected.put("com/acme/B.class", "BOOT-INF/classes/com/acme/B.class");
+		expected.put("org/springframework/boot/loader/Launcher.class", "org/springframework/boot/loader/Launcher.class");
+		expected.put("com/acme/lib/C.class", "com/acme/lib/C.class");
+		expected.put("com/acme/deep/D.class", "com/acme/deep/D.class");
+		assertEquals(expected, classes);
+	}
+
+	@Test
+	public void readsAClasspathOfJarsAndClassDirectories() throws Exception {
+		Map<String, byte[]> war = entries("WEB-INF/classes/com/acme/web/W.class");
+		war.put("WEB-INF/lib/util.jar", jar(false, entries("com/acme/util/U.class")));
+		File warFile = write("app.war", jar(false, war));
+		File classes = folder.newFolder("classes");
+		write("classes/com/acme/dir/F.class", "F".getBytes());
+		write("classes/com/acme/dir/notes.txt", "notes".getBytes());
+		File jar = write("lib.jar", jar(false, entries("com/acme/lib/L.class")));
+
+		Map<String, String> expected = new HashMap<String, String>();
+		expected.put("com/acme/web/W.class", "WEB-INF/classes/com/acme/web/W.class");
+		expected.put("com/acme/util/U.class", "com/acme/util/U.class");
+		expected.put("com/acme/dir/F.class", "F");
+		expected.put("com/acme/lib/L.class", "com/acme/lib/L.class");
+		for (int workers : new int[] { 1, 2, 8 })
+			assertEquals(expected, scan(workers, warFile, classes, jar));
+	}
+
+	@Test
+	public void tellsApartTheClassesOfTheSameNameByTheirSource() throws Exception {
+		Map<String, byte[]> boot = entries("BOOT-INF/classes/com/acme/A.class");
+		boot.put("BOOT-INF/lib/inner.jar", jar(true, entries("com/acme/A.class")));
+		File jar = write("boot.jar", jar(false, boot));
+		File classes = folder.newFolder("classes");
+		File file = write("classes/com/acme/A.class", "A".getBytes());
+		Collector collector = new Collector();
+
+		new JarScanner(Arrays.asList(jar, classes), 2, 2).scan(collector);
+
+		Map<String, String> expected = new TreeMap<String, String>();
+		expected.put(jar + "!/BOOT-INF/classes/com/acme/A.class", "com/acme/A.class");
+		expected.put(jar + "!/BOOT-INF/lib/inner.jar!/com/acme/A.class", "com/acme/A.class");
+		expected.put(file.getPath(), "com/acme/A.class");
+		assertEquals(expected, collector.sources);
+	}
+
+	@Test
+	public void goesOnAfterAClassItCannotHandle() throws Exception {
+		File jar = write("app.jar", jar(false, entries("com/acme/A.class", "com/acme/B.class", "com/acme/C.class")));
+		final Collector collector = new Collector();
+
+		int failures = new JarScanner(jar, 2, 1).scan(new JarScanner.ClassHandler() {
+			public void handle(String entryName, String source, byte[] classBytes) throws Exception {
+				if (entryName.endsWith("B.class"))
+					throw new IOException("not a class");
+				collector.handle(entryName, source, classBytes);
+			}
+		});
+
+		assertEquals(1, failures);
+		assertEquals(Arrays.asList("com/acme/A.class", "com/acme/C.class"),
+				Arrays.asList(collector.classes.keySet().toArray()));
+	}
+
+	@Test(timeout = 30000)
+	public void throwsTheErrorOfAHandlerOnceTheWorkersAreDone() throws Exception {
+		Map<String, byte[]> entries = new TreeMap<String, byte[]>();
+		for (int i = 0; i < 100; i++)
+			entries.put("com/acme/C" + i + ".class", new byte[] { (byte) i });
+		File jar = write("app.jar", jar(false, entries));
+		final AtomicInteger handled = new AtomicInteger();
+
+		try {
+			new JarScanner(jar, 3, 1).scan(new JarScanner.ClassHandler() {
+				public void handle(String entryName, String source, byte[] classBytes) throws Exception {
+					if (handled.incrementAndGet() == 10)
+						throw new OutOfMemoryError("no room for " + entryName);
+				}
+			});
+			fail();
+		} catch (OutOfMemoryError e) {
+			assertTrue(e.getMessage().startsWith("no room for"));
+		}
+		assertTrue(handled.get() < 100);
+	}
+
+	@Test(expected = IOException.class)
+	public void failsOnAnArchiveItCannotOpen() throws Exception {
+		scan(2, write("broken.jar", "not a jar".getBytes()));
+	}
+
+}
@@ -0,0 +1,182 @@
+package splab.ufcg.calltrack.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.ArrayType;
+import org.apache.bcel.generic.BranchInstruction;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.GOTO;
+import org.apache.bcel.generic.GOTO_W;
+import org.apache.bcel.generic.IINC;
+import org.apache.bcel.generic.ILOAD;
+import org.apache.bcel.generic.ISTORE;
+import org.apache.bcel.generic.InstructionConst;
+import org.apache.bcel.generic.InstructionFactory;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.LOOKUPSWITCH;
+import org.apache.bcel.generic.MULTIANEWARRAY;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.PUSH;
+import org.apache.bcel.generic.TABLESWITCH;
+import org.apache.bcel.generic.Type;
+import org.junit.Test;
+
+import splab.ufcg.calltrack.model.SymbolTable;
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+public class MethodVisitorTest {
+
+	private static final String CALLEE = "com.acme.Callee";
+
+	/**
+	 * A method that starts with the given number of nops, so that its
+	 * switches are padded differently, then goes through a tableswitch, a
+	 * lookupswitch, wide local variables and the other instructions of more
+	 * than one byte, calling a static method of the callee in every part.
+	 */
+	private static void addMethod(ClassGen classGen, int nops) {
+		ConstantPoolGen constants = classGen.getConstantPool();
+		InstructionFactory factory = new InstructionFactory(classGen, constants);
+		InstructionList code = new InstructionList();
+		for (int i = 0; i < nops; i++)
+			code.append(InstructionConst.NOP);
+
+		code.append(new ILOAD(0));
+		TABLESWITCH table = new TABLESWITCH(new int[] { 0, 1, 2 }, new InstructionHandle[3], null);
+		code.append(table);
+		InstructionHandle[] tableTargets = new InstructionHandle[3];
+		BranchInstruction[] tableExits = new BranchInstruction[3];
+		for (int i = 0; i < 3; i++) {
+			tableTargets[i] = code.append(call(factory, "table" + i));
+			tableExits[i] = new GOTO(null);
+			code.append(tableExits[i]);
+		}
+
+		InstructionHandle lookup = code.append(new ILOAD(0));
+		LOOKUPSWITCH lookupSwitch = new LOOKUPSWITCH(new int[] { -5, 1000 }, new InstructionHandle[2], null);
+		code.append(lookupSwitch);
+		InstructionHandle[] lookupTargets = new InstructionHandle[2];
+		BranchInstruction[] lookupExits = new BranchInstruction[2];
+		for (int i = 0; i < 2; i++) {
+			lookupTargets[i] = code.append(call(factory, "lookup" + i));
+			lookupExits[i] = new GOTO(null);
+			code.append(lookupExits[i]);
+		}
+
+		// locals past 255 take a wide prefix
+		InstructionHandle wide = code.append(new IINC(300, 1000));
+		code.append(new ILOAD(300));
+		code.append(new ISTORE(301));
+		code.append(call(factory, "wide"));
+
+		code.append(new PUSH(constants, 1000));
+		code.append(new PUSH(constants, 1L << 40));
+		code.append(InstructionConst.POP2);
+		code.append(new PUSH(constants, 2));
+		code.append(new MULTIANEWARRAY(constants.addArrayClass(new ArrayType(Type.INT, 2)), (short) 2));
+		code.append(InstructionConst.POP2);
+		code.append(InstructionConst.ACONST_NULL);
+		code.append(factory.createInvoke("java.lang.Runnable", "run", Type.VOID, Type.NO_ARGS,
+				Const.INVOKEINTERFACE));
+		GOTO_W far = new GOTO_W(null);
+		code.append(far);
+		code.append(InstructionConst.NOP);
+		InstructionHandle end = code.append(call(factory, "last"));
+		code.append(new ILOAD(0));
+		code.append(InstructionConst.IRETURN);
+
+		for (int i = 0; i < tableTargets.length; i++)
+			table.setTarget(i, tableTargets[i]);
+		table.setTarget(lookup);
+		for (BranchInstruction exit : tableExits)
+			exit.setTarget(lookup);
+		for (int i = 0; i < lookupTargets.length; i++)
+			lookupSwitch.setTarget(i, lookupTargets[i]);
+		lookupSwitch.setTarget(wide);
+		for (BranchInstruction exit : lookupExits)
+			exit.setTarget(wide);
+		far.setTarget(end);
+
+		MethodGen methodGen = new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.INT,
+				new Type[] { Type.INT }, new String[] { "value" }, "run" + nops, classGen.getClassName(), code,
+				constants);
+		methodGen.setMaxStack();
+		methodGen.setMaxLocals();
+		classGen.addMethod(methodGen.getMethod());
+	}
+
+	private static InstructionList call(InstructionFactory factory, String method) {
+		return new InstructionList(factory.createInvoke(CALLEE, method, Type.VOID, Type.NO_ARGS,
+				Const.INVOKESTATIC));
+	}
+
+	private static JavaClass caller() {
+		ClassGen classGen = new ClassGen("com.acme.Caller", "java.lang.Object", "Caller.java",
+				Const.ACC_PUBLIC, null);
+		for (int nops = 0; nops < 4; nops++)
+			addMethod(classGen, nops);
+		return classGen.getJavaClass();
+	}
+
+	private static Set<String> methodEdges(EdgeSink sink) {
+		Set<String> edges = new HashSet<String>();
+		for (long edge : sink.getMethodEdges()) {
+			edges.add(sink.getSymbols().methodNodeId(PackedEdge.from(edge)) + " -> "
+					+ sink.getSymbols().methodNodeId(PackedEdge.to(edge)));
+		}
+		return edges;
+	}
+
+	@Test
+	public void stepsOverEveryInstructionAsBcelDoes() {
+		for (Method method : caller().getMethods()) {
+			byte[] code = method.getCode().getCode();
+			int[] positions = new InstructionList(code).getInstructionPositions();
+			int instructions = 0;
+			for (int pc = 0; pc < code.length; pc += MethodVisitor.length(code, pc, code[pc] & 0xFF))
+				assertEquals(method.getName(), positions[instructions++], pc);
+			assertEquals(positions.length, instructions);
+		}
+	}
+
+	@Test
+	public void countsTheInstructionsOfEveryMethod() {
+		JavaClass caller = caller();
+		ClassVisitor visitor = new ClassVisitor(caller, "com.acme.*", new EdgeSink(new SymbolTable()));
+		visitor.start();
+
+		int instructions = 0;
+		for (Method method : caller.getMethods())
+			instructions += new InstructionList(method.getCode().getCode()).getLength();
+		assertEquals(instructions, visitor.getInstructions());
+	}
+
+	@Test
+	public void findsTheCallsAfterTheSwitchesWhateverTheirPadding() {
+		EdgeSink sink = new EdgeSink(new SymbolTable());
+		ClassVisitor visitor = new ClassVisitor(caller(), "com.acme.*", sink);
+		visitor.start();
+
+		Set<String> edges = methodEdges(sink);
+		String[] callees = { "table0", "table1", "table2", "lookup0", "lookup1", "wide", "last" };
+		for (int nops = 0; nops < 4; nops++) {
+			for (String callee : callees)
+				assertTrue(edges.contains("com.acme.Caller:run" + nops + " -> " + CALLEE + ":" + callee));
+		}
+		assertEquals(4 * callees.length, edges.size());
+		// rejected: the super class, then in every method the int[][] and
+		// the call to Runnable
+		assertEquals(4 * callees.length, visitor.getKeptEdges());
+		assertEquals(1 + 4 * 2, visitor.getRejectedEdges());
+	}
+
+}
@@ -0,0 +1,122 @@
+package splab.ufcg.calltrack.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PackageMatcherTest {
+
+	/**
+	 * Matches the name as the class file visitor does, over its UTF-8 bytes
+	 * between other bytes of the constant pool.
+	 */
+	private static boolean matchesInPlace(PackageMatcher matcher, String name) throws Exception {
+		byte[] bytes = ("\u0001xx" + name + "yy").getBytes("UTF-8");
+		return matcher.matches(PackageMatcher.utf8(bytes), 3, 3 + name.length());
+	}
+
+	@Test
+	public void letsTheLongestPrefixDecide() {
+		PackageMatcher matcher = new PackageMatcher("com.acme.*, !com.acme.generated.*, com.acme.generated.api.*");
+
+		assertTrue(matcher.matches("com.acme.Service"));
+		assertTrue(matcher.matches("com.acme.web.Controller"));
+		assertFalse(matcher.matches("com.acme.generated.Stub"));
+		assertFalse(matcher.matches("com.acme.generated.impl.Proxy"));
+		assertTrue(matcher.matches("com.acme.generated.api.Client"));
+		assertFalse(matcher.matches("com.other.Service"));
+	}
+
+	@Test
+	public void doesNotDependOnTheOrderOfTheRules() {
+		PackageMatcher matcher = new PackageMatcher("com.acme.generated.api.*, !com.acme.generated.*, com.acme.*");
+
+		assertTrue(matcher.matches("com.acme.Service"));
+		assertFalse(matcher.matches("com.acme.generated.Stub"));
+		assertTrue(matcher.matches("com.acme.generated.api.Client"));
+	}
+
+	@Test
+	public void takesThePrefixesAsTextsNotAsPackages() {
+		PackageMatcher matcher = new PackageMatcher("com.acme*, !com.acme.gen*");
+
+		assertTrue(matcher.matches("com.acmex.Service"));
+		assertFalse(matcher.matches("com.acme.generated.Stub"));
+		assertFalse(matcher.matches("com.acme.gen"));
+		assertTrue(matcher.matches("com.acme.ge"));
+	}
+
+	@Test
+	public void excludesAContainedTextWhateverThePrefixes() {
+		PackageMatcher matcher = new PackageMatcher("com.acme.*, !Test");
+
+		assertTrue(matcher.matches("com.acme.Service"));
+		assertFalse(matcher.matches("com.acme.ServiceTest"));
+		assertTrue(matcher.excludes("com.acme.ServiceTest", 0, "com.acme.ServiceTest".length()));
+		assertFalse(matcher.excludes("com.acme.Service", 0, "com.acme.Service".length()));
+	}
+
+	@Test
+	public void includesAContainedTextOnlyWhereNoPrefixDecides() {
+		PackageMatcher matcher = new PackageMatcher("sample, !com.acme.*");
+
+		assertTrue(matcher.matches("org.sample.Main"));
+		assertFalse(matcher.matches("com.acme.sample.Main"));
+		assertFalse(matcher.matches("org.other.Main"));
+	}
+
+	@Test
+	public void includesWhatExcludeRulesAloneLeave() {
+		PackageMatcher matcher = new PackageMatcher("!java.*, !javax.*");
+
+		assertTrue(matcher.matches("com.acme.Service"));
+		assertTrue(matcher.matches("javafx.Stage"));
+		assertFalse(matcher.matches("java.lang.String"));
+		assertFalse(matcher.matches("javax.swing.JFrame"));
+		// excluding, not including, everything else
+		assertFalse(matcher.excludes("com.acme.Service", 0, "com.acme.Service".length()));
+	}
+
+	@Test
+	public void readsTheNamesOfTheClassFiles() throws Exception {
+		PackageMatcher matcher = new PackageMatcher("com.acme.*, !com.acme.generated.*");
+
+		assertTrue(matchesInPlace(matcher, "com/acme/Service"));
+		assertTrue(matchesInPlace(matcher, "[[Lcom/acme/Service;"));
+		assertFalse(matchesInPlace(matcher, "[Lcom/acme/generated/Stub;"));
+		assertFalse(matchesInPlace(matcher, "Lcom/acme/Service;"));
+		assertTrue(matcher.isAscii());
+	}
+
+	@Test
+	public void matchesNamesBeyondAscii() {
+		PackageMatcher matcher = new PackageMatcher("com.acme.*, !com.acme.café.*");
+
+		assertFalse(matcher.isAscii());
+		assertTrue(matcher.matches("com.acme.Service"));
+		assertTrue(matcher.matches("com.acme.naïve.Service"));
+		assertFalse(matcher.matches("com.acme.café.Menu"));
+		assertTrue(new PackageMatcher("!com.acme.*, com.acme.café.*").matches("com.acme.café.Menu"));
+	}
+
+	@Test
+	public void readsTheBytesOfAClassFileAsAnyCharSequence() throws Exception {
+		CharSequence bytes = PackageMatcher.utf8("\u0001xxcom/acme/Serviceyy".getBytes("UTF-8"));
+		CharSequence name = bytes.subSequence(3, 3 + "com/acme/Service".length());
+
+		assertEquals("\u0001xxcom/acme/Serviceyy", bytes.toString());
+		assertEquals("com/acme/Service", name.toString());
+		assertEquals("acme", name.subSequence(4, 8).toString());
+		assertEquals('S', name.charAt(9));
+		assertTrue(new PackageMatcher("com.acme.*").matches(name));
+		assertFalse(new PackageMatcher("com.acme.Serviceyy").matches(name));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void keepsASubSequenceInItsBounds() throws Exception {
+		PackageMatcher.utf8("com/acme/Service".getBytes("UTF-8")).subSequence(4, 8).charAt(4);
+	}
+
+}
@@ -0,0 +1,63 @@
+package splab.ufcg.calltrack.fixture;
+
+/**
+ * Code with loops, switches, exception handlers and a new whose arguments
+ * branch, for the agent to instrument.
+ */
+public class Branches {
+
+	public static int run(int n) {
+		int total = 0;
+		for (int i = 0; i < n; i++) {
+			switch (i % 3) {
+			case 0:
+				total += one();
+				break;
+			case 1:
+				total += two(i);
+				break;
+			default:
+				total += parse("x" + i);
+			}
+		}
+		return total;
+	}
+
+	static int one() {
+		return 1;
+	}
+
+	static int two(int i) {
+		return i > 1 ? 2 : new Box(i > 0 ? 2 : 1).value;
+	}
+
+	static int parse(String text) {
+		try {
+			return Integer.parseInt(text);
+		} catch (NumberFormatException e) {
+			// initializes Lazy before any other call
+			return Lazy.VALUE + fail();
+		}
+	}
+
+	static int fail() {
+		return 3;
+	}
+
+	static class Box {
+		int value;
+
+		Box(int value) {
+			this.value = value;
+		}
+	}
+
+	static class Lazy {
+		static final int VALUE = compute();
+
+		static int compute() {
+			return 10;
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package splab.ufcg.calltrack.fixture;
+
+/**
+ * A small hierarchy whose virtual calls go through an interface and an
+ * abstract class, for the class hierarchy to resolve. Circle is never
+ * instantiated.
+ */
+public class Shapes {
+
+	public interface Shape {
+		double area();
+
+		String name();
+	}
+
+	public abstract static class Polygon implements Shape {
+		public String name() {
+			return "polygon";
+		}
+	}
+
+	public static class Square extends Polygon {
+		public double area() {
+			return 1;
+		}
+	}
+
+	public static class Rectangle extends Polygon {
+		public double area() {
+			return 2;
+		}
+
+		public String name() {
+			return "rectangle";
+		}
+	}
+
+	public static class Circle implements Shape {
+		public double area() {
+			return 3;
+		}
+
+		public String name() {
+			return "circle";
+		}
+	}
+
+	public static Shape[] some() {
+		return new Shape[] { new Square(), new Rectangle() };
+	}
+
+	public static double total(Shape[] shapes) {
+		double total = 0;
+		for (Shape shape : shapes)
+			total += shape.area();
+		return total;
+	}
+
+	public static String label(Shape shape) {
+		return shape.name();
+	}
+
+	public static String describe(Polygon polygon) {
+		return polygon.name();
+	}
+
+}
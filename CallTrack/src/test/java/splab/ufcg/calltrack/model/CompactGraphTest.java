@@ -0,0 +1,152 @@
+package splab.ufcg.calltrack.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import splab.ufcg.calltrack.exceptions.NodeNotFoundException;
+
+public class CompactGraphTest {
+
+	private static int[] targets(CompactGraph graph, int node) {
+		int[] targets = new int[graph.outDegree(node)];
+		for (int e = graph.firstOut(node), i = 0; e < graph.endOut(node); e++, i++)
+			targets[i] = graph.target(e);
+		return targets;
+	}
+
+	private static int[] sources(CompactGraph graph, int node) {
+		int[] sources = new int[graph.inDegree(node)];
+		for (int e = graph.firstIn(node), i = 0; e < graph.endIn(node); e++, i++)
+			sources[i] = graph.source(e);
+		return sources;
+	}
+
+	/**
+	 * d -> b, d -> a, b -> a, c -> d, put in no particular order.
+	 */
+	private static Graph graph() throws NodeNotFoundException {
+		Graph graph = new Graph();
+		graph.putNode("p.d", TypeNode.NORMAL);
+		graph.putNode("p.b", TypeNode.NORMAL);
+		graph.putNode("p.c", "Use case", TypeNode.ARTIFACT_US);
+		graph.putNode("p.a", TypeNode.NORMAL);
+		graph.putEdge("p.d", "p.b");
+		graph.putEdge("p.d", "p.a");
+		graph.putEdge("p.b", "p.a");
+		graph.putEdge("p.c", "p.d");
+		return graph;
+	}
+
+	@Test
+	public void numbersTheNodesInTheOrderOfTheirIds() throws NodeNotFoundException {
+		CompactGraph graph = graph().compact();
+
+		assertEquals(4, graph.nodeCount());
+		assertEquals(4, graph.edgeCount());
+		for (int node = 0; node < 4; node++)
+			assertEquals(node, graph.indexOf(graph.id(node)));
+		assertEquals("p.a", graph.id(0));
+		assertEquals("p.d", graph.id(3));
+		assertEquals(-1, graph.indexOf("p.e"));
+	}
+
+	@Test
+	public void keepsBothAdjacenciesSorted() throws NodeNotFoundException {
+		CompactGraph graph = graph().compact();
+		int a = graph.indexOf("p.a");
+		int b = graph.indexOf("p.b");
+		int c = graph.indexOf("p.c");
+		int d = graph.indexOf("p.d");
+
+		assertArrayEquals(new int[] { a, b }, targets(graph, d));
+		assertArrayEquals(new int[] { a }, targets(graph, b));
+		assertArrayEquals(new int[0], targets(graph, a));
+		assertArrayEquals(new int[] { b, d }, sources(graph, a));
+		assertArrayEquals(new int[] { c }, sources(graph, d));
+		assertEquals(graph.firstOut(d) + 1, graph.edgeIndex(d, b));
+		assertEquals(-1, graph.edgeIndex(b, d));
+	}
+
+	@Test
+	public void derivesTheLabelsNotGiven() throws NodeNotFoundException {
+		CompactGraph graph = graph().compact();
+
+		assertEquals("b", graph.label(graph.indexOf("p.b")));
+		assertEquals("Use case", graph.label(graph.indexOf("p.c")));
+		assertEquals(TypeNode.ARTIFACT_US, graph.type(graph.indexOf("p.c")));
+		assertTrue(graph.isArtifact(graph.indexOf("p.c")));
+		assertFalse(graph.isArtifact(graph.indexOf("p.a")));
+	}
+
+	@Test
+	public void isBuiltAgainOnlyAfterAChange() throws NodeNotFoundException {
+		Graph graph = graph();
+		CompactGraph before = graph.compact();
+		assertSame(before, graph.compact());
+
+		graph.putEdge("p.d", "p.b");
+		assertSame(before, graph.compact());
+
+		graph.putEdge("p.c", "p.a");
+		CompactGraph after = graph.compact();
+		assertNotSame(before, after);
+		assertEquals(5, after.edgeCount());
+		assertFalse(after.sameAs(before));
+
+		graph.removeEdge("p.b", "p.a");
+		assertNotSame(after, graph.compact());
+		assertEquals(4, graph.compact().edgeCount());
+	}
+
+	@Test
+	public void leavesOutTheRemovedNodes() throws NodeNotFoundException {
+		Graph graph = graph();
+		graph.removeEdge("p.d", "p.b");
+		graph.removeEdge("p.b", "p.a");
+		graph.removeNode("p.b");
+		CompactGraph compact = graph.compact();
+
+		assertEquals(3, compact.nodeCount());
+		assertEquals(-1, compact.indexOf("p.b"));
+		assertArrayEquals(new int[] { compact.indexOf("p.a") }, targets(compact, compact.indexOf("p.d")));
+	}
+
+	@Test
+	public void isTheSameAsAGraphOfTheSameNodesAndEdges() throws NodeNotFoundException {
+		assertTrue(graph().compact().sameAs(graph().compact()));
+
+		Graph relabelled = graph();
+		relabelled.putNode("p.e", "e", TypeNode.NORMAL);
+		relabelled.putEdge("p.e", "p.a");
+		assertFalse(graph().compact().sameAs(relabelled.compact()));
+	}
+
+	@Test
+	public void wrapsACompactGraphReadOnly() throws NodeNotFoundException {
+		CompactGraph compact = graph().compact();
+		Graph graph = new Graph(compact);
+
+		assertSame(compact, graph.compact());
+		assertTrue(graph.containsNode("p.a"));
+		assertFalse(graph.containsNode("p.e"));
+		assertEquals(2, graph.degree("p.b"));
+		assertEquals(4, graph.edgeCount());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void cannotChangeAGraphItWraps() throws NodeNotFoundException {
+		new Graph(graph().compact()).putNode("p.e", TypeNode.NORMAL);
+	}
+
+	@Test(expected = NodeNotFoundException.class)
+	public void rejectsAnEdgeToAMissingNode() throws NodeNotFoundException {
+		graph().putEdge("p.a", "p.e");
+	}
+
+}
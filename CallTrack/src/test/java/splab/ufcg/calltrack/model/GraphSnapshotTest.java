@@ -0,0 +1,206 @@
+package splab.ufcg.calltrack.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import splab.ufcg.calltrack.analysis.GraphLayout;
+import splab.ufcg.calltrack.analysis.ReachabilityIndex;
+import splab.ufcg.calltrack.exceptions.NodeNotFoundException;
+
+public class GraphSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * A use case and a test reaching a cycle a <-> b through d, and e alone.
+	 */
+	private static Graph graph() throws NodeNotFoundException {
+		Graph graph = new Graph();
+		graph.putNode("p.a", TypeNode.NORMAL);
+		graph.putNode("p.b", TypeNode.NORMAL);
+		graph.putNode("p.d", TypeNode.NORMAL);
+		graph.putNode("p.e", TypeNode.NORMAL);
+		graph.putNode("p.Case", "Use case", TypeNode.ARTIFACT_US);
+		graph.putNode("p.Test", "Test", TypeNode.ARTIFACT_TC);
+		graph.putEdge("p.a", "p.b");
+		graph.putEdge("p.b", "p.a");
+		graph.putEdge("p.d", "p.a");
+		graph.putEdge("p.Case", "p.d");
+		graph.putEdge("p.Test", "p.b");
+		return graph;
+	}
+
+	private static <T> Map<String, T> named(T value) {
+		return value == null ? Collections.<String, T> emptyMap() : Collections.singletonMap("calls", value);
+	}
+
+	private File write(String name, Graph graph, boolean layouts, boolean index) throws IOException {
+		File file = folder.newFile(name);
+		GraphSnapshot.write(file, named(graph.compact()), named(layouts ? graph.getLayout(1) : null),
+				named(layouts ? graph.getCycleLayout(1) : null), named(index ? graph.getReachabilityIndex() : null));
+		return file;
+	}
+
+	private static byte[] read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			byte[] bytes = new byte[(int) raf.length()];
+			raf.readFully(bytes);
+			return bytes;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes the bytes as a snapshot of the given version.
+	 */
+	private File rewrite(String name, byte[] bytes, int version) throws IOException {
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, version);
+		return write(name, bytes);
+	}
+
+	private File write(String name, byte[] bytes) throws IOException {
+		File file = folder.newFile(name);
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static void assertSameLayout(GraphLayout expected, GraphLayout actual) {
+		assertEquals(expected.nodeCount(), actual.nodeCount());
+		for (int node = 0; node < expected.nodeCount(); node++) {
+			assertEquals(expected.x(node), actual.x(node), 0f);
+			assertEquals(expected.y(node), actual.y(node), 0f);
+		}
+	}
+
+	private static void assertSameIndex(ReachabilityIndex expected, ReachabilityIndex actual) {
+		assertEquals(expected.artifactCount(), actual.artifactCount());
+		for (int artifact = 0; artifact < expected.artifactCount(); artifact++)
+			assertEquals(expected.artifactNode(artifact), actual.artifactNode(artifact));
+		for (int node = 0; node < expected.getGraph().nodeCount(); node++)
+			assertArrayEquals(expected.artifactsOf(node), actual.artifactsOf(node));
+	}
+
+	@Test
+	public void readsBackTheGraphs() throws Exception {
+		Graph graph = graph();
+		Map<String, CompactGraph> graphs = new LinkedHashMap<String, CompactGraph>();
+		graphs.put("calls", graph.compact());
+		graphs.put("empty", new Graph().compact());
+		File file = folder.newFile("calls.snapshot");
+		GraphSnapshot.write(file, graphs);
+		GraphSnapshot snapshot = GraphSnapshot.open(file);
+
+		assertEquals(graphs.keySet(), snapshot.getGraphs().keySet());
+		CompactGraph read = snapshot.getGraph("calls");
+		assertTrue(read.sameAs(graph.compact()));
+		assertEquals("Use case", read.label(read.indexOf("p.Case")));
+		assertEquals("a", read.label(read.indexOf("p.a")));
+		assertEquals(TypeNode.ARTIFACT_TC, read.type(read.indexOf("p.Test")));
+		assertEquals(0, snapshot.getGraph("empty").nodeCount());
+		assertNull(snapshot.getGraph("classes"));
+	}
+
+	@Test
+	public void readsBackTheLayoutsAndIndexes() throws Exception {
+		Graph graph = graph();
+		GraphSnapshot snapshot = GraphSnapshot.open(write("calls.snapshot", graph, true, true));
+
+		CompactGraph read = snapshot.getGraph("calls");
+		assertTrue(read.sameAs(graph.compact()));
+		assertSameLayout(graph.getLayout(1), snapshot.getLayout("calls"));
+		assertSameLayout(graph.getCycleLayout(1), snapshot.getCycleLayout("calls"));
+		assertEquals(graph.getCondensation().componentCount(), snapshot.getCycleLayout("calls").nodeCount());
+		assertSameIndex(graph.getReachabilityIndex(), snapshot.getReachabilityIndex("calls"));
+		assertSameIndex(ReachabilityIndex.build(read), snapshot.getReachabilityIndex("calls"));
+	}
+
+	@Test
+	public void leavesOutWhatWasNotWritten() throws Exception {
+		GraphSnapshot snapshot = GraphSnapshot.open(write("calls.snapshot", graph(), false, false));
+
+		assertTrue(snapshot.getGraph("calls").sameAs(graph().compact()));
+		assertNull(snapshot.getLayout("calls"));
+		assertNull(snapshot.getCycleLayout("calls"));
+		assertNull(snapshot.getReachabilityIndex("calls"));
+	}
+
+	@Test
+	public void readsTheOlderVersions() throws Exception {
+		Graph graph = graph();
+		// without an index the graph ends with the 16 bytes of an empty one,
+		// and without a layout with its int 0 before them; the cycle layout,
+		// its count and two floats by component, comes before the index
+		byte[] current = read(write("current.snapshot", graph, true, true));
+		byte[] withLayout = read(write("layout.snapshot", graph, true, false));
+		int cycleLayout = withLayout.length - 16 - (4 + 8 * graph.getCondensation().componentCount());
+		int index = withLayout.length - 16;
+		byte[] version3 = new byte[current.length - (index - cycleLayout)];
+		System.arraycopy(current, 0, version3, 0, cycleLayout);
+		System.arraycopy(current, index, version3, cycleLayout, current.length - index);
+		GraphSnapshot three = GraphSnapshot.open(rewrite("three.snapshot", version3, 3));
+
+		assertTrue(three.getGraph("calls").sameAs(graph.compact()));
+		assertSameLayout(graph.getLayout(1), three.getLayout("calls"));
+		assertNull(three.getCycleLayout("calls"));
+		assertSameIndex(graph.getReachabilityIndex(), three.getReachabilityIndex("calls"));
+
+		GraphSnapshot two = GraphSnapshot.open(rewrite("two.snapshot", Arrays.copyOf(current, cycleLayout), 2));
+
+		assertTrue(two.getGraph("calls").sameAs(graph.compact()));
+		assertSameLayout(graph.getLayout(1), two.getLayout("calls"));
+		assertNull(two.getCycleLayout("calls"));
+		assertNull(two.getReachabilityIndex("calls"));
+
+		byte[] bare = read(write("bare.snapshot", graph, false, false));
+		GraphSnapshot one = GraphSnapshot.open(rewrite("one.snapshot", Arrays.copyOf(bare, bare.length - 24), 1));
+
+		assertTrue(one.getGraph("calls").sameAs(graph.compact()));
+		assertNull(one.getLayout("calls"));
+		assertNull(one.getReachabilityIndex("calls"));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsATruncatedSnapshot() throws Exception {
+		byte[] bytes = read(write("calls.snapshot", graph(), true, true));
+		GraphSnapshot.open(rewrite("truncated.snapshot", Arrays.copyOf(bytes, bytes.length - 8),
+				GraphSnapshot.VERSION));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsANewerVersion() throws Exception {
+		byte[] bytes = read(write("calls.snapshot", graph(), true, true));
+		GraphSnapshot.open(rewrite("newer.snapshot", bytes, GraphSnapshot.VERSION + 1));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsAFileThatIsNotASnapshot() throws Exception {
+		GraphSnapshot.open(write("calls.json", "{\"nodes\": []}".getBytes("UTF-8")));
+	}
+
+}
@@ -0,0 +1,115 @@
+package splab.ufcg.calltrack.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import splab.ufcg.calltrack.analysis.ImpactResult;
+import splab.ufcg.calltrack.exceptions.NodeNotFoundException;
+import splab.ufcg.calltrack.model.CompactGraph;
+import splab.ufcg.calltrack.model.Graph;
+import splab.ufcg.calltrack.model.TypeNode;
+
+public class GraphQueriesTest {
+
+	private GraphQueries queries;
+	private CompactGraph graph;
+
+	/**
+	 * a reaches the cycle b <-> c, which reaches the use case, and d, which
+	 * reaches the test; e is alone.
+	 */
+	@Before
+	public void createGraph() throws NodeNotFoundException {
+		Graph graph = new Graph();
+		for (String node : new String[] { "p.a", "p.b", "p.c", "p.d", "p.e" })
+			graph.putNode(node, TypeNode.NORMAL);
+		graph.putNode("p.Case", "Use case", TypeNode.ARTIFACT_US);
+		graph.putNode("p.Test", "Test", TypeNode.ARTIFACT_TC);
+		graph.putEdge("p.a", "p.b");
+		graph.putEdge("p.b", "p.c");
+		graph.putEdge("p.c", "p.b");
+		graph.putEdge("p.c", "p.Case");
+		graph.putEdge("p.a", "p.d");
+		graph.putEdge("p.d", "p.Test");
+		queries = new GraphQueries(graph.getReachabilityIndex());
+		this.graph = queries.getGraph();
+	}
+
+	private int[] nodes(String... ids) {
+		int[] nodes = new int[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			nodes[i] = graph.indexOf(ids[i]);
+		return nodes;
+	}
+
+	private List<String> ids(GraphQueries.Subgraph subgraph) {
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < subgraph.size(); i++)
+			ids.add(graph.id(subgraph.node(i)));
+		return ids;
+	}
+
+	@Test
+	public void searchesTheIdsAndLabelsIgnoringCase() {
+		assertEquals(Arrays.asList("p.b"), ids(queries.search("P.B", 10)));
+		assertEquals(Arrays.asList("p.Case"), ids(queries.search("use", 10)));
+		assertEquals(7, queries.search("p.", 10).size());
+		assertEquals(3, queries.search("p.", 3).size());
+		assertEquals(0, queries.search("nothing", 10).size());
+	}
+
+	@Test
+	public void followsTheEdgesBothWaysForTheNeighbourhood() {
+		assertEquals(Arrays.asList("p.b", "p.c", "p.a"), ids(queries.neighborhood(nodes("p.b"), 1, 10)));
+		assertEquals(new HashSet<String>(Arrays.asList("p.b", "p.c", "p.a", "p.Case", "p.d")),
+				new HashSet<String>(ids(queries.neighborhood(nodes("p.b"), 2, 10))));
+		assertEquals(Arrays.asList("p.b", "p.c"), ids(queries.neighborhood(nodes("p.b"), 2, 2)));
+		assertEquals(Arrays.asList("p.e"), ids(queries.neighborhood(nodes("p.e"), 3, 10)));
+	}
+
+	@Test
+	public void findsEveryArtifactAnImpactReachesWhateverTheLimit() {
+		GraphQueries.Subgraph impact = queries.impact(nodes("p.a"), 2);
+		List<String> found = ids(impact);
+
+		assertEquals(Arrays.asList("p.a", "p.b"), found.subList(0, 2));
+		assertTrue(found.contains("p.Case"));
+		assertTrue(found.contains("p.Test"));
+		ImpactResult artifacts = impact.getArtifacts();
+		assertEquals(2, artifacts.size());
+		// nearest first, the use case through both nodes of the cycle
+		assertEquals("p.Test", artifacts.id(0));
+		assertEquals(2, artifacts.distance(0));
+		assertEquals("p.Case", artifacts.id(1));
+		assertEquals(3, artifacts.distance(1));
+
+		GraphQueries.Subgraph fromCycle = queries.impact(nodes("p.c"), 10);
+		assertEquals(new HashSet<String>(Arrays.asList("p.c", "p.b", "p.Case")),
+				new HashSet<String>(ids(fromCycle)));
+		assertEquals(1, fromCycle.getArtifacts().size());
+		assertEquals("p.Case", fromCycle.getArtifacts().id(0));
+
+		GraphQueries.Subgraph alone = queries.impact(nodes("p.e"), 10);
+		assertEquals(Arrays.asList("p.e"), ids(alone));
+		assertEquals(0, alone.getArtifacts().size());
+	}
+
+	@Test
+	public void findsAShortestPathAlongTheEdges() {
+		assertEquals(Arrays.asList("p.a", "p.b", "p.c", "p.Case"),
+				ids(queries.path(graph.indexOf("p.a"), graph.indexOf("p.Case"))));
+		assertEquals(Arrays.asList("p.d"), ids(queries.path(graph.indexOf("p.d"), graph.indexOf("p.d"))));
+		assertEquals(0, queries.path(graph.indexOf("p.Case"), graph.indexOf("p.a")).size());
+		assertNull(queries.path(graph.indexOf("p.a"), graph.indexOf("p.d")).getArtifacts());
+	}
+
+}
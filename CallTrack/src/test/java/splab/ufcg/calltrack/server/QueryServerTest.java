@@ -0,0 +1,165 @@
+package splab.ufcg.calltrack.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import splab.ufcg.calltrack.analysis.GraphHierarchy;
+import splab.ufcg.calltrack.model.Graph;
+import splab.ufcg.calltrack.model.TypeNode;
+
+public class QueryServerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private GraphQueries queries;
+	private QueryServer server;
+
+	@Before
+	public void startServer() throws Exception {
+		Graph graph = new Graph();
+		graph.putNode("p.a", TypeNode.NORMAL);
+		graph.putNode("p.b", TypeNode.NORMAL);
+		graph.putNode("p.Case", "Use case", TypeNode.ARTIFACT_US);
+		graph.putEdge("p.a", "p.b");
+		graph.putEdge("p.b", "p.Case");
+
+		File view = folder.newFolder("view");
+		write(new File(view, "index-package.html"), "<html>package</html>");
+		write(new File(view, "index-method.html"), "<html>method</html>");
+		write(new File(view, "style.css"), "body {}");
+		write(folder.newFile("secret.txt"), "secret");
+
+		queries = new GraphQueries(graph.getReachabilityIndex());
+		server = new QueryServer(Collections.singletonMap("calls", queries), view);
+		server.start(0, 2);
+	}
+
+	@After
+	public void stopServer() {
+		server.stop();
+	}
+
+	private static void write(File file, String text) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(text.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Sends a GET for the raw path and returns the status and the body,
+	 * separated by a space.
+	 */
+	private String get(String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path)
+				.openConnection();
+		try {
+			int status = connection.getResponseCode();
+			InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int read; in != null && (read = in.read(buffer)) > 0;)
+				body.write(buffer, 0, read);
+			if (in != null)
+				in.close();
+			return status + " " + body.toString("UTF-8");
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private JsonObject json(String path) throws IOException {
+		String answer = get(path);
+		assertTrue(answer, answer.startsWith("200 "));
+		return new JsonParser().parse(answer.substring(4)).getAsJsonObject();
+	}
+
+	@Test
+	public void servesTheFilesOfTheViewDirectory() throws IOException {
+		assertEquals("200 <html>package</html>", get("/"));
+		assertEquals("200 <html>method</html>", get("/index-method.html"));
+		assertEquals("200 body {}", get("/style.css"));
+		assertEquals("200 data = null;", get("/data-method.json"));
+		assertTrue(get("/missing.html").startsWith("404 "));
+	}
+
+	@Test
+	public void refusesThePathsOutOfTheViewDirectory() throws IOException {
+		for (String path : new String[] { "/../secret.txt", "/%2e%2e/secret.txt", "/style.css/../../secret.txt",
+				"/..%2fsecret.txt", "/%2e%2e%2fsecret.txt" }) {
+			String answer = get(path);
+			assertTrue(path + ": " + answer, answer.startsWith("404 ") || answer.startsWith("400 "));
+			assertFalse(path, answer.contains("secret\""));
+			assertFalse(path, answer.endsWith(" secret"));
+		}
+	}
+
+	@Test
+	public void answersTheQueriesWithTheNodesAndTheEdgesBetweenThem() throws IOException {
+		JsonObject search = json("/api/calls/search?q=p.b");
+		assertEquals(1, search.getAsJsonArray("nodes").size());
+		assertEquals("p.b", search.getAsJsonArray("nodes").get(0).getAsJsonObject().getAsJsonObject("data")
+				.get("name").getAsString());
+
+		JsonObject path = json("/api/calls/path?from=p.a&to=p.Case");
+		assertEquals(3, path.getAsJsonArray("nodes").size());
+		assertEquals(2, path.getAsJsonArray("edges").size());
+
+		JsonObject impact = json("/api/calls/impact?id=p.a&limit=1");
+		assertEquals(1, impact.getAsJsonArray("artifacts").size());
+		assertEquals(2, impact.getAsJsonArray("artifacts").get(0).getAsJsonObject().get("distance").getAsInt());
+
+		JsonObject neighborhood = json("/api/calls/neighborhood?id=p.b&hops=1");
+		assertEquals(3, neighborhood.getAsJsonArray("nodes").size());
+		assertFalse(neighborhood.has("artifacts"));
+	}
+
+	@Test
+	public void answersTheHierarchyWithTheWeightsOfTheEdges() throws IOException {
+		assertTrue(get("/api/calls/hierarchy").startsWith("400 "));
+		queries.setHierarchy(GraphHierarchy.of(queries.getGraph()));
+
+		JsonObject packages = json("/api/calls/hierarchy");
+		assertEquals(2, packages.getAsJsonArray("nodes").size());
+		JsonObject expanded = json("/api/calls/hierarchy?expand=p");
+		assertEquals(3, expanded.getAsJsonArray("nodes").size());
+		assertEquals(2, expanded.getAsJsonArray("edges").size());
+		assertEquals(1, expanded.getAsJsonArray("edges").get(0).getAsJsonObject().getAsJsonObject("data")
+				.get("weight").getAsInt());
+		assertTrue(get("/api/calls/hierarchy?expand=q").startsWith("400 "));
+	}
+
+	@Test
+	public void rejectsUnknownGraphsQueriesAndParameters() throws IOException {
+		assertTrue(get("/api/classes/search?q=p").startsWith("404 "));
+		assertTrue(get("/api/calls/layout").startsWith("404 "));
+		assertTrue(get("/api/calls/search").startsWith("400 "));
+		assertTrue(get("/api/calls/neighborhood?node=99").startsWith("400 "));
+		assertTrue(get("/api/calls/neighborhood?id=p.z").startsWith("400 "));
+		assertTrue(get("/api/calls/search?q=p&limit=many").startsWith("400 "));
+	}
+
+}
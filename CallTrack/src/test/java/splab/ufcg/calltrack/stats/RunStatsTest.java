@@ -0,0 +1,153 @@
+package splab.ufcg.calltrack.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class RunStatsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void addsTheCountsOfEveryWorker() throws InterruptedException {
+		final RunStats stats = new RunStats();
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int w = 0; w < 4; w++) {
+			Thread worker = new Thread() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < 1000; i++) {
+						stats.countVisitedClass(10, 2, 1);
+						stats.countSkippedClass();
+						if (i % 2 == 0)
+							stats.countCachedClass();
+					}
+				}
+			};
+			worker.start();
+			workers.add(worker);
+		}
+		start.countDown();
+		for (Thread worker : workers)
+			worker.join();
+
+		assertEquals(4000, stats.getClassesVisited());
+		assertEquals(4000, stats.getClassesSkipped());
+		assertEquals(2000, stats.getClassesCached());
+		assertEquals(40000, stats.getInstructionsVisited());
+		assertEquals(8000, stats.getEdgesKept());
+		assertEquals(4000, stats.getEdgesRejected());
+	}
+
+	@Test
+	public void addsTheTimesOfAPhaseRunTwiceInTheOrderThePhasesFirstRan() throws InterruptedException {
+		RunStats stats = new RunStats();
+		RunStats.Phase load = stats.start("load");
+		assertEquals("load", stats.getPhase());
+		Thread.sleep(20);
+		load.end();
+		assertEquals("", stats.getPhase());
+		stats.start(RunStats.SCAN).end();
+		RunStats.Phase again = stats.start("load");
+		Thread.sleep(20);
+		again.end();
+
+		assertEquals(Arrays.asList("load", RunStats.SCAN), new ArrayList<String>(stats.getPhaseWallMillis().keySet()));
+		assertTrue(stats.getPhaseWallMillis().get("load") >= 40);
+		assertEquals(stats.getPhaseWallMillis().keySet(), stats.getPhaseCpuMillis().keySet());
+	}
+
+	@Test
+	public void ratesTheClassesOverTheScanPhase() throws InterruptedException {
+		RunStats stats = new RunStats();
+		assertEquals(0, stats.getClassesPerSecond(), 0);
+
+		RunStats.Phase scan = stats.start(RunStats.SCAN);
+		for (int i = 0; i < 10; i++)
+			stats.countSkippedClass();
+		Thread.sleep(50);
+		double running = stats.getClassesPerSecond();
+		assertTrue(running > 0 && running <= 200);
+		scan.end();
+		stats.start("export").end();
+
+		assertTrue(stats.getClassesPerSecond() <= running);
+		assertTrue(stats.getClassesPerSecond() > 0);
+	}
+
+	@Test
+	public void writesTheStatsAsJson() throws Exception {
+		RunStats stats = new RunStats();
+		stats.start("load").end();
+		stats.start(RunStats.SCAN).end();
+		stats.countVisitedClass(7, 3, 2);
+		stats.countCachedClass();
+		stats.countFailedClasses(2);
+		File file = folder.newFile("stats.json");
+		stats.write(file);
+
+		Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		JsonObject json;
+		try {
+			json = new JsonParser().parse(in).getAsJsonObject();
+		} finally {
+			in.close();
+		}
+		JsonArray phases = json.getAsJsonArray("phases");
+		assertEquals(2, phases.size());
+		assertEquals("load", phases.get(0).getAsJsonObject().get("name").getAsString());
+		assertEquals(RunStats.SCAN, phases.get(1).getAsJsonObject().get("name").getAsString());
+		assertEquals(1, json.get("classesVisited").getAsLong());
+		assertEquals(1, json.get("classesCached").getAsLong());
+		assertEquals(2, json.get("classesFailed").getAsLong());
+		assertEquals(7, json.get("instructionsVisited").getAsLong());
+		assertEquals(3, json.get("edgesKept").getAsLong());
+		assertEquals(2, json.get("edgesRejected").getAsLong());
+		assertTrue(json.get("peakHeapBytes").getAsLong() > 0);
+	}
+
+	@Test
+	public void answersThroughJmx() throws Exception {
+		RunStats stats = new RunStats();
+		stats.countVisitedClass(5, 1, 0);
+		stats.countFailedClasses(1);
+		stats.register();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(RunStats.OBJECT_NAME);
+		try {
+			assertEquals(1L, server.getAttribute(name, "ClassesVisited"));
+			assertEquals(5L, server.getAttribute(name, "InstructionsVisited"));
+			assertEquals(1L, server.getAttribute(name, "ClassesFailed"));
+			assertEquals("", server.getAttribute(name, "Phase"));
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+
+}
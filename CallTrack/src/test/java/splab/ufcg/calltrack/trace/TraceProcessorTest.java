@@ -0,0 +1,243 @@
+package splab.ufcg.calltrack.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import splab.ufcg.calltrack.utils.PackedEdge;
+
+public class TraceProcessorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Writes the lines of a trace and sums what the processor should find:
+	 * "calls/self/total" by method and "calls/time" by "caller -> callee".
+	 */
+	private static class TraceWriter {
+		private Writer out;
+		private String newLine;
+		private long time;
+		private Map<Long, long[][]> stacks = new HashMap<Long, long[][]>();
+		private Map<Long, String[]> stackMethods = new HashMap<Long, String[]>();
+		private Map<Long, Integer> sizes = new HashMap<Long, Integer>();
+		private Map<String, long[]> methods = new HashMap<String, long[]>();
+		private Map<String, long[]> edges = new HashMap<String, long[]>();
+
+		TraceWriter(File file, String newLine) throws IOException {
+			out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 1 << 16);
+			this.newLine = newLine;
+		}
+
+		int depth(long thread) {
+			Integer size = sizes.get(thread);
+			return size == null ? 0 : size;
+		}
+
+		void enter(long thread, String method, long elapsed) throws IOException {
+			time += elapsed;
+			int depth = depth(thread);
+			if (depth == 0) {
+				stacks.put(thread, new long[1 << 12][2]);
+				stackMethods.put(thread, new String[1 << 12]);
+			}
+			out.write(">[" + depth + "][" + thread + "]" + method + "=" + time + newLine);
+			stacks.get(thread)[depth] = new long[] { time, 0 };
+			stackMethods.get(thread)[depth] = method;
+			sizes.put(thread, depth + 1);
+		}
+
+		void exit(long thread, long elapsed) throws IOException {
+			time += elapsed;
+			int depth = depth(thread) - 1;
+			String method = stackMethods.get(thread)[depth];
+			long[] frame = stacks.get(thread)[depth];
+			out.write("<[" + depth + "][" + thread + "]" + method + "=" + time + newLine);
+			sizes.put(thread, depth);
+
+			long total = time - frame[0];
+			add(methods, method, 1, total - frame[1], total);
+			if (depth > 0) {
+				stacks.get(thread)[depth - 1][1] += total;
+				add(edges, stackMethods.get(thread)[depth - 1] + " -> " + method, 1, total);
+			}
+		}
+
+		void line(String line) throws IOException {
+			out.write(line + newLine);
+		}
+
+		void close() throws IOException {
+			out.close();
+		}
+
+		private static void add(Map<String, long[]> sums, String key, long... values) {
+			long[] sum = sums.get(key);
+			if (sum == null) {
+				sum = new long[values.length];
+				sums.put(key, sum);
+			}
+			for (int i = 0; i < values.length; i++)
+				sum[i] += values[i];
+		}
+
+		Map<String, String> methods() {
+			return joined(methods);
+		}
+
+		Map<String, String> edges() {
+			return joined(edges);
+		}
+
+		private static Map<String, String> joined(Map<String, long[]> sums) {
+			Map<String, String> joined = new HashMap<String, String>();
+			for (Map.Entry<String, long[]> entry : sums.entrySet()) {
+				StringBuilder text = new StringBuilder();
+				for (long value : entry.getValue())
+					text.append(text.length() == 0 ? "" : "/").append(value);
+				joined.put(entry.getKey(), text.toString());
+			}
+			return joined;
+		}
+	}
+
+	private static Map<String, String> methods(TraceTimings timings) {
+		Map<String, String> methods = new HashMap<String, String>();
+		for (int m = 0; m < timings.getMethods().length; m++) {
+			if (timings.getCalls()[m] > 0)
+				methods.put(timings.getMethods()[m],
+						timings.getCalls()[m] + "/" + timings.getSelfTimes()[m] + "/" + timings.getTotalTimes()[m]);
+		}
+		return methods;
+	}
+
+	private static Map<String, String> edges(TraceTimings timings) {
+		Map<String, String> edges = new HashMap<String, String>();
+		String[] methods = timings.getMethods();
+		for (int e = 0; e < timings.getEdges().length; e++) {
+			long edge = timings.getEdges()[e];
+			edges.put(methods[PackedEdge.from(edge)] + " -> " + methods[PackedEdge.to(edge)],
+					timings.getEdgeCalls()[e] + "/" + timings.getEdgeTimes()[e]);
+		}
+		return edges;
+	}
+
+	/**
+	 * A trace of several megabytes, so that it is cut in chunks, of threads
+	 * whose first frames stay open from the first chunk to the last one and
+	 * whose other calls go up and down under them, interleaved.
+	 */
+	private TraceWriter randomTrace(File file, String newLine) throws IOException {
+		Random random = new Random(20);
+		TraceWriter trace = new TraceWriter(file, newLine);
+		long[] threads = { 1, 17, 123456789012L };
+		for (long thread : threads) {
+			for (int depth = 0; depth < 40; depth++)
+				trace.enter(thread, "p.Root:level" + (depth % 7), random.nextInt(50));
+		}
+		while (file.length() < (6L << 20)) {
+			long thread = threads[random.nextInt(threads.length)];
+			for (int step = random.nextInt(20); step > 0; step--) {
+				int depth = trace.depth(thread);
+				if (depth > 40 && (depth > 200 || random.nextBoolean()))
+					trace.exit(thread, random.nextInt(100));
+				else
+					trace.enter(thread, "p.C" + random.nextInt(5) + ":m" + random.nextInt(8), random.nextInt(100));
+			}
+		}
+		for (long thread : threads) {
+			while (trace.depth(thread) > 0)
+				trace.exit(thread, random.nextInt(100));
+		}
+		trace.close();
+		return trace;
+	}
+
+	@Test
+	public void joinsTheFramesOpenAcrossChunks() throws Exception {
+		File file = folder.newFile("trace.txt");
+		TraceWriter trace = randomTrace(file, "\n");
+
+		for (int workers : new int[] { 1, 3, 8 }) {
+			TraceTimings timings = new TraceProcessor(workers).process(file);
+
+			assertEquals(0, timings.getErrors());
+			assertEquals(trace.methods(), methods(timings));
+			assertEquals(trace.edges(), edges(timings));
+		}
+	}
+
+	@Test
+	public void readsLinesEndedByCarriageReturns() throws Exception {
+		File file = folder.newFile("trace.txt");
+		TraceWriter trace = randomTrace(file, "\r\n");
+
+		TraceTimings timings = new TraceProcessor(4).process(file);
+
+		assertEquals(0, timings.getErrors());
+		assertEquals(trace.methods(), methods(timings));
+	}
+
+	@Test
+	public void keepsAStackPerThread() throws Exception {
+		File file = folder.newFile("trace.txt");
+		TraceWriter trace = new TraceWriter(file, "\n");
+		trace.enter(1, "p.A:run", 0);
+		trace.enter(2, "p.B:run", 1);
+		trace.enter(1, "p.A:call", 2);
+		trace.enter(2, "p.A:call", 4);
+		trace.exit(1, 8);
+		trace.enter(1, "p.C:work", 16);
+		trace.exit(2, 32);
+		trace.exit(1, 64);
+		trace.exit(2, 128);
+		trace.exit(1, 256);
+		trace.close();
+
+		TraceTimings timings = new TraceProcessor(2).process(file);
+
+		assertEquals(0, timings.getErrors());
+		Map<String, String> methods = methods(timings);
+		assertEquals(trace.methods(), methods);
+		assertEquals("2/68/68", methods.get("p.A:call"));
+		assertEquals("1/198/254", methods.get("p.B:run"));
+		assertEquals(trace.edges(), edges(timings));
+		assertEquals("1/12", edges(timings).get("p.A:run -> p.A:call"));
+		assertEquals("1/56", edges(timings).get("p.B:run -> p.A:call"));
+	}
+
+	@Test
+	public void leavesOutTheLinesItCannotReadAndTheExitsThatDoNotMatch() throws Exception {
+		File file = folder.newFile("trace.txt");
+		TraceWriter trace = new TraceWriter(file, "\n");
+		trace.enter(1, "p.A:run", 0);
+		trace.line("not a line of the trace");
+		trace.line(">[1][1]p.A:call=nanoseconds");
+		trace.line("<[3][1]p.A:other=5");
+		trace.enter(1, "p.A:call", 10);
+		trace.exit(1, 10);
+		trace.exit(1, 10);
+		trace.close();
+
+		TraceTimings timings = new TraceProcessor(1).process(file);
+
+		assertEquals(3, timings.getErrors());
+		assertEquals(trace.methods(), methods(timings));
+		assertTrue(edges(timings).containsKey("p.A:run -> p.A:call"));
+	}
+
+}
@@ -0,0 +1,100 @@
+package splab.ufcg.calltrack.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LongHashSetTest {
+
+	/**
+	 * Values that all start probing from the given slot of a table of 16.
+	 */
+	static long[] probingFrom(int slot, int count) {
+		long[] values = new long[count];
+		int found = 0;
+		for (long value = 1; found < count; value++) {
+			if (((int) LongHashSet.mix(value) & 15) == slot)
+				values[found++] = value;
+		}
+		return values;
+	}
+
+	@Test
+	public void findsTheRestOfAProbeSequenceAfterARemoval() {
+		LongHashSet set = new LongHashSet();
+		long[] values = probingFrom(3, 4);
+		for (long value : values)
+			assertTrue(set.add(value));
+
+		assertTrue(set.remove(values[1]));
+
+		assertFalse(set.contains(values[1]));
+		assertTrue(set.contains(values[0]));
+		assertTrue(set.contains(values[2]));
+		assertTrue(set.contains(values[3]));
+		assertEquals(3, set.size());
+	}
+
+	@Test
+	public void shiftsBackAcrossTheEndOfTheTable() {
+		LongHashSet set = new LongHashSet();
+		// from the last slot on, the sequence wraps to the first ones
+		long[] wrapping = probingFrom(15, 3);
+		long[] first = probingFrom(0, 1);
+		set.add(wrapping[0]);
+		set.add(wrapping[1]);
+		set.add(first[0]);
+		set.add(wrapping[2]);
+
+		assertTrue(set.remove(wrapping[0]));
+
+		assertTrue(set.contains(wrapping[1]));
+		assertTrue(set.contains(wrapping[2]));
+		assertTrue(set.contains(first[0]));
+		assertTrue(set.remove(wrapping[1]));
+		assertTrue(set.contains(wrapping[2]));
+		assertTrue(set.contains(first[0]));
+	}
+
+	@Test
+	public void keepsZeroApart() {
+		LongHashSet set = new LongHashSet();
+		assertTrue(set.add(0));
+		assertFalse(set.add(0));
+		set.add(5);
+
+		long[] values = set.toArray();
+		Arrays.sort(values);
+		assertArrayEquals(new long[] { 0, 5 }, values);
+		assertTrue(set.remove(0));
+		assertFalse(set.contains(0));
+		assertEquals(1, set.size());
+	}
+
+	@Test
+	public void agreesWithHashSetOnRandomAddsAndRemovals() {
+		Random random = new Random(4);
+		LongHashSet set = new LongHashSet();
+		Set<Long> expected = new HashSet<Long>();
+		for (int i = 0; i < 200000; i++) {
+			// few distinct values, so that removals meet long probe sequences
+			long value = random.nextInt(2000) - 1000;
+			if (random.nextInt(3) == 0)
+				assertEquals(expected.remove(value), set.remove(value));
+			else
+				assertEquals(expected.add(value), set.add(value));
+		}
+		assertEquals(expected.size(), set.size());
+		for (long value = -1000; value < 1000; value++)
+			assertEquals(expected.contains(value), set.contains(value));
+	}
+
+}
@@ -0,0 +1,68 @@
+package splab.ufcg.calltrack.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongIntHashMapTest {
+
+	@Test
+	public void findsTheRestOfAProbeSequenceAfterARemoval() {
+		LongIntHashMap map = new LongIntHashMap();
+		long[] keys = LongHashSetTest.probingFrom(15, 4);
+		for (int i = 0; i < keys.length; i++)
+			map.put(keys[i], i);
+
+		assertEquals(0, map.remove(keys[0], -1));
+
+		assertEquals(-1, map.get(keys[0], -1));
+		assertEquals(1, map.get(keys[1], -1));
+		assertEquals(2, map.get(keys[2], -1));
+		assertEquals(3, map.get(keys[3], -1));
+		assertEquals(3, map.size());
+	}
+
+	@Test
+	public void storesZeroKeysAndValues() {
+		LongIntHashMap map = new LongIntHashMap();
+		map.put(0, 0);
+
+		assertEquals(0, map.get(0, -1));
+		assertEquals(0, map.remove(0, -1));
+		assertEquals(-1, map.remove(0, -1));
+		assertEquals(0, map.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNegativeValues() {
+		new LongIntHashMap().put(1, -1);
+	}
+
+	@Test
+	public void agreesWithHashMapOnRandomPutsAndRemovals() {
+		Random random = new Random(4);
+		LongIntHashMap map = new LongIntHashMap();
+		Map<Long, Integer> expected = new HashMap<Long, Integer>();
+		for (int i = 0; i < 200000; i++) {
+			long key = random.nextInt(2000) - 1000;
+			if (random.nextInt(3) == 0) {
+				Integer value = expected.remove(key);
+				assertEquals(value != null ? value : -1, map.remove(key, -1));
+			} else {
+				int value = random.nextInt(100);
+				expected.put(key, value);
+				map.put(key, value);
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		for (long key = -1000; key < 1000; key++) {
+			Integer value = expected.get(key);
+			assertEquals(value != null ? value : -1, map.get(key, -1));
+		}
+	}
+
+}
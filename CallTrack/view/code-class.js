@@ -31,7 +31,8 @@ $(function(){ // on dom ready
 	
           });
 
-var json  =  eval(data);
+var served = CallTrackServer.isServed();
+var json  =  served ? { nodes: [], edges: [] } : eval(data);
 
 console.log(json.edges[0]);
 
@@ -49,18 +50,25 @@ var cy = cytoscape({
       edges: json.edges
     },
   
-  layout: {
+  layout: CallTrackServer.layoutOf(json.nodes, {
     name: 'cose', //'cose' is the best the best until now
     fit: true,
     directed: true,
-    roots: '#' + json.nodes[0].data.id,
+    roots: json.nodes.length > 0 ? '#' + json.nodes[0].data.id : undefined,
      padding: 10,
      avoidOverlap: true,
      animate: false,
      maximalAdjustments: 100 
-  }
+  })
 });
-console.log("Starting with " + json.nodes[0].data.id);
+if(served){
+  CallTrackServer.searchBox(cy, 'class');
+  CallTrackServer.watch('class', function(delta){
+    CallTrackServer.applyDelta(cy, delta);
+  });
+}else{
+  console.log("Starting with " + json.nodes[0].data.id);
+}
 
 
 
@@ -82,22 +90,30 @@ cy.on('tap','node', function(evt){
   var i = 0;
    var node = evt.cyTarget;
    console.log( 'tapped ' + node.id() );
-   var bfs = cy.elements().bfs('#' + node.id(), function(){}, true);
-   // kick off first highlight
-   cy.getElementById(node.id()).addClass('startNode');
-   var highlightNextEle = function(){
-  if( i < bfs.path.length ){
-    bfs.path[i].addClass('highlighted');
-    var element = cy.getElementById(bfs.path[i].id());
-
-    //From element.data() i can acess the custom values in Nodes or Edges;
-    //From element.isNode() or element.isEdge() i can to know if the element is a node or a Edge respectively 
-    i++;
-    setTimeout(highlightNextEle, 100);
-  }
-};
-
-   highlightNextEle();
+   var highlight = function(){
+     var bfs = cy.elements().bfs(cy.getElementById(node.id()), function(){}, true);
+     // kick off first highlight
+     cy.getElementById(node.id()).addClass('startNode');
+     var highlightNextEle = function(){
+    if( i < bfs.path.length ){
+      bfs.path[i].addClass('highlighted');
+      var element = cy.getElementById(bfs.path[i].id());
+
+      //From element.data() i can acess the custom values in Nodes or Edges;
+      //From element.isNode() or element.isEdge() i can to know if the element is a node or a Edge respectively 
+      i++;
+      setTimeout(highlightNextEle, 100);
+    }
+  };
+
+     highlightNextEle();
+   };
+
+   if(served){
+     CallTrackServer.impact(cy, 'class', node.id(), highlight);
+   }else{
+     highlight();
+   }
 
 
 
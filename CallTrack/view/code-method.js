@@ -14,6 +14,22 @@ var defaultStyle = cytoscape.stylesheet()
         'line-color': '#ddd',
         'target-arrow-color': '#ddd'
       })
+    .selector('edge[calls > 0]')
+      .css({
+        'width': 'mapData(calls, 1, 10000, 4, 12)',
+        'line-color': '#bbb',
+        'target-arrow-color': '#bbb'
+      })
+    .selector('node[heat > 0]')
+      .css({
+        'border-width': 'mapData(heat, 0, 1, 1, 8)',
+        'border-color': '#ff4500'
+      })
+    .selector('edge[heat > 0]')
+      .css({
+        'line-color': 'mapData(heat, 0, 1, #ddd, #ff4500)',
+        'target-arrow-color': 'mapData(heat, 0, 1, #ddd, #ff4500)'
+      })
     .selector('.highlighted')
       .css({
         'background-color': 'data(colorHighlight)',
@@ -21,6 +37,12 @@ var defaultStyle = cytoscape.stylesheet()
         'target-arrow-color': '#61bffc',
         'transition-property': 'background-color, line-color, target-arrow-color',
         'transition-duration': '0.5s'
+      })
+    .selector('edge.highlighted[heat > 0]')
+      .css({
+        'width': 'mapData(heat, 0, 1, 4, 12)',
+        'line-color': 'mapData(heat, 0, 1, #61bffc, #ff0000)',
+        'target-arrow-color': 'mapData(heat, 0, 1, #61bffc, #ff0000)'
       }).selector('.startNode')
         .css({
           'background-color': '#00FF00'
@@ -31,7 +53,8 @@ var defaultStyle = cytoscape.stylesheet()
 	
           });
 
-var json  =  eval(data);
+var served = CallTrackServer.isServed();
+var json  =  served ? { nodes: [], edges: [] } : eval(data);
 
 console.log(json.edges[0]);
 
@@ -49,19 +72,24 @@ var cy = cytoscape({
       edges: json.edges
     },
   
-  layout: {
+  layout: CallTrackServer.layoutOf(json.nodes, {
     name: 'cose', //'cose' is the best the best until now
     fit: true,
     directed: true,
-    roots: '#' + json.nodes[0].data.id,
+    roots: json.nodes.length > 0 ? '#' + json.nodes[0].data.id : undefined,
      padding: 10,
      avoidOverlap: true,
      animate: false,
      maximalAdjustments: 100 
-  }
+  })
 });
 
-
+if(served){
+  CallTrackServer.searchBox(cy, 'method');
+  CallTrackServer.watch('method', function(delta){
+    CallTrackServer.applyDelta(cy, delta);
+  });
+}
 
 
 
@@ -94,22 +122,30 @@ cy.on('tap','node', function(evt){
    
    
    console.log( 'tapped ' + node.id() );
-   var bfs = cy.elements().bfs('#' + node.id(), function(){}, true);
-   // kick off first highlight
-   cy.getElementById(node.id()).addClass('startNode');
-   var highlightNextEle = function(){
-  if( i < bfs.path.length ){
-    bfs.path[i].addClass('highlighted');
-    var element = cy.getElementById(bfs.path[i].id());
-
-    //From element.data() i can acess the custom values in Nodes or Edges;
-    //From element.isNode() or element.isEdge() i can to know if the element is a node or a Edge respectively 
-    i++;
-    setTimeout(highlightNextEle, 100);
-  }
-};
-
-   highlightNextEle();
+   var highlight = function(){
+     var bfs = cy.elements().bfs(cy.getElementById(node.id()), function(){}, true);
+     // kick off first highlight
+     cy.getElementById(node.id()).addClass('startNode');
+     var highlightNextEle = function(){
+    if( i < bfs.path.length ){
+      bfs.path[i].addClass('highlighted');
+      var element = cy.getElementById(bfs.path[i].id());
+
+      //From element.data() i can acess the custom values in Nodes or Edges;
+      //From element.isNode() or element.isEdge() i can to know if the element is a node or a Edge respectively 
+      i++;
+      setTimeout(highlightNextEle, 100);
+    }
+  };
+
+     highlightNextEle();
+   };
+
+   if(served){
+     CallTrackServer.impact(cy, 'method', node.id(), highlight);
+   }else{
+     highlight();
+   }
 
 
 
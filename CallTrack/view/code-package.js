@@ -0,0 +1,141 @@
+$(function(){ // on dom ready
+
+var defaultStyle = cytoscape.stylesheet()
+    .selector('node')
+      .css({
+        'content': 'data(label)',
+        'shape' : 'data(shape)',
+        'background-color' : 'data(color)'
+      })
+    .selector('node[level = "package"]')
+      .css({
+        'width': 50,
+        'height': 50
+      })
+    .selector('node[level = "class"]')
+      .css({
+        'width': 35,
+        'height': 35
+      })
+    .selector('edge')
+      .css({
+        'target-arrow-shape': 'triangle',
+        'width': 'mapData(weight, 1, 50, 2, 12)',
+        'line-color': '#ddd',
+        'target-arrow-color': '#ddd'
+      });
+
+var layout = {
+  name: 'cose',
+  fit: true,
+  directed: true,
+  padding: 10,
+  avoidOverlap: true,
+  animate: false,
+  maximalAdjustments: 100
+};
+
+var served = CallTrackServer.isServed();
+var json  =  served ? { nodes: [], edges: [] } : eval(data);
+
+// Packages and classes shown expanded, and the package of every class in it.
+var expanded = [];
+var packageOf = {};
+
+var cy = cytoscape({
+  container: document.getElementById('cy'),
+
+  boxSelectionEnabled: false,
+  autounselectify: true,
+
+  style: defaultStyle,
+
+  elements: {
+      nodes: json.nodes,
+
+      edges: json.edges
+    },
+
+  layout: layout
+});
+
+// Replaces the graph with the view of the packages expanded now.
+var show = function(){
+  CallTrackServer.hierarchy(expanded, function(answer){
+    cy.elements().remove();
+    cy.add(answer.nodes.concat(answer.edges));
+    var running = cy.layout(layout);
+    if(running && running.run){
+      running.run();
+    }
+  });
+};
+
+// Shows the view again after the classes changed, keeping the nodes where
+// they are and putting the new ones next to their neighbours. The ids of the
+// view change with it, so the nodes are matched by name.
+var refresh = function(){
+  CallTrackServer.hierarchy(expanded, function(answer){
+    var positions = {};
+    cy.nodes().each(function(i, node){
+      positions[node.data('name')] = { x: node.position('x'), y: node.position('y') };
+    });
+    var byId = {};
+    $.each(answer.nodes, function(i, node){
+      byId[node.data.id] = node;
+      node.position = positions[node.data.name];
+    });
+    $.each(answer.edges, function(i, edge){
+      var source = byId[edge.data.source];
+      var target = byId[edge.data.target];
+      if(!source.position && target.position){
+        source.position = CallTrackServer.near(target.position);
+      }else if(!target.position && source.position){
+        target.position = CallTrackServer.near(source.position);
+      }
+    });
+    $.each(answer.nodes, function(i, node){
+      node.position = node.position || CallTrackServer.near({ x: 0, y: 0 });
+    });
+    cy.batch(function(){
+      cy.elements().remove();
+      cy.add(answer.nodes.concat(answer.edges));
+    });
+  });
+};
+
+if(served){
+  show();
+  CallTrackServer.watch('method', refresh);
+}
+
+// A tap on a package or a class expands it.
+cy.on('tap', 'node', function(evt){
+  var node = evt.cyTarget;
+  if(!node.data('expandable')){
+    return;
+  }
+  if(!served){
+    console.log('Expanding ' + node.data('name') + ' needs the CallTrack server (calltrack ... --serve PORT)');
+    return;
+  }
+  if(node.data('level') === 'class'){
+    packageOf[node.data('name')] = node.data('container');
+  }
+  expanded.push(node.data('name'));
+  show();
+});
+
+// A right tap on a class or a method collapses what it was expanded from.
+cy.on('cxttap', 'node', function(evt){
+  var container = evt.cyTarget.data('container');
+  if(!served || !container){
+    return;
+  }
+  expanded = $.grep(expanded, function(name){
+    return name !== container && packageOf[name] !== container;
+  });
+  show();
+});
+
+}); // on dom ready
@@ -0,0 +1,185 @@
+// Loads the graph piece by piece from the CallTrack server (calltrack ... --serve PORT).
+// Used when the page is not given the whole graph in data-*.json. When the server
+// watches the classes (calltrack ... --watch) the page also follows their changes.
+var CallTrackServer = (function(){
+
+  var layout = {
+    name: 'cose',
+    fit: true,
+    directed: true,
+    padding: 10,
+    avoidOverlap: true,
+    animate: false,
+    maximalAdjustments: 100
+  };
+
+  // Places the nodes where CallTrack put them, when it did, otherwise lays
+  // them out with the given layout.
+  var layoutOf = function(nodes, otherwise){
+    if(nodes.length > 0 && nodes[0].data.x !== undefined){
+      return {
+        name: 'preset',
+        fit: true,
+        padding: 10,
+        positions: function(node){
+          return { x: node.data('x'), y: node.data('y') };
+        }
+      };
+    }
+    return otherwise;
+  };
+
+  var isServed = function(){
+    return typeof data === 'undefined' || data === null;
+  };
+
+  // Adds the nodes and edges of an answer that the page does not hold yet.
+  var addElements = function(cy, answer){
+    var added = [];
+    $.each(answer.nodes.concat(answer.edges), function(i, element){
+      if(cy.getElementById(element.data.id).length === 0){
+        added.push(element);
+      }
+    });
+    if(added.length > 0){
+      cy.add(added);
+      var running = cy.layout(layoutOf(answer.nodes, layout));
+      if(running && running.run){
+        running.run();
+      }
+    }
+  };
+
+  var ask = function(graph, query, parameters, done){
+    $.getJSON('api/' + graph + '/' + query, parameters, done)
+      .fail(function(xhr){
+        console.log('CallTrack server: ' + xhr.responseText);
+      });
+  };
+
+  // Loads the neighbours of a node.
+  var expand = function(cy, graph, nodeId, done){
+    ask(graph, 'neighborhood', { node: nodeId, hops: 1 }, function(answer){
+      addElements(cy, answer);
+      if(done){
+        done(answer);
+      }
+    });
+  };
+
+  // Loads what a change in the node reaches, artifacts included.
+  var impact = function(cy, graph, nodeId, done){
+    ask(graph, 'impact', { node: nodeId }, function(answer){
+      addElements(cy, answer);
+      if(done){
+        done(answer);
+      }
+    });
+  };
+
+  // Loads the packages, with the given packages and classes expanded.
+  var hierarchy = function(expanded, done){
+    ask('method', 'hierarchy', { expand: expanded.join(',') }, done);
+  };
+
+  // Calls changed with every change of the graph the server sends, when it
+  // watches the classes.
+  var watch = function(graph, changed){
+    if(typeof EventSource === 'undefined'){
+      return;
+    }
+    var events = new EventSource('api/events');
+    events.addEventListener('delta', function(event){
+      var delta = JSON.parse(event.data);
+      if(delta.graph === graph){
+        changed(delta);
+      }
+    });
+  };
+
+  // A position next to the given one, for a node joining the page.
+  var near = function(position){
+    var angle = Math.random() * 2 * Math.PI;
+    return { x: position.x + 80 * Math.cos(angle), y: position.y + 80 * Math.sin(angle) };
+  };
+
+  // Applies a change of the graph to the page without laying it out again:
+  // the nodes and edges removed go away, and the ones added are shown when
+  // they are linked to a node the page holds, where the server placed them
+  // or next to that node.
+  var applyDelta = function(cy, delta){
+    var added = {};
+    $.each(delta.nodes, function(i, node){
+      added[node.data.id] = node;
+    });
+    var shown = function(id){
+      return cy.getElementById(id).length > 0;
+    };
+    var join = function(id, neighbour){
+      var node = added[id];
+      var position = node.data.x !== undefined ? { x: node.data.x, y: node.data.y }
+        : near(cy.getElementById(neighbour).position());
+      cy.add({ group: 'nodes', data: node.data, position: position });
+    };
+
+    cy.batch(function(){
+      $.each(delta.removedEdges.concat(delta.removedNodes), function(i, id){
+        cy.getElementById(id).remove();
+      });
+      $.each(delta.edges, function(i, edge){
+        var source = edge.data.source;
+        var target = edge.data.target;
+        if(!shown(source) && added[source] && shown(target)){
+          join(source, target);
+        }else if(!shown(target) && added[target] && shown(source)){
+          join(target, source);
+        }
+        if(shown(source) && shown(target) && !shown(edge.data.id)){
+          cy.add(edge);
+        }
+      });
+    });
+  };
+
+  // Adds a search box that loads the node picked and its neighbours.
+  var searchBox = function(cy, graph){
+    var box = $('<div id="search"><input type="text" placeholder="Search"/><ul></ul></div>');
+    var input = box.find('input');
+    var results = box.find('ul');
+    var timer = null;
+    $('body').append(box);
+
+    input.on('keyup', function(){
+      clearTimeout(timer);
+      timer = setTimeout(function(){
+        var text = input.val();
+        results.empty();
+        if(text.length < 2){
+          return;
+        }
+        ask(graph, 'search', { q: text, limit: 20 }, function(answer){
+          $.each(answer.nodes, function(i, node){
+            $('<li/>').text(node.data.name).appendTo(results).on('click', function(){
+              results.empty();
+              expand(cy, graph, node.data.id, function(){
+                cy.center(cy.getElementById(node.data.id));
+              });
+            });
+          });
+        });
+      }, 200);
+    });
+  };
+
+  return {
+    isServed: isServed,
+    layoutOf: layoutOf,
+    expand: expand,
+    impact: impact,
+    hierarchy: hierarchy,
+    watch: watch,
+    near: near,
+    applyDelta: applyDelta,
+    searchBox: searchBox
+  };
+})();
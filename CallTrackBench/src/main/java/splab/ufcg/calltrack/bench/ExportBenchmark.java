@@ -0,0 +1,64 @@
+package splab.ufcg.calltrack.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import splab.ufcg.calltrack.analysis.GraphHierarchy;
+import splab.ufcg.calltrack.core.CallTrack;
+import splab.ufcg.calltrack.exceptions.NodeNotFoundException;
+import splab.ufcg.calltrack.model.CompactGraph;
+import splab.ufcg.calltrack.utils.GraphJsonWriter;
+
+/**
+ * Writing the data of the viewer, without the layouts, to a writer that
+ * drops it, so that the disk is not measured.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class ExportBenchmark {
+
+	private CompactGraph classes;
+	private CompactGraph methods;
+	private GraphHierarchy hierarchy;
+
+	@Setup
+	public void build(ScannedJar jar) throws NodeNotFoundException {
+		CallTrack callTrack = jar.newGraphs();
+		classes = callTrack.getGraphOfClass().compact();
+		methods = callTrack.getGraphOfMethods().compact();
+		hierarchy = callTrack.getGraphOfMethods().getHierarchy();
+	}
+
+	@Benchmark
+	public void writeClassGraph() throws IOException {
+		new GraphJsonWriter(Writer.nullWriter()).write(classes, null);
+	}
+
+	@Benchmark
+	public void writeMethodGraph() throws IOException {
+		new GraphJsonWriter(Writer.nullWriter()).write(methods, null);
+	}
+
+	@Benchmark
+	public void writePackageView() throws IOException {
+		new GraphJsonWriter(Writer.nullWriter()).write(hierarchy.view(Collections.<String> emptyList()));
+	}
+
+}
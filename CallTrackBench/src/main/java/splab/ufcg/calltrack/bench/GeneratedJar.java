@@ -0,0 +1,58 @@
+package splab.ufcg.calltrack.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A synthetic jar for the benchmarks, generated in the temporary directory
+ * the first time its parameters are used and kept for the next runs.
+ */
+@State(Scope.Benchmark)
+public class GeneratedJar {
+
+	@Param({ "1000", "10000", "100000" })
+	public int classes;
+
+	@Param({ "RANDOM", "LAYERED", "HUBS" })
+	public SyntheticJarGenerator.Shape shape;
+
+	@Param("10")
+	public int methods;
+
+	@Param("3")
+	public int calls;
+
+	public File dir;
+
+	@Setup
+	public void generate() throws IOException {
+		dir = new File(System.getProperty("java.io.tmpdir"),
+				"calltrack-bench/" + shape + "-" + classes + "-" + methods + "-" + calls);
+		if (new File(dir, SyntheticJarGenerator.METHOD_ARTIFACTS).exists())
+			return;
+		SyntheticJarGenerator generator = new SyntheticJarGenerator();
+		generator.setClasses(classes);
+		generator.setMethods(methods);
+		generator.setCalls(calls);
+		generator.setShape(shape);
+		generator.generate(dir);
+	}
+
+	public String getJarName() {
+		return new File(dir, SyntheticJarGenerator.JAR).getPath();
+	}
+
+	public String getClassArtifacts() {
+		return new File(dir, SyntheticJarGenerator.CLASS_ARTIFACTS).getPath();
+	}
+
+	public String getMethodArtifacts() {
+		return new File(dir, SyntheticJarGenerator.METHOD_ARTIFACTS).getPath();
+	}
+
+}
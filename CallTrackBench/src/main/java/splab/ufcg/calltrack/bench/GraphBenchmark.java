@@ -0,0 +1,64 @@
+package splab.ufcg.calltrack.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import splab.ufcg.calltrack.core.CallTrack;
+import splab.ufcg.calltrack.exceptions.NodeNotFoundException;
+
+/**
+ * Putting the scanned edges in the graphs, then the artifacts, the two steps
+ * of {@link CallTrack#processInput()}, each on new graphs.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GraphBenchmark {
+
+	@State(Scope.Thread)
+	public static class Empty {
+		CallTrack callTrack;
+
+		@Setup(Level.Invocation)
+		public void create(ScannedJar jar) {
+			callTrack = jar.newCallTrack();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class WithEdges {
+		CallTrack callTrack;
+
+		@Setup(Level.Invocation)
+		public void create(ScannedJar jar) throws NodeNotFoundException {
+			callTrack = jar.newCallTrack();
+			callTrack.putEdges();
+		}
+	}
+
+	@Benchmark
+	public CallTrack putEdges(Empty graphs) throws NodeNotFoundException {
+		graphs.callTrack.putEdges();
+		return graphs.callTrack;
+	}
+
+	@Benchmark
+	public CallTrack attachArtifacts(WithEdges graphs, ScannedJar jar) throws NodeNotFoundException {
+		graphs.callTrack.attachArtifacts(jar.classArtifacts, jar.methodArtifacts);
+		return graphs.callTrack;
+	}
+
+}
@@ -0,0 +1,89 @@
+package splab.ufcg.calltrack.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import splab.ufcg.calltrack.analysis.Condensation;
+import splab.ufcg.calltrack.analysis.ImpactAnalyzer;
+import splab.ufcg.calltrack.analysis.ImpactResult;
+import splab.ufcg.calltrack.analysis.ReachabilityIndex;
+import splab.ufcg.calltrack.exceptions.NodeNotFoundException;
+import splab.ufcg.calltrack.model.CompactGraph;
+
+/**
+ * Impact queries on the method graph, from random sets of changed methods:
+ * the breadth first search on the graph itself, on its condensation and
+ * cut short by the reachability index, and building the condensation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ImpactBenchmark {
+
+	private static final int QUERIES = 64;
+
+	@Param({ "1", "100" })
+	public int changedMethods;
+
+	private CompactGraph graph;
+	private Condensation condensation;
+	private ImpactAnalyzer graphAnalyzer;
+	private ImpactAnalyzer condensationAnalyzer;
+	private ImpactAnalyzer indexAnalyzer;
+	private int[][] changed = new int[QUERIES][];
+	private int query;
+
+	@Setup
+	public void build(ScannedJar jar) throws NodeNotFoundException {
+		graph = jar.newGraphs().getGraphOfMethods().compact();
+		condensation = Condensation.of(graph);
+		graphAnalyzer = new ImpactAnalyzer(graph);
+		condensationAnalyzer = new ImpactAnalyzer(condensation);
+		indexAnalyzer = new ImpactAnalyzer(ReachabilityIndex.build(condensation));
+		Random random = new Random(1);
+		for (int q = 0; q < QUERIES; q++) {
+			changed[q] = new int[changedMethods];
+			for (int i = 0; i < changedMethods; i++)
+				changed[q][i] = random.nextInt(graph.nodeCount());
+		}
+	}
+
+	@Benchmark
+	public ImpactResult impact() {
+		int[] nodes = changed[query++ % QUERIES];
+		return condensationAnalyzer.analyze(nodes, nodes.length);
+	}
+
+	@Benchmark
+	public ImpactResult bfs() {
+		int[] nodes = changed[query++ % QUERIES];
+		return graphAnalyzer.analyze(nodes, nodes.length);
+	}
+
+	@Benchmark
+	public ImpactResult indexed() {
+		int[] nodes = changed[query++ % QUERIES];
+		return indexAnalyzer.analyze(nodes, nodes.length);
+	}
+
+	@Benchmark
+	public Condensation condense() {
+		return Condensation.of(graph);
+	}
+
+}
@@ -0,0 +1,33 @@
+package splab.ufcg.calltrack.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import splab.ufcg.calltrack.core.CallTrack;
+import splab.ufcg.calltrack.core.EdgeSink;
+
+/**
+ * Scanning the jar for its edges, {@link CallTrack#prepare()}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+
+	@Benchmark
+	public EdgeSink scan(GeneratedJar jar) throws InterruptedException {
+		CallTrack callTrack = new CallTrack(jar.getJarName(), SyntheticJarGenerator.PATTERN);
+		callTrack.prepare();
+		return callTrack.getEdgeSink();
+	}
+
+}
@@ -0,0 +1,57 @@
+package splab.ufcg.calltrack.bench;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import splab.ufcg.calltrack.core.CallTrack;
+import splab.ufcg.calltrack.core.EdgeSink;
+import splab.ufcg.calltrack.exceptions.NodeNotFoundException;
+import splab.ufcg.calltrack.model.XMLRepresentation;
+import splab.ufcg.calltrack.utils.Utils;
+
+/**
+ * The edges and artifacts of a generated jar, scanned once so that the
+ * phases after the scan can be measured on their own.
+ */
+@State(Scope.Benchmark)
+public class ScannedJar {
+
+	public String jarName;
+	public EdgeSink sink;
+	public List<XMLRepresentation> classArtifacts;
+	public List<XMLRepresentation> methodArtifacts;
+
+	@Setup
+	public void scan(GeneratedJar jar) throws InterruptedException {
+		jarName = jar.getJarName();
+		CallTrack callTrack = new CallTrack(jarName, SyntheticJarGenerator.PATTERN);
+		callTrack.prepare();
+		sink = callTrack.getEdgeSink();
+		Utils util = new Utils();
+		classArtifacts = util.getArtifactsRepresentation(jar.getClassArtifacts());
+		methodArtifacts = util.getArtifactsRepresentation(jar.getMethodArtifacts());
+	}
+
+	/**
+	 * A new instance on the scanned edges, with empty graphs.
+	 */
+	public CallTrack newCallTrack() {
+		CallTrack callTrack = new CallTrack(jarName, SyntheticJarGenerator.PATTERN);
+		callTrack.setEdgeSink(sink);
+		return callTrack;
+	}
+
+	/**
+	 * A new instance whose graphs have the edges and the artifacts.
+	 */
+	public CallTrack newGraphs() throws NodeNotFoundException {
+		CallTrack callTrack = newCallTrack();
+		callTrack.putEdges();
+		callTrack.attachArtifacts(classArtifacts, methodArtifacts);
+		return callTrack;
+	}
+
+}
@@ -0,0 +1,250 @@
+package splab.ufcg.calltrack.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.InstructionConst;
+import org.apache.bcel.generic.InstructionFactory;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.Type;
+
+/**
+ * Writes a jar of synthetic classes to analyse, with the artifacts mapped to
+ * them. Class c is bench.pK.Cc, K being its package, and has the static
+ * methods m0 to mN, each of which calls a number of methods of other classes
+ * chosen by the shape of the call graph:
+ * <ul>
+ * <li>RANDOM: any class;</li>
+ * <li>LAYERED: the classes are split in layers and call the next layer
+ * only, so that the graph is acyclic and as deep as the layers;</li>
+ * <li>HUBS: most calls go to the first percent of the classes, which are
+ * called by most of the others.</li>
+ * </ul>
+ * The classes are generated one at a time from the seed, so that the same
+ * options always give the same jar, whatever the number of classes.
+ */
+public class SyntheticJarGenerator {
+
+	public enum Shape {
+		RANDOM, LAYERED, HUBS
+	}
+
+	public static final String PATTERN = "bench.*";
+	public static final String JAR = "app.jar";
+	public static final String CLASS_ARTIFACTS = "artifacts-to-class.xml";
+	public static final String METHOD_ARTIFACTS = "artifacts-to-methods.xml";
+
+	private static final int HUB_CALLS_PERCENT = 80;
+
+	public static final String USAGE = "Usage: SyntheticJarGenerator DIR [options]\n"
+			+ "  writes DIR/" + JAR + ", DIR/" + CLASS_ARTIFACTS + " and DIR/" + METHOD_ARTIFACTS + "\n"
+			+ "  --classes N          classes of the jar (default 1000)\n"
+			+ "  --methods N          methods of every class (default 10)\n"
+			+ "  --calls N            calls made by every method (default 3)\n"
+			+ "  --package-size N     classes of every package (default 100)\n"
+			+ "  --shape random|layered|hubs  shape of the call graph (default random)\n"
+			+ "  --layers N           layers of the layered shape (default 10)\n"
+			+ "  --artifacts N        artifacts of each of the class and method graphs (default 20)\n"
+			+ "  --seed N             seed of the classes and calls chosen (default 1)";
+
+	private int classes = 1000;
+	private int methods = 10;
+	private int calls = 3;
+	private int packageSize = 100;
+	private Shape shape = Shape.RANDOM;
+	private int layers = 10;
+	private int artifacts = 20;
+	private long seed = 1;
+
+	public void setClasses(int classes) {
+		this.classes = classes;
+	}
+
+	public void setMethods(int methods) {
+		this.methods = methods;
+	}
+
+	public void setCalls(int calls) {
+		this.calls = calls;
+	}
+
+	public void setPackageSize(int packageSize) {
+		this.packageSize = packageSize;
+	}
+
+	public void setShape(Shape shape) {
+		this.shape = shape;
+	}
+
+	public void setLayers(int layers) {
+		this.layers = layers;
+	}
+
+	public void setArtifacts(int artifacts) {
+		this.artifacts = artifacts;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public void generate(File dir) throws IOException {
+		if (classes < 2 || methods < 1 || calls < 1 || packageSize < 1 || layers < 2)
+			throw new IllegalArgumentException(
+					"At least 2 classes and layers and 1 method, call and class per package are needed");
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create " + dir);
+
+		JarOutputStream jar = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, JAR))));
+		try {
+			for (int c = 0; c < classes; c++) {
+				jar.putNextEntry(new JarEntry(className(c).replace('.', '/') + ".class"));
+				jar.write(generateClass(c));
+				jar.closeEntry();
+			}
+		} finally {
+			jar.close();
+		}
+		writeArtifacts(new File(dir, CLASS_ARTIFACTS), false);
+		writeArtifacts(new File(dir, METHOD_ARTIFACTS), true);
+	}
+
+	private byte[] generateClass(int c) {
+		String className = className(c);
+		ClassGen classGen = new ClassGen(className, "java.lang.Object", "<generated>",
+				Const.ACC_PUBLIC | Const.ACC_SUPER, null);
+		ConstantPoolGen constants = classGen.getConstantPool();
+		InstructionFactory factory = new InstructionFactory(classGen, constants);
+		Random random = new Random(seed * 31 + c);
+		for (int m = 0; m < methods; m++) {
+			InstructionList code = new InstructionList();
+			for (int k = 0; k < calls; k++) {
+				int callee = callee(random, c);
+				if (callee < 0)
+					break;
+				code.append(factory.createInvoke(className(callee), "m" + random.nextInt(methods), Type.VOID,
+						Type.NO_ARGS, Const.INVOKESTATIC));
+			}
+			code.append(InstructionConst.RETURN);
+			MethodGen method = new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.VOID, Type.NO_ARGS,
+					null, "m" + m, className, code, constants);
+			method.setMaxStack();
+			method.setMaxLocals();
+			classGen.addMethod(method.getMethod());
+			code.dispose();
+		}
+		classGen.addEmptyConstructor(Const.ACC_PUBLIC);
+		return classGen.getJavaClass().getBytes();
+	}
+
+	/**
+	 * The class called by class c, never c itself, or -1 when it calls none.
+	 */
+	private int callee(Random random, int c) {
+		int callee;
+		switch (shape) {
+		case LAYERED:
+			int layerSize = (classes + layers - 1) / layers;
+			int next = (c / layerSize + 1) * layerSize;
+			if (next >= classes)
+				return -1;
+			callee = next + random.nextInt(Math.min(layerSize, classes - next));
+			break;
+		case HUBS:
+			int hubs = Math.max(1, classes / 100);
+			callee = random.nextInt(100) < HUB_CALLS_PERCENT ? random.nextInt(hubs) : random.nextInt(classes);
+			break;
+		default:
+			callee = random.nextInt(classes);
+		}
+		return callee != c ? callee : (c + 1) % classes;
+	}
+
+	/**
+	 * Maps every artifact to three classes or methods of the first half of
+	 * the classes, which all make calls whatever the shape.
+	 */
+	private void writeArtifacts(File file, boolean toMethods) throws IOException {
+		Random random = new Random(seed);
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			out.println("<artifacts>");
+			for (int a = 0; a < artifacts; a++) {
+				String id = (a % 2 == 0 ? "US" : "TC") + a;
+				out.println("\t<artifact type=\"" + (a % 2 == 0 ? "UseCase" : "TestCase") + "\" id=\"" + id + "\">");
+				out.println("\t\t<name>" + id + "</name>");
+				out.println("\t\t<to>");
+				for (int t = 0; t < 3; t++) {
+					String to = className(random.nextInt(classes / 2));
+					out.println("\t\t\t<id>" + (toMethods ? to + ":m" + random.nextInt(methods) : to) + "</id>");
+				}
+				out.println("\t\t</to>");
+				out.println("\t</artifact>");
+			}
+			out.println("</artifacts>");
+		} finally {
+			out.close();
+		}
+	}
+
+	private String className(int c) {
+		return "bench.p" + c / packageSize + ".C" + c;
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 1 || args[0].startsWith("--")) {
+			System.err.println(USAGE);
+			System.exit(-1);
+		}
+		SyntheticJarGenerator generator = new SyntheticJarGenerator();
+		try {
+			for (int i = 1; i < args.length; i += 2) {
+				String flag = args[i];
+				if (i + 1 == args.length)
+					throw new IllegalArgumentException("Missing value of " + flag);
+				String value = args[i + 1];
+				if ("--classes".equals(flag))
+					generator.setClasses(Integer.parseInt(value));
+				else if ("--methods".equals(flag))
+					generator.setMethods(Integer.parseInt(value));
+				else if ("--calls".equals(flag))
+					generator.setCalls(Integer.parseInt(value));
+				else if ("--package-size".equals(flag))
+					generator.setPackageSize(Integer.parseInt(value));
+				else if ("--shape".equals(flag))
+					generator.setShape(Shape.valueOf(value.toUpperCase()));
+				else if ("--layers".equals(flag))
+					generator.setLayers(Integer.parseInt(value));
+				else if ("--artifacts".equals(flag))
+					generator.setArtifacts(Integer.parseInt(value));
+				else if ("--seed".equals(flag))
+					generator.setSeed(Long.parseLong(value));
+				else
+					throw new IllegalArgumentException("Unknown option " + flag);
+			}
+			long start = System.nanoTime();
+			generator.generate(new File(args[0]));
+			System.out.println("Generated " + args[0] + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(-1);
+		} catch (IOException e) {
+			System.err.println("Error while generating " + args[0] + ": " + e.getMessage());
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+}
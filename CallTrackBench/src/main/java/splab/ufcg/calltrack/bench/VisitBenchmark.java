@@ -0,0 +1,92 @@
+package splab.ufcg.calltrack.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import splab.ufcg.calltrack.core.ClassVisitor;
+import splab.ufcg.calltrack.core.EdgeSink;
+import splab.ufcg.calltrack.core.MethodVisitor;
+import splab.ufcg.calltrack.core.PackageMatcher;
+import splab.ufcg.calltrack.model.SymbolTable;
+
+/**
+ * Visiting the code of already parsed classes, the work of the
+ * {@link MethodVisitor}s without reading and parsing the jar. The classes
+ * are the ones of BCEL, real code with every kind of instruction, and one
+ * operation visits all of them. The edges go to the same sink every time, so
+ * after the warm up nothing is interned or stored and what is left is the
+ * visit itself; run with -prof gc to see what it allocates per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VisitBenchmark {
+
+	private static final String PACKAGE = "org/apache/bcel/";
+
+	private JavaClass[] classes;
+	private PackageMatcher matcher = new PackageMatcher("org.apache.bcel.*");
+	private EdgeSink sink = new EdgeSink(new SymbolTable());
+
+	@Setup
+	public void parse() throws IOException {
+		// the jar, or the shaded benchmarks jar, BCEL is loaded from
+		File jar = new File(JavaClass.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+		List<JavaClass> parsed = new ArrayList<JavaClass>();
+		JarFile jarFile = new JarFile(jar);
+		try {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				JarEntry entry = entries.nextElement();
+				if (!entry.getName().startsWith(PACKAGE) || !entry.getName().endsWith(".class"))
+					continue;
+				InputStream in = jarFile.getInputStream(entry);
+				try {
+					parsed.add(new ClassParser(in, entry.getName()).parse());
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			jarFile.close();
+		}
+		if (parsed.isEmpty())
+			throw new IOException("No class of BCEL in " + jar);
+		classes = parsed.toArray(new JavaClass[parsed.size()]);
+	}
+
+	@Benchmark
+	public int visit() {
+		int instructions = 0;
+		for (JavaClass javaClass : classes) {
+			ClassVisitor visitor = new ClassVisitor(javaClass, matcher, sink);
+			visitor.start();
+			instructions += visitor.getInstructions();
+		}
+		return instructions;
+	}
+
+}